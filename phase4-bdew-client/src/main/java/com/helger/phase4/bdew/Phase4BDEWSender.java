@@ -38,6 +38,7 @@ import com.helger.phase4.crypto.ECryptoAlgorithmC14N;
 import com.helger.phase4.crypto.ECryptoKeyEncryptionAlgorithm;
 import com.helger.phase4.crypto.ECryptoKeyIdentifierType;
 import com.helger.phase4.logging.Phase4LoggerFactory;
+import com.helger.phase4.messaging.http.AS4HttpClientManagerPool;
 import com.helger.phase4.profile.bdew.AS4BDEWProfileRegistarSPI;
 import com.helger.phase4.profile.bdew.BDEWPMode;
 import com.helger.phase4.sender.AbstractAS4UserMessageBuilderMIMEPayload;
@@ -94,7 +95,9 @@ public final class Phase4BDEWSender
       {
         as4ProfileID (AS4BDEWProfileRegistarSPI.AS4_PROFILE_ID);
 
-        httpClientFactory (new Phase4BDEWHttpClientSettings ());
+        // Use a shared factory, so that open connections can be reused
+        httpClientFactory (AS4HttpClientManagerPool.getSharedHttpClientFactory (Phase4BDEWHttpClientSettings.class.getName (),
+                                                                                Phase4BDEWHttpClientSettings::new));
 
         // Other crypt parameters are located in the PMode security part
         cryptParams ().setKeyIdentifierType (DEFAULT_KEY_IDENTIFIER_TYPE_CRYPT);
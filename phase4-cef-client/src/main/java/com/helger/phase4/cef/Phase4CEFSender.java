@@ -41,6 +41,7 @@ import com.helger.phase4.dynamicdiscovery.AS4EndpointDetailProviderBDXR2;
 import com.helger.phase4.dynamicdiscovery.AS4EndpointDetailProviderConstant;
 import com.helger.phase4.dynamicdiscovery.IAS4EndpointDetailProvider;
 import com.helger.phase4.logging.Phase4LoggerFactory;
+import com.helger.phase4.messaging.http.AS4HttpClientManagerPool;
 import com.helger.phase4.model.MessageProperty;
 import com.helger.phase4.profile.cef.AS4CEFProfileRegistarSPI;
 import com.helger.phase4.sender.AbstractAS4UserMessageBuilderMIMEPayload;
@@ -110,7 +111,9 @@ public final class Phase4CEFSender
       {
         as4ProfileID (AS4CEFProfileRegistarSPI.AS4_PROFILE_ID_FOUR_CORNER);
 
-        httpClientFactory (new Phase4CEFHttpClientSettings ());
+        // Use a shared factory, so that open connections can be reused
+        httpClientFactory (AS4HttpClientManagerPool.getSharedHttpClientFactory (Phase4CEFHttpClientSettings.class.getName (),
+                                                                                Phase4CEFHttpClientSettings::new));
 
         if (false)
         {
@@ -47,4 +47,31 @@ public interface IPhase4PeppolCertificateCheckResultHandler
   void onCertificateCheckResult (@Nullable X509Certificate aAPCertificate,
                                  @Nonnull OffsetDateTime aCheckDT,
                                  @Nonnull ECertificateCheckResult eCertCheckResult) throws Phase4DBNAllianceException;
+
+  /**
+   * Invoked after certificate check. This variant additionally indicates whether the check result
+   * was taken from the {@link com.helger.phase4.crypto.AS4CertificateCheckResultCache}. By default
+   * it simply calls
+   * {@link #onCertificateCheckResult(X509Certificate, OffsetDateTime, ECertificateCheckResult)}.
+   *
+   * @param aAPCertificate
+   *        The AP certificate that was checked. May be <code>null</code>.
+   * @param aCheckDT
+   *        The date and time that was used to check the certificate. Never <code>null</code>.
+   * @param eCertCheckResult
+   *        The result of the certificate check. Never <code>null</code>.
+   * @param bFromCache
+   *        <code>true</code> if the result was taken from the cache, <code>false</code> if the
+   *        check was performed.
+   * @throws Phase4DBNAllianceException
+   *         Implementation dependent
+   * @since 3.2.3
+   */
+  default void onCertificateCheckResult (@Nullable final X509Certificate aAPCertificate,
+                                         @Nonnull final OffsetDateTime aCheckDT,
+                                         @Nonnull final ECertificateCheckResult eCertCheckResult,
+                                         final boolean bFromCache) throws Phase4DBNAllianceException
+  {
+    onCertificateCheckResult (aAPCertificate, aCheckDT, eCertCheckResult);
+  }
 }
@@ -50,11 +50,13 @@ import com.helger.peppolid.simple.doctype.SimpleDocumentTypeIdentifier;
 import com.helger.peppolid.simple.process.SimpleProcessIdentifier;
 import com.helger.phase4.CAS4;
 import com.helger.phase4.attachment.AS4OutgoingAttachment;
+import com.helger.phase4.crypto.AS4CertificateCheckResultCache;
 import com.helger.phase4.crypto.ICryptoSessionKeyProvider;
 import com.helger.phase4.dynamicdiscovery.AS4EndpointDetailProviderBDXR2;
 import com.helger.phase4.dynamicdiscovery.AS4EndpointDetailProviderConstant;
 import com.helger.phase4.dynamicdiscovery.IAS4EndpointDetailProvider;
 import com.helger.phase4.logging.Phase4LoggerFactory;
+import com.helger.phase4.messaging.http.AS4HttpClientManagerPool;
 import com.helger.phase4.mgr.MetaAS4Manager;
 import com.helger.phase4.profile.dbnalliance.AS4DBNAllianceProfileRegistarSPI;
 import com.helger.phase4.profile.dbnalliance.DBNAlliancePMode;
@@ -163,14 +165,20 @@ public final class Phase4DBNAllianceSender
       LOGGER.debug ("Using the following receiver AP certificate from the SMP: " + aReceiverCert);
 
     final OffsetDateTime aNow = MetaAS4Manager.getTimestampMgr ().getCurrentDateTime ();
-    final ECertificateCheckResult eCertCheckResult = aCAChecker.checkCertificate (aReceiverCert,
-                                                                                  aNow,
-                                                                                  eCacheOSCResult,
-                                                                                  eCheckMode);
+    // Uses the optional cache
+    final AS4CertificateCheckResultCache.CheckResult aCheckResult = AS4CertificateCheckResultCache.checkCertificate (aCAChecker,
+                                                                                                                     aReceiverCert,
+                                                                                                                     aNow,
+                                                                                                                     eCacheOSCResult,
+                                                                                                                     eCheckMode);
+    final ECertificateCheckResult eCertCheckResult = aCheckResult.getResult ();
 
     // Interested in the certificate?
     if (aCertificateConsumer != null)
-      aCertificateConsumer.onCertificateCheckResult (aReceiverCert, aNow, eCertCheckResult);
+      aCertificateConsumer.onCertificateCheckResult (aReceiverCert,
+                                                     aNow,
+                                                     eCertCheckResult,
+                                                     aCheckResult.isFromCache ());
 
     if (eCertCheckResult.isInvalid ())
     {
@@ -239,7 +247,9 @@ public final class Phase4DBNAllianceSender
       {
         as4ProfileID (AS4DBNAllianceProfileRegistarSPI.AS4_PROFILE_ID);
 
-        httpClientFactory (new Phase4DBNAllianceHttpClientSettings ());
+        // Use a shared factory, so that open connections can be reused
+        httpClientFactory (AS4HttpClientManagerPool.getSharedHttpClientFactory (Phase4DBNAllianceHttpClientSettings.class.getName (),
+                                                                                Phase4DBNAllianceHttpClientSettings::new));
 
         agreementRef (DBNAlliancePMode.DEFAULT_AGREEMENT_ID);
 
@@ -33,6 +33,7 @@ import com.helger.commons.timing.StopWatch;
 import com.helger.commons.wrapper.Wrapper;
 import com.helger.dbnalliance.commons.EDBNAllianceStage;
 import com.helger.dbnalliance.commons.security.DBNAllianceTrustStores;
+import com.helger.httpclient.HttpClientFactory;
 import com.helger.peppolid.IDocumentTypeIdentifier;
 import com.helger.peppolid.IParticipantIdentifier;
 import com.helger.peppolid.IProcessIdentifier;
@@ -65,6 +66,9 @@ import com.helger.xml.serialize.read.DOMReader;
 public final class APIPostSendDocument extends AbstractVerifyingAPIExecutor
 {
   private static final Logger LOGGER = Phase4LoggerFactory.getLogger (APIPostSendDocument.class);
+  // One shared factory, so that the pooled HTTP connections are reused
+  // TODO Add AP outbound proxy settings here
+  private static final HttpClientFactory AP_HTTP_CLIENT_FACTORY = new HttpClientFactory (new Phase4DBNAllianceHttpClientSettings ());
 
   private final EDBNAllianceStage m_eStage;
 
@@ -162,11 +166,8 @@ public final class APIPostSendDocument extends AbstractVerifyingAPIExecutor
         // If this block is not used, it may be removed
       });
 
-      final Phase4DBNAllianceHttpClientSettings aHCS = new Phase4DBNAllianceHttpClientSettings ();
-      // TODO Add AP outbound proxy settings here
-
       final DBNAllianceUserMessageBuilder aBuilder = Phase4DBNAllianceSender.builder ()
-                                                                            .httpClientFactory (aHCS)
+                                                                            .httpClientFactory (AP_HTTP_CLIENT_FACTORY)
                                                                             .documentTypeID (aDocTypeID)
                                                                             .processID (aProcessID)
                                                                             .senderParticipantID (aSenderID)
@@ -26,6 +26,7 @@ import org.slf4j.Logger;
 
 import com.helger.commons.ValueEnforcer;
 import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.annotation.OverrideOnDemand;
 import com.helger.commons.string.StringHelper;
 import com.helger.commons.string.ToStringGenerator;
 import com.helger.peppol.smp.ESMPTransportProfile;
@@ -41,6 +42,7 @@ import com.helger.smpclient.exception.SMPClientBadRequestException;
 import com.helger.smpclient.exception.SMPClientBadResponseException;
 import com.helger.smpclient.exception.SMPClientException;
 import com.helger.smpclient.exception.SMPClientUnauthorizedException;
+import com.helger.smpclient.httpclient.AbstractGenericSMPClient;
 import com.helger.xsds.bdxr.smp2.ac.EndpointType;
 
 /**
@@ -58,6 +60,7 @@ public class AS4EndpointDetailProviderBDXR2 implements IAS4EndpointDetailProvide
 
   private final IBDXR2ServiceMetadataProvider m_aSMPClient;
   private ISMPTransportProfile m_aTP = DEFAULT_TRANSPORT_PROFILE;
+  private AS4EndpointLookupCache m_aEndpointLookupCache = AS4EndpointLookupCache.getGlobalInstance ();
   private EndpointType m_aEndpoint;
 
   public AS4EndpointDetailProviderBDXR2 (@Nonnull final IBDXR2ServiceMetadataProvider aSMPClient)
@@ -100,6 +103,33 @@ public class AS4EndpointDetailProviderBDXR2 implements IAS4EndpointDetailProvide
     return this;
   }
 
+  /**
+   * @return The endpoint lookup cache to be used. Defaults to
+   *         {@link AS4EndpointLookupCache#getGlobalInstance()}. May be <code>null</code>.
+   * @since 3.2.3
+   */
+  @Nullable
+  public final AS4EndpointLookupCache getEndpointLookupCache ()
+  {
+    return m_aEndpointLookupCache;
+  }
+
+  /**
+   * Change the endpoint lookup cache to be used. This only has an effect if it is called prior to
+   * {@link #init(IDocumentTypeIdentifier, IProcessIdentifier, IParticipantIdentifier)}.
+   *
+   * @param aEndpointLookupCache
+   *        The cache to be used. May be <code>null</code> to always perform the SMP lookup.
+   * @return this for chaining.
+   * @since 3.2.3
+   */
+  @Nonnull
+  public final AS4EndpointDetailProviderBDXR2 setEndpointLookupCache (@Nullable final AS4EndpointLookupCache aEndpointLookupCache)
+  {
+    m_aEndpointLookupCache = aEndpointLookupCache;
+    return this;
+  }
+
   /**
    * @return The endpoint resolved. May only be non-<code>null</code> if
    *         {@link #init(IDocumentTypeIdentifier, IProcessIdentifier, IParticipantIdentifier)} was
@@ -111,6 +141,49 @@ public class AS4EndpointDetailProviderBDXR2 implements IAS4EndpointDetailProvide
     return m_aEndpoint;
   }
 
+  /**
+   * @return The scope of the SMP lookups of this provider, used as part of the key of the
+   *         {@link AS4EndpointLookupCache}. This is the SMP host URI if the service metadata
+   *         provider is an SMP client, or the service metadata provider itself otherwise.
+   * @since 3.2.3
+   */
+  @Nonnull
+  @OverrideOnDemand
+  protected Object getSMPScope ()
+  {
+    if (m_aSMPClient instanceof AbstractGenericSMPClient <?>)
+      return "bdxr2:" + ((AbstractGenericSMPClient <?>) m_aSMPClient).getSMPHostURI ();
+    return m_aSMPClient;
+  }
+
+  @Nullable
+  private EndpointType _lookupEndpoint (@Nonnull final IDocumentTypeIdentifier aDocTypeID,
+                                        @Nonnull final IProcessIdentifier aProcID,
+                                        @Nonnull final IParticipantIdentifier aReceiverID) throws Phase4SMPException
+  {
+    try
+    {
+      return m_aSMPClient.getEndpoint (aReceiverID, aDocTypeID, aProcID, m_aTP);
+    }
+    catch (final SMPClientException ex)
+    {
+      final boolean bRetryFeasible = ex instanceof SMPClientBadRequestException ||
+                                     ex instanceof SMPClientBadResponseException ||
+                                     ex instanceof SMPClientUnauthorizedException ||
+                                     ex.getClass ().equals (SMPClientException.class);
+      throw new Phase4SMPException ("Failed to resolve SMP endpoint (" +
+                                    aReceiverID.getURIEncoded () +
+                                    ", " +
+                                    aDocTypeID.getURIEncoded () +
+                                    ", " +
+                                    aProcID.getURIEncoded () +
+                                    ", " +
+                                    m_aTP.getID () +
+                                    ")",
+                                    ex).setRetryFeasible (bRetryFeasible);
+    }
+  }
+
   public void init (@Nonnull final IDocumentTypeIdentifier aDocTypeID,
                     @Nonnull final IProcessIdentifier aProcID,
                     @Nonnull final IParticipantIdentifier aReceiverID) throws Phase4Exception
@@ -132,38 +205,19 @@ public class AS4EndpointDetailProviderBDXR2 implements IAS4EndpointDetailProvide
                       aProcID.getURIEncoded () +
                       ")");
 
-      // Perform SMP lookup
-      try
-      {
-        m_aEndpoint = m_aSMPClient.getEndpoint (aReceiverID, aDocTypeID, aProcID, m_aTP);
-        if (m_aEndpoint == null)
-          throw new Phase4SMPException ("Failed to resolve SMP endpoint (" +
-                                        aReceiverID.getURIEncoded () +
-                                        ", " +
-                                        aDocTypeID.getURIEncoded () +
-                                        ", " +
-                                        aProcID.getURIEncoded () +
-                                        ", " +
-                                        m_aTP.getID () +
-                                        ")");
-
-        if (LOGGER.isDebugEnabled ())
-          LOGGER.debug ("Successfully resolved SMP endpoint (" +
-                        aReceiverID.getURIEncoded () +
-                        ", " +
-                        aDocTypeID.getURIEncoded () +
-                        ", " +
-                        aProcID.getURIEncoded () +
-                        ", " +
-                        m_aTP.getID () +
-                        ")");
-      }
-      catch (final SMPClientException ex)
-      {
-        final boolean bRetryFeasible = ex instanceof SMPClientBadRequestException ||
-                                       ex instanceof SMPClientBadResponseException ||
-                                       ex instanceof SMPClientUnauthorizedException ||
-                                       ex.getClass ().equals (SMPClientException.class);
+      final AS4EndpointLookupCache aCache = m_aEndpointLookupCache;
+      if (aCache != null)
+        m_aEndpoint = aCache.getOrLookup (getSMPScope (),
+                                          aReceiverID,
+                                          aDocTypeID,
+                                          aProcID,
+                                          m_aTP,
+                                          () -> _lookupEndpoint (aDocTypeID, aProcID, aReceiverID),
+                                          null);
+      else
+        m_aEndpoint = _lookupEndpoint (aDocTypeID, aProcID, aReceiverID);
+
+      if (m_aEndpoint == null)
         throw new Phase4SMPException ("Failed to resolve SMP endpoint (" +
                                       aReceiverID.getURIEncoded () +
                                       ", " +
@@ -172,9 +226,18 @@ public class AS4EndpointDetailProviderBDXR2 implements IAS4EndpointDetailProvide
                                       aProcID.getURIEncoded () +
                                       ", " +
                                       m_aTP.getID () +
-                                      ")",
-                                      ex).setRetryFeasible (bRetryFeasible);
-      }
+                                      ")");
+
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug ("Successfully resolved SMP endpoint (" +
+                      aReceiverID.getURIEncoded () +
+                      ", " +
+                      aDocTypeID.getURIEncoded () +
+                      ", " +
+                      aProcID.getURIEncoded () +
+                      ", " +
+                      m_aTP.getID () +
+                      ")");
     }
   }
 
@@ -213,6 +276,7 @@ public class AS4EndpointDetailProviderBDXR2 implements IAS4EndpointDetailProvide
   {
     return new ToStringGenerator (null).append ("SMPClient", m_aSMPClient)
                                        .append ("TransportProfile", m_aTP)
+                                       .appendIfNotNull ("EndpointLookupCache", m_aEndpointLookupCache)
                                        .appendIfNotNull ("Endpoint", m_aEndpoint)
                                        .getToString ();
   }
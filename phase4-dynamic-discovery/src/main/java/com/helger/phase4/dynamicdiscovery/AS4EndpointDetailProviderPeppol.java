@@ -42,6 +42,7 @@ import com.helger.smpclient.exception.SMPClientBadRequestException;
 import com.helger.smpclient.exception.SMPClientBadResponseException;
 import com.helger.smpclient.exception.SMPClientException;
 import com.helger.smpclient.exception.SMPClientUnauthorizedException;
+import com.helger.smpclient.httpclient.AbstractGenericSMPClient;
 import com.helger.smpclient.peppol.ISMPExtendedServiceMetadataProvider;
 import com.helger.smpclient.peppol.ISMPServiceGroupProvider;
 import com.helger.smpclient.peppol.ISMPServiceMetadataProvider;
@@ -65,6 +66,7 @@ public class AS4EndpointDetailProviderPeppol implements IAS4EndpointDetailProvid
   private final ISMPServiceGroupProvider m_aServiceGroupProvider;
   private final ISMPExtendedServiceMetadataProvider m_aServiceMetadataProvider;
   private ISMPTransportProfile m_aTP = DEFAULT_TRANSPORT_PROFILE;
+  private AS4EndpointLookupCache m_aEndpointLookupCache = AS4EndpointLookupCache.getGlobalInstance ();
   private EndpointType m_aEndpoint;
 
   public AS4EndpointDetailProviderPeppol (@Nonnull final ISMPServiceGroupProvider aServiceGroupProvider,
@@ -119,6 +121,33 @@ public class AS4EndpointDetailProviderPeppol implements IAS4EndpointDetailProvid
     return this;
   }
 
+  /**
+   * @return The endpoint lookup cache to be used. Defaults to
+   *         {@link AS4EndpointLookupCache#getGlobalInstance()}. May be <code>null</code>.
+   * @since 3.2.3
+   */
+  @Nullable
+  public final AS4EndpointLookupCache getEndpointLookupCache ()
+  {
+    return m_aEndpointLookupCache;
+  }
+
+  /**
+   * Change the endpoint lookup cache to be used. This only has an effect if it is called prior to
+   * {@link #init(IDocumentTypeIdentifier, IProcessIdentifier, IParticipantIdentifier)}.
+   *
+   * @param aEndpointLookupCache
+   *        The cache to be used. May be <code>null</code> to always perform the SMP lookup.
+   * @return this for chaining.
+   * @since 3.2.3
+   */
+  @Nonnull
+  public final AS4EndpointDetailProviderPeppol setEndpointLookupCache (@Nullable final AS4EndpointLookupCache aEndpointLookupCache)
+  {
+    m_aEndpointLookupCache = aEndpointLookupCache;
+    return this;
+  }
+
   /**
    * @return The endpoint resolved. May only be non-<code>null</code> after
    *         {@link #init(IDocumentTypeIdentifier, IProcessIdentifier, IParticipantIdentifier)} was
@@ -139,6 +168,57 @@ public class AS4EndpointDetailProviderPeppol implements IAS4EndpointDetailProvid
     return m_aServiceMetadataProvider.getSchemeSpecificServiceMetadataOrNull (aReceiverID, aDocTypeID);
   }
 
+  /**
+   * @return The scope of the SMP lookups of this provider, used as part of the key of the
+   *         {@link AS4EndpointLookupCache}. This is the SMP host URI if the service metadata
+   *         provider is an SMP client, or the service metadata provider itself otherwise.
+   * @since 3.2.3
+   */
+  @Nonnull
+  @OverrideOnDemand
+  protected Object getSMPScope ()
+  {
+    if (m_aServiceMetadataProvider instanceof AbstractGenericSMPClient <?>)
+      return "peppol:" + ((AbstractGenericSMPClient <?>) m_aServiceMetadataProvider).getSMPHostURI ();
+    return m_aServiceMetadataProvider;
+  }
+
+  @Nullable
+  private EndpointType _lookupEndpoint (@Nonnull final IDocumentTypeIdentifier aDocTypeID,
+                                        @Nonnull final IProcessIdentifier aProcID,
+                                        @Nonnull final IParticipantIdentifier aReceiverID) throws Phase4SMPException
+  {
+    try
+    {
+      // PFUOI 4.3.0
+      final SignedServiceMetadataType aSSM = resolvedSchemeSpecificServiceMetadata (aReceiverID, aDocTypeID);
+      if (aSSM == null)
+        return null;
+
+      return SMPClientReadOnly.getEndpointAt (aSSM.getServiceMetadata (),
+                                              aProcID,
+                                              m_aTP,
+                                              PDTFactory.getCurrentLocalDateTime ());
+    }
+    catch (final SMPClientException ex)
+    {
+      final boolean bRetryFeasible = ex instanceof SMPClientBadRequestException ||
+                                     ex instanceof SMPClientBadResponseException ||
+                                     ex instanceof SMPClientUnauthorizedException ||
+                                     ex.getClass ().equals (SMPClientException.class);
+      throw new Phase4SMPException ("Failed to resolve SMP endpoint (" +
+                                    aReceiverID.getURIEncoded () +
+                                    ", " +
+                                    aDocTypeID.getURIEncoded () +
+                                    ", " +
+                                    aProcID.getURIEncoded () +
+                                    ", " +
+                                    m_aTP.getID () +
+                                    ")",
+                                    ex).setRetryFeasible (bRetryFeasible);
+    }
+  }
+
   public void init (@Nonnull final IDocumentTypeIdentifier aDocTypeID,
                     @Nonnull final IProcessIdentifier aProcID,
                     @Nonnull final IParticipantIdentifier aReceiverID) throws Phase4Exception
@@ -162,59 +242,24 @@ public class AS4EndpointDetailProviderPeppol implements IAS4EndpointDetailProvid
                       m_aTP.getID () +
                       ")");
 
-      // Perform SMP lookup
-      try
-      {
-        final boolean bWildcard;
-        final SignedServiceMetadataType aSSM;
-
-        // PFUOI 4.3.0
-        aSSM = resolvedSchemeSpecificServiceMetadata (aReceiverID, aDocTypeID);
-        // This is just a heuristic, because it is only evaluated in logging
-        bWildcard = aSSM != null &&
-                    PeppolIdentifierHelper.DOCUMENT_TYPE_SCHEME_PEPPOL_DOCTYPE_WILDCARD.equals (aDocTypeID.getScheme ()) &&
-                    aDocTypeID.getValue ().indexOf (PeppolIdentifierHelper.DOCUMENT_TYPE_WILDCARD_INDICATOR) >= 0;
-
-        if (aSSM != null)
-        {
-          m_aEndpoint = SMPClientReadOnly.getEndpointAt (aSSM.getServiceMetadata (),
-                                                         aProcID,
-                                                         m_aTP,
-                                                         PDTFactory.getCurrentLocalDateTime ());
-        }
+      // This is just a heuristic, because it is only evaluated in logging
+      final boolean bWildcard = PeppolIdentifierHelper.DOCUMENT_TYPE_SCHEME_PEPPOL_DOCTYPE_WILDCARD.equals (aDocTypeID.getScheme ()) &&
+                                aDocTypeID.getValue ().indexOf (PeppolIdentifierHelper.DOCUMENT_TYPE_WILDCARD_INDICATOR) >= 0;
 
-        if (m_aEndpoint == null)
-        {
-          throw new Phase4SMPException ("Failed to resolve SMP endpoint (" +
-                                        aReceiverID.getURIEncoded () +
-                                        ", " +
-                                        aDocTypeID.getURIEncoded () +
-                                        ", " +
-                                        aProcID.getURIEncoded () +
-                                        ", " +
-                                        m_aTP.getID () +
-                                        ")" +
-                                        (bWildcard ? " [wildcard]" : " [static]"));
-        }
+      final AS4EndpointLookupCache aCache = m_aEndpointLookupCache;
+      if (aCache != null)
+        m_aEndpoint = aCache.getOrLookup (getSMPScope (),
+                                          aReceiverID,
+                                          aDocTypeID,
+                                          aProcID,
+                                          m_aTP,
+                                          () -> _lookupEndpoint (aDocTypeID, aProcID, aReceiverID),
+                                          EndpointType::getServiceExpirationDate);
+      else
+        m_aEndpoint = _lookupEndpoint (aDocTypeID, aProcID, aReceiverID);
 
-        if (LOGGER.isDebugEnabled ())
-          LOGGER.debug ("Successfully resolved SMP endpoint (" +
-                        aReceiverID.getURIEncoded () +
-                        ", " +
-                        aDocTypeID.getURIEncoded () +
-                        ", " +
-                        aProcID.getURIEncoded () +
-                        ", " +
-                        m_aTP.getID () +
-                        ")" +
-                        (bWildcard ? " [wildcard]" : " [static]"));
-      }
-      catch (final SMPClientException ex)
+      if (m_aEndpoint == null)
       {
-        final boolean bRetryFeasible = ex instanceof SMPClientBadRequestException ||
-                                       ex instanceof SMPClientBadResponseException ||
-                                       ex instanceof SMPClientUnauthorizedException ||
-                                       ex.getClass ().equals (SMPClientException.class);
         throw new Phase4SMPException ("Failed to resolve SMP endpoint (" +
                                       aReceiverID.getURIEncoded () +
                                       ", " +
@@ -223,9 +268,21 @@ public class AS4EndpointDetailProviderPeppol implements IAS4EndpointDetailProvid
                                       aProcID.getURIEncoded () +
                                       ", " +
                                       m_aTP.getID () +
-                                      ")",
-                                      ex).setRetryFeasible (bRetryFeasible);
+                                      ")" +
+                                      (bWildcard ? " [wildcard]" : " [static]"));
       }
+
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug ("Successfully resolved SMP endpoint (" +
+                      aReceiverID.getURIEncoded () +
+                      ", " +
+                      aDocTypeID.getURIEncoded () +
+                      ", " +
+                      aProcID.getURIEncoded () +
+                      ", " +
+                      m_aTP.getID () +
+                      ")" +
+                      (bWildcard ? " [wildcard]" : " [static]"));
     }
   }
 
@@ -265,6 +322,7 @@ public class AS4EndpointDetailProviderPeppol implements IAS4EndpointDetailProvid
     return new ToStringGenerator (null).append ("ServiceGroupProvider", m_aServiceGroupProvider)
                                        .append ("ServiceMetadataProvider", m_aServiceMetadataProvider)
                                        .append ("TransportProfile", m_aTP)
+                                       .appendIfNotNull ("EndpointLookupCache", m_aEndpointLookupCache)
                                        .appendIfNotNull ("Endpoint", m_aEndpoint)
                                        .getToString ();
   }
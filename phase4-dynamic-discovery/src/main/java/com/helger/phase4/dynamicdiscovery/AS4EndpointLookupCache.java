@@ -0,0 +1,506 @@
+/*
+ * Copyright (C) 2020-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.dynamicdiscovery;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.datetime.XMLOffsetDateTime;
+import com.helger.commons.hashcode.HashCodeGenerator;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.peppol.smp.ISMPTransportProfile;
+import com.helger.peppolid.IDocumentTypeIdentifier;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.IProcessIdentifier;
+import com.helger.phase4.logging.Phase4LoggerFactory;
+import com.helger.phase4.util.Phase4Exception;
+
+/**
+ * A process-wide cache for the endpoints resolved via SMP by the endpoint detail providers. Without
+ * it, every message causes a full SMP lookup, because the resolved endpoint only lives in the
+ * per-message endpoint detail provider.<br>
+ * The cache key consists of the SMP scope (usually the SMP host URI), the participant ID, the
+ * document type ID, the process ID and the transport profile. Successful lookups expire after the
+ * TTL and at the latest at the service expiration date of the endpoint. Lookups that did not find an
+ * endpoint are cached for the shorter negative TTL. Lookups that failed with an exception are never
+ * cached. Concurrent lookups for the same key are de-duplicated, so that only one SMP query is
+ * performed and all other callers wait for its result.<br>
+ * The cache is only used by the endpoint detail providers if it is installed via
+ * {@link #setGlobalInstance(AS4EndpointLookupCache)} or explicitly provided to the endpoint detail
+ * provider.
+ *
+ * @author Philip Helger
+ * @since 3.2.3
+ */
+@ThreadSafe
+public class AS4EndpointLookupCache
+{
+  public static final Duration DEFAULT_TTL = Duration.ofHours (1);
+  public static final Duration DEFAULT_NEGATIVE_TTL = Duration.ofMinutes (5);
+  public static final int DEFAULT_MAX_ENTRIES = 10_000;
+
+  private static final Logger LOGGER = Phase4LoggerFactory.getLogger (AS4EndpointLookupCache.class);
+
+  private static final SimpleReadWriteLock RW_LOCK = new SimpleReadWriteLock ();
+  @GuardedBy ("RW_LOCK")
+  private static AS4EndpointLookupCache s_aGlobalInstance;
+
+  /**
+   * The actual SMP lookup to be performed on a cache miss.
+   *
+   * @param <T>
+   *        The endpoint type
+   */
+  @FunctionalInterface
+  public interface IEndpointLookup <T>
+  {
+    /**
+     * @return The resolved endpoint or <code>null</code> if no matching endpoint was found.
+     * @throws Phase4Exception
+     *         If the SMP lookup failed. Such results are not cached.
+     */
+    @Nullable
+    T lookup () throws Phase4Exception;
+  }
+
+  private static final class CacheKey
+  {
+    private final Object m_aSMPScope;
+    private final String m_sParticipantID;
+    private final String m_sDocTypeID;
+    private final String m_sProcessID;
+    private final String m_sTransportProfileID;
+
+    CacheKey (@Nonnull final Object aSMPScope,
+              @Nonnull final String sParticipantID,
+              @Nonnull final String sDocTypeID,
+              @Nonnull final String sProcessID,
+              @Nonnull final String sTransportProfileID)
+    {
+      m_aSMPScope = aSMPScope;
+      m_sParticipantID = sParticipantID;
+      m_sDocTypeID = sDocTypeID;
+      m_sProcessID = sProcessID;
+      m_sTransportProfileID = sTransportProfileID;
+    }
+
+    @Override
+    public boolean equals (final Object o)
+    {
+      if (o == this)
+        return true;
+      if (o == null || !getClass ().equals (o.getClass ()))
+        return false;
+      final CacheKey rhs = (CacheKey) o;
+      return m_aSMPScope.equals (rhs.m_aSMPScope) &&
+             m_sParticipantID.equals (rhs.m_sParticipantID) &&
+             m_sDocTypeID.equals (rhs.m_sDocTypeID) &&
+             m_sProcessID.equals (rhs.m_sProcessID) &&
+             m_sTransportProfileID.equals (rhs.m_sTransportProfileID);
+    }
+
+    @Override
+    public int hashCode ()
+    {
+      return new HashCodeGenerator (this).append (m_aSMPScope)
+                                         .append (m_sParticipantID)
+                                         .append (m_sDocTypeID)
+                                         .append (m_sProcessID)
+                                         .append (m_sTransportProfileID)
+                                         .getHashCode ();
+    }
+
+    @Override
+    public String toString ()
+    {
+      return "(" +
+             m_sParticipantID +
+             ", " +
+             m_sDocTypeID +
+             ", " +
+             m_sProcessID +
+             ", " +
+             m_sTransportProfileID +
+             ")";
+    }
+  }
+
+  private static final class CacheEntry
+  {
+    private final CompletableFuture <Object> m_aFuture = new CompletableFuture <> ();
+    // Only valid after the future is done
+    private volatile long m_nExpiration = Long.MAX_VALUE;
+
+    boolean isExpired (final long nNow)
+    {
+      return m_aFuture.isDone () && m_nExpiration <= nNow;
+    }
+  }
+
+  private final Duration m_aTTL;
+  private final Duration m_aNegativeTTL;
+  private final int m_nMaxEntries;
+  private final Map <CacheKey, CacheEntry> m_aMap = new ConcurrentHashMap <> ();
+  private final AtomicLong m_aHits = new AtomicLong (0);
+  private final AtomicLong m_aNegativeHits = new AtomicLong (0);
+  private final AtomicLong m_aMisses = new AtomicLong (0);
+  private final AtomicLong m_aCoalesced = new AtomicLong (0);
+
+  /**
+   * Constructor with the default settings.
+   */
+  public AS4EndpointLookupCache ()
+  {
+    this (DEFAULT_TTL, DEFAULT_NEGATIVE_TTL, DEFAULT_MAX_ENTRIES);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param aTTL
+   *        The time to live of a resolved endpoint. May not be <code>null</code> and must be
+   *        positive.
+   * @param aNegativeTTL
+   *        The time to live of a lookup that did not find an endpoint. May not be <code>null</code>
+   *        and must not be negative. Use {@link Duration#ZERO} to disable negative caching.
+   * @param nMaxEntries
+   *        The maximum number of cached lookups. Must be &gt; 0.
+   */
+  public AS4EndpointLookupCache (@Nonnull final Duration aTTL,
+                                 @Nonnull final Duration aNegativeTTL,
+                                 @Nonnegative final int nMaxEntries)
+  {
+    ValueEnforcer.notNull (aTTL, "TTL");
+    ValueEnforcer.isTrue ( () -> !aTTL.isNegative () && !aTTL.isZero (), "TTL must be positive");
+    ValueEnforcer.notNull (aNegativeTTL, "NegativeTTL");
+    ValueEnforcer.isFalse (aNegativeTTL.isNegative (), "NegativeTTL may not be negative");
+    ValueEnforcer.isGT0 (nMaxEntries, "MaxEntries");
+    m_aTTL = aTTL;
+    m_aNegativeTTL = aNegativeTTL;
+    m_nMaxEntries = nMaxEntries;
+  }
+
+  /**
+   * @return The time to live of a resolved endpoint. Never <code>null</code>.
+   */
+  @Nonnull
+  public final Duration getTTL ()
+  {
+    return m_aTTL;
+  }
+
+  /**
+   * @return The time to live of a lookup that did not find an endpoint. Never <code>null</code>.
+   */
+  @Nonnull
+  public final Duration getNegativeTTL ()
+  {
+    return m_aNegativeTTL;
+  }
+
+  /**
+   * @return The maximum number of cached lookups. Always &gt; 0.
+   */
+  @Nonnegative
+  public final int getMaxEntries ()
+  {
+    return m_nMaxEntries;
+  }
+
+  @Nullable
+  @SuppressWarnings ("unchecked")
+  private static <T> T _await (@Nonnull final CacheEntry aEntry) throws Phase4Exception
+  {
+    try
+    {
+      return (T) aEntry.m_aFuture.get ();
+    }
+    catch (final InterruptedException ex)
+    {
+      Thread.currentThread ().interrupt ();
+      throw new Phase4Exception ("Interrupted while waiting for a concurrent SMP lookup", ex);
+    }
+    catch (final ExecutionException ex)
+    {
+      final Throwable aCause = ex.getCause ();
+      if (aCause instanceof Phase4Exception)
+        throw (Phase4Exception) aCause;
+      if (aCause instanceof RuntimeException)
+        throw (RuntimeException) aCause;
+      if (aCause instanceof Error)
+        throw (Error) aCause;
+      throw new Phase4Exception ("Concurrent SMP lookup failed", aCause);
+    }
+  }
+
+  private void _ensureCapacity (final long nNow)
+  {
+    if (m_aMap.size () > m_nMaxEntries)
+    {
+      // Remove all expired entries first
+      m_aMap.values ().removeIf (x -> x.isExpired (nNow));
+      if (m_aMap.size () > m_nMaxEntries)
+      {
+        // Still full - start over, but keep the lookups in progress
+        LOGGER.info ("The AS4 endpoint lookup cache is full - clearing it");
+        m_aMap.values ().removeIf (x -> x.m_aFuture.isDone ());
+      }
+    }
+  }
+
+  /**
+   * Get the cached endpoint for the provided parameters or perform the lookup if nothing is cached.
+   * If another thread is currently performing the lookup for the same parameters, the result of
+   * that lookup is awaited.
+   *
+   * @param <T>
+   *        The endpoint type. Must be the same for all usages of the same SMP scope.
+   * @param aSMPScope
+   *        The scope of the lookup, e.g. the SMP host URI. The endpoints of different SMPs must use
+   *        different scopes. Must implement equals and hashCode. May not be <code>null</code>.
+   * @param aReceiverID
+   *        The receiver participant ID. May not be <code>null</code>.
+   * @param aDocTypeID
+   *        The document type ID. May not be <code>null</code>.
+   * @param aProcID
+   *        The process ID. May not be <code>null</code>.
+   * @param aTP
+   *        The transport profile. May not be <code>null</code>.
+   * @param aLookup
+   *        The lookup to perform on a cache miss. May not be <code>null</code>.
+   * @param aExpirationDateExtractor
+   *        An optional function to determine the service expiration date of a resolved endpoint.
+   *        The extractor itself and its result may be <code>null</code>.
+   * @return The resolved endpoint or <code>null</code> if no matching endpoint was found.
+   * @throws Phase4Exception
+   *         If the lookup failed
+   */
+  @Nullable
+  public <T> T getOrLookup (@Nonnull final Object aSMPScope,
+                            @Nonnull final IParticipantIdentifier aReceiverID,
+                            @Nonnull final IDocumentTypeIdentifier aDocTypeID,
+                            @Nonnull final IProcessIdentifier aProcID,
+                            @Nonnull final ISMPTransportProfile aTP,
+                            @Nonnull final IEndpointLookup <T> aLookup,
+                            @Nullable final Function <? super T, XMLOffsetDateTime> aExpirationDateExtractor) throws Phase4Exception
+  {
+    ValueEnforcer.notNull (aSMPScope, "SMPScope");
+    ValueEnforcer.notNull (aReceiverID, "ReceiverID");
+    ValueEnforcer.notNull (aDocTypeID, "DocTypeID");
+    ValueEnforcer.notNull (aProcID, "ProcID");
+    ValueEnforcer.notNull (aTP, "TransportProfile");
+    ValueEnforcer.notNull (aLookup, "Lookup");
+
+    final CacheKey aKey = new CacheKey (aSMPScope,
+                                        aReceiverID.getURIEncoded (),
+                                        aDocTypeID.getURIEncoded (),
+                                        aProcID.getURIEncoded (),
+                                        aTP.getID ());
+    while (true)
+    {
+      final long nNow = System.currentTimeMillis ();
+      final CacheEntry aExisting = m_aMap.get (aKey);
+      if (aExisting != null)
+      {
+        if (!aExisting.isExpired (nNow))
+        {
+          if (!aExisting.m_aFuture.isDone ())
+            m_aCoalesced.incrementAndGet ();
+          final T ret = _await (aExisting);
+          if (ret == null)
+            m_aNegativeHits.incrementAndGet ();
+          else
+            m_aHits.incrementAndGet ();
+          return ret;
+        }
+        // Expired
+        m_aMap.remove (aKey, aExisting);
+      }
+
+      final CacheEntry aNewEntry = new CacheEntry ();
+      if (m_aMap.putIfAbsent (aKey, aNewEntry) != null)
+      {
+        // Another thread was faster - use its entry
+        continue;
+      }
+
+      m_aMisses.incrementAndGet ();
+      try
+      {
+        final T ret = aLookup.lookup ();
+
+        final long nLookupEnd = System.currentTimeMillis ();
+        long nExpiration;
+        if (ret == null)
+          nExpiration = nLookupEnd + m_aNegativeTTL.toMillis ();
+        else
+        {
+          nExpiration = nLookupEnd + m_aTTL.toMillis ();
+          // Never longer than the endpoint is valid
+          final XMLOffsetDateTime aExpirationDate = aExpirationDateExtractor == null ? null
+                                                                                     : aExpirationDateExtractor.apply (ret);
+          if (aExpirationDate != null)
+            nExpiration = Math.min (nExpiration, aExpirationDate.toOffsetDateTime ().toInstant ().toEpochMilli ());
+        }
+        aNewEntry.m_nExpiration = nExpiration;
+        aNewEntry.m_aFuture.complete (ret);
+
+        if (nExpiration <= nLookupEnd)
+          m_aMap.remove (aKey, aNewEntry);
+        else
+          _ensureCapacity (nLookupEnd);
+
+        if (LOGGER.isDebugEnabled ())
+          LOGGER.debug ("Cached SMP lookup result " + aKey + (ret == null ? " [not found]" : ""));
+        return ret;
+      }
+      catch (final Throwable t)
+      {
+        // Errors are not cached, but all waiting callers must be released
+        if (!aNewEntry.m_aFuture.isDone ())
+        {
+          m_aMap.remove (aKey, aNewEntry);
+          aNewEntry.m_aFuture.completeExceptionally (t);
+        }
+        throw t;
+      }
+    }
+  }
+
+  /**
+   * Remove all cached lookups for the provided receiver, e.g. after a transmission to the cached
+   * endpoint failed.
+   *
+   * @param aReceiverID
+   *        The receiver participant ID. May not be <code>null</code>.
+   */
+  public void invalidate (@Nonnull final IParticipantIdentifier aReceiverID)
+  {
+    ValueEnforcer.notNull (aReceiverID, "ReceiverID");
+
+    final String sParticipantID = aReceiverID.getURIEncoded ();
+    m_aMap.entrySet ()
+          .removeIf (x -> x.getKey ().m_sParticipantID.equals (sParticipantID) && x.getValue ().m_aFuture.isDone ());
+  }
+
+  /**
+   * Remove all cached lookups. Lookups in progress are not affected.
+   */
+  public void clear ()
+  {
+    m_aMap.values ().removeIf (x -> x.m_aFuture.isDone ());
+  }
+
+  /**
+   * @return The number of cached lookups, including the ones in progress and the expired ones that
+   *         were not yet removed. Always &ge; 0.
+   */
+  @Nonnegative
+  public int size ()
+  {
+    return m_aMap.size ();
+  }
+
+  /**
+   * @return The number of cache hits with a resolved endpoint since creation. Always &ge; 0.
+   */
+  @Nonnegative
+  public long getHitCount ()
+  {
+    return m_aHits.get ();
+  }
+
+  /**
+   * @return The number of cache hits of lookups that did not find an endpoint since creation.
+   *         Always &ge; 0.
+   */
+  @Nonnegative
+  public long getNegativeHitCount ()
+  {
+    return m_aNegativeHits.get ();
+  }
+
+  /**
+   * @return The number of cache misses (and therefore SMP lookups) since creation. Always &ge; 0.
+   */
+  @Nonnegative
+  public long getMissCount ()
+  {
+    return m_aMisses.get ();
+  }
+
+  /**
+   * @return The number of cache hits that waited for a concurrent lookup of the same parameters
+   *         since creation. These are also contained in the hit and negative hit counts. Always
+   *         &ge; 0.
+   */
+  @Nonnegative
+  public long getCoalescedCount ()
+  {
+    return m_aCoalesced.get ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("TTL", m_aTTL)
+                                       .append ("NegativeTTL", m_aNegativeTTL)
+                                       .append ("MaxEntries", m_nMaxEntries)
+                                       .append ("Size", m_aMap.size ())
+                                       .append ("Hits", m_aHits.get ())
+                                       .append ("NegativeHits", m_aNegativeHits.get ())
+                                       .append ("Misses", m_aMisses.get ())
+                                       .append ("Coalesced", m_aCoalesced.get ())
+                                       .getToString ();
+  }
+
+  /**
+   * @return The process-wide cache that is used by all newly created endpoint detail providers. May
+   *         be <code>null</code>, which is the default.
+   */
+  @Nullable
+  public static AS4EndpointLookupCache getGlobalInstance ()
+  {
+    return RW_LOCK.readLockedGet ( () -> s_aGlobalInstance);
+  }
+
+  /**
+   * Set the process-wide cache that is used by all newly created endpoint detail providers.
+   *
+   * @param aGlobalInstance
+   *        The cache to use. May be <code>null</code> to disable caching.
+   */
+  public static void setGlobalInstance (@Nullable final AS4EndpointLookupCache aGlobalInstance)
+  {
+    RW_LOCK.writeLocked ( () -> s_aGlobalInstance = aGlobalInstance);
+  }
+}
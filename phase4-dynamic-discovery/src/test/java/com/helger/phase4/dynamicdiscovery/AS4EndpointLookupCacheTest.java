@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2020-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.dynamicdiscovery;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.helger.commons.concurrent.ExecutorServiceHelper;
+import com.helger.commons.datetime.PDTFactory;
+import com.helger.commons.datetime.XMLOffsetDateTime;
+import com.helger.peppol.smp.ESMPTransportProfile;
+import com.helger.peppol.smp.ISMPTransportProfile;
+import com.helger.peppolid.IDocumentTypeIdentifier;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.IProcessIdentifier;
+import com.helger.peppolid.simple.doctype.SimpleDocumentTypeIdentifier;
+import com.helger.peppolid.simple.participant.SimpleParticipantIdentifier;
+import com.helger.peppolid.simple.process.SimpleProcessIdentifier;
+import com.helger.phase4.util.Phase4Exception;
+
+/**
+ * Test class for class {@link AS4EndpointLookupCache}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4EndpointLookupCacheTest
+{
+  private static final IParticipantIdentifier RECEIVER = new SimpleParticipantIdentifier ("iso6523-actorid-upis",
+                                                                                          "9915:test");
+  private static final IDocumentTypeIdentifier DOCTYPE = new SimpleDocumentTypeIdentifier ("busdox-docid-qns",
+                                                                                           "doctype");
+  private static final IProcessIdentifier PROCESS = new SimpleProcessIdentifier ("cenbii-procid-ubl", "process");
+  private static final ISMPTransportProfile TP = ESMPTransportProfile.TRANSPORT_PROFILE_PEPPOL_AS4_V2;
+
+  @Test
+  public void testHitAndMiss () throws Exception
+  {
+    final AS4EndpointLookupCache aCache = new AS4EndpointLookupCache ();
+    final AtomicInteger aLookups = new AtomicInteger (0);
+    final AS4EndpointLookupCache.IEndpointLookup <String> aLookup = () -> "endpoint" + aLookups.incrementAndGet ();
+
+    assertEquals ("endpoint1", aCache.getOrLookup ("smp1", RECEIVER, DOCTYPE, PROCESS, TP, aLookup, null));
+    assertEquals ("endpoint1", aCache.getOrLookup ("smp1", RECEIVER, DOCTYPE, PROCESS, TP, aLookup, null));
+    assertEquals (1, aCache.getMissCount ());
+    assertEquals (1, aCache.getHitCount ());
+
+    // Different SMP
+    assertEquals ("endpoint2", aCache.getOrLookup ("smp2", RECEIVER, DOCTYPE, PROCESS, TP, aLookup, null));
+    assertEquals (2, aCache.getMissCount ());
+    assertEquals (2, aCache.size ());
+
+    aCache.invalidate (RECEIVER);
+    assertEquals (0, aCache.size ());
+    assertEquals ("endpoint3", aCache.getOrLookup ("smp1", RECEIVER, DOCTYPE, PROCESS, TP, aLookup, null));
+    assertEquals (3, aLookups.get ());
+  }
+
+  @Test
+  public void testNegativeAndErrors () throws Exception
+  {
+    final AS4EndpointLookupCache aCache = new AS4EndpointLookupCache ();
+    final AtomicInteger aLookups = new AtomicInteger (0);
+
+    // Not found is cached
+    final AS4EndpointLookupCache.IEndpointLookup <String> aNotFound = () -> {
+      aLookups.incrementAndGet ();
+      return null;
+    };
+    assertNull (aCache.getOrLookup ("smp", RECEIVER, DOCTYPE, PROCESS, TP, aNotFound, null));
+    assertNull (aCache.getOrLookup ("smp", RECEIVER, DOCTYPE, PROCESS, TP, aNotFound, null));
+    assertEquals (1, aLookups.get ());
+    assertEquals (1, aCache.getNegativeHitCount ());
+
+    // Errors are not cached
+    aCache.clear ();
+    final AS4EndpointLookupCache.IEndpointLookup <String> aError = () -> {
+      aLookups.incrementAndGet ();
+      throw new Phase4Exception ("SMP down");
+    };
+    for (int i = 0; i < 2; ++i)
+      try
+      {
+        aCache.getOrLookup ("smp", RECEIVER, DOCTYPE, PROCESS, TP, aError, null);
+        fail ();
+      }
+      catch (final Phase4Exception ex)
+      {
+        // expected
+      }
+    assertEquals (3, aLookups.get ());
+    assertEquals (0, aCache.size ());
+  }
+
+  @Test
+  public void testExpiration () throws Exception
+  {
+    final AS4EndpointLookupCache aCache = new AS4EndpointLookupCache (Duration.ofHours (1), Duration.ZERO, 10);
+    final AtomicInteger aLookups = new AtomicInteger (0);
+
+    // Negative caching disabled
+    final AS4EndpointLookupCache.IEndpointLookup <String> aNotFound = () -> {
+      aLookups.incrementAndGet ();
+      return null;
+    };
+    assertNull (aCache.getOrLookup ("smp", RECEIVER, DOCTYPE, PROCESS, TP, aNotFound, null));
+    assertNull (aCache.getOrLookup ("smp", RECEIVER, DOCTYPE, PROCESS, TP, aNotFound, null));
+    assertEquals (2, aLookups.get ());
+
+    // Endpoint already expired
+    final XMLOffsetDateTime aExpired = XMLOffsetDateTime.of (PDTFactory.getCurrentOffsetDateTime ().minusMinutes (1));
+    final AS4EndpointLookupCache.IEndpointLookup <String> aLookup = () -> "endpoint" + aLookups.incrementAndGet ();
+    assertEquals ("endpoint3", aCache.getOrLookup ("smp", RECEIVER, DOCTYPE, PROCESS, TP, aLookup, x -> aExpired));
+    assertEquals ("endpoint4", aCache.getOrLookup ("smp", RECEIVER, DOCTYPE, PROCESS, TP, aLookup, x -> aExpired));
+    assertEquals (0, aCache.size ());
+  }
+
+  @Test
+  public void testSingleFlight () throws Exception
+  {
+    final AS4EndpointLookupCache aCache = new AS4EndpointLookupCache ();
+    final AtomicInteger aLookups = new AtomicInteger (0);
+    final CountDownLatch aLookupStarted = new CountDownLatch (1);
+    final CountDownLatch aLookupRelease = new CountDownLatch (1);
+    final Object aEndpoint = new Object ();
+    final AS4EndpointLookupCache.IEndpointLookup <Object> aSlowLookup = () -> {
+      aLookups.incrementAndGet ();
+      aLookupStarted.countDown ();
+      try
+      {
+        aLookupRelease.await ();
+      }
+      catch (final InterruptedException ex)
+      {
+        Thread.currentThread ().interrupt ();
+      }
+      return aEndpoint;
+    };
+
+    final int nThreads = 4;
+    final Object [] aResults = new Object [nThreads];
+    final ExecutorService aES = Executors.newFixedThreadPool (nThreads);
+    for (int i = 0; i < nThreads; ++i)
+    {
+      final int nIndex = i;
+      aES.submit ( () -> {
+        aResults[nIndex] = aCache.getOrLookup ("smp", RECEIVER, DOCTYPE, PROCESS, TP, aSlowLookup, null);
+        return null;
+      });
+    }
+    aLookupStarted.await (10, TimeUnit.SECONDS);
+    // Give the other threads the chance to hit the pending lookup
+    Thread.sleep (100);
+    aLookupRelease.countDown ();
+    ExecutorServiceHelper.shutdownAndWaitUntilAllTasksAreFinished (aES);
+
+    assertEquals (1, aLookups.get ());
+    assertEquals (1, aCache.getMissCount ());
+    assertEquals (nThreads - 1, aCache.getHitCount ());
+    for (final Object aResult : aResults)
+      assertSame (aEndpoint, aResult);
+  }
+
+  @Test
+  public void testErrorReleasesWaitingCallers () throws Exception
+  {
+    final AS4EndpointLookupCache aCache = new AS4EndpointLookupCache ();
+    final CountDownLatch aLookupStarted = new CountDownLatch (1);
+    final CountDownLatch aLookupRelease = new CountDownLatch (1);
+    final AS4EndpointLookupCache.IEndpointLookup <String> aFailingLookup = () -> {
+      aLookupStarted.countDown ();
+      try
+      {
+        aLookupRelease.await ();
+      }
+      catch (final InterruptedException ex)
+      {
+        Thread.currentThread ().interrupt ();
+      }
+      throw new AssertionError ("Failed on purpose");
+    };
+
+    final int nThreads = 4;
+    final AtomicInteger aErrors = new AtomicInteger (0);
+    final ExecutorService aES = Executors.newFixedThreadPool (nThreads);
+    for (int i = 0; i < nThreads; ++i)
+      aES.submit ( () -> {
+        try
+        {
+          aCache.getOrLookup ("smp", RECEIVER, DOCTYPE, PROCESS, TP, aFailingLookup, null);
+        }
+        catch (final AssertionError ex)
+        {
+          aErrors.incrementAndGet ();
+        }
+        return null;
+      });
+    aLookupStarted.await (10, TimeUnit.SECONDS);
+    // Give the other threads the chance to hit the pending lookup
+    Thread.sleep (100);
+    aLookupRelease.countDown ();
+    ExecutorServiceHelper.shutdownAndWaitUntilAllTasksAreFinished (aES);
+
+    // Nobody is blocked and the error is not cached
+    assertEquals (nThreads, aErrors.get ());
+    assertEquals (0, aCache.size ());
+    assertEquals ("endpoint", aCache.getOrLookup ("smp", RECEIVER, DOCTYPE, PROCESS, TP, () -> "endpoint", null));
+  }
+}
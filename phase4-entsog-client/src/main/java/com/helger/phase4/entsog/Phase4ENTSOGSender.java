@@ -33,6 +33,7 @@ import com.helger.phase4.attachment.AS4OutgoingAttachment;
 import com.helger.phase4.attachment.WSS4JAttachment;
 import com.helger.phase4.crypto.ECryptoKeyIdentifierType;
 import com.helger.phase4.logging.Phase4LoggerFactory;
+import com.helger.phase4.messaging.http.AS4HttpClientManagerPool;
 import com.helger.phase4.profile.entsog.AS4ENTSOGProfileRegistarSPI;
 import com.helger.phase4.sender.AbstractAS4UserMessageBuilderMIMEPayload;
 import com.helger.phase4.util.AS4ResourceHelper;
@@ -84,7 +85,9 @@ public final class Phase4ENTSOGSender
       try
       {
         as4ProfileID (AS4ENTSOGProfileRegistarSPI.AS4_PROFILE_ID);
-        httpClientFactory (new Phase4ENTSOGHttpClientSettings ());
+        // Use a shared factory, so that open connections can be reused
+        httpClientFactory (AS4HttpClientManagerPool.getSharedHttpClientFactory (Phase4ENTSOGHttpClientSettings.class.getName (),
+                                                                                Phase4ENTSOGHttpClientSettings::new));
 
         signingParams ().setKeyIdentifierType (DEFAULT_KEY_IDENTIFIER_TYPE);
         cryptParams ().setKeyIdentifierType (DEFAULT_KEY_IDENTIFIER_TYPE);
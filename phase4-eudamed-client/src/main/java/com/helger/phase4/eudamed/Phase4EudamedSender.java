@@ -39,6 +39,7 @@ import com.helger.phase4.CAS4;
 import com.helger.phase4.dynamicdiscovery.AS4EndpointDetailProviderConstant;
 import com.helger.phase4.dynamicdiscovery.IAS4EndpointDetailProvider;
 import com.helger.phase4.logging.Phase4LoggerFactory;
+import com.helger.phase4.messaging.http.AS4HttpClientManagerPool;
 import com.helger.phase4.model.MessageProperty;
 import com.helger.phase4.profile.cef.AS4CEFProfileRegistarSPI;
 import com.helger.phase4.sender.AbstractAS4UserMessageBuilderMIMEPayload;
@@ -103,7 +104,9 @@ public final class Phase4EudamedSender
       {
         as4ProfileID (AS4CEFProfileRegistarSPI.AS4_PROFILE_ID_FOUR_CORNER);
 
-        httpClientFactory (new Phase4EudamedHttpClientSettings ());
+        // Use a shared factory, so that open connections can be reused
+        httpClientFactory (AS4HttpClientManagerPool.getSharedHttpClientFactory (Phase4EudamedHttpClientSettings.class.getName (),
+                                                                                Phase4EudamedHttpClientSettings::new));
       }
       catch (final Exception ex)
       {
@@ -0,0 +1,337 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.attachment;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.WillNotClose;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.slf4j.Logger;
+
+import com.helger.commons.CGlobal;
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.io.IHasInputStream;
+import com.helger.commons.io.file.FileHelper;
+import com.helger.commons.io.stream.HasInputStream;
+import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
+import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
+import com.helger.phase4.logging.Phase4LoggerFactory;
+import com.helger.phase4.util.AS4IOHelper;
+import com.helger.phase4.util.AS4ResourceHelper;
+
+/**
+ * An {@link OutputStream} that buffers attachment content according to an
+ * {@link AS4AttachmentBufferPolicy}. The content starts on the heap and is
+ * moved to pooled off-heap memory or to a temporary file as soon as the
+ * respective limit is exceeded. If the off-heap pool is exhausted, the content
+ * is moved to a temporary file as well. After closing, the content is available
+ * via {@link #getAsInputStreamProvider()} and can be read multiple times until
+ * the {@link AS4ResourceHelper} is closed.
+ *
+ * @author Philip Helger
+ * @since 3.2.3
+ */
+@NotThreadSafe
+public class AS4AttachmentBufferOutputStream extends OutputStream
+{
+  /**
+   * Buffered content that can be released before the resource helper is
+   * closed.
+   */
+  private static final class ReleasableContent implements IHasInputStream, Closeable
+  {
+    private final IHasInputStream m_aISP;
+    private final Closeable m_aReleaser;
+
+    ReleasableContent (@Nonnull final IHasInputStream aISP, @Nonnull final Closeable aReleaser)
+    {
+      m_aISP = aISP;
+      m_aReleaser = aReleaser;
+    }
+
+    @Nonnull
+    public InputStream getInputStream ()
+    {
+      return m_aISP.getInputStream ();
+    }
+
+    public boolean isReadMultiple ()
+    {
+      return m_aISP.isReadMultiple ();
+    }
+
+    public void close () throws IOException
+    {
+      m_aReleaser.close ();
+    }
+  }
+
+  private static final Logger LOGGER = Phase4LoggerFactory.getLogger (AS4AttachmentBufferOutputStream.class);
+
+  private final AS4ResourceHelper m_aResHelper;
+  private final AS4AttachmentBufferPolicy m_aPolicy;
+  private EAS4AttachmentBufferTier m_eTier = EAS4AttachmentBufferTier.HEAP;
+  private NonBlockingByteArrayOutputStream m_aBAOS = new NonBlockingByteArrayOutputStream ();
+  private AS4DirectByteBufferContent m_aOffHeap;
+  private File m_aTempFile;
+  private OutputStream m_aFileOS;
+  private long m_nSize = 0;
+  private boolean m_bClosed = false;
+
+  /**
+   * Constructor using the attachment buffer policy of the resource helper.
+   *
+   * @param aResHelper
+   *        The resource helper to use. May not be <code>null</code>.
+   */
+  public AS4AttachmentBufferOutputStream (@Nonnull @WillNotClose final AS4ResourceHelper aResHelper)
+  {
+    this (aResHelper, aResHelper.getAttachmentBufferPolicy ());
+  }
+
+  /**
+   * Constructor
+   *
+   * @param aResHelper
+   *        The resource helper to use. May not be <code>null</code>.
+   * @param aPolicy
+   *        The buffer policy to use. May not be <code>null</code>.
+   */
+  public AS4AttachmentBufferOutputStream (@Nonnull @WillNotClose final AS4ResourceHelper aResHelper,
+                                          @Nonnull final AS4AttachmentBufferPolicy aPolicy)
+  {
+    ValueEnforcer.notNull (aResHelper, "ResHelper");
+    ValueEnforcer.notNull (aPolicy, "Policy");
+    m_aResHelper = aResHelper;
+    m_aPolicy = aPolicy;
+  }
+
+  /**
+   * @return The tier the content is currently stored in. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public final EAS4AttachmentBufferTier getTier ()
+  {
+    return m_eTier;
+  }
+
+  /**
+   * @return The number of bytes written so far. Always &ge; 0.
+   */
+  @Nonnegative
+  public final long getSize ()
+  {
+    return m_nSize;
+  }
+
+  private void _switchToFile () throws IOException
+  {
+    final File aTempFile = m_aResHelper.createTempFile ();
+    final OutputStream aFileOS = FileHelper.getBufferedOutputStream (aTempFile);
+    if (aFileOS == null)
+      throw new IOException ("Failed to open temporary file '" + aTempFile.getAbsolutePath () + "' for writing");
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("Moving attachment content of " +
+                    m_nSize +
+                    " bytes from " +
+                    m_eTier +
+                    " to temporary file '" +
+                    aTempFile.getAbsolutePath () +
+                    "'");
+
+    // Copy what is already there
+    if (m_eTier == EAS4AttachmentBufferTier.HEAP)
+    {
+      m_aBAOS.writeTo (aFileOS);
+      m_aBAOS = null;
+    }
+    else
+    {
+      m_aOffHeap.writeTo (aFileOS);
+      // Give back the chunks as early as possible
+      m_aOffHeap.close ();
+      m_aOffHeap = null;
+    }
+    m_aTempFile = aTempFile;
+    m_aFileOS = aFileOS;
+    m_eTier = EAS4AttachmentBufferTier.FILE;
+  }
+
+  private void _leaveHeap (final long nNewSize) throws IOException
+  {
+    if (nNewSize <= m_aPolicy.getMaxOffHeapBytes ())
+    {
+      final AS4DirectByteBufferContent aOffHeap = new AS4DirectByteBufferContent ();
+      if (aOffHeap.ensureCapacity (nNewSize))
+      {
+        // Ensure the chunks are given back at the latest with the resource
+        // helper
+        m_aResHelper.addCloseable (aOffHeap);
+        final byte [] aHeapBytes = m_aBAOS.getBufferOrCopy ();
+        aOffHeap.write (aHeapBytes, 0, aHeapBytes.length);
+        m_aBAOS = null;
+        m_aOffHeap = aOffHeap;
+        m_eTier = EAS4AttachmentBufferTier.OFF_HEAP;
+        return;
+      }
+
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug ("The off-heap attachment buffer pool is exhausted - using a temporary file instead");
+      aOffHeap.close ();
+    }
+    _switchToFile ();
+  }
+
+  @Override
+  public final void write (final int b) throws IOException
+  {
+    write (new byte [] { (byte) b }, 0, 1);
+  }
+
+  @Override
+  public final void write (@Nonnull final byte [] aBuf, final int nOfs, final int nLen) throws IOException
+  {
+    ValueEnforcer.isArrayOfsLen (aBuf, nOfs, nLen);
+    if (m_bClosed)
+      throw new IOException ("Attachment buffer stream is already closed");
+    if (nLen == 0)
+      return;
+
+    final long nNewSize = m_nSize + nLen;
+    if (m_eTier == EAS4AttachmentBufferTier.HEAP && nNewSize > m_aPolicy.getMaxInMemoryBytes ())
+      _leaveHeap (nNewSize);
+    if (m_eTier == EAS4AttachmentBufferTier.OFF_HEAP &&
+        (nNewSize > m_aPolicy.getMaxOffHeapBytes () || !m_aOffHeap.ensureCapacity (nNewSize)))
+      _switchToFile ();
+
+    switch (m_eTier)
+    {
+      case HEAP:
+        m_aBAOS.write (aBuf, nOfs, nLen);
+        break;
+      case OFF_HEAP:
+        m_aOffHeap.write (aBuf, nOfs, nLen);
+        break;
+      case FILE:
+        m_aFileOS.write (aBuf, nOfs, nLen);
+        break;
+      default:
+        throw new IllegalStateException ("Unsupported tier " + m_eTier);
+    }
+    m_nSize = nNewSize;
+  }
+
+  @Override
+  public void flush () throws IOException
+  {
+    if (m_aFileOS != null)
+      m_aFileOS.flush ();
+  }
+
+  @Override
+  public void close () throws IOException
+  {
+    if (!m_bClosed)
+    {
+      m_bClosed = true;
+      if (m_aFileOS != null)
+        m_aFileOS.close ();
+      AS4AttachmentBufferStatistics.onBuffered (m_eTier, m_nSize);
+
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug ("Buffered attachment content of " + m_nSize + " bytes in tier " + m_eTier);
+    }
+  }
+
+  /**
+   * @return A provider for the buffered content that can be used multiple
+   *         times. Never <code>null</code>. If the content is stored off-heap
+   *         or in a temporary file, the provider also implements
+   *         {@link Closeable} to release the content before the
+   *         {@link AS4ResourceHelper} is closed.
+   * @throws IllegalStateException
+   *         If this stream is not yet closed.
+   */
+  @Nonnull
+  public IHasInputStream getAsInputStreamProvider ()
+  {
+    if (!m_bClosed)
+      throw new IllegalStateException ("The stream must be closed first");
+
+    switch (m_eTier)
+    {
+      case HEAP:
+      {
+        final byte [] aBytes = m_aBAOS.getBufferOrCopy ();
+        return HasInputStream.multiple ( () -> new NonBlockingByteArrayInputStream (aBytes));
+      }
+      case OFF_HEAP:
+      {
+        final AS4DirectByteBufferContent aOffHeap = m_aOffHeap;
+        return new ReleasableContent (HasInputStream.multiple (aOffHeap::getInputStream), aOffHeap);
+      }
+      case FILE:
+      {
+        final File aTempFile = m_aTempFile;
+        return new ReleasableContent (HasInputStream.multiple ( () -> FileHelper.getBufferedInputStream (aTempFile)),
+                                      () -> AS4IOHelper.getFileOperationManager ().deleteFileIfExisting (aTempFile));
+      }
+      default:
+        throw new IllegalStateException ("Unsupported tier " + m_eTier);
+    }
+  }
+
+  /**
+   * Read the provided stream completely into a new buffer that follows the
+   * attachment buffer policy of the provided resource helper.
+   *
+   * @param aIS
+   *        The stream to read. It is read until the end but not closed. May
+   *        not be <code>null</code>.
+   * @param aResHelper
+   *        The resource helper to use. May not be <code>null</code>.
+   * @return A provider for the buffered content that can be used multiple
+   *         times. Never <code>null</code>.
+   * @throws IOException
+   *         In case of IO error
+   */
+  @Nonnull
+  public static IHasInputStream bufferContent (@Nonnull @WillNotClose final InputStream aIS,
+                                               @Nonnull @WillNotClose final AS4ResourceHelper aResHelper) throws IOException
+  {
+    ValueEnforcer.notNull (aIS, "InputStream");
+
+    final AS4AttachmentBufferOutputStream aBufferOS = new AS4AttachmentBufferOutputStream (aResHelper);
+    try (final AS4AttachmentBufferOutputStream aOS = aBufferOS)
+    {
+      final byte [] aBuffer = new byte [16 * CGlobal.BYTES_PER_KILOBYTE];
+      int nRead;
+      while ((nRead = aIS.read (aBuffer)) > 0)
+        aOS.write (aBuffer, 0, nRead);
+    }
+    return aBufferOS.getAsInputStreamProvider ();
+  }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.attachment;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.hashcode.HashCodeGenerator;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.config.fallback.IConfigWithFallback;
+import com.helger.phase4.config.AS4Configuration;
+
+/**
+ * The policy that decides in which {@link EAS4AttachmentBufferTier} the
+ * content of an incoming or decrypted attachment is buffered. Contents up to
+ * {@link #getMaxInMemoryBytes()} are kept on the heap, contents up to
+ * {@link #getMaxOffHeapBytes()} are kept in pooled direct byte buffers (see
+ * {@link AS4DirectByteBufferPool}) and everything else is stored in temporary
+ * files.
+ *
+ * @author Philip Helger
+ * @since 3.2.3
+ */
+@Immutable
+public final class AS4AttachmentBufferPolicy
+{
+  private static final class CachedPolicy
+  {
+    private final IConfigWithFallback m_aConfig;
+    private final AS4AttachmentBufferPolicy m_aPolicy;
+
+    CachedPolicy (@Nonnull final IConfigWithFallback aConfig, @Nonnull final AS4AttachmentBufferPolicy aPolicy)
+    {
+      m_aConfig = aConfig;
+      m_aPolicy = aPolicy;
+    }
+  }
+
+  // The policy of the last used configuration
+  private static volatile CachedPolicy s_aCachedPolicy;
+
+  private final long m_nMaxInMemoryBytes;
+  private final long m_nMaxOffHeapBytes;
+
+  /**
+   * Constructor
+   *
+   * @param nMaxInMemoryBytes
+   *        The maximum number of bytes to be kept on the heap. Must be &ge; 0.
+   * @param nMaxOffHeapBytes
+   *        The maximum number of bytes to be kept in off-heap memory. Must be
+   *        &ge; 0. If this value is &le; the in-memory maximum, the off-heap
+   *        tier is disabled.
+   */
+  public AS4AttachmentBufferPolicy (@Nonnegative final long nMaxInMemoryBytes,
+                                    @Nonnegative final long nMaxOffHeapBytes)
+  {
+    ValueEnforcer.isGE0 (nMaxInMemoryBytes, "MaxInMemoryBytes");
+    ValueEnforcer.isGE0 (nMaxOffHeapBytes, "MaxOffHeapBytes");
+    m_nMaxInMemoryBytes = nMaxInMemoryBytes;
+    m_nMaxOffHeapBytes = nMaxOffHeapBytes;
+  }
+
+  /**
+   * @return The maximum number of bytes of a single attachment to be kept on
+   *         the heap. Always &ge; 0.
+   */
+  @Nonnegative
+  public long getMaxInMemoryBytes ()
+  {
+    return m_nMaxInMemoryBytes;
+  }
+
+  /**
+   * @return The maximum number of bytes of a single attachment to be kept in
+   *         off-heap memory. Always &ge; 0.
+   */
+  @Nonnegative
+  public long getMaxOffHeapBytes ()
+  {
+    return m_nMaxOffHeapBytes;
+  }
+
+  /**
+   * @return <code>true</code> if the off-heap tier is used by this policy,
+   *         <code>false</code> if not.
+   */
+  public boolean isOffHeapEnabled ()
+  {
+    return m_nMaxOffHeapBytes > m_nMaxInMemoryBytes;
+  }
+
+  /**
+   * Determine the tier to be used for content of the provided size.
+   *
+   * @param nBytes
+   *        The number of bytes. Negative values indicate an unknown size and
+   *        are treated like 0.
+   * @return The tier to be used. Never <code>null</code>.
+   */
+  @Nonnull
+  public EAS4AttachmentBufferTier getTier (final long nBytes)
+  {
+    if (nBytes <= m_nMaxInMemoryBytes)
+      return EAS4AttachmentBufferTier.HEAP;
+    if (nBytes <= m_nMaxOffHeapBytes)
+      return EAS4AttachmentBufferTier.OFF_HEAP;
+    return EAS4AttachmentBufferTier.FILE;
+  }
+
+  @Override
+  public boolean equals (final Object o)
+  {
+    if (o == this)
+      return true;
+    if (o == null || !getClass ().equals (o.getClass ()))
+      return false;
+    final AS4AttachmentBufferPolicy rhs = (AS4AttachmentBufferPolicy) o;
+    return m_nMaxInMemoryBytes == rhs.m_nMaxInMemoryBytes && m_nMaxOffHeapBytes == rhs.m_nMaxOffHeapBytes;
+  }
+
+  @Override
+  public int hashCode ()
+  {
+    return new HashCodeGenerator (this).append (m_nMaxInMemoryBytes).append (m_nMaxOffHeapBytes).getHashCode ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("MaxInMemoryBytes", m_nMaxInMemoryBytes)
+                                       .append ("MaxOffHeapBytes", m_nMaxOffHeapBytes)
+                                       .getToString ();
+  }
+
+  /**
+   * @return A new policy based on the values of {@link AS4Configuration}. Never
+   *         <code>null</code>.
+   * @see AS4Configuration#getAttachmentInMemoryMaxBytes()
+   * @see AS4Configuration#getAttachmentOffHeapMaxBytes()
+   */
+  @Nonnull
+  public static AS4AttachmentBufferPolicy createFromConfiguration ()
+  {
+    return new AS4AttachmentBufferPolicy (Math.max (0, AS4Configuration.getAttachmentInMemoryMaxBytes ()),
+                                          Math.max (0, AS4Configuration.getAttachmentOffHeapMaxBytes ()));
+  }
+
+  /**
+   * Get the policy based on the values of the current {@link AS4Configuration}.
+   * In contrast to {@link #createFromConfiguration()} the policy is only
+   * created once per configuration object, so this method is cheap enough to
+   * be called for every message.
+   *
+   * @return The policy based on the current configuration. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public static AS4AttachmentBufferPolicy getFromConfiguration ()
+  {
+    final IConfigWithFallback aConfig = AS4Configuration.getConfig ();
+    CachedPolicy aCached = s_aCachedPolicy;
+    if (aCached == null || aCached.m_aConfig != aConfig)
+    {
+      // Concurrent creation is harmless
+      aCached = new CachedPolicy (aConfig, createFromConfiguration ());
+      s_aCachedPolicy = aCached;
+    }
+    return aCached.m_aPolicy;
+  }
+}
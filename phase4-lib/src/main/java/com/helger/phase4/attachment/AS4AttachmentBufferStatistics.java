@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.attachment;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.helger.commons.ValueEnforcer;
+
+/**
+ * Global statistics on how many attachments and bytes were buffered in which
+ * {@link EAS4AttachmentBufferTier}.
+ *
+ * @author Philip Helger
+ * @since 3.2.3
+ */
+@ThreadSafe
+public final class AS4AttachmentBufferStatistics
+{
+  private static final Map <EAS4AttachmentBufferTier, AtomicLong> COUNTS = new EnumMap <> (EAS4AttachmentBufferTier.class);
+  private static final Map <EAS4AttachmentBufferTier, AtomicLong> BYTES = new EnumMap <> (EAS4AttachmentBufferTier.class);
+  static
+  {
+    // The maps are never modified afterwards
+    for (final EAS4AttachmentBufferTier eTier : EAS4AttachmentBufferTier.values ())
+    {
+      COUNTS.put (eTier, new AtomicLong (0));
+      BYTES.put (eTier, new AtomicLong (0));
+    }
+  }
+
+  private AS4AttachmentBufferStatistics ()
+  {}
+
+  static void onBuffered (@Nonnull final EAS4AttachmentBufferTier eTier, @Nonnegative final long nBytes)
+  {
+    COUNTS.get (eTier).incrementAndGet ();
+    BYTES.get (eTier).addAndGet (nBytes);
+  }
+
+  /**
+   * @param eTier
+   *        The tier to query. May not be <code>null</code>.
+   * @return The number of attachments buffered in the provided tier since
+   *         startup or the last {@link #reset()}. Always &ge; 0.
+   */
+  @Nonnegative
+  public static long getBufferedCount (@Nonnull final EAS4AttachmentBufferTier eTier)
+  {
+    ValueEnforcer.notNull (eTier, "Tier");
+    return COUNTS.get (eTier).get ();
+  }
+
+  /**
+   * @param eTier
+   *        The tier to query. May not be <code>null</code>.
+   * @return The number of bytes buffered in the provided tier since startup or
+   *         the last {@link #reset()}. Always &ge; 0.
+   */
+  @Nonnegative
+  public static long getBufferedBytes (@Nonnull final EAS4AttachmentBufferTier eTier)
+  {
+    ValueEnforcer.notNull (eTier, "Tier");
+    return BYTES.get (eTier).get ();
+  }
+
+  /**
+   * Reset all counters to 0.
+   */
+  public static void reset ()
+  {
+    for (final EAS4AttachmentBufferTier eTier : EAS4AttachmentBufferTier.values ())
+    {
+      COUNTS.get (eTier).set (0);
+      BYTES.get (eTier).set (0);
+    }
+  }
+}
@@ -0,0 +1,386 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.attachment;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.WillClose;
+import javax.annotation.WillNotClose;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.concurrent.ExecutorServiceHelper;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.io.IHasInputStream;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.phase4.logging.Phase4LoggerFactory;
+import com.helger.phase4.util.AS4ResourceHelper;
+
+/**
+ * The shared executor for the parallel ciphering of attachments. WSS4J creates
+ * the encrypted and decrypted attachment streams lazily, so the actual
+ * (AES-GCM or AES-CBC) ciphering happens when the streams are read into their
+ * buffers. If a message contains at least {@link #getMinAttachmentCount()}
+ * attachments, the streams are read concurrently on a fixed size thread pool.
+ * A plain thread pool is used, because reading the streams may block on file
+ * I/O. Each attachment uses its own cipher instance, so this is safe. The
+ * order of the attachments is never changed - only the reading is done in
+ * parallel.
+ *
+ * @author Philip Helger
+ * @since 3.2.3
+ * @see WSS4JAttachmentCallbackHandler#setBufferResultAttachments(boolean)
+ */
+@ThreadSafe
+public final class AS4AttachmentCryptoExecutor
+{
+  public static final int DEFAULT_PARALLELISM = Math.max (1, Runtime.getRuntime ().availableProcessors ());
+  public static final int DEFAULT_MIN_ATTACHMENT_COUNT = 4;
+
+  private static final Logger LOGGER = Phase4LoggerFactory.getLogger (AS4AttachmentCryptoExecutor.class);
+
+  private static final SimpleReadWriteLock RW_LOCK = new SimpleReadWriteLock ();
+  private static final AtomicInteger THREAD_INDEX = new AtomicInteger (0);
+  @GuardedBy ("RW_LOCK")
+  private static int s_nParallelism = DEFAULT_PARALLELISM;
+  @GuardedBy ("RW_LOCK")
+  private static int s_nMinAttachmentCount = DEFAULT_MIN_ATTACHMENT_COUNT;
+  @GuardedBy ("RW_LOCK")
+  private static ThreadPoolExecutor s_aPool;
+
+  private AS4AttachmentCryptoExecutor ()
+  {}
+
+  /**
+   * @return The maximum number of attachments that are ciphered in parallel.
+   *         Always &gt; 0.
+   */
+  @Nonnegative
+  public static int getParallelism ()
+  {
+    return RW_LOCK.readLockedGet ( () -> Integer.valueOf (s_nParallelism)).intValue ();
+  }
+
+  /**
+   * Set the maximum number of attachments that are ciphered in parallel. This
+   * takes effect on the next creation of the pool, so it should be called
+   * before the first message is processed or after {@link #shutdown()}. A
+   * value of 1 disables the parallel processing.
+   *
+   * @param nParallelism
+   *        The parallelism. Must be &gt; 0.
+   */
+  public static void setParallelism (@Nonnegative final int nParallelism)
+  {
+    ValueEnforcer.isGT0 (nParallelism, "Parallelism");
+    RW_LOCK.writeLocked ( () -> s_nParallelism = nParallelism);
+  }
+
+  /**
+   * @return The minimum number of attachments a message must contain, so that
+   *         the attachments are ciphered in parallel. Always &gt; 0.
+   */
+  @Nonnegative
+  public static int getMinAttachmentCount ()
+  {
+    return RW_LOCK.readLockedGet ( () -> Integer.valueOf (s_nMinAttachmentCount)).intValue ();
+  }
+
+  /**
+   * Set the minimum number of attachments a message must contain, so that the
+   * attachments are ciphered in parallel. For messages with fewer attachments,
+   * the overhead of the thread handover is higher than the gain.
+   *
+   * @param nMinAttachmentCount
+   *        The minimum attachment count. Must be &gt; 0.
+   */
+  public static void setMinAttachmentCount (@Nonnegative final int nMinAttachmentCount)
+  {
+    ValueEnforcer.isGT0 (nMinAttachmentCount, "MinAttachmentCount");
+    RW_LOCK.writeLocked ( () -> s_nMinAttachmentCount = nMinAttachmentCount);
+  }
+
+  /**
+   * Check if the attachments of a message with the provided number of
+   * attachments should be ciphered in parallel.
+   *
+   * @param nAttachmentCount
+   *        The number of attachments of the message.
+   * @return <code>true</code> if parallel processing should be used.
+   */
+  public static boolean isParallelProcessing (final int nAttachmentCount)
+  {
+    return RW_LOCK.readLockedBoolean ( () -> s_nParallelism > 1 && nAttachmentCount >= s_nMinAttachmentCount);
+  }
+
+  @Nonnull
+  private static ThreadPoolExecutor _getPool ()
+  {
+    ThreadPoolExecutor ret = RW_LOCK.readLockedGet ( () -> s_aPool);
+    if (ret == null)
+    {
+      ret = RW_LOCK.writeLockedGet ( () -> {
+        if (s_aPool == null)
+        {
+          s_aPool = new ThreadPoolExecutor (s_nParallelism,
+                                            s_nParallelism,
+                                            60,
+                                            TimeUnit.SECONDS,
+                                            new LinkedBlockingQueue <> (),
+                                            r -> {
+                                              final Thread t = new Thread (r,
+                                                                           "phase4-attachment-crypto-" +
+                                                                              THREAD_INDEX.incrementAndGet ());
+                                              t.setDaemon (true);
+                                              return t;
+                                            });
+          s_aPool.allowCoreThreadTimeOut (true);
+          if (LOGGER.isDebugEnabled ())
+            LOGGER.debug ("Created AS4 attachment crypto pool with parallelism " + s_nParallelism);
+        }
+        return s_aPool;
+      });
+    }
+    return ret;
+  }
+
+  /**
+   * Read the provided stream asynchronously into a new buffer, that follows the
+   * attachment buffer policy of the provided resource helper.
+   *
+   * @param aIS
+   *        The stream to read. It is read until the end and closed afterwards.
+   *        May not be <code>null</code>.
+   * @param aResHelper
+   *        The resource helper to use. May not be <code>null</code>.
+   * @return The future with the buffered content. Use
+   *         {@link #getBufferedContent(Future)} to resolve it. Never
+   *         <code>null</code>.
+   * @throws RejectedExecutionException
+   *         If the pool does not accept new tasks
+   */
+  @Nonnull
+  public static Future <IHasInputStream> submitBufferContent (@Nonnull @WillClose final InputStream aIS,
+                                                              @Nonnull @WillNotClose final AS4ResourceHelper aResHelper)
+  {
+    ValueEnforcer.notNull (aIS, "InputStream");
+    ValueEnforcer.notNull (aResHelper, "ResHelper");
+
+    return _submitBufferContent (aIS, aResHelper, null);
+  }
+
+  @Nonnull
+  private static Future <IHasInputStream> _submitBufferContent (@Nonnull @WillClose final InputStream aIS,
+                                                                @Nonnull @WillNotClose final AS4ResourceHelper aResHelper,
+                                                                @Nullable final AtomicBoolean aAborted)
+  {
+    try
+    {
+      return _getPool ().submit ( () -> {
+        try (final InputStream aSrcIS = aIS)
+        {
+          // Don't start buffering if another attachment already failed
+          if (aAborted != null && aAborted.get ())
+            throw new CancellationException ("Attachment buffering was aborted");
+          return AS4AttachmentBufferOutputStream.bufferContent (aSrcIS, aResHelper);
+        }
+      });
+    }
+    catch (final RejectedExecutionException ex)
+    {
+      StreamHelper.close (aIS);
+      throw ex;
+    }
+  }
+
+  /**
+   * Wait for the result of {@link #submitBufferContent(InputStream, AS4ResourceHelper)}.
+   * Runtime exceptions of the ciphering (like an uninitialized cipher) are
+   * propagated unchanged.
+   *
+   * @param aFuture
+   *        The future to wait for. May not be <code>null</code>.
+   * @return The buffered content. Never <code>null</code>.
+   * @throws IOException
+   *         In case reading the stream failed or the waiting thread was
+   *         interrupted
+   */
+  @Nonnull
+  public static IHasInputStream getBufferedContent (@Nonnull final Future <IHasInputStream> aFuture) throws IOException
+  {
+    ValueEnforcer.notNull (aFuture, "Future");
+
+    try
+    {
+      return aFuture.get ();
+    }
+    catch (final InterruptedException ex)
+    {
+      Thread.currentThread ().interrupt ();
+      final InterruptedIOException ex2 = new InterruptedIOException ("Interrupted while waiting for attachment buffering");
+      ex2.initCause (ex);
+      throw ex2;
+    }
+    catch (final CancellationException ex)
+    {
+      throw new IOException ("Attachment buffering was cancelled", ex);
+    }
+    catch (final ExecutionException ex)
+    {
+      final Throwable aCause = ex.getCause ();
+      if (aCause instanceof IOException)
+        throw (IOException) aCause;
+      if (aCause instanceof RuntimeException)
+        throw (RuntimeException) aCause;
+      if (aCause instanceof Error)
+        throw (Error) aCause;
+      throw new IOException ("Failed to buffer attachment", aCause);
+    }
+  }
+
+  /**
+   * Wait until all provided futures are done and release the content they
+   * buffered. This is used on error, to ensure that no background task is
+   * still writing into the resource helper after the error was propagated.
+   * Failures of the single futures are ignored.
+   *
+   * @param aFutures
+   *        The futures to wait for. May not be <code>null</code>.
+   */
+  static void waitAndRelease (@Nonnull final Iterable <? extends Future <IHasInputStream>> aFutures)
+  {
+    boolean bInterrupted = false;
+    for (final Future <IHasInputStream> aFuture : aFutures)
+    {
+      IHasInputStream aContent = null;
+      while (true)
+      {
+        try
+        {
+          aContent = aFuture.get ();
+          break;
+        }
+        catch (final InterruptedException ex)
+        {
+          // Still wait for the task - remember the interrupt for later
+          bInterrupted = true;
+        }
+        catch (final ExecutionException | CancellationException ex)
+        {
+          // Already handled by the caller
+          break;
+        }
+      }
+      if (aContent instanceof Closeable)
+        StreamHelper.close ((Closeable) aContent);
+    }
+    if (bInterrupted)
+      Thread.currentThread ().interrupt ();
+  }
+
+  /**
+   * Read the content of all provided attachments into repeatable buffers and
+   * set them as the new source stream providers. Depending on
+   * {@link #isParallelProcessing(int)} this happens in parallel or
+   * sequentially. The order of the attachments is not changed.
+   *
+   * @param aAttachments
+   *        The attachments to buffer. May not be <code>null</code>.
+   * @param aResHelper
+   *        The resource helper to use. May not be <code>null</code>.
+   * @throws IOException
+   *         In case of IO error
+   */
+  public static void bufferAll (@Nonnull final ICommonsList <? extends WSS4JAttachment> aAttachments,
+                                @Nonnull @WillNotClose final AS4ResourceHelper aResHelper) throws IOException
+  {
+    ValueEnforcer.notNull (aAttachments, "Attachments");
+    ValueEnforcer.notNull (aResHelper, "ResHelper");
+
+    if (!isParallelProcessing (aAttachments.size ()))
+    {
+      for (final WSS4JAttachment aAttachment : aAttachments)
+        try (final InputStream aIS = aAttachment.getSourceStream ())
+        {
+          aAttachment.setSourceStreamProvider (AS4AttachmentBufferOutputStream.bufferContent (aIS, aResHelper));
+        }
+      return;
+    }
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("Buffering " + aAttachments.size () + " attachments in parallel");
+
+    final ICommonsList <Future <IHasInputStream>> aFutures = new CommonsArrayList <> (aAttachments.size ());
+    final AtomicBoolean aAborted = new AtomicBoolean (false);
+    boolean bSuccess = false;
+    try
+    {
+      for (final WSS4JAttachment aAttachment : aAttachments)
+        aFutures.add (_submitBufferContent (aAttachment.getSourceStream (), aResHelper, aAborted));
+
+      // Assign in the original order
+      for (int i = 0; i < aFutures.size (); ++i)
+        aAttachments.get (i).setSourceStreamProvider (getBufferedContent (aFutures.get (i)));
+      bSuccess = true;
+    }
+    finally
+    {
+      if (!bSuccess)
+      {
+        // Don't start any new work, and wait for the running tasks, so that
+        // nothing is written after the resource helper is closed
+        aAborted.set (true);
+        waitAndRelease (aFutures);
+      }
+    }
+  }
+
+  /**
+   * Shutdown the pool and wait until all running tasks are finished. A new
+   * pool is created on the next usage.
+   */
+  public static void shutdown ()
+  {
+    final ThreadPoolExecutor aPool = RW_LOCK.writeLockedGet ( () -> {
+      final ThreadPoolExecutor ret = s_aPool;
+      s_aPool = null;
+      return ret;
+    });
+    if (aPool != null)
+      ExecutorServiceHelper.shutdownAndWaitUntilAllTasksAreFinished (aPool);
+  }
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.attachment;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.WillNotClose;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+
+import com.helger.commons.CGlobal;
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.io.IHasInputStream;
+import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.phase4.logging.Phase4LoggerFactory;
+import com.helger.phase4.util.AS4ResourceHelper;
+
+/**
+ * An {@link IHasInputStream} that compresses the source content on the fly.
+ * The compressed content of the first complete read is captured into an
+ * {@link AS4AttachmentBufferOutputStream} at the same time ("tee"), so that
+ * all subsequent reads (e.g. for encryption or for sending) are served from
+ * the buffer without compressing again. That way the source is compressed and
+ * consumed by the first reader (e.g. the signature digest calculation) in a
+ * single pass, instead of writing the compressed content to a temporary file
+ * upfront.<br>
+ * If the first reader does not read until the end, the buffer is discarded and
+ * the next reader compresses the source again.
+ *
+ * @author Philip Helger
+ * @since 3.2.3
+ */
+@ThreadSafe
+public final class AS4CompressingStreamProvider implements IHasInputStream
+{
+  private static final Logger LOGGER = Phase4LoggerFactory.getLogger (AS4CompressingStreamProvider.class);
+  private static final int BUFFER_SIZE = 16 * CGlobal.BYTES_PER_KILOBYTE;
+
+  /**
+   * Pull based compression of an {@link InputStream}.
+   */
+  private static final class CompressingInputStream extends InputStream
+  {
+    private final InputStream m_aSrcIS;
+    private final NonBlockingByteArrayOutputStream m_aCompressed = new NonBlockingByteArrayOutputStream (BUFFER_SIZE);
+    private final OutputStream m_aCompressOS;
+    private final byte [] m_aReadBuffer = new byte [BUFFER_SIZE];
+    private byte [] m_aCurrent = new byte [0];
+    private int m_nCurrentPos = 0;
+    private boolean m_bSrcEOF = false;
+
+    CompressingInputStream (@Nonnull final InputStream aSrcIS, @Nonnull final EAS4CompressionMode eCompressionMode) throws IOException
+    {
+      m_aSrcIS = aSrcIS;
+      m_aCompressOS = eCompressionMode.getCompressStream (m_aCompressed);
+    }
+
+    /**
+     * @return <code>true</code> if at least one byte is available,
+     *         <code>false</code> if the end of the compressed content is
+     *         reached.
+     */
+    private boolean _fill () throws IOException
+    {
+      while (m_nCurrentPos >= m_aCurrent.length)
+      {
+        if (m_bSrcEOF)
+          return false;
+
+        final int nRead = m_aSrcIS.read (m_aReadBuffer);
+        if (nRead < 0)
+        {
+          m_bSrcEOF = true;
+          // Writes the trailer
+          m_aCompressOS.close ();
+        }
+        else
+          if (nRead > 0)
+            m_aCompressOS.write (m_aReadBuffer, 0, nRead);
+
+        m_aCurrent = m_aCompressed.toByteArray ();
+        m_aCompressed.reset ();
+        m_nCurrentPos = 0;
+      }
+      return true;
+    }
+
+    @Override
+    public int read () throws IOException
+    {
+      if (!_fill ())
+        return -1;
+      return m_aCurrent[m_nCurrentPos++] & 0xff;
+    }
+
+    @Override
+    public int read (@Nonnull final byte [] aBuf, final int nOfs, final int nLen) throws IOException
+    {
+      ValueEnforcer.isArrayOfsLen (aBuf, nOfs, nLen);
+      if (nLen == 0)
+        return 0;
+      if (!_fill ())
+        return -1;
+
+      final int nCount = Math.min (nLen, m_aCurrent.length - m_nCurrentPos);
+      System.arraycopy (m_aCurrent, m_nCurrentPos, aBuf, nOfs, nCount);
+      m_nCurrentPos += nCount;
+      return nCount;
+    }
+
+    @Override
+    public void close () throws IOException
+    {
+      try
+      {
+        // Release the compressor
+        if (!m_bSrcEOF)
+          m_aCompressOS.close ();
+      }
+      finally
+      {
+        m_aSrcIS.close ();
+      }
+    }
+  }
+
+  /**
+   * Copies everything read into the buffer and publishes the buffer upon the
+   * end of the stream.
+   */
+  private final class TeeInputStream extends FilterInputStream
+  {
+    private AS4AttachmentBufferOutputStream m_aBufferOS;
+
+    TeeInputStream (@Nonnull final InputStream aIS, @Nonnull final AS4AttachmentBufferOutputStream aBufferOS)
+    {
+      super (aIS);
+      m_aBufferOS = aBufferOS;
+    }
+
+    private void _onEndOfStream () throws IOException
+    {
+      if (m_aBufferOS != null)
+      {
+        m_aBufferOS.close ();
+        m_aBuffered = m_aBufferOS.getAsInputStreamProvider ();
+        m_aBufferOS = null;
+        if (LOGGER.isDebugEnabled ())
+          LOGGER.debug ("Buffered compressed attachment content");
+      }
+    }
+
+    private void _abort ()
+    {
+      if (m_aBufferOS != null)
+      {
+        StreamHelper.close (m_aBufferOS);
+        m_aBufferOS = null;
+        // Allow the next reader to buffer
+        m_aTeeActive.set (false);
+      }
+    }
+
+    @Override
+    public int read () throws IOException
+    {
+      final int ret = super.read ();
+      if (ret < 0)
+        _onEndOfStream ();
+      else
+        if (m_aBufferOS != null)
+          m_aBufferOS.write (ret);
+      return ret;
+    }
+
+    @Override
+    public int read (@Nonnull final byte [] aBuf, final int nOfs, final int nLen) throws IOException
+    {
+      final int ret = super.read (aBuf, nOfs, nLen);
+      if (ret < 0)
+        _onEndOfStream ();
+      else
+        if (ret > 0 && m_aBufferOS != null)
+          m_aBufferOS.write (aBuf, nOfs, ret);
+      return ret;
+    }
+
+    @Override
+    public long skip (final long n) throws IOException
+    {
+      // Skipped bytes would be missing in the buffer
+      _abort ();
+      return super.skip (n);
+    }
+
+    @Override
+    public boolean markSupported ()
+    {
+      return false;
+    }
+
+    @Override
+    public void close () throws IOException
+    {
+      try
+      {
+        // The reader may have stopped right before the end of the stream (e.g.
+        // a decompressing stream does not need to see the end of stream). If
+        // so, this read publishes the buffer.
+        if (m_aBufferOS != null)
+          read ();
+      }
+      finally
+      {
+        // Discard the buffer, if not read until the end
+        _abort ();
+        super.close ();
+      }
+    }
+  }
+
+  private final IHasInputStream m_aSrc;
+  private final EAS4CompressionMode m_eCompressionMode;
+  private final AS4ResourceHelper m_aResHelper;
+  private final AtomicBoolean m_aTeeActive = new AtomicBoolean (false);
+  private volatile IHasInputStream m_aBuffered;
+
+  /**
+   * Constructor
+   *
+   * @param aSrc
+   *        The provider of the uncompressed source content. Should be readable
+   *        multiple times, so that the content can be compressed again if the
+   *        first reader does not read until the end. May not be
+   *        <code>null</code>.
+   * @param eCompressionMode
+   *        The compression mode to use. May not be <code>null</code>.
+   * @param aResHelper
+   *        The resource helper that manages the buffer of the compressed
+   *        content. May not be <code>null</code>.
+   */
+  public AS4CompressingStreamProvider (@Nonnull final IHasInputStream aSrc,
+                                       @Nonnull final EAS4CompressionMode eCompressionMode,
+                                       @Nonnull @WillNotClose final AS4ResourceHelper aResHelper)
+  {
+    ValueEnforcer.notNull (aSrc, "Src");
+    ValueEnforcer.notNull (eCompressionMode, "CompressionMode");
+    ValueEnforcer.notNull (aResHelper, "ResHelper");
+    m_aSrc = aSrc;
+    m_eCompressionMode = eCompressionMode;
+    m_aResHelper = aResHelper;
+  }
+
+  /**
+   * @return The compression mode used. Never <code>null</code>.
+   */
+  @Nonnull
+  public EAS4CompressionMode getCompressionMode ()
+  {
+    return m_eCompressionMode;
+  }
+
+  /**
+   * @return <code>true</code> if the compressed content was completely read
+   *         once and is served from the buffer, <code>false</code> if not.
+   */
+  public boolean isBuffered ()
+  {
+    return m_aBuffered != null;
+  }
+
+  public boolean isReadMultiple ()
+  {
+    return m_aBuffered != null || m_aSrc.isReadMultiple ();
+  }
+
+  @Nullable
+  public InputStream getInputStream ()
+  {
+    final IHasInputStream aBuffered = m_aBuffered;
+    if (aBuffered != null)
+      return aBuffered.getInputStream ();
+
+    final InputStream aSrcIS = m_aSrc.getInputStream ();
+    if (aSrcIS == null)
+      return null;
+
+    final InputStream aCompressingIS;
+    try
+    {
+      aCompressingIS = new CompressingInputStream (aSrcIS, m_eCompressionMode);
+    }
+    catch (final IOException ex)
+    {
+      StreamHelper.close (aSrcIS);
+      throw new UncheckedIOException ("Failed to create " + m_eCompressionMode + " compression", ex);
+    }
+
+    // Only one reader at a time fills the buffer
+    if (m_aTeeActive.compareAndSet (false, true))
+      return new TeeInputStream (aCompressingIS, new AS4AttachmentBufferOutputStream (m_aResHelper));
+    return aCompressingIS;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("Src", m_aSrc)
+                                       .append ("CompressionMode", m_eCompressionMode)
+                                       .append ("Buffered", m_aBuffered != null)
+                                       .getToString ();
+  }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.attachment;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.WillNotClose;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.helger.commons.CGlobal;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+
+/**
+ * Content that is stored in chunks of {@link AS4DirectByteBufferPool}. After
+ * writing is finished, the content may be read any number of times. Closing
+ * this object releases all chunks. The chunks are only given back to the pool
+ * for reuse, if no input stream is still reading them. Otherwise they are
+ * dropped from the pool, and further reads on the open input streams fail with
+ * an {@link IOException}, so that no reader can ever see the content of
+ * another message.
+ *
+ * @author Philip Helger
+ * @since 3.2.3
+ */
+@NotThreadSafe
+final class AS4DirectByteBufferContent implements Closeable
+{
+  /**
+   * Reads from a list of chunks, using duplicates so that multiple concurrent
+   * readers are possible. A stream is counted as open until it is closed or
+   * the end of the content was reached.
+   */
+  private final class ChunkInputStream extends InputStream
+  {
+    private final ByteBuffer [] m_aChunks;
+    private int m_nIndex = 0;
+    private boolean m_bDone = false;
+
+    ChunkInputStream (@Nonnull final ICommonsList <ByteBuffer> aChunks)
+    {
+      m_aChunks = new ByteBuffer [aChunks.size ()];
+      for (int i = 0; i < m_aChunks.length; ++i)
+      {
+        // Chunks are in write mode - flip the independent duplicate
+        final ByteBuffer aDup = aChunks.get (i).duplicate ();
+        aDup.flip ();
+        m_aChunks[i] = aDup;
+      }
+    }
+
+    private void _done ()
+    {
+      if (!m_bDone)
+      {
+        m_bDone = true;
+        m_aOpenStreams.decrementAndGet ();
+      }
+    }
+
+    /**
+     * @return The chunk to read from or <code>null</code> if the end of the
+     *         content was reached.
+     * @throws IOException
+     *         If the content was released while this stream was open
+     */
+    @Nullable
+    private ByteBuffer _current () throws IOException
+    {
+      if (m_bDone)
+        return null;
+      if (m_aClosed.get ())
+        throw new IOException ("Off-heap content was released while being read");
+      while (m_nIndex < m_aChunks.length && !m_aChunks[m_nIndex].hasRemaining ())
+        m_nIndex++;
+      if (m_nIndex == m_aChunks.length)
+      {
+        // The chunks are no longer accessed
+        _done ();
+        return null;
+      }
+      return m_aChunks[m_nIndex];
+    }
+
+    @Override
+    public int read () throws IOException
+    {
+      final ByteBuffer aChunk = _current ();
+      return aChunk == null ? -1 : aChunk.get () & 0xff;
+    }
+
+    @Override
+    public int read (@Nonnull final byte [] aBuf, final int nOfs, final int nLen) throws IOException
+    {
+      if (nLen == 0)
+        return 0;
+      final ByteBuffer aChunk = _current ();
+      if (aChunk == null)
+        return -1;
+      final int nRead = Math.min (nLen, aChunk.remaining ());
+      aChunk.get (aBuf, nOfs, nRead);
+      return nRead;
+    }
+
+    @Override
+    public void close ()
+    {
+      _done ();
+    }
+  }
+
+  private final ICommonsList <ByteBuffer> m_aChunks = new CommonsArrayList <> ();
+  private final AtomicBoolean m_aClosed = new AtomicBoolean (false);
+  private final AtomicInteger m_aOpenStreams = new AtomicInteger (0);
+  private long m_nSize = 0;
+
+  AS4DirectByteBufferContent ()
+  {}
+
+  /**
+   * Ensure that the content can take the provided total number of bytes
+   * without acquiring further chunks.
+   *
+   * @param nTotalBytes
+   *        The total number of bytes required.
+   * @return <code>false</code> if not enough chunks could be acquired from the
+   *         pool.
+   */
+  boolean ensureCapacity (@Nonnegative final long nTotalBytes)
+  {
+    while ((long) m_aChunks.size () * AS4DirectByteBufferPool.CHUNK_SIZE < nTotalBytes)
+    {
+      final ByteBuffer aChunk = AS4DirectByteBufferPool.acquire ();
+      if (aChunk == null)
+        return false;
+      m_aChunks.add (aChunk);
+    }
+    return true;
+  }
+
+  /**
+   * Append data. {@link #ensureCapacity(long)} must have been called before.
+   *
+   * @param aBuf
+   *        Source buffer
+   * @param nOfs
+   *        Offset
+   * @param nLen
+   *        Number of bytes
+   */
+  void write (@Nonnull final byte [] aBuf, final int nOfs, final int nLen)
+  {
+    int nCurOfs = nOfs;
+    int nRemaining = nLen;
+    while (nRemaining > 0)
+    {
+      final ByteBuffer aChunk = m_aChunks.get ((int) (m_nSize / AS4DirectByteBufferPool.CHUNK_SIZE));
+      final int nCount = Math.min (nRemaining, aChunk.remaining ());
+      aChunk.put (aBuf, nCurOfs, nCount);
+      nCurOfs += nCount;
+      nRemaining -= nCount;
+      m_nSize += nCount;
+    }
+  }
+
+  /**
+   * @return The number of bytes written.
+   */
+  @Nonnegative
+  long getSize ()
+  {
+    return m_nSize;
+  }
+
+  /**
+   * Write the whole content to the provided stream.
+   *
+   * @param aOS
+   *        The target stream. May not be <code>null</code>.
+   * @throws IOException
+   *         in case of IO error
+   */
+  void writeTo (@Nonnull @WillNotClose final OutputStream aOS) throws IOException
+  {
+    final byte [] aBuffer = new byte [16 * CGlobal.BYTES_PER_KILOBYTE];
+    try (final InputStream aIS = getInputStream ())
+    {
+      int nRead;
+      while ((nRead = aIS.read (aBuffer)) > 0)
+        aOS.write (aBuffer, 0, nRead);
+    }
+  }
+
+  /**
+   * @return A new input stream over the whole content. Never
+   *         <code>null</code>.
+   * @throws IllegalStateException
+   *         If the content was already closed
+   */
+  @Nonnull
+  InputStream getInputStream ()
+  {
+    // Count first, so that close() never recycles chunks that are read
+    m_aOpenStreams.incrementAndGet ();
+    if (m_aClosed.get ())
+    {
+      m_aOpenStreams.decrementAndGet ();
+      throw new IllegalStateException ("Off-heap content was already released");
+    }
+    return new ChunkInputStream (m_aChunks);
+  }
+
+  public void close ()
+  {
+    if (!m_aClosed.getAndSet (true))
+    {
+      if (m_aOpenStreams.get () == 0)
+      {
+        for (final ByteBuffer aChunk : m_aChunks)
+          AS4DirectByteBufferPool.release (aChunk);
+        m_aChunks.clear ();
+      }
+      else
+      {
+        // Some stream may still read - never hand out these chunks again
+        for (final ByteBuffer aChunk : m_aChunks)
+          AS4DirectByteBufferPool.discard (aChunk);
+      }
+    }
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.attachment;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.helger.commons.CGlobal;
+import com.helger.commons.ValueEnforcer;
+import com.helger.phase4.config.AS4Configuration;
+
+/**
+ * A global pool of fixed size direct {@link ByteBuffer} chunks that is used for
+ * the off-heap buffering of attachments. Released chunks are kept for reuse, so
+ * that the expensive allocation of direct memory happens only once. The total
+ * amount of direct memory (in use and pooled) is limited by
+ * {@link #getMaxTotalBytes()}.
+ *
+ * @author Philip Helger
+ * @since 3.2.3
+ */
+@ThreadSafe
+public final class AS4DirectByteBufferPool
+{
+  /** The size of a single chunk: 64 KB */
+  public static final int CHUNK_SIZE = 64 * CGlobal.BYTES_PER_KILOBYTE;
+
+  private static final Queue <ByteBuffer> POOL = new ConcurrentLinkedQueue <> ();
+  private static final AtomicLong ALLOCATED_BYTES = new AtomicLong (0);
+  private static final AtomicLong IN_USE_BYTES = new AtomicLong (0);
+  private static volatile long s_nMaxTotalBytes = Math.max (0, AS4Configuration.getAttachmentOffHeapTotalMaxBytes ());
+
+  private AS4DirectByteBufferPool ()
+  {}
+
+  /**
+   * @return The maximum number of bytes of direct memory that may be allocated
+   *         by this pool. Always &ge; 0.
+   */
+  @Nonnegative
+  public static long getMaxTotalBytes ()
+  {
+    return s_nMaxTotalBytes;
+  }
+
+  /**
+   * Set the maximum number of bytes of direct memory that may be allocated by
+   * this pool. Already allocated chunks are not affected.
+   *
+   * @param nMaxTotalBytes
+   *        The maximum number of bytes. Must be &ge; 0.
+   */
+  public static void setMaxTotalBytes (@Nonnegative final long nMaxTotalBytes)
+  {
+    ValueEnforcer.isGE0 (nMaxTotalBytes, "MaxTotalBytes");
+    s_nMaxTotalBytes = nMaxTotalBytes;
+  }
+
+  /**
+   * @return The number of bytes of direct memory allocated by this pool
+   *         (chunks in use and pooled chunks). Always &ge; 0.
+   */
+  @Nonnegative
+  public static long getAllocatedBytes ()
+  {
+    return ALLOCATED_BYTES.get ();
+  }
+
+  /**
+   * @return The number of bytes of direct memory currently in use. Always
+   *         &ge; 0.
+   */
+  @Nonnegative
+  public static long getInUseBytes ()
+  {
+    return IN_USE_BYTES.get ();
+  }
+
+  /**
+   * Get a cleared chunk from the pool or allocate a new one.
+   *
+   * @return <code>null</code> if no chunk is pooled and the maximum total size
+   *         would be exceeded by a new allocation.
+   */
+  @Nullable
+  static ByteBuffer acquire ()
+  {
+    ByteBuffer ret = POOL.poll ();
+    if (ret == null)
+    {
+      // Reserve before allocating
+      final long nMaxTotalBytes = s_nMaxTotalBytes;
+      long nAllocated;
+      do
+      {
+        nAllocated = ALLOCATED_BYTES.get ();
+        if (nAllocated + CHUNK_SIZE > nMaxTotalBytes)
+          return null;
+      } while (!ALLOCATED_BYTES.compareAndSet (nAllocated, nAllocated + CHUNK_SIZE));
+      ret = ByteBuffer.allocateDirect (CHUNK_SIZE);
+    }
+    else
+      ret.clear ();
+    IN_USE_BYTES.addAndGet (CHUNK_SIZE);
+    return ret;
+  }
+
+  /**
+   * Give a chunk obtained by {@link #acquire()} back to the pool.
+   *
+   * @param aChunk
+   *        The chunk to be released. May not be <code>null</code>.
+   */
+  static void release (@Nonnull final ByteBuffer aChunk)
+  {
+    IN_USE_BYTES.addAndGet (-CHUNK_SIZE);
+    POOL.offer (aChunk);
+  }
+
+  /**
+   * Drop a chunk obtained by {@link #acquire()} without giving it back to the
+   * pool, because it may still be read. The direct memory is freed by the
+   * garbage collector, and a new chunk may be allocated instead.
+   *
+   * @param aChunk
+   *        The chunk to be dropped. May not be <code>null</code>.
+   */
+  static void discard (@Nonnull final ByteBuffer aChunk)
+  {
+    IN_USE_BYTES.addAndGet (-CHUNK_SIZE);
+    ALLOCATED_BYTES.addAndGet (-CHUNK_SIZE);
+  }
+}
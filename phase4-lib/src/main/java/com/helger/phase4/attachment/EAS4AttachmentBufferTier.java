@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.attachment;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.id.IHasID;
+import com.helger.commons.lang.EnumHelper;
+
+/**
+ * Defines the storage tiers used for buffering incoming and decrypted
+ * attachments.
+ *
+ * @author Philip Helger
+ * @since 3.2.3
+ */
+public enum EAS4AttachmentBufferTier implements IHasID <String>
+{
+  /** Keep the content in a byte array on the heap */
+  HEAP ("heap"),
+  /** Keep the content in pooled direct byte buffers */
+  OFF_HEAP ("offheap"),
+  /** Store the content in a temporary file */
+  FILE ("file");
+
+  private final String m_sID;
+
+  EAS4AttachmentBufferTier (@Nonnull @Nonempty final String sID)
+  {
+    m_sID = sID;
+  }
+
+  @Nonnull
+  @Nonempty
+  public String getID ()
+  {
+    return m_sID;
+  }
+
+  @Nullable
+  public static EAS4AttachmentBufferTier getFromIDOrNull (@Nullable final String sID)
+  {
+    return EnumHelper.getFromIDOrNull (EAS4AttachmentBufferTier.class, sID);
+  }
+}
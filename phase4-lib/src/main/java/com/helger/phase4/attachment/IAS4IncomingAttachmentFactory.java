@@ -17,12 +17,16 @@
 package com.helger.phase4.attachment;
 
 import java.io.IOException;
+import java.io.InputStream;
 
 import javax.annotation.Nonnull;
+import javax.annotation.WillNotClose;
 
+import com.helger.commons.io.stream.StreamHelper;
 import com.helger.phase4.util.AS4ResourceHelper;
 
 import jakarta.mail.MessagingException;
+import jakarta.mail.internet.InternetHeaders;
 import jakarta.mail.internet.MimeBodyPart;
 
 /**
@@ -52,10 +56,61 @@ public interface IAS4IncomingAttachmentFactory
                                                                                                             throws IOException,
                                                                                                             MessagingException;
 
+  /**
+   * Create an attachment from a MIME part that is read in a streaming way. This
+   * is the method that is invoked when receiving MIME messages. The default
+   * implementation reads the whole part into memory and calls
+   * {@link #createAttachment(MimeBodyPart, AS4ResourceHelper)} for backwards
+   * compatibility. Implementations should override this method to avoid the
+   * buffering.
+   *
+   * @param aHeaders
+   *        The already parsed MIME part headers. May not be <code>null</code>.
+   * @param aRawIS
+   *        The raw MIME part content directly following the headers. May not
+   *        be <code>null</code>.
+   * @param aResHelper
+   *        The resource manager to use. May not be <code>null</code>.
+   * @return The internal attachment representation. Never <code>null</code>.
+   * @throws IOException
+   *         In case of IO error
+   * @throws MessagingException
+   *         In case MIME part reading fails.
+   * @since 3.2.3
+   */
+  @Nonnull
+  default WSS4JAttachment createAttachment (@Nonnull final InternetHeaders aHeaders,
+                                            @Nonnull @WillNotClose final InputStream aRawIS,
+                                            @Nonnull final AS4ResourceHelper aResHelper) throws IOException,
+                                                                                         MessagingException
+  {
+    return createAttachment (new MimeBodyPart (aHeaders, StreamHelper.getAllBytes (aRawIS)), aResHelper);
+  }
+
   /**
    * The default instance of {@link IAS4IncomingAttachmentFactory} that uses
    * {@link WSS4JAttachment#createIncomingFileAttachment(MimeBodyPart, AS4ResourceHelper)}
+   * and for streaming
+   * {@link WSS4JAttachment#createIncomingFileAttachment(InternetHeaders, InputStream, AS4ResourceHelper)}
    */
   @Nonnull
-  IAS4IncomingAttachmentFactory DEFAULT_INSTANCE = WSS4JAttachment::createIncomingFileAttachment;
+  IAS4IncomingAttachmentFactory DEFAULT_INSTANCE = new IAS4IncomingAttachmentFactory ()
+  {
+    @Nonnull
+    public WSS4JAttachment createAttachment (@Nonnull final MimeBodyPart aBodyPart,
+                                             @Nonnull final AS4ResourceHelper aResHelper) throws IOException,
+                                                                                          MessagingException
+    {
+      return WSS4JAttachment.createIncomingFileAttachment (aBodyPart, aResHelper);
+    }
+
+    @Override
+    @Nonnull
+    public WSS4JAttachment createAttachment (@Nonnull final InternetHeaders aHeaders,
+                                             @Nonnull @WillNotClose final InputStream aRawIS,
+                                             @Nonnull final AS4ResourceHelper aResHelper) throws IOException
+    {
+      return WSS4JAttachment.createIncomingFileAttachment (aHeaders, aRawIS, aResHelper);
+    }
+  };
 }
@@ -33,7 +33,6 @@ import javax.annotation.concurrent.NotThreadSafe;
 import org.apache.wss4j.common.ext.Attachment;
 import org.slf4j.Logger;
 
-import com.helger.commons.CGlobal;
 import com.helger.commons.ValueEnforcer;
 import com.helger.commons.annotation.ReturnsMutableObject;
 import com.helger.commons.annotation.UnsupportedOperation;
@@ -43,15 +42,14 @@ import com.helger.commons.http.CHttpHeader;
 import com.helger.commons.io.IHasInputStream;
 import com.helger.commons.io.file.FileHelper;
 import com.helger.commons.io.stream.HasInputStream;
-import com.helger.commons.io.stream.NonBlockingBufferedOutputStream;
 import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
-import com.helger.commons.io.stream.StreamHelper;
 import com.helger.commons.mime.IMimeType;
 import com.helger.commons.string.StringHelper;
 import com.helger.commons.string.ToStringGenerator;
 import com.helger.mail.cte.EContentTransferEncoding;
 import com.helger.mail.datasource.InputStreamProviderDataSource;
 import com.helger.phase4.logging.Phase4LoggerFactory;
+import com.helger.phase4.messaging.mime.AS4MimeMessageHelper;
 import com.helger.phase4.model.message.MessageHelperMethods;
 import com.helger.phase4.util.AS4ResourceHelper;
 
@@ -59,6 +57,7 @@ import jakarta.activation.DataHandler;
 import jakarta.activation.DataSource;
 import jakarta.mail.Header;
 import jakarta.mail.MessagingException;
+import jakarta.mail.internet.InternetHeaders;
 import jakarta.mail.internet.MimeBodyPart;
 import jakarta.mail.internet.MimeMultipart;
 
@@ -394,7 +393,6 @@ public class WSS4JAttachment extends Attachment implements IAS4Attachment
    * @throws IOException
    *         In case something goes wrong during compression
    */
-  @SuppressWarnings ("resource")
   @Nonnull
   public static WSS4JAttachment createOutgoingFileAttachment (@Nonnull final File aSrcFile,
                                                               @Nullable final String sContentID,
@@ -412,34 +410,27 @@ public class WSS4JAttachment extends Attachment implements IAS4Attachment
     ret.setCharset (aCharset);
     _addOutgoingHeaders (ret, sFilename);
 
-    // If the attachment has an compressionMode do it directly, so that
-    // encryption later on works on the compressed content
-    final File aRealFile;
+    // Set a stream provider that can be read multiple times (opens a new
+    // FileInputStream internally)
+    final IHasInputStream aSrcISP = HasInputStream.multiple ( () -> FileHelper.getBufferedInputStream (aSrcFile));
+
+    // If the attachment has an compressionMode, the source stream delivers the
+    // compressed content, so that signing and encryption later on work on the
+    // compressed content
     if (eCompressionMode != null)
     {
       ret.setCompressionMode (eCompressionMode);
 
-      // Create temporary file with compressed content to avoid that the
+      // Compress while the content is read for the first time (e.g. for the
+      // signature digest) and buffer the compressed content, to avoid that the
       // original is compressed more than once
-      aRealFile = aResHelper.createTempFile ();
-      try (final NonBlockingBufferedOutputStream aFOS = FileHelper.getBufferedOutputStream (aRealFile))
-      {
-        if (aFOS != null)
-          try (final OutputStream aOS = eCompressionMode.getCompressStream (aFOS))
-          {
-            StreamHelper.copyInputStreamToOutputStream (FileHelper.getBufferedInputStream (aSrcFile), aOS);
-          }
-      }
+      ret.setSourceStreamProvider (new AS4CompressingStreamProvider (aSrcISP, eCompressionMode, aResHelper));
     }
     else
     {
       // No compression - use file as-is
-      aRealFile = aSrcFile;
+      ret.setSourceStreamProvider (aSrcISP);
     }
-
-    // Set a stream provider that can be read multiple times (opens a new
-    // FileInputStream internally)
-    ret.setSourceStreamProvider (HasInputStream.multiple ( () -> FileHelper.getBufferedInputStream (aRealFile)));
     return ret;
   }
 
@@ -467,7 +458,6 @@ public class WSS4JAttachment extends Attachment implements IAS4Attachment
    * @throws IOException
    *         In case something goes wrong during compression
    */
-  @SuppressWarnings ("resource")
   @Nonnull
   public static WSS4JAttachment createOutgoingFileAttachment (@Nonnull final byte [] aSrcData,
                                                               @Nullable final String sContentID,
@@ -486,28 +476,22 @@ public class WSS4JAttachment extends Attachment implements IAS4Attachment
     ret.setCharset (aCharset);
     _addOutgoingHeaders (ret, sFilename);
 
-    // If the attachment has an compressionMode do it directly, so that
-    // encryption later on works on the compressed content
+    final IHasInputStream aSrcISP = HasInputStream.multiple ( () -> new NonBlockingByteArrayInputStream (aSrcData));
+
+    // If the attachment has an compressionMode, the source stream delivers the
+    // compressed content, so that encryption later on works on the compressed
+    // content
     if (eCompressionMode != null)
     {
       ret.setCompressionMode (eCompressionMode);
 
-      // Create temporary file with compressed content
-      final File aRealFile = aResHelper.createTempFile ();
-      try (final NonBlockingBufferedOutputStream aFOS = FileHelper.getBufferedOutputStream (aRealFile))
-      {
-        if (aFOS != null)
-          try (final OutputStream aOS = eCompressionMode.getCompressStream (aFOS))
-          {
-            aOS.write (aSrcData);
-          }
-      }
-      ret.setSourceStreamProvider (HasInputStream.multiple ( () -> FileHelper.getBufferedInputStream (aRealFile)));
+      // Compress upon the first read and buffer the compressed content
+      ret.setSourceStreamProvider (new AS4CompressingStreamProvider (aSrcISP, eCompressionMode, aResHelper));
     }
     else
     {
       // No compression - use data as-is
-      ret.setSourceStreamProvider (HasInputStream.multiple ( () -> new NonBlockingByteArrayInputStream (aSrcData)));
+      ret.setSourceStreamProvider (aSrcISP);
     }
     return ret;
   }
@@ -518,11 +502,13 @@ public class WSS4JAttachment extends Attachment implements IAS4Attachment
    *
    * @param nBytes
    *        File size.
-   * @return <code>true</code> if the size is &le; than 64 Kilobytes
+   * @return <code>true</code> if the size is &le; than the configured in-memory
+   *         limit (64 Kilobytes by default)
+   * @see AS4AttachmentBufferPolicy
    */
   public static boolean canBeKeptInMemory (final long nBytes)
   {
-    return nBytes <= 64 * CGlobal.BYTES_PER_KILOBYTE;
+    return AS4AttachmentBufferPolicy.getFromConfiguration ().getTier (nBytes) == EAS4AttachmentBufferTier.HEAP;
   }
 
   @SuppressWarnings ("resource")
@@ -548,7 +534,7 @@ public class WSS4JAttachment extends Attachment implements IAS4Attachment
     if (LOGGER.isDebugEnabled ())
       LOGGER.debug ("Creating incoming WSS4J attachment with " + aBodyPart.getSize () + " bytes");
 
-    if (canBeKeptInMemory (aBodyPart.getSize ()))
+    if (aResHelper.getAttachmentBufferPolicy ().getTier (aBodyPart.getSize ()) == EAS4AttachmentBufferTier.HEAP)
     {
       if (LOGGER.isDebugEnabled ())
         LOGGER.debug ("Keeping WSS4J attachment in-memory");
@@ -620,4 +606,70 @@ public class WSS4JAttachment extends Attachment implements IAS4Attachment
 
     return ret;
   }
+
+  /**
+   * Create an incoming attachment from the already parsed MIME part headers and
+   * the MIME part content stream. In contrast to
+   * {@link #createIncomingFileAttachment(MimeBodyPart, AS4ResourceHelper)} the
+   * part content is never completely buffered on the heap: it is buffered
+   * according to the {@link AS4AttachmentBufferPolicy} of the provided resource
+   * helper, so larger contents are streamed into off-heap memory or a temporary
+   * file.
+   *
+   * @param aHeaders
+   *        The MIME part headers. May not be <code>null</code>.
+   * @param aRawIS
+   *        The raw MIME part content directly following the headers. It is
+   *        read until the end but not closed. May not be <code>null</code>.
+   * @param aResHelper
+   *        The resource helper to use. May not be <code>null</code>.
+   * @return The new attachment. Never <code>null</code>.
+   * @throws IOException
+   *         In case of IO error
+   * @since 3.2.3
+   */
+  @Nonnull
+  public static WSS4JAttachment createIncomingFileAttachment (@Nonnull final InternetHeaders aHeaders,
+                                                              @Nonnull @WillNotClose final InputStream aRawIS,
+                                                              @Nonnull final AS4ResourceHelper aResHelper) throws IOException
+  {
+    ValueEnforcer.notNull (aHeaders, "Headers");
+    ValueEnforcer.notNull (aRawIS, "RawIS");
+    ValueEnforcer.notNull (aResHelper, "ResHelper");
+
+    // Same default as in MimeBodyPart
+    final String sContentType = aHeaders.getHeader (CHttpHeader.CONTENT_TYPE, null);
+    final WSS4JAttachment ret = new WSS4JAttachment (aResHelper, sContentType != null ? sContentType : "text/plain");
+
+    {
+      // Reference in Content-ID header is: "<ID>"
+      final String sRealContentID = StringHelper.trimStartAndEnd (aHeaders.getHeader (CHttpHeader.CONTENT_ID, null),
+                                                                  '<',
+                                                                  '>');
+      ret.setId (sRealContentID);
+    }
+
+    // Buffer according to the policy of the resource helper
+    ret.setSourceStreamProvider (AS4AttachmentBufferOutputStream.bufferContent (AS4MimeMessageHelper.getDecodedInputStream (aHeaders,
+                                                                                                                            aRawIS),
+                                                                                aResHelper));
+
+    // Take all MIME part headers
+    final Enumeration <Header> aEnum = aHeaders.getAllHeaders ();
+    while (aEnum.hasMoreElements ())
+    {
+      final Header aHeader = aEnum.nextElement ();
+      ret.addHeader (aHeader.getName (), aHeader.getValue ());
+    }
+
+    // These headers are mandatory and overwrite headers from the MIME body part
+    ret.addHeader (CHttpHeader.CONTENT_DESCRIPTION, CONTENT_DESCRIPTION_ATTACHMENT);
+    ret.addHeader (CHttpHeader.CONTENT_ID, CONTENT_ID_PREFIX + ret.getId () + CONTENT_ID_SUFFIX);
+    ret.addHeader (CHttpHeader.CONTENT_TYPE, ret.getMimeType ());
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("Finished streaming of incoming WSS4J attachment");
+
+    return ret;
+  }
 }
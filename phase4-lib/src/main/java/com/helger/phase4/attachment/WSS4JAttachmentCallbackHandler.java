@@ -17,6 +17,9 @@
 package com.helger.phase4.attachment;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.Future;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -37,6 +40,7 @@ import com.helger.commons.collection.impl.CommonsArrayList;
 import com.helger.commons.collection.impl.CommonsLinkedHashMap;
 import com.helger.commons.collection.impl.ICommonsList;
 import com.helger.commons.collection.impl.ICommonsOrderedMap;
+import com.helger.commons.io.IHasInputStream;
 import com.helger.commons.io.stream.HasInputStream;
 import com.helger.commons.string.ToStringGenerator;
 import com.helger.phase4.logging.Phase4LoggerFactory;
@@ -55,10 +59,44 @@ public class WSS4JAttachmentCallbackHandler implements CallbackHandler
 {
   public static final String ATTACHMENT_ID_ATTACHMENTS = "Attachments";
 
+  /**
+   * A stream provider for a result attachment that is buffered in the
+   * background.
+   */
+  private static final class PendingBufferedStreamProvider implements IHasInputStream
+  {
+    private final Future <IHasInputStream> m_aFuture;
+
+    PendingBufferedStreamProvider (@Nonnull final Future <IHasInputStream> aFuture)
+    {
+      m_aFuture = aFuture;
+    }
+
+    @Nonnull
+    public InputStream getInputStream ()
+    {
+      try
+      {
+        return AS4AttachmentCryptoExecutor.getBufferedContent (m_aFuture).getInputStream ();
+      }
+      catch (final IOException ex)
+      {
+        throw new UncheckedIOException (ex);
+      }
+    }
+
+    public boolean isReadMultiple ()
+    {
+      return true;
+    }
+  }
+
   private static final Logger LOGGER = Phase4LoggerFactory.getLogger (WSS4JAttachmentCallbackHandler.class);
 
   private final ICommonsOrderedMap <String, WSS4JAttachment> m_aAttachmentMap = new CommonsLinkedHashMap <> ();
   private final AS4ResourceHelper m_aResHelper;
+  private boolean m_bBufferResultAttachments = false;
+  private final ICommonsList <Future <IHasInputStream>> m_aPendingResults = new CommonsArrayList <> ();
 
   public WSS4JAttachmentCallbackHandler (@Nullable final Iterable <? extends WSS4JAttachment> aSrcAttachments,
                                          @Nonnull @WillNotClose final AS4ResourceHelper aResHelper)
@@ -90,6 +128,42 @@ public class WSS4JAttachmentCallbackHandler implements CallbackHandler
     return m_aResHelper;
   }
 
+  /**
+   * @return <code>true</code> if the resulting attachments are buffered
+   *         immediately, <code>false</code> if they are streamed lazily. The
+   *         default is <code>false</code>.
+   * @since 3.2.3
+   */
+  public final boolean isBufferResultAttachments ()
+  {
+    return m_bBufferResultAttachments;
+  }
+
+  /**
+   * Define whether resulting attachments should be buffered immediately. If
+   * enabled, the result stream (e.g. the encrypted content) is read completely
+   * upon the callback and stored according to the attachment buffer policy of
+   * the resource helper (heap, off-heap or temporary file). The resulting
+   * attachments can than be read multiple times, which is e.g. needed for
+   * retries and dumping of outgoing messages. If disabled, the resulting
+   * attachments can only be read once.<br>
+   * If the number of attachments is at least
+   * {@link AS4AttachmentCryptoExecutor#getMinAttachmentCount()}, the buffering
+   * happens in parallel, and {@link #waitForBufferedResultAttachments()}
+   * should be called after the WSS4J processing.
+   *
+   * @param bBufferResultAttachments
+   *        <code>true</code> to buffer, <code>false</code> to stream lazily.
+   * @return this for chaining
+   * @since 3.2.3
+   */
+  @Nonnull
+  public final WSS4JAttachmentCallbackHandler setBufferResultAttachments (final boolean bBufferResultAttachments)
+  {
+    m_bBufferResultAttachments = bBufferResultAttachments;
+    return this;
+  }
+
   /**
    * Try to match the Attachment Id. Otherwise, add all Attachments if the ID
    * "Attachments" is used.
@@ -170,8 +244,30 @@ public class WSS4JAttachmentCallbackHandler implements CallbackHandler
           // This property is only in WSS4JAttachment so we need to copy it
           // separately
           aEffectiveResultAttachment.setCharset (aSrcAttachment.getCharsetOrDefault (null));
-          // Use supplier to ensure stream is opened only when needed
-          aEffectiveResultAttachment.setSourceStreamProvider (HasInputStream.once (aAttachmentResult::getSourceStream));
+          if (m_bBufferResultAttachments && AS4AttachmentCryptoExecutor.isParallelProcessing (m_aAttachmentMap.size ()))
+          {
+            // Read the result once into a repeatable buffer in the background,
+            // while WSS4J continues with the next attachment
+            final Future <IHasInputStream> aFuture = AS4AttachmentCryptoExecutor.submitBufferContent (aAttachmentResult.getSourceStream (),
+                                                                                                       m_aResHelper);
+            m_aPendingResults.add (aFuture);
+            aEffectiveResultAttachment.setSourceStreamProvider (new PendingBufferedStreamProvider (aFuture));
+          }
+          else
+            if (m_bBufferResultAttachments)
+            {
+              // Read the result once into a repeatable buffer
+              try (final InputStream aIS = aAttachmentResult.getSourceStream ())
+              {
+                aEffectiveResultAttachment.setSourceStreamProvider (AS4AttachmentBufferOutputStream.bufferContent (aIS,
+                                                                                                                   m_aResHelper));
+              }
+            }
+            else
+            {
+              // Use supplier to ensure stream is opened only when needed
+              aEffectiveResultAttachment.setSourceStreamProvider (HasInputStream.once (aAttachmentResult::getSourceStream));
+            }
 
           // Overwrite decrypted attachment in the Map
           m_aAttachmentMap.put (sAttachmentID, aEffectiveResultAttachment);
@@ -184,6 +280,33 @@ public class WSS4JAttachmentCallbackHandler implements CallbackHandler
     }
   }
 
+  /**
+   * Wait until all result attachments that are buffered in the background are
+   * completely buffered. This is a no-op if no attachment is buffered in the
+   * background. If one of them fails, all others are awaited as well and the
+   * content they buffered is released, before the error is propagated.
+   *
+   * @throws IOException
+   *         If buffering of at least one attachment failed
+   * @since 3.2.3
+   */
+  public void waitForBufferedResultAttachments () throws IOException
+  {
+    boolean bSuccess = false;
+    try
+    {
+      for (final Future <IHasInputStream> aFuture : m_aPendingResults)
+        AS4AttachmentCryptoExecutor.getBufferedContent (aFuture);
+      bSuccess = true;
+    }
+    finally
+    {
+      if (!bSuccess)
+        AS4AttachmentCryptoExecutor.waitAndRelease (m_aPendingResults);
+      m_aPendingResults.clear ();
+    }
+  }
+
   @Nonnull
   @ReturnsMutableCopy
   public ICommonsList <WSS4JAttachment> getAllResponseAttachments ()
@@ -203,6 +326,7 @@ public class WSS4JAttachmentCallbackHandler implements CallbackHandler
   {
     return new ToStringGenerator (this).append ("AttachmentMap", m_aAttachmentMap)
                                        .append ("ResHelper", m_aResHelper)
+                                       .append ("BufferResultAttachments", m_bBufferResultAttachments)
                                        .getToString ();
   }
 }
@@ -24,6 +24,7 @@ import javax.annotation.Nullable;
 
 import org.slf4j.Logger;
 
+import com.helger.commons.CGlobal;
 import com.helger.commons.ValueEnforcer;
 import com.helger.commons.concurrent.SimpleReadWriteLock;
 import com.helger.commons.equals.EqualsHelper;
@@ -55,6 +56,13 @@ public final class AS4Configuration
   public static final String PROPERTY_PHASE4_MANAGER_INMEMORY = "phase4.manager.inmemory";
   public static final boolean DEFAULT_PHASE4_MANAGER_INMEMORY = true;
 
+  /**
+   * The boolean property to use the append-log based duplicate manager for
+   * high message volumes.
+   */
+  public static final String PROPERTY_PHASE4_MANAGER_DUPLICATE_APPENDLOG = "phase4.manager.duplicate.appendlog";
+  public static final boolean DEFAULT_PHASE4_MANAGER_DUPLICATE_APPENDLOG = false;
+
   /**
    * The boolean property to enable synchronization of sign/verify and
    * encrypt/decrypt.
@@ -62,8 +70,23 @@ public final class AS4Configuration
   public static final String PROPERTY_PHASE4_WSS4J_SYNCSECURITY = "phase4.wss4j.syncsecurity";
   public static final boolean DEFAULT_PHASE4_WSS4J_SYNCSECURITY = false;
 
+  /**
+   * The boolean property to replace the global lock of the synchronized
+   * security with a reference counted initialization and thread confined
+   * WSSConfig objects.
+   */
+  public static final String PROPERTY_PHASE4_WSS4J_POOLEDSECURITY = "phase4.wss4j.pooledsecurity";
+  public static final boolean DEFAULT_PHASE4_WSS4J_POOLEDSECURITY = false;
+
   public static final long DEFAULT_PHASE4_INCOMING_DUPLICATEDISPOSAL_MINUTES = 10;
 
+  /** 64 KB */
+  public static final long DEFAULT_PHASE4_ATTACHMENT_INMEMORY_MAXBYTES = 64 * CGlobal.BYTES_PER_KILOBYTE;
+  /** Disabled by default */
+  public static final long DEFAULT_PHASE4_ATTACHMENT_OFFHEAP_MAXBYTES = 0;
+  /** 256 MB */
+  public static final long DEFAULT_PHASE4_ATTACHMENT_OFFHEAP_TOTAL_MAXBYTES = 256L * CGlobal.BYTES_PER_MEGABYTE;
+
   private static final Logger LOGGER = Phase4LoggerFactory.getLogger (AS4Configuration.class);
 
   /**
@@ -211,6 +234,21 @@ public final class AS4Configuration
     return StringParser.parseBool (sValue, DEFAULT_PHASE4_MANAGER_INMEMORY);
   }
 
+  /**
+   * @return <code>true</code> if the incoming duplicate manager should be the
+   *         {@link com.helger.phase4.duplicate.AS4DuplicateManagerAppendLog}
+   *         that is optimized for high message volumes. The configuration item
+   *         is <code>phase4.manager.duplicate.appendlog</code>. Defaults to
+   *         <code>false</code>.
+   * @since 3.2.3
+   */
+  public static boolean isUseAppendLogDuplicateManager ()
+  {
+    // Parse manually
+    final String sValue = getConfig ().getAsString (PROPERTY_PHASE4_MANAGER_DUPLICATE_APPENDLOG);
+    return StringParser.parseBool (sValue, DEFAULT_PHASE4_MANAGER_DUPLICATE_APPENDLOG);
+  }
+
   /**
    * @return <code>true</code> if all WSS4J actions should be explicitly
    *         synchronized. This is needed if multiple workers sending/receiving
@@ -230,6 +268,22 @@ public final class AS4Configuration
     return StringParser.parseBool (sValue, DEFAULT_PHASE4_WSS4J_SYNCSECURITY);
   }
 
+  /**
+   * @return <code>true</code> if the synchronized WSS4J actions (see
+   *         {@link #isWSS4JSynchronizedSecurity()}) should not be serialized
+   *         using a global lock but run in parallel, using reference counted
+   *         initialization of the security providers and thread confined
+   *         WSSConfig objects. The configuration item is
+   *         <code>phase4.wss4j.pooledsecurity</code>.
+   * @since 3.2.3
+   */
+  public static boolean isWSS4JPooledSecurity ()
+  {
+    // Parse manually
+    final String sValue = getConfig ().getAsString (PROPERTY_PHASE4_WSS4J_POOLEDSECURITY);
+    return StringParser.parseBool (sValue, DEFAULT_PHASE4_WSS4J_POOLEDSECURITY);
+  }
+
   /**
    * @return The AS4 profile to use, taken from the configuration item
    *         <code>phase4.default.profile</code> (changed in 3.0.0; was
@@ -300,4 +354,44 @@ public final class AS4Configuration
     // Changed default to false in v3.0.2
     return getConfig ().getAsBoolean ("phase4.errormsg.include.stacktraces", false);
   }
+
+  /**
+   * @return The maximum number of bytes of a single incoming or decrypted
+   *         attachment that are kept on the heap. Taken from the configuration
+   *         item <code>phase4.attachment.inmemory.maxbytes</code>. Defaults to
+   *         {@value #DEFAULT_PHASE4_ATTACHMENT_INMEMORY_MAXBYTES}.
+   * @since 3.2.3
+   */
+  public static long getAttachmentInMemoryMaxBytes ()
+  {
+    return getConfig ().getAsLong ("phase4.attachment.inmemory.maxbytes", DEFAULT_PHASE4_ATTACHMENT_INMEMORY_MAXBYTES);
+  }
+
+  /**
+   * @return The maximum number of bytes of a single incoming or decrypted
+   *         attachment that are kept in pooled off-heap memory. Attachments
+   *         larger than this are stored in temporary files. Taken from the
+   *         configuration item <code>phase4.attachment.offheap.maxbytes</code>.
+   *         Defaults to {@value #DEFAULT_PHASE4_ATTACHMENT_OFFHEAP_MAXBYTES}
+   *         which means off-heap buffering is disabled.
+   * @since 3.2.3
+   */
+  public static long getAttachmentOffHeapMaxBytes ()
+  {
+    return getConfig ().getAsLong ("phase4.attachment.offheap.maxbytes", DEFAULT_PHASE4_ATTACHMENT_OFFHEAP_MAXBYTES);
+  }
+
+  /**
+   * @return The maximum number of bytes of off-heap memory used for buffering
+   *         all attachments together (in use and pooled). Taken from the
+   *         configuration item
+   *         <code>phase4.attachment.offheap.total.maxbytes</code>. Defaults to
+   *         {@value #DEFAULT_PHASE4_ATTACHMENT_OFFHEAP_TOTAL_MAXBYTES}.
+   * @since 3.2.3
+   */
+  public static long getAttachmentOffHeapTotalMaxBytes ()
+  {
+    return getConfig ().getAsLong ("phase4.attachment.offheap.total.maxbytes",
+                                   DEFAULT_PHASE4_ATTACHMENT_OFFHEAP_TOTAL_MAXBYTES);
+  }
 }
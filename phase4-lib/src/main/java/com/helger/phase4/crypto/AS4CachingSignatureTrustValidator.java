@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.crypto;
+
+import java.security.cert.X509Certificate;
+
+import javax.annotation.Nonnull;
+
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.dom.handler.RequestData;
+import org.apache.wss4j.dom.validate.SignatureTrustValidator;
+
+import com.helger.commons.ValueEnforcer;
+
+/**
+ * A WSS4J {@link SignatureTrustValidator} that skips the trust path validation
+ * of the signing certificate chain, if a successful validation of the same
+ * chain is contained in the provided {@link AS4TrustValidationCache}. The
+ * validity period of the certificates and the signature itself are still
+ * checked for every message.
+ *
+ * @author Philip Helger
+ * @since 3.2.3
+ */
+public class AS4CachingSignatureTrustValidator extends SignatureTrustValidator
+{
+  private final AS4TrustValidationCache m_aCache;
+
+  public AS4CachingSignatureTrustValidator (@Nonnull final AS4TrustValidationCache aCache)
+  {
+    ValueEnforcer.notNull (aCache, "Cache");
+    m_aCache = aCache;
+  }
+
+  /**
+   * @return The cache as provided in the constructor. Never <code>null</code>.
+   */
+  @Nonnull
+  public final AS4TrustValidationCache getCache ()
+  {
+    return m_aCache;
+  }
+
+  @Override
+  protected void verifyTrustInCerts (@Nonnull final X509Certificate [] aCerts,
+                                     @Nonnull final Crypto aCrypto,
+                                     @Nonnull final RequestData aRequestData,
+                                     final boolean bEnableRevocation) throws WSSecurityException
+  {
+    if (m_aCache.isTrustCached (aCerts,
+                                aCrypto,
+                                bEnableRevocation,
+                                aRequestData.getSubjectCertConstraints (),
+                                aRequestData.getIssuerDNPatterns ()))
+      return;
+
+    // Throws an exception if not trusted
+    super.verifyTrustInCerts (aCerts, aCrypto, aRequestData, bEnableRevocation);
+
+    m_aCache.putTrusted (aCerts,
+                         aCrypto,
+                         bEnableRevocation,
+                         aRequestData.getSubjectCertConstraints (),
+                         aRequestData.getIssuerDNPatterns ());
+  }
+}
@@ -0,0 +1,475 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.crypto;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.hashcode.HashCodeGenerator;
+import com.helger.commons.state.ETriState;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.phase4.logging.Phase4LoggerFactory;
+import com.helger.security.certificate.ECertificateCheckResult;
+import com.helger.security.certificate.TrustedCAChecker;
+import com.helger.security.revocation.ERevocationCheckMode;
+
+/**
+ * A cache for the results of AP certificate checks performed via {@link TrustedCAChecker}. These
+ * checks include the PKIX path validation and the revocation check, and are performed for the
+ * receiver AP certificate on every outgoing message and optionally for the signing certificate of
+ * every incoming message. For repeated communication partners the result is identical for a long
+ * time.<br>
+ * The cache key consists of the certificate fingerprint, the identity of the
+ * {@link TrustedCAChecker}, the OCSP caching flag and the revocation check mode. Only valid results
+ * are cached, so that e.g. a temporary failure of the revocation check is not remembered. Entries
+ * expire after the TTL and at the latest when the certificate expires. If a certificate is known to
+ * be revoked, it can be removed via {@link #invalidate(X509Certificate)}.<br>
+ * The cache is only used if it is installed via {@link #setGlobalInstance(AS4CertificateCheckResultCache)}.
+ *
+ * @author Philip Helger
+ * @since 3.2.3
+ */
+@ThreadSafe
+public class AS4CertificateCheckResultCache
+{
+  public static final Duration DEFAULT_TTL = Duration.ofHours (1);
+  public static final int DEFAULT_MAX_ENTRIES = 1_000;
+
+  private static final Logger LOGGER = Phase4LoggerFactory.getLogger (AS4CertificateCheckResultCache.class);
+
+  private static final SimpleReadWriteLock RW_LOCK = new SimpleReadWriteLock ();
+  @GuardedBy ("RW_LOCK")
+  private static AS4CertificateCheckResultCache s_aGlobalInstance;
+
+  /**
+   * The result of {@link AS4CertificateCheckResultCache#checkCertificate(TrustedCAChecker, X509Certificate, OffsetDateTime, ETriState, ERevocationCheckMode)}.
+   *
+   * @author Philip Helger
+   * @since 3.2.3
+   */
+  public static final class CheckResult
+  {
+    private final ECertificateCheckResult m_eResult;
+    private final boolean m_bFromCache;
+
+    CheckResult (@Nonnull final ECertificateCheckResult eResult, final boolean bFromCache)
+    {
+      m_eResult = eResult;
+      m_bFromCache = bFromCache;
+    }
+
+    /**
+     * @return The certificate check result. Never <code>null</code>.
+     */
+    @Nonnull
+    public ECertificateCheckResult getResult ()
+    {
+      return m_eResult;
+    }
+
+    /**
+     * @return <code>true</code> if the result was taken from the cache, <code>false</code> if the
+     *         check was really performed.
+     */
+    public boolean isFromCache ()
+    {
+      return m_bFromCache;
+    }
+
+    @Override
+    public String toString ()
+    {
+      return new ToStringGenerator (null).append ("Result", m_eResult)
+                                         .append ("FromCache", m_bFromCache)
+                                         .getToString ();
+    }
+  }
+
+  private static final class CacheKey
+  {
+    private final String m_sFingerprint;
+    private final TrustedCAChecker m_aCAChecker;
+    private final ETriState m_eCacheOCSPResult;
+    private final ERevocationCheckMode m_eCheckMode;
+
+    CacheKey (@Nonnull final String sFingerprint,
+              @Nonnull final TrustedCAChecker aCAChecker,
+              @Nonnull final ETriState eCacheOCSPResult,
+              @Nullable final ERevocationCheckMode eCheckMode)
+    {
+      m_sFingerprint = sFingerprint;
+      m_aCAChecker = aCAChecker;
+      m_eCacheOCSPResult = eCacheOCSPResult;
+      m_eCheckMode = eCheckMode;
+    }
+
+    @Override
+    public boolean equals (final Object o)
+    {
+      if (o == this)
+        return true;
+      if (o == null || !getClass ().equals (o.getClass ()))
+        return false;
+      final CacheKey rhs = (CacheKey) o;
+      // Identity of the CA checker on purpose
+      return m_sFingerprint.equals (rhs.m_sFingerprint) &&
+             m_aCAChecker == rhs.m_aCAChecker &&
+             m_eCacheOCSPResult == rhs.m_eCacheOCSPResult &&
+             m_eCheckMode == rhs.m_eCheckMode;
+    }
+
+    @Override
+    public int hashCode ()
+    {
+      return new HashCodeGenerator (this).append (m_sFingerprint)
+                                         .append (System.identityHashCode (m_aCAChecker))
+                                         .append (m_eCacheOCSPResult)
+                                         .append (m_eCheckMode)
+                                         .getHashCode ();
+    }
+  }
+
+  private final Duration m_aTTL;
+  private final int m_nMaxEntries;
+  private final Map <CacheKey, Long> m_aMap = new ConcurrentHashMap <> ();
+  private final AtomicLong m_aHits = new AtomicLong (0);
+  private final AtomicLong m_aMisses = new AtomicLong (0);
+
+  /**
+   * Constructor with the default settings.
+   */
+  public AS4CertificateCheckResultCache ()
+  {
+    this (DEFAULT_TTL, DEFAULT_MAX_ENTRIES);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param aTTL
+   *        The time to live of a cached check result. May not be <code>null</code> and must be
+   *        positive.
+   * @param nMaxEntries
+   *        The maximum number of cached check results. Must be &gt; 0.
+   */
+  public AS4CertificateCheckResultCache (@Nonnull final Duration aTTL, @Nonnegative final int nMaxEntries)
+  {
+    ValueEnforcer.notNull (aTTL, "TTL");
+    ValueEnforcer.isTrue ( () -> !aTTL.isNegative () && !aTTL.isZero (), "TTL must be positive");
+    ValueEnforcer.isGT0 (nMaxEntries, "MaxEntries");
+    m_aTTL = aTTL;
+    m_nMaxEntries = nMaxEntries;
+  }
+
+  /**
+   * @return The time to live of a cached check result. Never <code>null</code>.
+   */
+  @Nonnull
+  public final Duration getTTL ()
+  {
+    return m_aTTL;
+  }
+
+  /**
+   * @return The maximum number of cached check results. Always &gt; 0.
+   */
+  @Nonnegative
+  public final int getMaxEntries ()
+  {
+    return m_nMaxEntries;
+  }
+
+  @Nullable
+  private static String _getFingerprint (@Nonnull final X509Certificate aCert)
+  {
+    try
+    {
+      final MessageDigest aMD = MessageDigest.getInstance ("SHA-256");
+      return Base64.getEncoder ().encodeToString (aMD.digest (aCert.getEncoded ()));
+    }
+    catch (final NoSuchAlgorithmException | CertificateEncodingException ex)
+    {
+      LOGGER.warn ("Failed to determine the fingerprint of certificate " +
+                   aCert.getSubjectX500Principal ().getName () +
+                   ": " +
+                   ex.getMessage ());
+      return null;
+    }
+  }
+
+  /**
+   * Get the cached result of a previous certificate check.
+   *
+   * @param aCAChecker
+   *        The CA checker used for checking. May not be <code>null</code>.
+   * @param aCert
+   *        The certificate to check. May be <code>null</code>.
+   * @param aCheckDT
+   *        The date and time for which the certificate should be checked. May not be
+   *        <code>null</code>.
+   * @param eCacheOCSPResult
+   *        The OCSP caching flag used for checking. May not be <code>null</code>.
+   * @param eCheckMode
+   *        The revocation check mode used for checking. May be <code>null</code> to indicate the
+   *        global check mode.
+   * @return The cached check result or <code>null</code> if no valid result is cached.
+   */
+  @Nullable
+  public ECertificateCheckResult getCachedResult (@Nonnull final TrustedCAChecker aCAChecker,
+                                                  @Nullable final X509Certificate aCert,
+                                                  @Nonnull final OffsetDateTime aCheckDT,
+                                                  @Nonnull final ETriState eCacheOCSPResult,
+                                                  @Nullable final ERevocationCheckMode eCheckMode)
+  {
+    ValueEnforcer.notNull (aCAChecker, "CAChecker");
+    ValueEnforcer.notNull (aCheckDT, "CheckDT");
+    ValueEnforcer.notNull (eCacheOCSPResult, "CacheOCSPResult");
+
+    if (aCert != null)
+    {
+      // The certificate must be valid at the check date time
+      final Date aCheckDate = Date.from (aCheckDT.toInstant ());
+      if (!aCheckDate.before (aCert.getNotBefore ()) && !aCheckDate.after (aCert.getNotAfter ()))
+      {
+        final String sFingerprint = _getFingerprint (aCert);
+        if (sFingerprint != null)
+        {
+          final CacheKey aKey = new CacheKey (sFingerprint, aCAChecker, eCacheOCSPResult, eCheckMode);
+          final Long aExpiration = m_aMap.get (aKey);
+          if (aExpiration != null)
+          {
+            if (aExpiration.longValue () > System.currentTimeMillis ())
+            {
+              m_aHits.incrementAndGet ();
+              return ECertificateCheckResult.VALID;
+            }
+            // Expired
+            m_aMap.remove (aKey, aExpiration);
+          }
+        }
+      }
+    }
+    m_aMisses.incrementAndGet ();
+    return null;
+  }
+
+  /**
+   * Remember the result of a certificate check. Only valid results are cached.
+   *
+   * @param aCAChecker
+   *        The CA checker used for checking. May not be <code>null</code>.
+   * @param aCert
+   *        The checked certificate. May be <code>null</code>.
+   * @param eCacheOCSPResult
+   *        The OCSP caching flag used for checking. May not be <code>null</code>.
+   * @param eCheckMode
+   *        The revocation check mode used for checking. May be <code>null</code> to indicate the
+   *        global check mode.
+   * @param eCertCheckResult
+   *        The check result. May not be <code>null</code>.
+   */
+  public void putResult (@Nonnull final TrustedCAChecker aCAChecker,
+                         @Nullable final X509Certificate aCert,
+                         @Nonnull final ETriState eCacheOCSPResult,
+                         @Nullable final ERevocationCheckMode eCheckMode,
+                         @Nonnull final ECertificateCheckResult eCertCheckResult)
+  {
+    ValueEnforcer.notNull (aCAChecker, "CAChecker");
+    ValueEnforcer.notNull (eCacheOCSPResult, "CacheOCSPResult");
+    ValueEnforcer.notNull (eCertCheckResult, "CertCheckResult");
+
+    if (aCert == null || !eCertCheckResult.isValid ())
+      return;
+
+    final String sFingerprint = _getFingerprint (aCert);
+    if (sFingerprint == null)
+      return;
+
+    final long nNow = System.currentTimeMillis ();
+    // Never longer than the certificate is valid
+    final long nExpiration = Math.min (nNow + m_aTTL.toMillis (), aCert.getNotAfter ().getTime ());
+    if (nExpiration <= nNow)
+      return;
+
+    if (m_aMap.size () >= m_nMaxEntries)
+    {
+      // Remove all expired entries first
+      m_aMap.values ().removeIf (x -> x.longValue () <= nNow);
+      if (m_aMap.size () >= m_nMaxEntries)
+      {
+        // Still full - start over
+        LOGGER.info ("The AS4 certificate check result cache is full - clearing it");
+        m_aMap.clear ();
+      }
+    }
+    m_aMap.put (new CacheKey (sFingerprint, aCAChecker, eCacheOCSPResult, eCheckMode), Long.valueOf (nExpiration));
+  }
+
+  /**
+   * Remove all cached check results of the provided certificate. Call this e.g. if the certificate
+   * is known to be revoked.
+   *
+   * @param aCert
+   *        The certificate to invalidate. May not be <code>null</code>.
+   */
+  public void invalidate (@Nonnull final X509Certificate aCert)
+  {
+    ValueEnforcer.notNull (aCert, "Cert");
+
+    final String sFingerprint = _getFingerprint (aCert);
+    if (sFingerprint == null)
+      clear ();
+    else
+      m_aMap.keySet ().removeIf (x -> x.m_sFingerprint.equals (sFingerprint));
+  }
+
+  /**
+   * Remove all cached check results. Call this e.g. after a CRL update.
+   */
+  public void clear ()
+  {
+    m_aMap.clear ();
+  }
+
+  /**
+   * @return The number of cached check results, including the expired ones that were not yet
+   *         removed. Always &ge; 0.
+   */
+  @Nonnegative
+  public int size ()
+  {
+    return m_aMap.size ();
+  }
+
+  /**
+   * @return The number of cache hits since creation. Always &ge; 0.
+   */
+  @Nonnegative
+  public long getHitCount ()
+  {
+    return m_aHits.get ();
+  }
+
+  /**
+   * @return The number of cache misses since creation. Always &ge; 0.
+   */
+  @Nonnegative
+  public long getMissCount ()
+  {
+    return m_aMisses.get ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("TTL", m_aTTL)
+                                       .append ("MaxEntries", m_nMaxEntries)
+                                       .append ("Size", m_aMap.size ())
+                                       .append ("Hits", m_aHits.get ())
+                                       .append ("Misses", m_aMisses.get ())
+                                       .getToString ();
+  }
+
+  /**
+   * Check a certificate with the provided CA checker, using the global cache if one is installed.
+   * The cached result is used if present, otherwise the check is performed and the result is put
+   * into the cache.
+   *
+   * @param aCAChecker
+   *        The CA checker to use. May not be <code>null</code>.
+   * @param aCert
+   *        The certificate to check. May be <code>null</code>.
+   * @param aCheckDT
+   *        The date and time for which the certificate should be checked. May not be
+   *        <code>null</code>.
+   * @param eCacheOCSPResult
+   *        The OCSP caching flag to use. May not be <code>null</code>.
+   * @param eCheckMode
+   *        The revocation check mode to use. May be <code>null</code> to indicate the global check
+   *        mode.
+   * @return The check result together with the information whether it was taken from the cache.
+   *         Never <code>null</code>.
+   * @see #getGlobalInstance()
+   */
+  @Nonnull
+  public static CheckResult checkCertificate (@Nonnull final TrustedCAChecker aCAChecker,
+                                              @Nullable final X509Certificate aCert,
+                                              @Nonnull final OffsetDateTime aCheckDT,
+                                              @Nonnull final ETriState eCacheOCSPResult,
+                                              @Nullable final ERevocationCheckMode eCheckMode)
+  {
+    ValueEnforcer.notNull (aCAChecker, "CAChecker");
+
+    // Try the optional cache first
+    final AS4CertificateCheckResultCache aCache = getGlobalInstance ();
+    if (aCache != null)
+    {
+      final ECertificateCheckResult eCachedResult = aCache.getCachedResult (aCAChecker,
+                                                                            aCert,
+                                                                            aCheckDT,
+                                                                            eCacheOCSPResult,
+                                                                            eCheckMode);
+      if (eCachedResult != null)
+        return new CheckResult (eCachedResult, true);
+    }
+
+    final ECertificateCheckResult eResult = aCAChecker.checkCertificate (aCert, aCheckDT, eCacheOCSPResult, eCheckMode);
+    if (aCache != null)
+      aCache.putResult (aCAChecker, aCert, eCacheOCSPResult, eCheckMode, eResult);
+    return new CheckResult (eResult, false);
+  }
+
+  /**
+   * @return The process-wide cache that is used for the AP certificate checks. May be
+   *         <code>null</code>, which is the default.
+   */
+  @Nullable
+  public static AS4CertificateCheckResultCache getGlobalInstance ()
+  {
+    return RW_LOCK.readLockedGet ( () -> s_aGlobalInstance);
+  }
+
+  /**
+   * Set the process-wide cache that is used for the AP certificate checks.
+   *
+   * @param aGlobalInstance
+   *        The cache to use. May be <code>null</code> to disable caching.
+   */
+  public static void setGlobalInstance (@Nullable final AS4CertificateCheckResultCache aGlobalInstance)
+  {
+    RW_LOCK.writeLocked ( () -> s_aGlobalInstance = aGlobalInstance);
+  }
+}
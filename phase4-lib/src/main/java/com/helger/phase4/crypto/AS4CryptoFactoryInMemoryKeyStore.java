@@ -48,7 +48,7 @@ public class AS4CryptoFactoryInMemoryKeyStore extends AbstractAS4CryptoFactory
   private final KeyStore m_aTrustStore;
 
   // Lazy initialized
-  private Merlin m_aCrypto;
+  private volatile Merlin m_aCrypto;
 
   /**
    * Constructor using the key store and trust store descriptors.
@@ -118,6 +118,13 @@ public class AS4CryptoFactoryInMemoryKeyStore extends AbstractAS4CryptoFactory
     return ret;
   }
 
+  @Override
+  public void clearCachedKeyMaterial ()
+  {
+    super.clearCachedKeyMaterial ();
+    m_aCrypto = null;
+  }
+
   @Nonnull
   public final KeyStore getKeyStore ()
   {
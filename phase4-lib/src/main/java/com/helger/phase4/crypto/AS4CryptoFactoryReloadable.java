@@ -0,0 +1,687 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.crypto;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateExpiredException;
+import java.security.cert.CertificateNotYetValidException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.Merlin;
+import org.slf4j.Logger;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.string.StringHelper;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.config.fallback.IConfigWithFallback;
+import com.helger.phase4.logging.Phase4LoggerFactory;
+import com.helger.phase4.util.Phase4RuntimeException;
+import com.helger.security.keystore.IKeyStoreAndKeyDescriptor;
+import com.helger.security.keystore.ITrustStoreDescriptor;
+import com.helger.security.keystore.KeyStoreHelper;
+import com.helger.security.keystore.LoadedKey;
+import com.helger.security.keystore.LoadedKeyStore;
+
+/**
+ * An implementation of {@link IAS4CryptoFactory} that can reload the key store
+ * and the trust store at runtime, e.g. to rotate the AP certificate without a
+ * restart.<br>
+ * All key material is kept in an immutable snapshot that is replaced
+ * atomically. Readers never wait for a reload and always see a consistent
+ * snapshot, so running signing or decryption operations are not affected by a
+ * swap. A new snapshot is only used if the key store and the private key can be
+ * loaded, the certificate is not expired and the trust store (if configured)
+ * can be loaded - otherwise the previous snapshot stays active.<br>
+ * The key store files are checked for modifications at most every
+ * {@link #getCheckInterval()} upon usage. Alternatively {@link #reload()} and
+ * {@link #reloadIfModified()} can be called explicitly.<br>
+ * If the certificate changes, the previous private key is still accepted for
+ * decryption ({@link ECryptoMode#DECRYPT_VERIFY}) for
+ * {@link #getRolloverDuration()}, so that messages that were encrypted by
+ * senders with the old certificate can still be read. Signing and encryption
+ * always use the new key.<br>
+ * Use {@link #getSnapshot()} to get alias, password and crypto of the same key
+ * material for a single operation.
+ *
+ * @author Philip Helger
+ * @since 3.2.3
+ */
+@ThreadSafe
+public class AS4CryptoFactoryReloadable extends AbstractAS4CryptoFactory
+{
+  public static final Duration DEFAULT_CHECK_INTERVAL = Duration.ofMinutes (1);
+  public static final Duration DEFAULT_ROLLOVER_DURATION = Duration.ofDays (1);
+  /** The suffix appended to the alias of the previous key during rollover */
+  public static final String PREVIOUS_KEY_ALIAS_SUFFIX = "-previous";
+
+  private static final Logger LOGGER = Phase4LoggerFactory.getLogger (AS4CryptoFactoryReloadable.class);
+
+  /**
+   * All key material at a certain point in time.
+   */
+  @Immutable
+  private static final class Snapshot implements IAS4CryptoFactory
+  {
+    private final String m_sSourceStamp;
+    private final KeyStore m_aKeyStore;
+    private final String m_sKeyAlias;
+    private final char [] m_aKeyPassword;
+    private final KeyStore.PrivateKeyEntry m_aKeyEntry;
+    private final KeyStore m_aTrustStore;
+    private final Merlin m_aCrypto;
+    // Only set during a rollover
+    private final KeyStore.PrivateKeyEntry m_aPreviousKeyEntry;
+    private final char [] m_aPreviousKeyPassword;
+    private final long m_nPreviousAcceptedUntilMillis;
+    private final Merlin m_aRolloverCrypto;
+
+    Snapshot (@Nullable final String sSourceStamp,
+              @Nonnull final KeyStore aKeyStore,
+              @Nonnull final String sKeyAlias,
+              @Nonnull final char [] aKeyPassword,
+              @Nonnull final KeyStore.PrivateKeyEntry aKeyEntry,
+              @Nullable final KeyStore aTrustStore,
+              @Nonnull final Merlin aCrypto,
+              @Nullable final KeyStore.PrivateKeyEntry aPreviousKeyEntry,
+              @Nullable final char [] aPreviousKeyPassword,
+              final long nPreviousAcceptedUntilMillis,
+              @Nullable final Merlin aRolloverCrypto)
+    {
+      m_sSourceStamp = sSourceStamp;
+      m_aKeyStore = aKeyStore;
+      m_sKeyAlias = sKeyAlias;
+      m_aKeyPassword = aKeyPassword;
+      m_aKeyEntry = aKeyEntry;
+      m_aTrustStore = aTrustStore;
+      m_aCrypto = aCrypto;
+      m_aPreviousKeyEntry = aPreviousKeyEntry;
+      m_aPreviousKeyPassword = aPreviousKeyPassword;
+      m_nPreviousAcceptedUntilMillis = nPreviousAcceptedUntilMillis;
+      m_aRolloverCrypto = aRolloverCrypto;
+    }
+
+    boolean isRolloverActive (final long nNowMillis)
+    {
+      return m_aRolloverCrypto != null && nNowMillis < m_nPreviousAcceptedUntilMillis;
+    }
+
+    @Nonnull
+    public Crypto getCrypto (@Nonnull final ECryptoMode eCryptoMode)
+    {
+      if (eCryptoMode == ECryptoMode.DECRYPT_VERIFY && isRolloverActive (System.currentTimeMillis ()))
+        return m_aRolloverCrypto;
+      return m_aCrypto;
+    }
+
+    @Nonnull
+    public KeyStore getKeyStore ()
+    {
+      return m_aKeyStore;
+    }
+
+    @Nonnull
+    public KeyStore.PrivateKeyEntry getPrivateKeyEntry ()
+    {
+      return m_aKeyEntry;
+    }
+
+    @Nonnull
+    public String getKeyAlias ()
+    {
+      return m_sKeyAlias;
+    }
+
+    @Nullable
+    public char [] getKeyPasswordPerAliasCharArray (@Nullable final String sSearchKeyAlias)
+    {
+      if (sSearchKeyAlias == null)
+        return null;
+
+      // Use case insensitive compare, depends on the keystore type
+      if (m_sKeyAlias.equalsIgnoreCase (sSearchKeyAlias))
+        return m_aKeyPassword;
+      if (m_aPreviousKeyEntry != null && (m_sKeyAlias + PREVIOUS_KEY_ALIAS_SUFFIX).equalsIgnoreCase (sSearchKeyAlias))
+        return m_aPreviousKeyPassword;
+      return null;
+    }
+
+    @Nullable
+    public KeyStore getTrustStore ()
+    {
+      return m_aTrustStore;
+    }
+  }
+
+  private final IKeyStoreAndKeyDescriptor m_aKeyStoreDesc;
+  private final ITrustStoreDescriptor m_aTrustStoreDesc;
+  private final AtomicReference <Snapshot> m_aSnapshot = new AtomicReference <> ();
+  private final AtomicLong m_aNextCheckMillis = new AtomicLong ();
+  // Only one reload at a time - readers don't need it
+  private final Lock m_aReloadLock = new ReentrantLock ();
+  private volatile Duration m_aCheckInterval = DEFAULT_CHECK_INTERVAL;
+  private volatile Duration m_aRolloverDuration = DEFAULT_ROLLOVER_DURATION;
+
+  /**
+   * Constructor. Loads the key material immediately.
+   *
+   * @param aKeyStoreDesc
+   *        The key store descriptor. May not be <code>null</code>.
+   * @param aTrustStoreDesc
+   *        The trust store descriptor. May be <code>null</code> in which case
+   *        the global JRE CA certs list will be used.
+   * @throws Phase4RuntimeException
+   *         If the key material cannot be loaded
+   */
+  public AS4CryptoFactoryReloadable (@Nonnull final IKeyStoreAndKeyDescriptor aKeyStoreDesc,
+                                     @Nullable final ITrustStoreDescriptor aTrustStoreDesc) throws Phase4RuntimeException
+  {
+    ValueEnforcer.notNull (aKeyStoreDesc, "KeyStoreDesc");
+    m_aKeyStoreDesc = aKeyStoreDesc;
+    m_aTrustStoreDesc = aTrustStoreDesc;
+    m_aSnapshot.set (_loadSnapshot (null));
+    m_aNextCheckMillis.set (System.currentTimeMillis () + m_aCheckInterval.toMillis ());
+  }
+
+  /**
+   * Create a new instance from the configuration properties, analogous to
+   * {@link AS4CryptoFactoryConfiguration}.
+   *
+   * @param aConfig
+   *        The configuration object to use. May not be <code>null</code>.
+   * @param sConfigPrefix
+   *        The configuration prefix to use. May neither be <code>null</code>
+   *        nor empty and must end with a dot ('.').
+   * @return The new instance and never <code>null</code>.
+   * @throws Phase4RuntimeException
+   *         If the configuration or the key material is invalid
+   */
+  @Nonnull
+  public static AS4CryptoFactoryReloadable createFromConfig (@Nonnull final IConfigWithFallback aConfig,
+                                                             @Nonnull @Nonempty final String sConfigPrefix) throws Phase4RuntimeException
+  {
+    final IKeyStoreAndKeyDescriptor aKeyStoreDesc = AS4KeyStoreDescriptor.createFromConfig (aConfig,
+                                                                                           sConfigPrefix,
+                                                                                           null);
+    if (aKeyStoreDesc == null)
+      throw new Phase4RuntimeException ("Failed to load the key store configuration from properties starting with '" +
+                                        sConfigPrefix +
+                                        "'");
+    return new AS4CryptoFactoryReloadable (aKeyStoreDesc,
+                                           AS4TrustStoreDescriptor.createFromConfig (aConfig, sConfigPrefix, null));
+  }
+
+  /**
+   * @return The key store descriptor as passed in the constructor. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public final IKeyStoreAndKeyDescriptor getKeyStoreDescriptor ()
+  {
+    return m_aKeyStoreDesc;
+  }
+
+  /**
+   * @return The trust store descriptor as passed in the constructor. May be
+   *         <code>null</code>.
+   */
+  @Nullable
+  public final ITrustStoreDescriptor getTrustStoreDescriptor ()
+  {
+    return m_aTrustStoreDesc;
+  }
+
+  /**
+   * @return The minimum duration between two automatic checks for modified key
+   *         store files. {@link Duration#ZERO} means no automatic checks. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public final Duration getCheckInterval ()
+  {
+    return m_aCheckInterval;
+  }
+
+  /**
+   * @param aCheckInterval
+   *        The minimum duration between two automatic checks for modified key
+   *        store files. Use {@link Duration#ZERO} to disable automatic checks.
+   *        May not be <code>null</code> nor negative.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final AS4CryptoFactoryReloadable setCheckInterval (@Nonnull final Duration aCheckInterval)
+  {
+    ValueEnforcer.notNull (aCheckInterval, "CheckInterval");
+    ValueEnforcer.isFalse (aCheckInterval.isNegative (), "CheckInterval may not be negative");
+    m_aCheckInterval = aCheckInterval;
+    m_aNextCheckMillis.set (System.currentTimeMillis () + aCheckInterval.toMillis ());
+    return this;
+  }
+
+  /**
+   * @return The duration for which the previous private key is still accepted
+   *         for decryption after the certificate changed. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public final Duration getRolloverDuration ()
+  {
+    return m_aRolloverDuration;
+  }
+
+  /**
+   * @param aRolloverDuration
+   *        The duration for which the previous private key is still accepted
+   *        for decryption after the certificate changed. Use
+   *        {@link Duration#ZERO} to disable the acceptance of the previous key.
+   *        Only applies to subsequent reloads. May not be <code>null</code> nor
+   *        negative.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final AS4CryptoFactoryReloadable setRolloverDuration (@Nonnull final Duration aRolloverDuration)
+  {
+    ValueEnforcer.notNull (aRolloverDuration, "RolloverDuration");
+    ValueEnforcer.isFalse (aRolloverDuration.isNegative (), "RolloverDuration may not be negative");
+    m_aRolloverDuration = aRolloverDuration;
+    return this;
+  }
+
+  @Nullable
+  private static File _getLocalFile (@Nullable final String sPath)
+  {
+    if (StringHelper.hasNoText (sPath))
+      return null;
+
+    final File aFile = new File (sPath);
+    if (aFile.isFile ())
+      return aFile;
+
+    // Class path resources can only be watched if they are not inside a JAR
+    final URL aURL = AS4CryptoFactoryReloadable.class.getClassLoader ().getResource (sPath);
+    if (aURL != null && "file".equals (aURL.getProtocol ()))
+      try
+      {
+        return new File (aURL.toURI ());
+      }
+      catch (final URISyntaxException ex)
+      {
+        // Fall through
+      }
+    return null;
+  }
+
+  /**
+   * @return A string that changes if one of the key store files changes or
+   *         <code>null</code> if the key store is not a local file.
+   */
+  @Nullable
+  private String _getSourceStamp ()
+  {
+    final File aKeyStoreFile = _getLocalFile (m_aKeyStoreDesc.getKeyStorePath ());
+    if (aKeyStoreFile == null)
+      return null;
+
+    String ret = aKeyStoreFile.lastModified () + ":" + aKeyStoreFile.length ();
+    if (m_aTrustStoreDesc != null)
+    {
+      final File aTrustStoreFile = _getLocalFile (m_aTrustStoreDesc.getTrustStorePath ());
+      if (aTrustStoreFile != null)
+        ret += ";" + aTrustStoreFile.lastModified () + ":" + aTrustStoreFile.length ();
+    }
+    return ret;
+  }
+
+  @Nonnull
+  private static Merlin _createMerlin (@Nonnull final KeyStore aKeyStore, @Nullable final KeyStore aTrustStore)
+  {
+    // Same as in AS4CryptoFactoryInMemoryKeyStore
+    final Merlin ret = new Merlin (aTrustStore == null, "changeit");
+    ret.setKeyStore (aKeyStore);
+    ret.setTrustStore (aTrustStore);
+    return ret;
+  }
+
+  @Nonnull
+  private static KeyStore _createRolloverKeyStore (@Nonnull final KeyStore aKeyStore,
+                                                   @Nonnull final String sKeyAlias,
+                                                   @Nonnull final char [] aKeyPassword,
+                                                   @Nonnull final KeyStore.PrivateKeyEntry aKeyEntry,
+                                                   @Nonnull final char [] aPreviousKeyPassword,
+                                                   @Nonnull final KeyStore.PrivateKeyEntry aPreviousKeyEntry) throws GeneralSecurityException,
+                                                                                                              IOException
+  {
+    final KeyStore ret = KeyStore.getInstance ("PKCS12");
+    ret.load (null, null);
+    // Keep all trusted certificates of the current key store
+    for (final String sAlias : Collections.list (aKeyStore.aliases ()))
+      if (aKeyStore.isCertificateEntry (sAlias))
+        ret.setCertificateEntry (sAlias, aKeyStore.getCertificate (sAlias));
+    ret.setEntry (sKeyAlias, aKeyEntry, new KeyStore.PasswordProtection (aKeyPassword));
+    ret.setEntry (sKeyAlias + PREVIOUS_KEY_ALIAS_SUFFIX,
+                  aPreviousKeyEntry,
+                  new KeyStore.PasswordProtection (aPreviousKeyPassword));
+    return ret;
+  }
+
+  @Nonnull
+  private Snapshot _loadSnapshot (@Nullable final Snapshot aPrevious) throws Phase4RuntimeException
+  {
+    // Determine before loading, so that a concurrent modification is detected
+    // upon the next check
+    final String sSourceStamp = _getSourceStamp ();
+
+    final LoadedKeyStore aLKS = m_aKeyStoreDesc.loadKeyStore ();
+    final KeyStore aKeyStore = aLKS.getKeyStore ();
+    if (aKeyStore == null)
+      throw new Phase4RuntimeException ("Failed to load the key store '" +
+                                        m_aKeyStoreDesc.getKeyStorePath () +
+                                        "': " +
+                                        aLKS.getErrorText (Locale.ROOT));
+
+    final String sKeyAlias = m_aKeyStoreDesc.getKeyAlias ();
+    final char [] aKeyPassword = m_aKeyStoreDesc.getKeyPassword ();
+    final LoadedKey <KeyStore.PrivateKeyEntry> aLK = KeyStoreHelper.loadPrivateKey (aKeyStore,
+                                                                                    m_aKeyStoreDesc.getKeyStorePath (),
+                                                                                    sKeyAlias,
+                                                                                    aKeyPassword);
+    final KeyStore.PrivateKeyEntry aKeyEntry = aLK.getKeyEntry ();
+    if (aKeyEntry == null)
+      throw new Phase4RuntimeException ("Failed to load the private key '" +
+                                        sKeyAlias +
+                                        "' from the key store '" +
+                                        m_aKeyStoreDesc.getKeyStorePath () +
+                                        "': " +
+                                        aLK.getErrorText (Locale.ROOT));
+
+    final Certificate aCert = aKeyEntry.getCertificate ();
+    if (aCert instanceof X509Certificate)
+      try
+      {
+        ((X509Certificate) aCert).checkValidity ();
+      }
+      catch (final CertificateExpiredException ex)
+      {
+        throw new Phase4RuntimeException ("The certificate of the private key '" + sKeyAlias + "' is expired", ex);
+      }
+      catch (final CertificateNotYetValidException ex)
+      {
+        LOGGER.warn ("The certificate of the private key '" + sKeyAlias + "' is not yet valid");
+      }
+
+    KeyStore aTrustStore = null;
+    if (m_aTrustStoreDesc != null)
+    {
+      final LoadedKeyStore aLTS = m_aTrustStoreDesc.loadTrustStore ();
+      aTrustStore = aLTS.getKeyStore ();
+      if (aTrustStore == null)
+        throw new Phase4RuntimeException ("Failed to load the trust store '" +
+                                          m_aTrustStoreDesc.getTrustStorePath () +
+                                          "': " +
+                                          aLTS.getErrorText (Locale.ROOT));
+    }
+
+    // Keep accepting the previous key for decryption
+    final long nNowMillis = System.currentTimeMillis ();
+    KeyStore.PrivateKeyEntry aPreviousKeyEntry = null;
+    char [] aPreviousKeyPassword = null;
+    long nPreviousAcceptedUntilMillis = 0;
+    if (aPrevious != null)
+    {
+      if (!aPrevious.m_aKeyEntry.getCertificate ().equals (aCert))
+      {
+        final Duration aRolloverDuration = m_aRolloverDuration;
+        if (!aRolloverDuration.isZero ())
+        {
+          aPreviousKeyEntry = aPrevious.m_aKeyEntry;
+          aPreviousKeyPassword = aPrevious.m_aKeyPassword;
+          nPreviousAcceptedUntilMillis = nNowMillis + aRolloverDuration.toMillis ();
+        }
+      }
+      else
+        if (aPrevious.isRolloverActive (nNowMillis))
+        {
+          // Same certificate - keep the running rollover
+          aPreviousKeyEntry = aPrevious.m_aPreviousKeyEntry;
+          aPreviousKeyPassword = aPrevious.m_aPreviousKeyPassword;
+          nPreviousAcceptedUntilMillis = aPrevious.m_nPreviousAcceptedUntilMillis;
+        }
+    }
+
+    Merlin aRolloverCrypto = null;
+    if (aPreviousKeyEntry != null)
+      try
+      {
+        aRolloverCrypto = _createMerlin (_createRolloverKeyStore (aKeyStore,
+                                                                  sKeyAlias,
+                                                                  aKeyPassword,
+                                                                  aKeyEntry,
+                                                                  aPreviousKeyPassword,
+                                                                  aPreviousKeyEntry),
+                                         aTrustStore);
+      }
+      catch (final GeneralSecurityException | IOException ex)
+      {
+        LOGGER.error ("Failed to create the rollover key store - the previous private key is no longer accepted", ex);
+        aPreviousKeyEntry = null;
+        aPreviousKeyPassword = null;
+      }
+
+    return new Snapshot (sSourceStamp,
+                         aKeyStore,
+                         sKeyAlias,
+                         aKeyPassword,
+                         aKeyEntry,
+                         aTrustStore,
+                         _createMerlin (aKeyStore, aTrustStore),
+                         aPreviousKeyEntry,
+                         aPreviousKeyPassword,
+                         nPreviousAcceptedUntilMillis,
+                         aRolloverCrypto);
+  }
+
+  /**
+   * Load the key material again and activate it, if it is valid. If the new key
+   * material is invalid, the previous key material stays active.
+   *
+   * @return <code>true</code> if the new key material was activated,
+   *         <code>false</code> if not.
+   */
+  public final boolean reload ()
+  {
+    m_aReloadLock.lock ();
+    try
+    {
+      final Snapshot aOld = m_aSnapshot.get ();
+      final Snapshot aNew;
+      try
+      {
+        aNew = _loadSnapshot (aOld);
+      }
+      catch (final Phase4RuntimeException ex)
+      {
+        LOGGER.error ("Failed to reload the crypto key material - keeping the previous one: " + ex.getMessage ());
+        return false;
+      }
+
+      m_aSnapshot.set (aNew);
+      if (aNew.m_aPreviousKeyEntry != null && aOld.m_aPreviousKeyEntry != aNew.m_aPreviousKeyEntry)
+        LOGGER.info ("Activated new crypto key material. The previous private key is accepted for decryption for " +
+                     m_aRolloverDuration);
+      else
+        LOGGER.info ("Activated reloaded crypto key material");
+      return true;
+    }
+    finally
+    {
+      m_aReloadLock.unlock ();
+    }
+  }
+
+  /**
+   * Reload the key material, if the key store or the trust store file was
+   * modified since the last load. Key stores that are not local files (e.g.
+   * inside a JAR) are never considered modified.
+   *
+   * @return <code>true</code> if new key material was activated,
+   *         <code>false</code> if not.
+   * @see #reload()
+   */
+  public final boolean reloadIfModified ()
+  {
+    final String sSourceStamp = _getSourceStamp ();
+    if (sSourceStamp == null || sSourceStamp.equals (m_aSnapshot.get ().m_sSourceStamp))
+      return false;
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("The crypto key material was modified");
+    return reload ();
+  }
+
+  private void _checkForReload ()
+  {
+    final Duration aCheckInterval = m_aCheckInterval;
+    if (aCheckInterval.isZero ())
+      return;
+
+    final long nNowMillis = System.currentTimeMillis ();
+    final long nNextCheckMillis = m_aNextCheckMillis.get ();
+    // Only one thread performs the check, all others go on with the current
+    // snapshot
+    if (nNowMillis >= nNextCheckMillis &&
+        m_aNextCheckMillis.compareAndSet (nNextCheckMillis, nNowMillis + aCheckInterval.toMillis ()))
+      reloadIfModified ();
+  }
+
+  /**
+   * @return <code>true</code> if the previous private key is currently still
+   *         accepted for decryption, <code>false</code> if not.
+   */
+  public final boolean isRolloverActive ()
+  {
+    return m_aSnapshot.get ().isRolloverActive (System.currentTimeMillis ());
+  }
+
+  /**
+   * @return The certificate of the previous private key, if it is currently
+   *         still accepted for decryption. <code>null</code> otherwise.
+   */
+  @Nullable
+  public final X509Certificate getPreviousCertificate ()
+  {
+    final Snapshot aSnapshot = m_aSnapshot.get ();
+    if (!aSnapshot.isRolloverActive (System.currentTimeMillis ()))
+      return null;
+    final Certificate ret = aSnapshot.m_aPreviousKeyEntry.getCertificate ();
+    return ret instanceof X509Certificate ? (X509Certificate) ret : null;
+  }
+
+  /**
+   * {@inheritDoc} In addition the key material is reloaded.
+   */
+  @Override
+  public void clearCachedKeyMaterial ()
+  {
+    super.clearCachedKeyMaterial ();
+    reload ();
+  }
+
+  /**
+   * {@inheritDoc} The returned object is an immutable view on the currently
+   * active key material and is not affected by subsequent reloads.
+   */
+  @Override
+  @Nonnull
+  public IAS4CryptoFactory getSnapshot ()
+  {
+    _checkForReload ();
+
+    return m_aSnapshot.get ();
+  }
+
+  @Nonnull
+  public Crypto getCrypto (@Nonnull final ECryptoMode eCryptoMode)
+  {
+    _checkForReload ();
+
+    return m_aSnapshot.get ().getCrypto (eCryptoMode);
+  }
+
+  @Nonnull
+  public final KeyStore getKeyStore ()
+  {
+    return m_aSnapshot.get ().m_aKeyStore;
+  }
+
+  @Override
+  @Nonnull
+  public KeyStore.PrivateKeyEntry getPrivateKeyEntry ()
+  {
+    _checkForReload ();
+
+    // Already resolved in the snapshot
+    return m_aSnapshot.get ().m_aKeyEntry;
+  }
+
+  @Nonnull
+  public final String getKeyAlias ()
+  {
+    return m_aSnapshot.get ().m_sKeyAlias;
+  }
+
+  @Nullable
+  public char [] getKeyPasswordPerAliasCharArray (@Nullable final String sSearchKeyAlias)
+  {
+    return m_aSnapshot.get ().getKeyPasswordPerAliasCharArray (sSearchKeyAlias);
+  }
+
+  @Nullable
+  public final KeyStore getTrustStore ()
+  {
+    return m_aSnapshot.get ().m_aTrustStore;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("KeyStoreDesc", m_aKeyStoreDesc)
+                                       .append ("TrustStoreDesc", m_aTrustStoreDesc)
+                                       .append ("CheckInterval", m_aCheckInterval)
+                                       .append ("RolloverDuration", m_aRolloverDuration)
+                                       .getToString ();
+  }
+}
@@ -0,0 +1,419 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.crypto;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.apache.wss4j.common.crypto.Crypto;
+import org.slf4j.Logger;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.hashcode.HashCodeGenerator;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.phase4.logging.Phase4LoggerFactory;
+
+/**
+ * A cache for the results of successful certificate trust path validations of
+ * incoming signed messages. Most of the traffic usually comes from a small
+ * number of senders, so the expensive trust path validation (including CRL or
+ * OCSP checks if revocation checking is enabled) does not need to be repeated
+ * for every message. The signature itself is still verified for every message.
+ * <br>
+ * The cache key consists of the fingerprints of the complete certificate chain,
+ * the revocation flag, the subject and issuer constraints and the identity of
+ * the trust store {@link Crypto}. Only successful validations are cached.
+ * Entries expire after the TTL, after the shorter revocation TTL if revocation
+ * checking was enabled, and at the latest when a certificate of the chain
+ * expires. If a certificate is known to be revoked, it can be removed via
+ * {@link #invalidate(X509Certificate)}.
+ *
+ * @author Philip Helger
+ * @since 3.2.3
+ * @see AS4CachingSignatureTrustValidator
+ */
+@ThreadSafe
+public class AS4TrustValidationCache
+{
+  public static final Duration DEFAULT_TTL = Duration.ofHours (1);
+  public static final Duration DEFAULT_REVOCATION_TTL = Duration.ofMinutes (10);
+  public static final int DEFAULT_MAX_ENTRIES = 1_000;
+
+  private static final Logger LOGGER = Phase4LoggerFactory.getLogger (AS4TrustValidationCache.class);
+
+  private static final class CacheKey
+  {
+    private final String m_sFingerprints;
+    private final boolean m_bEnableRevocation;
+    private final String m_sConstraints;
+    private final Crypto m_aCrypto;
+
+    CacheKey (@Nonnull final String sFingerprints,
+              final boolean bEnableRevocation,
+              @Nonnull final String sConstraints,
+              @Nonnull final Crypto aCrypto)
+    {
+      m_sFingerprints = sFingerprints;
+      m_bEnableRevocation = bEnableRevocation;
+      m_sConstraints = sConstraints;
+      m_aCrypto = aCrypto;
+    }
+
+    boolean containsFingerprint (@Nonnull final String sFingerprint)
+    {
+      for (final String s : m_sFingerprints.split (","))
+        if (s.equals (sFingerprint))
+          return true;
+      return false;
+    }
+
+    @Override
+    public boolean equals (final Object o)
+    {
+      if (o == this)
+        return true;
+      if (o == null || !getClass ().equals (o.getClass ()))
+        return false;
+      final CacheKey rhs = (CacheKey) o;
+      // Identity of the Crypto on purpose - a reloaded trust store is a new
+      // object
+      return m_sFingerprints.equals (rhs.m_sFingerprints) &&
+             m_bEnableRevocation == rhs.m_bEnableRevocation &&
+             m_sConstraints.equals (rhs.m_sConstraints) &&
+             m_aCrypto == rhs.m_aCrypto;
+    }
+
+    @Override
+    public int hashCode ()
+    {
+      return new HashCodeGenerator (this).append (m_sFingerprints)
+                                         .append (m_bEnableRevocation)
+                                         .append (m_sConstraints)
+                                         .append (System.identityHashCode (m_aCrypto))
+                                         .getHashCode ();
+    }
+  }
+
+  private final Duration m_aTTL;
+  private final Duration m_aRevocationTTL;
+  private final int m_nMaxEntries;
+  private final Map <CacheKey, Long> m_aMap = new ConcurrentHashMap <> ();
+  private final AtomicLong m_aHits = new AtomicLong (0);
+  private final AtomicLong m_aMisses = new AtomicLong (0);
+
+  /**
+   * Constructor with the default settings.
+   */
+  public AS4TrustValidationCache ()
+  {
+    this (DEFAULT_TTL, DEFAULT_REVOCATION_TTL, DEFAULT_MAX_ENTRIES);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param aTTL
+   *        The time to live of a cached validation result. May not be
+   *        <code>null</code> and must be positive.
+   * @param aRevocationTTL
+   *        The time to live of a cached validation result that included a
+   *        revocation check. May not be <code>null</code> and must be positive.
+   *        The effective value is never longer than the TTL.
+   * @param nMaxEntries
+   *        The maximum number of cached validation results. Must be &gt; 0.
+   */
+  public AS4TrustValidationCache (@Nonnull final Duration aTTL,
+                                  @Nonnull final Duration aRevocationTTL,
+                                  @Nonnegative final int nMaxEntries)
+  {
+    ValueEnforcer.notNull (aTTL, "TTL");
+    ValueEnforcer.isTrue ( () -> !aTTL.isNegative () && !aTTL.isZero (), "TTL must be positive");
+    ValueEnforcer.notNull (aRevocationTTL, "RevocationTTL");
+    ValueEnforcer.isTrue ( () -> !aRevocationTTL.isNegative () && !aRevocationTTL.isZero (),
+                           "RevocationTTL must be positive");
+    ValueEnforcer.isGT0 (nMaxEntries, "MaxEntries");
+    m_aTTL = aTTL;
+    m_aRevocationTTL = aRevocationTTL.compareTo (aTTL) < 0 ? aRevocationTTL : aTTL;
+    m_nMaxEntries = nMaxEntries;
+  }
+
+  /**
+   * @return The time to live of a cached validation result. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public final Duration getTTL ()
+  {
+    return m_aTTL;
+  }
+
+  /**
+   * @return The time to live of a cached validation result that included a
+   *         revocation check. Never <code>null</code>.
+   */
+  @Nonnull
+  public final Duration getRevocationTTL ()
+  {
+    return m_aRevocationTTL;
+  }
+
+  /**
+   * @return The maximum number of cached validation results. Always &gt; 0.
+   */
+  @Nonnegative
+  public final int getMaxEntries ()
+  {
+    return m_nMaxEntries;
+  }
+
+  @Nullable
+  private static String _getFingerprint (@Nonnull final X509Certificate aCert)
+  {
+    try
+    {
+      final MessageDigest aMD = MessageDigest.getInstance ("SHA-256");
+      return Base64.getEncoder ().encodeToString (aMD.digest (aCert.getEncoded ()));
+    }
+    catch (final NoSuchAlgorithmException | CertificateEncodingException ex)
+    {
+      LOGGER.warn ("Failed to determine the fingerprint of certificate " +
+                   aCert.getSubjectX500Principal ().getName () +
+                   ": " +
+                   ex.getMessage ());
+      return null;
+    }
+  }
+
+  private static void _appendPatterns (@Nonnull final StringBuilder aSB,
+                                       @Nullable final Collection <Pattern> aPatterns)
+  {
+    aSB.append ('[');
+    if (aPatterns != null)
+      for (final Pattern aPattern : aPatterns)
+        aSB.append (aPattern.pattern ()).append ('\n');
+    aSB.append (']');
+  }
+
+  @Nullable
+  private static CacheKey _createKey (@Nonnull final X509Certificate [] aCerts,
+                                      @Nonnull final Crypto aCrypto,
+                                      final boolean bEnableRevocation,
+                                      @Nullable final Collection <Pattern> aSubjectCertConstraints,
+                                      @Nullable final Collection <Pattern> aIssuerCertConstraints)
+  {
+    final StringBuilder aFingerprints = new StringBuilder ();
+    for (final X509Certificate aCert : aCerts)
+    {
+      final String sFingerprint = _getFingerprint (aCert);
+      if (sFingerprint == null)
+        return null;
+      if (aFingerprints.length () > 0)
+        aFingerprints.append (',');
+      aFingerprints.append (sFingerprint);
+    }
+
+    final StringBuilder aConstraints = new StringBuilder ();
+    _appendPatterns (aConstraints, aSubjectCertConstraints);
+    _appendPatterns (aConstraints, aIssuerCertConstraints);
+    return new CacheKey (aFingerprints.toString (), bEnableRevocation, aConstraints.toString (), aCrypto);
+  }
+
+  /**
+   * Check if a successful trust validation of the provided certificate chain is
+   * cached.
+   *
+   * @param aCerts
+   *        The certificate chain to check. May neither be <code>null</code> nor
+   *        empty.
+   * @param aCrypto
+   *        The trust store used for validation. May not be <code>null</code>.
+   * @param bEnableRevocation
+   *        <code>true</code> if revocation checking is enabled.
+   * @param aSubjectCertConstraints
+   *        The subject certificate constraints. May be <code>null</code>.
+   * @param aIssuerCertConstraints
+   *        The issuer certificate constraints. May be <code>null</code>.
+   * @return <code>true</code> if the chain was successfully validated before
+   *         and the result is not yet expired.
+   */
+  public boolean isTrustCached (@Nonnull final X509Certificate [] aCerts,
+                                @Nonnull final Crypto aCrypto,
+                                final boolean bEnableRevocation,
+                                @Nullable final Collection <Pattern> aSubjectCertConstraints,
+                                @Nullable final Collection <Pattern> aIssuerCertConstraints)
+  {
+    ValueEnforcer.notEmptyNoNullValue (aCerts, "Certs");
+    ValueEnforcer.notNull (aCrypto, "Crypto");
+
+    final CacheKey aKey = _createKey (aCerts,
+                                      aCrypto,
+                                      bEnableRevocation,
+                                      aSubjectCertConstraints,
+                                      aIssuerCertConstraints);
+    if (aKey != null)
+    {
+      final Long aExpiration = m_aMap.get (aKey);
+      if (aExpiration != null)
+      {
+        if (aExpiration.longValue () > System.currentTimeMillis ())
+        {
+          m_aHits.incrementAndGet ();
+          return true;
+        }
+        // Expired
+        m_aMap.remove (aKey, aExpiration);
+      }
+    }
+    m_aMisses.incrementAndGet ();
+    return false;
+  }
+
+  /**
+   * Remember a successful trust validation of the provided certificate chain.
+   *
+   * @param aCerts
+   *        The certificate chain that was validated. May neither be
+   *        <code>null</code> nor empty.
+   * @param aCrypto
+   *        The trust store used for validation. May not be <code>null</code>.
+   * @param bEnableRevocation
+   *        <code>true</code> if revocation checking was enabled.
+   * @param aSubjectCertConstraints
+   *        The subject certificate constraints. May be <code>null</code>.
+   * @param aIssuerCertConstraints
+   *        The issuer certificate constraints. May be <code>null</code>.
+   */
+  public void putTrusted (@Nonnull final X509Certificate [] aCerts,
+                          @Nonnull final Crypto aCrypto,
+                          final boolean bEnableRevocation,
+                          @Nullable final Collection <Pattern> aSubjectCertConstraints,
+                          @Nullable final Collection <Pattern> aIssuerCertConstraints)
+  {
+    ValueEnforcer.notEmptyNoNullValue (aCerts, "Certs");
+    ValueEnforcer.notNull (aCrypto, "Crypto");
+
+    final CacheKey aKey = _createKey (aCerts,
+                                      aCrypto,
+                                      bEnableRevocation,
+                                      aSubjectCertConstraints,
+                                      aIssuerCertConstraints);
+    if (aKey == null)
+      return;
+
+    final long nNow = System.currentTimeMillis ();
+    long nExpiration = nNow + (bEnableRevocation ? m_aRevocationTTL : m_aTTL).toMillis ();
+    // Never longer than any certificate of the chain is valid
+    for (final X509Certificate aCert : aCerts)
+      nExpiration = Math.min (nExpiration, aCert.getNotAfter ().getTime ());
+    if (nExpiration <= nNow)
+      return;
+
+    if (m_aMap.size () >= m_nMaxEntries)
+    {
+      // Remove all expired entries first
+      m_aMap.values ().removeIf (x -> x.longValue () <= nNow);
+      if (m_aMap.size () >= m_nMaxEntries)
+      {
+        // Still full - start over
+        LOGGER.info ("The AS4 trust validation cache is full - clearing it");
+        m_aMap.clear ();
+      }
+    }
+    m_aMap.put (aKey, Long.valueOf (nExpiration));
+  }
+
+  /**
+   * Remove all cached validation results for certificate chains that contain
+   * the provided certificate. Call this e.g. if the certificate is known to be
+   * revoked.
+   *
+   * @param aCert
+   *        The certificate to invalidate. May not be <code>null</code>.
+   */
+  public void invalidate (@Nonnull final X509Certificate aCert)
+  {
+    ValueEnforcer.notNull (aCert, "Cert");
+
+    final String sFingerprint = _getFingerprint (aCert);
+    if (sFingerprint == null)
+      clear ();
+    else
+      m_aMap.keySet ().removeIf (x -> x.containsFingerprint (sFingerprint));
+  }
+
+  /**
+   * Remove all cached validation results. Call this e.g. after a CRL update.
+   */
+  public void clear ()
+  {
+    m_aMap.clear ();
+  }
+
+  /**
+   * @return The number of cached validation results, including the expired
+   *         ones that were not yet removed. Always &ge; 0.
+   */
+  @Nonnegative
+  public int size ()
+  {
+    return m_aMap.size ();
+  }
+
+  /**
+   * @return The number of cache hits since creation. Always &ge; 0.
+   */
+  @Nonnegative
+  public long getHitCount ()
+  {
+    return m_aHits.get ();
+  }
+
+  /**
+   * @return The number of cache misses since creation. Always &ge; 0.
+   */
+  @Nonnegative
+  public long getMissCount ()
+  {
+    return m_aMisses.get ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("TTL", m_aTTL)
+                                       .append ("RevocationTTL", m_aRevocationTTL)
+                                       .append ("MaxEntries", m_nMaxEntries)
+                                       .append ("Size", m_aMap.size ())
+                                       .append ("Hits", m_aHits.get ())
+                                       .append ("Misses", m_aMisses.get ())
+                                       .getToString ();
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.crypto;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.engine.WSSConfig;
+import org.apache.wss4j.dom.handler.RequestData;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * An {@link IAS4DecryptParameterModifier} that installs an
+ * {@link AS4CachingSignatureTrustValidator} for the signature verification of
+ * incoming messages. It can be set via
+ * <code>AS4IncomingSecurityConfiguration.setDecryptParameterModifier</code>.
+ * An optional delegate modifier is invoked afterwards, so that existing
+ * customizations can be retained.
+ *
+ * @author Philip Helger
+ * @since 3.2.3
+ */
+public class AS4TrustValidationCachingDecryptParameterModifier implements IAS4DecryptParameterModifier
+{
+  private final AS4CachingSignatureTrustValidator m_aValidator;
+  private final IAS4DecryptParameterModifier m_aDelegate;
+
+  public AS4TrustValidationCachingDecryptParameterModifier (@Nonnull final AS4TrustValidationCache aCache,
+                                                            @Nullable final IAS4DecryptParameterModifier aDelegate)
+  {
+    ValueEnforcer.notNull (aCache, "Cache");
+    m_aValidator = new AS4CachingSignatureTrustValidator (aCache);
+    m_aDelegate = aDelegate;
+  }
+
+  /**
+   * @return The cache as provided in the constructor. Never <code>null</code>.
+   */
+  @Nonnull
+  public final AS4TrustValidationCache getCache ()
+  {
+    return m_aValidator.getCache ();
+  }
+
+  /**
+   * @return The delegate modifier as provided in the constructor. May be
+   *         <code>null</code>.
+   */
+  @Nullable
+  public final IAS4DecryptParameterModifier getDelegate ()
+  {
+    return m_aDelegate;
+  }
+
+  @Override
+  public void modifyWSSConfig (@Nonnull final WSSConfig aWSSConfig)
+  {
+    aWSSConfig.setValidator (WSConstants.SIGNATURE, m_aValidator);
+    if (m_aDelegate != null)
+      m_aDelegate.modifyWSSConfig (aWSSConfig);
+  }
+
+  @Override
+  public void modifyRequestData (@Nonnull final RequestData aRequestData)
+  {
+    if (m_aDelegate != null)
+      m_aDelegate.modifyRequestData (aRequestData);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (this).append ("Validator", m_aValidator)
+                                       .append ("Delegate", m_aDelegate)
+                                       .getToString ();
+  }
+}
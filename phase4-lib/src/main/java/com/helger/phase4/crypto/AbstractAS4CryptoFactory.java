@@ -19,28 +19,75 @@ package com.helger.phase4.crypto;
 import java.security.KeyStore;
 import java.security.cert.X509Certificate;
 
+import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import com.helger.commons.equals.EqualsHelper;
 import com.helger.security.keystore.KeyStoreHelper;
 
 /**
- * Abstract implementation of {@link IAS4CryptoFactory}.
+ * Abstract implementation of {@link IAS4CryptoFactory}.<br>
+ * The resolved private key entry is cached, as long as the key store object
+ * and the key alias do not change. Use {@link #clearCachedKeyMaterial()} to
+ * explicitly refresh the cached data, e.g. after the content of the key store
+ * object was modified.
  *
  * @author Philip Helger
  * @since 2.6.0
  */
 public abstract class AbstractAS4CryptoFactory implements IAS4CryptoFactory
 {
+  /**
+   * A resolved private key entry together with the data it was resolved from.
+   */
+  private static final class CachedKeyEntry
+  {
+    private final KeyStore m_aKeyStore;
+    private final String m_sKeyAlias;
+    private final KeyStore.PrivateKeyEntry m_aKeyEntry;
+
+    CachedKeyEntry (@Nonnull final KeyStore aKeyStore,
+                    @Nullable final String sKeyAlias,
+                    @Nonnull final KeyStore.PrivateKeyEntry aKeyEntry)
+    {
+      m_aKeyStore = aKeyStore;
+      m_sKeyAlias = sKeyAlias;
+      m_aKeyEntry = aKeyEntry;
+    }
+
+    boolean isResolvedFrom (@Nonnull final KeyStore aKeyStore, @Nullable final String sKeyAlias)
+    {
+      // Identity check for the key store on purpose
+      return m_aKeyStore == aKeyStore && EqualsHelper.equals (m_sKeyAlias, sKeyAlias);
+    }
+  }
+
+  private volatile CachedKeyEntry m_aCachedKeyEntry;
+
   protected AbstractAS4CryptoFactory ()
   {}
 
+  /**
+   * Clear all cached key material, so that it is resolved again from the key
+   * store upon the next usage. Subclasses that cache additional data (like the
+   * WSS4J {@link org.apache.wss4j.common.crypto.Crypto} instance) must
+   * override this method and call the super implementation.
+   *
+   * @since 3.2.3
+   */
+  public void clearCachedKeyMaterial ()
+  {
+    m_aCachedKeyEntry = null;
+  }
+
   /**
    * @return The underlying private key entry from the keystore or
    *         <code>null</code> if none is available (the reasons depend on the
-   *         used implementation).
+   *         used implementation). The resolved entry is cached.
    * @see #getKeyStore()
    * @see #getKeyAlias()
    * @see #getKeyPasswordPerAlias(String)
+   * @see #clearCachedKeyMaterial()
    */
   @Nullable
   public KeyStore.PrivateKeyEntry getPrivateKeyEntry ()
@@ -50,9 +97,20 @@ public abstract class AbstractAS4CryptoFactory implements IAS4CryptoFactory
       return null;
 
     final String sKeyAlias = getKeyAlias ();
+    final CachedKeyEntry aCached = m_aCachedKeyEntry;
+    if (aCached != null && aCached.isResolvedFrom (aKeyStore, sKeyAlias))
+      return aCached.m_aKeyEntry;
+
     final char [] aKeyPassword = getKeyPasswordPerAliasCharArray (sKeyAlias);
-    return KeyStoreHelper.loadPrivateKey (aKeyStore, "phase4 CryptoFactory KeyStore", sKeyAlias, aKeyPassword)
-                         .getKeyEntry ();
+    final KeyStore.PrivateKeyEntry ret = KeyStoreHelper.loadPrivateKey (aKeyStore,
+                                                                        "phase4 CryptoFactory KeyStore",
+                                                                        sKeyAlias,
+                                                                        aKeyPassword)
+                                                       .getKeyEntry ();
+    // Only remember successful resolutions
+    if (ret != null)
+      m_aCachedKeyEntry = new CachedKeyEntry (aKeyStore, sKeyAlias, ret);
+    return ret;
   }
 
   /**
@@ -103,4 +103,20 @@ public interface IAS4CryptoFactory
   @Nullable
   KeyStore getTrustStore ();
 
+  /**
+   * Get a crypto factory that returns matching values for the crypto, the key
+   * alias and the key password. Implementations that can swap their key
+   * material at runtime must return an immutable view on the currently active
+   * key material, so that a single operation never mixes old and new values.
+   *
+   * @return The crypto factory to be used for a single operation. Never
+   *         <code>null</code>. By default <code>this</code> is returned.
+   * @since 3.2.3
+   */
+  @Nonnull
+  default IAS4CryptoFactory getSnapshot ()
+  {
+    return this;
+  }
+
 }
@@ -0,0 +1,781 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.duplicate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.WillNotClose;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.io.file.FileHelper;
+import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.commons.state.EChange;
+import com.helger.commons.state.EContinue;
+import com.helger.commons.string.StringHelper;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.phase4.logging.Phase4LoggerFactory;
+
+/**
+ * A duplicate manager for high message volumes. Compared to
+ * {@link AS4DuplicateManagerXML} it has the following properties:
+ * <ul>
+ * <li>The message ID index is a {@link ConcurrentHashMap}, so that
+ * {@link #registerAndCheck(String, String, String)} and
+ * {@link #getItemOfMessageID(String)} don't need a global write lock and
+ * don't scan all entries.</li>
+ * <li>All entries are additionally grouped into time buckets, so that
+ * {@link #evictAllItemsBefore(OffsetDateTime)} only needs to touch the evicted
+ * buckets and the single bucket containing the reference date time.</li>
+ * <li>Persistence happens in an append-only binary log file. Each registration
+ * and each removal appends a single record, evictions and clearances append a
+ * single marker record. Records of concurrent registrations are written and flushed
+ * together. The log is replayed on startup and compacted on startup and after
+ * evictions, if it contains much more records than entries. Compaction writes
+ * a new log file in the background and only swaps the files at the end, so
+ * that registrations are not blocked while the entries are written.</li>
+ * </ul>
+ * If no log file is provided, the manager works in-memory only.
+ *
+ * @author Philip Helger
+ * @since 3.2.3
+ */
+@ThreadSafe
+public class AS4DuplicateManagerAppendLog implements IAS4DuplicateManager, Closeable
+{
+  public static final Duration DEFAULT_BUCKET_DURATION = Duration.ofMinutes (1);
+
+  private static final Logger LOGGER = Phase4LoggerFactory.getLogger (AS4DuplicateManagerAppendLog.class);
+
+  // "P4DL"
+  private static final int LOG_MAGIC = 0x5034444c;
+  private static final int LOG_VERSION = 1;
+  private static final byte RECORD_REGISTER = 'R';
+  private static final byte RECORD_EVICT = 'E';
+  private static final byte RECORD_CLEAR = 'C';
+  private static final byte RECORD_REMOVE = 'D';
+  // Compact the log, if it contains more than this factor times the records
+  // than entries
+  private static final int COMPACTION_FACTOR = 2;
+  private static final int COMPACTION_MIN_RECORDS = 10_000;
+
+  private final File m_aLogFile;
+  private final long m_nBucketMillis;
+  // Registration happens in the read lock, structural modifications in the
+  // write lock
+  private final SimpleReadWriteLock m_aRWLock = new SimpleReadWriteLock ();
+  private final Map <String, AS4DuplicateItem> m_aMap = new ConcurrentHashMap <> ();
+  private final NavigableMap <Long, Set <String>> m_aBuckets = new ConcurrentSkipListMap <> ();
+  // Serialized records that are not yet written to the log
+  private final ConcurrentLinkedQueue <byte []> m_aPendingRecords = new ConcurrentLinkedQueue <> ();
+  private final Lock m_aLogLock = new ReentrantLock ();
+  @GuardedBy ("m_aLogLock")
+  private DataOutputStream m_aLogOS;
+  @GuardedBy ("m_aLogLock")
+  private long m_nLogRecords;
+  // Records written while a compaction is running - null if no compaction is
+  // running
+  @GuardedBy ("m_aLogLock")
+  private ICommonsList <byte []> m_aCompactionBacklog;
+  @GuardedBy ("m_aLogLock")
+  private boolean m_bClosed;
+
+  /**
+   * Constructor with the default bucket duration.
+   *
+   * @param aLogFile
+   *        The append-only log file to use. May be <code>null</code> to not
+   *        persist anything.
+   * @throws IOException
+   *         If the log file cannot be read or written
+   */
+  public AS4DuplicateManagerAppendLog (@Nullable final File aLogFile) throws IOException
+  {
+    this (aLogFile, DEFAULT_BUCKET_DURATION);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param aLogFile
+   *        The append-only log file to use. May be <code>null</code> to not
+   *        persist anything.
+   * @param aBucketDuration
+   *        The time span of a single eviction bucket. May not be
+   *        <code>null</code> and must be at least 1 millisecond.
+   * @throws IOException
+   *         If the log file cannot be read or written
+   */
+  public AS4DuplicateManagerAppendLog (@Nullable final File aLogFile,
+                                       @Nonnull final Duration aBucketDuration) throws IOException
+  {
+    ValueEnforcer.notNull (aBucketDuration, "BucketDuration");
+    ValueEnforcer.isTrue ( () -> aBucketDuration.toMillis () > 0, "BucketDuration must be at least 1 millisecond");
+    m_aLogFile = aLogFile;
+    m_nBucketMillis = aBucketDuration.toMillis ();
+
+    if (aLogFile != null)
+    {
+      if (aLogFile.exists ())
+        _replayLog (aLogFile);
+
+      // Compact directly, so that an incomplete trailing record from a crash
+      // is removed as well
+      if (!_compactLog (true))
+        throw new IOException ("Failed to compact the duplicate manager log file '" +
+                               aLogFile.getAbsolutePath () +
+                               "'");
+    }
+  }
+
+  /**
+   * @return The log file used. May be <code>null</code> if the manager works
+   *         in-memory only.
+   */
+  @Nullable
+  public final File getLogFile ()
+  {
+    return m_aLogFile;
+  }
+
+  private long _getBucketKey (@Nonnull final OffsetDateTime aDT)
+  {
+    return Math.floorDiv (aDT.toInstant ().toEpochMilli (), m_nBucketMillis);
+  }
+
+  private static void _writeString (@Nonnull final DataOutputStream aDOS, @Nullable final String s) throws IOException
+  {
+    if (s == null)
+      aDOS.writeInt (-1);
+    else
+    {
+      final byte [] aBytes = s.getBytes (StandardCharsets.UTF_8);
+      aDOS.writeInt (aBytes.length);
+      aDOS.write (aBytes);
+    }
+  }
+
+  @Nullable
+  private static String _readString (@Nonnull final DataInputStream aDIS) throws IOException
+  {
+    final int nLength = aDIS.readInt ();
+    if (nLength < 0)
+      return null;
+    final byte [] aBytes = new byte [nLength];
+    aDIS.readFully (aBytes);
+    return new String (aBytes, StandardCharsets.UTF_8);
+  }
+
+  private static void _writeRegisterRecord (@Nonnull final DataOutputStream aDOS,
+                                            @Nonnull final AS4DuplicateItem aItem) throws IOException
+  {
+    final OffsetDateTime aDT = aItem.getDateTime ();
+    final Instant aInstant = aDT.toInstant ();
+    aDOS.writeByte (RECORD_REGISTER);
+    aDOS.writeLong (aInstant.getEpochSecond ());
+    aDOS.writeInt (aInstant.getNano ());
+    aDOS.writeInt (aDT.getOffset ().getTotalSeconds ());
+    _writeString (aDOS, aItem.getMessageID ());
+    _writeString (aDOS, aItem.getProfileID ());
+    _writeString (aDOS, aItem.getPModeID ());
+  }
+
+  private void _addItem (@Nonnull final AS4DuplicateItem aItem)
+  {
+    m_aBuckets.computeIfAbsent (Long.valueOf (_getBucketKey (aItem.getDateTime ())),
+                                k -> ConcurrentHashMap.newKeySet ())
+              .add (aItem.getMessageID ());
+  }
+
+  private void _removeItem (@Nonnull final AS4DuplicateItem aItem)
+  {
+    final Set <String> aBucket = m_aBuckets.get (Long.valueOf (_getBucketKey (aItem.getDateTime ())));
+    // Empty buckets are removed upon eviction
+    if (aBucket != null)
+      aBucket.remove (aItem.getMessageID ());
+  }
+
+  private void _replayLog (@Nonnull final File aLogFile) throws IOException
+  {
+    int nRecords = 0;
+    try (final DataInputStream aDIS = new DataInputStream (new BufferedInputStream (new FileInputStream (aLogFile))))
+    {
+      if (aDIS.readInt () != LOG_MAGIC)
+        throw new IOException ("The file '" + aLogFile.getAbsolutePath () + "' is not a duplicate manager log file");
+      final int nVersion = aDIS.readInt ();
+      if (nVersion != LOG_VERSION)
+        throw new IOException ("The duplicate manager log file '" +
+                               aLogFile.getAbsolutePath () +
+                               "' has the unsupported version " +
+                               nVersion);
+
+      while (true)
+      {
+        final int nType = aDIS.read ();
+        if (nType < 0)
+          break;
+        switch (nType)
+        {
+          case RECORD_REGISTER:
+          {
+            final long nEpochSecond = aDIS.readLong ();
+            final int nNano = aDIS.readInt ();
+            final int nOffsetSeconds = aDIS.readInt ();
+            final String sMessageID = _readString (aDIS);
+            final String sProfileID = _readString (aDIS);
+            final String sPModeID = _readString (aDIS);
+            final OffsetDateTime aDT = OffsetDateTime.ofInstant (Instant.ofEpochSecond (nEpochSecond, nNano),
+                                                                 ZoneOffset.ofTotalSeconds (nOffsetSeconds));
+            final AS4DuplicateItem aItem = new AS4DuplicateItem (aDT, sMessageID, sProfileID, sPModeID);
+            if (m_aMap.putIfAbsent (sMessageID, aItem) == null)
+              _addItem (aItem);
+            break;
+          }
+          case RECORD_EVICT:
+          {
+            final long nEpochSecond = aDIS.readLong ();
+            final int nNano = aDIS.readInt ();
+            _evictAllItemsBefore (OffsetDateTime.ofInstant (Instant.ofEpochSecond (nEpochSecond, nNano),
+                                                            ZoneOffset.UTC));
+            break;
+          }
+          case RECORD_CLEAR:
+            m_aMap.clear ();
+            m_aBuckets.clear ();
+            break;
+          case RECORD_REMOVE:
+          {
+            final String sMessageID = _readString (aDIS);
+            final AS4DuplicateItem aItem = sMessageID == null ? null : m_aMap.remove (sMessageID);
+            if (aItem != null)
+              _removeItem (aItem);
+            break;
+          }
+          default:
+            throw new IOException ("Unexpected record type " + nType + " in duplicate manager log file");
+        }
+        nRecords++;
+      }
+    }
+    catch (final EOFException ex)
+    {
+      // A crash while writing the last record
+      LOGGER.warn ("The duplicate manager log file '" +
+                   aLogFile.getAbsolutePath () +
+                   "' ends with an incomplete record - ignoring it");
+    }
+    LOGGER.info ("Replayed " + nRecords + " records from duplicate manager log file - " + m_aMap.size () + " entries");
+  }
+
+  @Nonnull
+  private File _getCompactionFile ()
+  {
+    return new File (m_aLogFile.getAbsoluteFile ().getParentFile (), m_aLogFile.getName () + ".tmp");
+  }
+
+  @GuardedBy ("m_aLogLock")
+  private void _openLogLocked () throws IOException
+  {
+    m_aLogOS = new DataOutputStream (new BufferedOutputStream (new FileOutputStream (m_aLogFile, true)));
+  }
+
+  /**
+   * Write all pending records to the log and flush it once. If the log is not
+   * open (e.g. because of a previous error), it is reopened first.
+   */
+  @GuardedBy ("m_aLogLock")
+  private void _writePendingRecordsLocked ()
+  {
+    if (m_bClosed)
+    {
+      // Changes are no longer persisted
+      m_aPendingRecords.clear ();
+      return;
+    }
+    if (m_aPendingRecords.isEmpty ())
+      return;
+
+    try
+    {
+      if (m_aLogOS == null)
+      {
+        _openLogLocked ();
+        LOGGER.warn ("Reopened duplicate manager log file '" + m_aLogFile.getAbsolutePath () + "'");
+      }
+
+      byte [] aRecord;
+      while ((aRecord = m_aPendingRecords.poll ()) != null)
+      {
+        m_aLogOS.write (aRecord);
+        m_nLogRecords++;
+        if (m_aCompactionBacklog != null)
+          m_aCompactionBacklog.add (aRecord);
+      }
+      m_aLogOS.flush ();
+    }
+    catch (final IOException ex)
+    {
+      LOGGER.error ("Failed to append to duplicate manager log file '" +
+                    m_aLogFile.getAbsolutePath () +
+                    "' - trying to reopen it with the next record",
+                    ex);
+      StreamHelper.close (m_aLogOS);
+      m_aLogOS = null;
+    }
+  }
+
+  @FunctionalInterface
+  private interface ILogWriter
+  {
+    void write (@Nonnull @WillNotClose DataOutputStream aDOS) throws IOException;
+  }
+
+  private void _appendToLog (@Nonnull final ILogWriter aWriter)
+  {
+    if (m_aLogFile == null)
+      return;
+
+    // Serialize outside of the lock
+    try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ();
+        final DataOutputStream aDOS = new DataOutputStream (aBAOS))
+    {
+      aWriter.write (aDOS);
+      aDOS.flush ();
+      m_aPendingRecords.add (aBAOS.toByteArray ());
+    }
+    catch (final IOException ex)
+    {
+      // Cannot happen for in-memory streams
+      LOGGER.error ("Failed to serialize duplicate manager log record", ex);
+      return;
+    }
+
+    // If another thread holds the lock, it is writing - then all records
+    // queued in the meantime are written and flushed together afterwards
+    m_aLogLock.lock ();
+    try
+    {
+      _writePendingRecordsLocked ();
+    }
+    finally
+    {
+      m_aLogLock.unlock ();
+    }
+  }
+
+  /**
+   * Compact the log file by writing all current entries into a new file and
+   * replacing the existing log file with it. The entries are written without
+   * holding the log lock. All records appended in the meantime are appended to
+   * the new file before it replaces the old one. If anything fails, the old log
+   * file stays in use.
+   *
+   * @param bForce
+   *        <code>true</code> to always compact, <code>false</code> to only
+   *        compact if the log contains much more records than entries.
+   * @return <code>true</code> if the log was compacted or no compaction was
+   *         needed, <code>false</code> if compaction failed.
+   */
+  private boolean _compactLog (final boolean bForce)
+  {
+    // Start compaction
+    m_aLogLock.lock ();
+    try
+    {
+      if (m_bClosed || m_aCompactionBacklog != null)
+      {
+        // Closed or already compacting
+        return true;
+      }
+      _writePendingRecordsLocked ();
+      if (!bForce &&
+          (m_nLogRecords <= COMPACTION_MIN_RECORDS || m_nLogRecords <= (long) COMPACTION_FACTOR * m_aMap.size ()))
+        return true;
+
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug ("Compacting duplicate manager log file with " +
+                      m_nLogRecords +
+                      " records for " +
+                      m_aMap.size () +
+                      " entries");
+      m_aCompactionBacklog = new CommonsArrayList <> ();
+    }
+    finally
+    {
+      m_aLogLock.unlock ();
+    }
+
+    final File aTempFile = _getCompactionFile ();
+    FileOutputStream aFOS = null;
+    DataOutputStream aDOS = null;
+    boolean bSuccess = false;
+    try
+    {
+      FileHelper.ensureParentDirectoryIsPresent (aTempFile);
+      aFOS = new FileOutputStream (aTempFile);
+      aDOS = new DataOutputStream (new BufferedOutputStream (aFOS));
+      aDOS.writeInt (LOG_MAGIC);
+      aDOS.writeInt (LOG_VERSION);
+
+      // Write all entries without holding the lock. Concurrent changes are
+      // contained in the backlog and are replayed after the entries.
+      long nRecords = 0;
+      for (final AS4DuplicateItem aItem : m_aMap.values ())
+      {
+        _writeRegisterRecord (aDOS, aItem);
+        nRecords++;
+      }
+
+      // Swap the files
+      m_aLogLock.lock ();
+      try
+      {
+        _writePendingRecordsLocked ();
+        for (final byte [] aRecord : m_aCompactionBacklog)
+          aDOS.write (aRecord);
+        nRecords += m_aCompactionBacklog.size ();
+        aDOS.flush ();
+        // Make sure the content is on disk before replacing the old log
+        aFOS.getFD ().sync ();
+        aDOS.close ();
+        aDOS = null;
+
+        StreamHelper.close (m_aLogOS);
+        m_aLogOS = null;
+        try
+        {
+          Files.move (aTempFile.toPath (),
+                      m_aLogFile.toPath (),
+                      StandardCopyOption.REPLACE_EXISTING,
+                      StandardCopyOption.ATOMIC_MOVE);
+          m_nLogRecords = nRecords;
+          bSuccess = true;
+        }
+        finally
+        {
+          // Open the new log - or reopen the old one
+          if (!m_bClosed)
+            _openLogLocked ();
+        }
+      }
+      finally
+      {
+        m_aCompactionBacklog = null;
+        m_aLogLock.unlock ();
+      }
+    }
+    catch (final IOException ex)
+    {
+      LOGGER.error ("Failed to compact duplicate manager log file '" +
+                    m_aLogFile.getAbsolutePath () +
+                    "' - continuing with the existing log file",
+                    ex);
+    }
+    finally
+    {
+      StreamHelper.close (aDOS);
+      StreamHelper.close (aFOS);
+      if (!bSuccess)
+      {
+        // Make sure the backlog is not kept if writing the entries failed
+        m_aLogLock.lock ();
+        try
+        {
+          m_aCompactionBacklog = null;
+        }
+        finally
+        {
+          m_aLogLock.unlock ();
+        }
+        if (aTempFile.exists () && !aTempFile.delete ())
+          LOGGER.warn ("Failed to delete temporary file '" + aTempFile.getAbsolutePath () + "'");
+      }
+    }
+    return bSuccess;
+  }
+
+  private void _compactLogIfNeeded ()
+  {
+    if (m_aLogFile != null)
+      _compactLog (false);
+  }
+
+  @Nonnull
+  public EContinue registerAndCheck (@Nullable final String sMessageID,
+                                     @Nullable final String sProfileID,
+                                     @Nullable final String sPModeID)
+  {
+    if (StringHelper.hasNoText (sMessageID))
+    {
+      // No message ID present - don't check for duplication
+      return EContinue.CONTINUE;
+    }
+
+    final AS4DuplicateItem aItem = new AS4DuplicateItem (sMessageID, sProfileID, sPModeID);
+    m_aRWLock.readLock ().lock ();
+    try
+    {
+      if (m_aMap.putIfAbsent (sMessageID, aItem) != null)
+      {
+        // ID already in use
+        return EContinue.BREAK;
+      }
+      _addItem (aItem);
+      _appendToLog (aDOS -> _writeRegisterRecord (aDOS, aItem));
+    }
+    finally
+    {
+      m_aRWLock.readLock ().unlock ();
+    }
+    return EContinue.CONTINUE;
+  }
+
+  @Nonnull
+  public EChange removeMessageID (@Nullable final String sMessageID)
+  {
+    if (StringHelper.hasNoText (sMessageID))
+      return EChange.UNCHANGED;
+
+    m_aRWLock.readLock ().lock ();
+    try
+    {
+      final AS4DuplicateItem aItem = m_aMap.remove (sMessageID);
+      if (aItem == null)
+        return EChange.UNCHANGED;
+      _removeItem (aItem);
+      _appendToLog (aDOS -> {
+        aDOS.writeByte (RECORD_REMOVE);
+        _writeString (aDOS, sMessageID);
+      });
+    }
+    finally
+    {
+      m_aRWLock.readLock ().unlock ();
+    }
+    return EChange.CHANGED;
+  }
+
+  @Nonnull
+  public EChange clearCache ()
+  {
+    final EChange ret = m_aRWLock.writeLockedGet ( () -> {
+      if (m_aMap.isEmpty ())
+        return EChange.UNCHANGED;
+      m_aMap.clear ();
+      m_aBuckets.clear ();
+      _appendToLog (aDOS -> aDOS.writeByte (RECORD_CLEAR));
+      return EChange.CHANGED;
+    });
+    if (ret.isChanged ())
+      _compactLogIfNeeded ();
+    return ret;
+  }
+
+  /**
+   * Evict the items of the oldest bucket, if it is not after the reference
+   * bucket.
+   *
+   * @return <code>true</code> if a complete bucket was evicted and the next
+   *         bucket needs to be checked, <code>false</code> if eviction is
+   *         finished.
+   */
+  private boolean _evictFirstBucket (@Nonnull final OffsetDateTime aRefDT,
+                                     final long nRefBucketKey,
+                                     @Nonnull final ICommonsList <String> aEvictItems)
+  {
+    final Map.Entry <Long, Set <String>> aEntry = m_aBuckets.firstEntry ();
+    if (aEntry == null || aEntry.getKey ().longValue () > nRefBucketKey)
+    {
+      // Nothing (more) to evict
+      return false;
+    }
+
+    if (aEntry.getKey ().longValue () < nRefBucketKey)
+    {
+      // All items of this bucket are before the reference date time
+      m_aBuckets.remove (aEntry.getKey ());
+      for (final String sMessageID : aEntry.getValue ())
+        if (m_aMap.remove (sMessageID) != null)
+          aEvictItems.add (sMessageID);
+      return true;
+    }
+
+    // The bucket of the reference date time must be checked item by item
+    final Set <String> aBucket = aEntry.getValue ();
+    final Iterator <String> it = aBucket.iterator ();
+    while (it.hasNext ())
+    {
+      final String sMessageID = it.next ();
+      final AS4DuplicateItem aItem = m_aMap.get (sMessageID);
+      if (aItem == null)
+        it.remove ();
+      else
+        if (aItem.getDateTime ().isBefore (aRefDT))
+        {
+          m_aMap.remove (sMessageID);
+          it.remove ();
+          aEvictItems.add (sMessageID);
+        }
+    }
+    if (aBucket.isEmpty ())
+      m_aBuckets.remove (aEntry.getKey ());
+    return false;
+  }
+
+  private void _evictAllItemsBefore (@Nonnull final OffsetDateTime aRefDT)
+  {
+    final long nRefBucketKey = _getBucketKey (aRefDT);
+    final ICommonsList <String> aEvictItems = new CommonsArrayList <> ();
+    boolean bContinue;
+    do
+    {
+      bContinue = _evictFirstBucket (aRefDT, nRefBucketKey, aEvictItems);
+    } while (bContinue);
+  }
+
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <String> evictAllItemsBefore (@Nonnull final OffsetDateTime aRefDT)
+  {
+    ValueEnforcer.notNull (aRefDT, "RefDT");
+
+    final ICommonsList <String> ret = new CommonsArrayList <> ();
+    final long nRefBucketKey = _getBucketKey (aRefDT);
+
+    // Evict one bucket per write lock, so that concurrent registrations are
+    // not blocked for a long time
+    boolean bContinue;
+    do
+    {
+      bContinue = m_aRWLock.writeLockedBoolean ( () -> _evictFirstBucket (aRefDT, nRefBucketKey, ret));
+    } while (bContinue);
+
+    if (ret.isNotEmpty ())
+    {
+      // If this record is lost, the evicted items are simply evicted again
+      // after the next start
+      final Instant aRefInstant = aRefDT.toInstant ();
+      _appendToLog (aDOS -> {
+        aDOS.writeByte (RECORD_EVICT);
+        aDOS.writeLong (aRefInstant.getEpochSecond ());
+        aDOS.writeInt (aRefInstant.getNano ());
+      });
+      _compactLogIfNeeded ();
+    }
+    return ret;
+  }
+
+  public boolean isEmpty ()
+  {
+    return m_aMap.isEmpty ();
+  }
+
+  @Nonnegative
+  public int size ()
+  {
+    return m_aMap.size ();
+  }
+
+  /**
+   * @return The number of time buckets currently in use. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getBucketCount ()
+  {
+    return m_aBuckets.size ();
+  }
+
+  @Nullable
+  public IAS4DuplicateItem getItemOfMessageID (@Nullable final String sMessageID)
+  {
+    if (StringHelper.hasNoText (sMessageID))
+      return null;
+
+    return m_aMap.get (sMessageID);
+  }
+
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <IAS4DuplicateItem> getAll ()
+  {
+    return new CommonsArrayList <> (m_aMap.values ());
+  }
+
+  /**
+   * Close the log file. Afterwards changes are no longer persisted.
+   */
+  public void close ()
+  {
+    m_aLogLock.lock ();
+    try
+    {
+      _writePendingRecordsLocked ();
+      m_bClosed = true;
+      StreamHelper.close (m_aLogOS);
+      m_aLogOS = null;
+    }
+    finally
+    {
+      m_aLogLock.unlock ();
+    }
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("LogFile", m_aLogFile)
+                                       .append ("BucketMillis", m_nBucketMillis)
+                                       .append ("Size", m_aMap.size ())
+                                       .getToString ();
+  }
+}
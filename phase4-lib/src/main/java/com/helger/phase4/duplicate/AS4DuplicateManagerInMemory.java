@@ -16,7 +16,11 @@
  */
 package com.helger.phase4.duplicate;
 
+import java.time.Duration;
 import java.time.OffsetDateTime;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 import java.util.function.Predicate;
 
 import javax.annotation.Nonnegative;
@@ -25,6 +29,7 @@ import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 
+import com.helger.commons.ValueEnforcer;
 import com.helger.commons.annotation.ReturnsMutableCopy;
 import com.helger.commons.collection.CollectionHelper;
 import com.helger.commons.collection.impl.CommonsArrayList;
@@ -38,19 +43,54 @@ import com.helger.commons.string.StringHelper;
 import com.helger.commons.string.ToStringGenerator;
 
 /**
- * This is the duplicate checker for avoiding duplicate messages.
+ * This is the duplicate checker for avoiding duplicate messages. Since v3.2.3
+ * all entries are additionally kept in time ordered buckets, so that the
+ * eviction can drop whole buckets without scanning all entries.
  *
  * @author Philip Helger
  */
 @ThreadSafe
 public class AS4DuplicateManagerInMemory implements IAS4DuplicateManager
 {
+  /**
+   * The default time span of a single eviction bucket
+   *
+   * @since 3.2.3
+   */
+  public static final Duration DEFAULT_BUCKET_DURATION = Duration.ofMinutes (1);
+
+  private final long m_nBucketMillis;
   private final SimpleReadWriteLock m_aRWLock = new SimpleReadWriteLock ();
   @GuardedBy ("m_aRWLock")
   private final ICommonsMap <String, AS4DuplicateItem> m_aMap = new CommonsHashMap <> ();
+  @GuardedBy ("m_aRWLock")
+  private final NavigableMap <Long, ICommonsList <AS4DuplicateItem>> m_aBuckets = new TreeMap <> ();
 
   public AS4DuplicateManagerInMemory ()
-  {}
+  {
+    this (DEFAULT_BUCKET_DURATION);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param aBucketDuration
+   *        The time span of a single eviction bucket. May not be
+   *        <code>null</code> and must be at least 1 millisecond.
+   * @since 3.2.3
+   */
+  public AS4DuplicateManagerInMemory (@Nonnull final Duration aBucketDuration)
+  {
+    ValueEnforcer.notNull (aBucketDuration, "BucketDuration");
+    ValueEnforcer.isTrue ( () -> aBucketDuration.toMillis () > 0, "BucketDuration must be at least 1 millisecond");
+    m_nBucketMillis = aBucketDuration.toMillis ();
+  }
+
+  @Nonnull
+  private Long _getBucketKey (@Nonnull final OffsetDateTime aDT)
+  {
+    return Long.valueOf (Math.floorDiv (aDT.toInstant ().toEpochMilli (), m_nBucketMillis));
+  }
 
   @Nonnull
   public EContinue registerAndCheck (@Nullable final String sMessageID,
@@ -74,6 +114,7 @@ public class AS4DuplicateManagerInMemory implements IAS4DuplicateManager
         return EContinue.BREAK;
       }
       m_aMap.put (sID, aItem);
+      m_aBuckets.computeIfAbsent (_getBucketKey (aItem.getDateTime ()), k -> new CommonsArrayList <> ()).add (aItem);
     }
     finally
     {
@@ -82,33 +123,98 @@ public class AS4DuplicateManagerInMemory implements IAS4DuplicateManager
     return EContinue.CONTINUE;
   }
 
+  @Nonnull
+  public EChange removeMessageID (@Nullable final String sMessageID)
+  {
+    if (StringHelper.hasNoText (sMessageID))
+      return EChange.UNCHANGED;
+
+    return m_aRWLock.writeLockedGet ( () -> {
+      final AS4DuplicateItem aItem = m_aMap.remove (sMessageID);
+      if (aItem == null)
+        return EChange.UNCHANGED;
+
+      final Long aBucketKey = _getBucketKey (aItem.getDateTime ());
+      final ICommonsList <AS4DuplicateItem> aBucket = m_aBuckets.get (aBucketKey);
+      if (aBucket != null)
+      {
+        aBucket.remove (aItem);
+        if (aBucket.isEmpty ())
+          m_aBuckets.remove (aBucketKey);
+      }
+      return EChange.CHANGED;
+    });
+  }
+
   @Nonnull
   public EChange clearCache ()
   {
-    return m_aRWLock.writeLockedGet (m_aMap::removeAll);
+    return m_aRWLock.writeLockedGet ( () -> {
+      m_aBuckets.clear ();
+      return m_aMap.removeAll ();
+    });
+  }
+
+  /**
+   * Evict the items of the oldest bucket, if it is not after the reference
+   * bucket.
+   *
+   * @return <code>true</code> if a complete bucket was evicted and the next
+   *         bucket needs to be checked, <code>false</code> if eviction is
+   *         finished.
+   */
+  @GuardedBy ("m_aRWLock")
+  private boolean _evictFirstBucketLocked (@Nonnull final OffsetDateTime aRefDT,
+                                           @Nonnull final Long aRefBucketKey,
+                                           @Nonnull final ICommonsList <String> aEvictItems)
+  {
+    final Map.Entry <Long, ICommonsList <AS4DuplicateItem>> aEntry = m_aBuckets.firstEntry ();
+    if (aEntry == null || aEntry.getKey ().compareTo (aRefBucketKey) > 0)
+    {
+      // Nothing (more) to evict
+      return false;
+    }
+
+    if (aEntry.getKey ().compareTo (aRefBucketKey) < 0)
+    {
+      // All items of this bucket are before the reference date time
+      m_aBuckets.pollFirstEntry ();
+      for (final AS4DuplicateItem aItem : aEntry.getValue ())
+      {
+        m_aMap.remove (aItem.getID ());
+        aEvictItems.add (aItem.getMessageID ());
+      }
+      return true;
+    }
+
+    // The bucket of the reference date time must be checked item by item
+    final ICommonsList <AS4DuplicateItem> aBucket = aEntry.getValue ();
+    aBucket.removeIf (x -> {
+      if (!x.getDateTime ().isBefore (aRefDT))
+        return false;
+      m_aMap.remove (x.getID ());
+      aEvictItems.add (x.getMessageID ());
+      return true;
+    });
+    if (aBucket.isEmpty ())
+      m_aBuckets.remove (aRefBucketKey);
+    return false;
   }
 
   @Nonnull
   @ReturnsMutableCopy
   public ICommonsList <String> evictAllItemsBefore (@Nonnull final OffsetDateTime aRefDT)
   {
-    // Get all message IDs to be removed
     final ICommonsList <String> aEvictItems = new CommonsArrayList <> ();
-    m_aRWLock.readLocked ( () -> m_aMap.forEachValue (x -> x.getDateTime ().isBefore (aRefDT),
-                                                      x -> aEvictItems.add (x.getMessageID ())));
-    if (aEvictItems.isNotEmpty ())
+    final Long aRefBucketKey = _getBucketKey (aRefDT);
+
+    // Evict one bucket per write lock, so that concurrent registrations are
+    // not blocked for a long time
+    boolean bContinue;
+    do
     {
-      // Bulk erase all
-      m_aRWLock.writeLock ().lock ();
-      try
-      {
-        m_aMap.removeIfKey (aEvictItems::contains);
-      }
-      finally
-      {
-        m_aRWLock.writeLock ().unlock ();
-      }
-    }
+      bContinue = m_aRWLock.writeLockedBoolean ( () -> _evictFirstBucketLocked (aRefDT, aRefBucketKey, aEvictItems));
+    } while (bContinue);
     return aEvictItems;
   }
 
@@ -135,7 +241,8 @@ public class AS4DuplicateManagerInMemory implements IAS4DuplicateManager
     if (StringHelper.hasNoText (sMessageID))
       return null;
 
-    return findFirst (x -> x.getMessageID ().equals (sMessageID));
+    // The message ID is the key
+    return m_aRWLock.readLockedGet ( () -> m_aMap.get (sMessageID));
   }
 
   @Nonnull
@@ -148,6 +255,8 @@ public class AS4DuplicateManagerInMemory implements IAS4DuplicateManager
   @Override
   public String toString ()
   {
-    return new ToStringGenerator (null).append ("Map", m_aMap).getToString ();
+    return new ToStringGenerator (null).append ("BucketMillis", m_nBucketMillis)
+                                       .append ("Map", m_aMap)
+                                       .getToString ();
   }
 }
@@ -69,6 +69,16 @@ public class AS4DuplicateManagerXML extends AbstractPhotonMapBasedWALDAO <IAS4Du
     return EContinue.CONTINUE;
   }
 
+  @Nonnull
+  public EChange removeMessageID (@Nullable final String sMessageID)
+  {
+    if (StringHelper.hasNoText (sMessageID))
+      return EChange.UNCHANGED;
+
+    // The message ID is the item ID
+    return EChange.valueOf (m_aRWLock.writeLockedGet ( () -> internalDeleteItem (sMessageID)) != null);
+  }
+
   @Nonnull
   public EChange clearCache ()
   {
@@ -82,6 +82,25 @@ public interface IAS4DuplicateManager
   @Nonnull
   EContinue registerAndCheck (@Nullable String sMessageID, @Nullable String sProfileID, @Nullable String sPModeID);
 
+  /**
+   * Remove the entry of the passed message ID, so that a later message with
+   * the same ID is no longer considered a duplicate. This is needed if a
+   * message was registered via
+   * {@link #registerAndCheck(String, String, String)} but was not processed,
+   * so that the retry of the sender is accepted. The default implementation
+   * does nothing.
+   *
+   * @param sMessageID
+   *        Message ID to remove. May be <code>null</code>.
+   * @return {@link EChange#CHANGED} if an entry was removed.
+   * @since 3.2.3
+   */
+  @Nonnull
+  default EChange removeMessageID (@Nullable final String sMessageID)
+  {
+    return EChange.UNCHANGED;
+  }
+
   /**
    * Remove all entries in the cache.
    *
@@ -0,0 +1,498 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.incoming;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.callback.IThrowingRunnable;
+import com.helger.commons.concurrent.ExecutorServiceHelper;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.phase4.duplicate.IAS4DuplicateManager;
+import com.helger.phase4.logging.Phase4LoggerFactory;
+import com.helger.phase4.messaging.http.BasicHttpPoster;
+import com.helger.phase4.messaging.http.HttpRetrySettings;
+import com.helger.phase4.messaging.http.IHttpPoster;
+import com.helger.phase4.model.error.EEbmsError;
+import com.helger.phase4.model.error.IEbmsError;
+
+/**
+ * The executor for the asynchronous processing of incoming messages in
+ * {@link AS4RequestHandler} (MEP binding PUSH_PUSH, leg 1). It contains the
+ * invocation of the SPIs and the sending of the asynchronous response. The
+ * number of threads and the number of waiting tasks are limited, so that a
+ * burst of incoming messages cannot exhaust the resources of the server. If
+ * the limit is reached, the incoming message is rejected synchronously with
+ * the error {@link #getRejectionError()}, so that the sender can retry later.
+ * <br>
+ * Optionally, virtual threads are used, if the runtime supports them (Java 21
+ * or later).<br>
+ * The HTTP poster and the retry settings for sending the asynchronous
+ * responses are shared by all messages.
+ *
+ * @author Philip Helger
+ * @since 3.2.3
+ */
+@ThreadSafe
+public class AS4IncomingAsyncExecutor
+{
+  public static final int DEFAULT_THREAD_COUNT = Math.max (2, Runtime.getRuntime ().availableProcessors ());
+  public static final int DEFAULT_QUEUE_CAPACITY = 1_000;
+  public static final boolean DEFAULT_USE_VIRTUAL_THREADS = false;
+  public static final IEbmsError DEFAULT_REJECTION_ERROR = EEbmsError.EBMS_OTHER;
+
+  private static final Logger LOGGER = Phase4LoggerFactory.getLogger (AS4IncomingAsyncExecutor.class);
+  private static final AtomicInteger THREAD_INDEX = new AtomicInteger (0);
+
+  private static final SimpleReadWriteLock RW_LOCK = new SimpleReadWriteLock ();
+  @GuardedBy ("RW_LOCK")
+  private static AS4IncomingAsyncExecutor s_aDefaultInstance;
+
+  private final int m_nThreadCount;
+  private final int m_nQueueCapacity;
+  private final boolean m_bVirtualThreads;
+  private final ThreadPoolExecutor m_aExecutor;
+  private final AtomicLong m_aSubmittedCount = new AtomicLong (0);
+  private final AtomicLong m_aRejectedCount = new AtomicLong (0);
+  private final AtomicLong m_aFailedCount = new AtomicLong (0);
+  private volatile IHttpPoster m_aHttpPoster = new BasicHttpPoster ();
+  private volatile HttpRetrySettings m_aRetrySettings = new HttpRetrySettings ();
+  private volatile IEbmsError m_aRejectionError = DEFAULT_REJECTION_ERROR;
+
+  /**
+   * Constructor with the default settings.
+   */
+  public AS4IncomingAsyncExecutor ()
+  {
+    this (DEFAULT_THREAD_COUNT, DEFAULT_QUEUE_CAPACITY, DEFAULT_USE_VIRTUAL_THREADS);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param nThreadCount
+   *        The maximum number of messages processed in parallel. Must be &gt;
+   *        0.
+   * @param nQueueCapacity
+   *        The maximum number of messages waiting for processing. Must be
+   *        &gt; 0.
+   * @param bUseVirtualThreads
+   *        <code>true</code> to use virtual threads if the runtime supports
+   *        them, <code>false</code> to use platform threads.
+   */
+  public AS4IncomingAsyncExecutor (@Nonnegative final int nThreadCount,
+                                   @Nonnegative final int nQueueCapacity,
+                                   final boolean bUseVirtualThreads)
+  {
+    ValueEnforcer.isGT0 (nThreadCount, "ThreadCount");
+    ValueEnforcer.isGT0 (nQueueCapacity, "QueueCapacity");
+
+    ThreadFactory aThreadFactory = bUseVirtualThreads ? _createVirtualThreadFactory () : null;
+    m_bVirtualThreads = aThreadFactory != null;
+    if (aThreadFactory == null)
+    {
+      if (bUseVirtualThreads)
+        LOGGER.warn ("Virtual threads are not supported by this Java runtime - using platform threads instead");
+      aThreadFactory = r -> {
+        final Thread t = new Thread (r, "phase4-incoming-async-" + THREAD_INDEX.incrementAndGet ());
+        t.setDaemon (true);
+        return t;
+      };
+    }
+
+    m_nThreadCount = nThreadCount;
+    m_nQueueCapacity = nQueueCapacity;
+    // The default policy throws a RejectedExecutionException
+    m_aExecutor = new ThreadPoolExecutor (nThreadCount,
+                                          nThreadCount,
+                                          60,
+                                          TimeUnit.SECONDS,
+                                          new ArrayBlockingQueue <> (nQueueCapacity),
+                                          aThreadFactory);
+    m_aExecutor.allowCoreThreadTimeOut (true);
+  }
+
+  @Nullable
+  private static ThreadFactory _createVirtualThreadFactory ()
+  {
+    // Thread.ofVirtual ().name (...).factory () is only available in Java 21+
+    try
+    {
+      final Object aBuilder = Thread.class.getMethod ("ofVirtual").invoke (null);
+      final Class <?> aBuilderClass = Class.forName ("java.lang.Thread$Builder");
+      final Method aNameMethod = aBuilderClass.getMethod ("name", String.class, long.class);
+      final Object aNamedBuilder = aNameMethod.invoke (aBuilder, "phase4-incoming-async-virtual-", Long.valueOf (1));
+      return (ThreadFactory) aBuilderClass.getMethod ("factory").invoke (aNamedBuilder);
+    }
+    catch (final ReflectiveOperationException | RuntimeException ex)
+    {
+      return null;
+    }
+  }
+
+  /**
+   * @return The maximum number of messages processed in parallel. Always &gt;
+   *         0.
+   */
+  @Nonnegative
+  public final int getThreadCount ()
+  {
+    return m_nThreadCount;
+  }
+
+  /**
+   * @return The maximum number of messages waiting for processing. Always
+   *         &gt; 0.
+   */
+  @Nonnegative
+  public final int getQueueCapacity ()
+  {
+    return m_nQueueCapacity;
+  }
+
+  /**
+   * @return <code>true</code> if virtual threads are effectively used.
+   */
+  public final boolean isVirtualThreads ()
+  {
+    return m_bVirtualThreads;
+  }
+
+  /**
+   * @return The HTTP poster to send the asynchronous responses. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public final IHttpPoster getHttpPoster ()
+  {
+    return m_aHttpPoster;
+  }
+
+  /**
+   * Set the HTTP poster to send the asynchronous responses. It is shared by
+   * all messages, so it must be thread-safe.
+   *
+   * @param aHttpPoster
+   *        The HTTP poster to use. May not be <code>null</code>.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final AS4IncomingAsyncExecutor setHttpPoster (@Nonnull final IHttpPoster aHttpPoster)
+  {
+    ValueEnforcer.notNull (aHttpPoster, "HttpPoster");
+    m_aHttpPoster = aHttpPoster;
+    return this;
+  }
+
+  /**
+   * @return The HTTP retry settings to send the asynchronous responses. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public final HttpRetrySettings getRetrySettings ()
+  {
+    return m_aRetrySettings;
+  }
+
+  /**
+   * Set the HTTP retry settings to send the asynchronous responses. The object
+   * is shared by all messages, so it should not be modified afterwards.
+   *
+   * @param aRetrySettings
+   *        The retry settings to use. May not be <code>null</code>.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final AS4IncomingAsyncExecutor setRetrySettings (@Nonnull final HttpRetrySettings aRetrySettings)
+  {
+    ValueEnforcer.notNull (aRetrySettings, "RetrySettings");
+    m_aRetrySettings = aRetrySettings;
+    return this;
+  }
+
+  /**
+   * @return The ebMS error that is returned synchronously, if an incoming
+   *         message cannot be accepted for asynchronous processing. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public final IEbmsError getRejectionError ()
+  {
+    return m_aRejectionError;
+  }
+
+  /**
+   * Set the ebMS error that is returned synchronously, if an incoming message
+   * cannot be accepted for asynchronous processing.
+   *
+   * @param aRejectionError
+   *        The error to use. May not be <code>null</code>.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final AS4IncomingAsyncExecutor setRejectionError (@Nonnull final IEbmsError aRejectionError)
+  {
+    ValueEnforcer.notNull (aRejectionError, "RejectionError");
+    m_aRejectionError = aRejectionError;
+    return this;
+  }
+
+  /**
+   * Execute the provided action asynchronously. Exceptions of the action are
+   * logged and counted, and the returned future is completed normally
+   * nonetheless.
+   *
+   * @param sDescription
+   *        The description of the action for logging. May neither be
+   *        <code>null</code> nor empty.
+   * @param aRunnable
+   *        The action to execute. May not be <code>null</code>.
+   * @return A future that is completed when the action is done. Never
+   *         <code>null</code>.
+   * @throws RejectedExecutionException
+   *         If the maximum number of waiting messages is reached or the
+   *         executor was shutdown
+   */
+  @Nonnull
+  public CompletableFuture <Void> execute (@Nonnull @Nonempty final String sDescription,
+                                           @Nonnull final IThrowingRunnable <? extends Exception> aRunnable)
+  {
+    ValueEnforcer.notEmpty (sDescription, "Description");
+    ValueEnforcer.notNull (aRunnable, "Runnable");
+
+    final CompletableFuture <Void> ret = new CompletableFuture <> ();
+    try
+    {
+      m_aExecutor.execute ( () -> {
+        try
+        {
+          aRunnable.run ();
+        }
+        catch (final Exception ex)
+        {
+          m_aFailedCount.incrementAndGet ();
+          LOGGER.error ("Error running '" + sDescription + "'", ex);
+        }
+        finally
+        {
+          ret.complete (null);
+        }
+      });
+    }
+    catch (final RejectedExecutionException ex)
+    {
+      m_aRejectedCount.incrementAndGet ();
+      throw ex;
+    }
+    m_aSubmittedCount.incrementAndGet ();
+    return ret;
+  }
+
+  /**
+   * Execute the asynchronous processing of an incoming message. If the
+   * processing is rejected, the message ID is removed from the duplicate
+   * manager, so that the retry of the sender is not considered a duplicate.
+   *
+   * @param sDescription
+   *        The description of the action for logging. May neither be
+   *        <code>null</code> nor empty.
+   * @param aRunnable
+   *        The action to execute. May not be <code>null</code>.
+   * @param aDuplicateMgr
+   *        The duplicate manager the message ID was registered in. May not be
+   *        <code>null</code>.
+   * @param sMessageID
+   *        The ID of the incoming message. May be <code>null</code>.
+   * @return A future that is completed when the action is done. Never
+   *         <code>null</code>.
+   * @throws RejectedExecutionException
+   *         If the maximum number of waiting messages is reached or the
+   *         executor was shutdown
+   * @see #execute(String, IThrowingRunnable)
+   */
+  @Nonnull
+  public CompletableFuture <Void> executeIncomingMessage (@Nonnull @Nonempty final String sDescription,
+                                                          @Nonnull final IThrowingRunnable <? extends Exception> aRunnable,
+                                                          @Nonnull final IAS4DuplicateManager aDuplicateMgr,
+                                                          @Nullable final String sMessageID)
+  {
+    ValueEnforcer.notNull (aDuplicateMgr, "DuplicateMgr");
+
+    try
+    {
+      return execute (sDescription, aRunnable);
+    }
+    catch (final RejectedExecutionException ex)
+    {
+      // The message was not processed - accept the retry
+      aDuplicateMgr.removeMessageID (sMessageID);
+      throw ex;
+    }
+  }
+
+  /**
+   * @return The number of messages currently waiting for processing. Always
+   *         &ge; 0.
+   */
+  @Nonnegative
+  public int getQueueDepth ()
+  {
+    return m_aExecutor.getQueue ().size ();
+  }
+
+  /**
+   * @return The approximate number of messages currently being processed.
+   *         Always &ge; 0.
+   */
+  @Nonnegative
+  public int getActiveCount ()
+  {
+    return m_aExecutor.getActiveCount ();
+  }
+
+  /**
+   * @return The total number of messages accepted for processing. Always
+   *         &ge; 0.
+   */
+  @Nonnegative
+  public long getSubmittedCount ()
+  {
+    return m_aSubmittedCount.get ();
+  }
+
+  /**
+   * @return The approximate total number of messages that finished
+   *         processing. Always &ge; 0.
+   */
+  @Nonnegative
+  public long getCompletedCount ()
+  {
+    return m_aExecutor.getCompletedTaskCount ();
+  }
+
+  /**
+   * @return The total number of messages that were rejected because the
+   *         executor was full or shutdown. Always &ge; 0.
+   */
+  @Nonnegative
+  public long getRejectedCount ()
+  {
+    return m_aRejectedCount.get ();
+  }
+
+  /**
+   * @return The total number of messages whose processing failed with an
+   *         exception. Always &ge; 0.
+   */
+  @Nonnegative
+  public long getFailedCount ()
+  {
+    return m_aFailedCount.get ();
+  }
+
+  /**
+   * Shutdown the executor and wait until all accepted messages are processed.
+   * Afterwards no new messages are accepted.
+   */
+  public void shutdown ()
+  {
+    ExecutorServiceHelper.shutdownAndWaitUntilAllTasksAreFinished (m_aExecutor);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("ThreadCount", m_nThreadCount)
+                                       .append ("QueueCapacity", m_nQueueCapacity)
+                                       .append ("VirtualThreads", m_bVirtualThreads)
+                                       .append ("HttpPoster", m_aHttpPoster)
+                                       .append ("RetrySettings", m_aRetrySettings)
+                                       .append ("RejectionError", m_aRejectionError)
+                                       .append ("QueueDepth", getQueueDepth ())
+                                       .append ("SubmittedCount", m_aSubmittedCount.get ())
+                                       .append ("RejectedCount", m_aRejectedCount.get ())
+                                       .append ("FailedCount", m_aFailedCount.get ())
+                                       .getToString ();
+  }
+
+  /**
+   * @return The global default instance, that is used by all
+   *         {@link AS4RequestHandler} instances that have no specific executor.
+   *         It is created on demand. Never <code>null</code>.
+   */
+  @Nonnull
+  public static AS4IncomingAsyncExecutor getDefaultInstance ()
+  {
+    AS4IncomingAsyncExecutor ret = RW_LOCK.readLockedGet ( () -> s_aDefaultInstance);
+    if (ret == null)
+    {
+      ret = RW_LOCK.writeLockedGet ( () -> {
+        if (s_aDefaultInstance == null)
+          s_aDefaultInstance = new AS4IncomingAsyncExecutor ();
+        return s_aDefaultInstance;
+      });
+    }
+    return ret;
+  }
+
+  /**
+   * Set the global default instance. The previous default instance is not
+   * shutdown by this method.
+   *
+   * @param aDefaultInstance
+   *        The new default instance. May be <code>null</code> to create a new
+   *        one with the default settings on demand.
+   */
+  public static void setDefaultInstance (@Nullable final AS4IncomingAsyncExecutor aDefaultInstance)
+  {
+    RW_LOCK.writeLocked ( () -> s_aDefaultInstance = aDefaultInstance);
+  }
+
+  /**
+   * Shutdown the global default instance, if it was created, and wait until
+   * all accepted messages are processed. A new default instance is created on
+   * the next usage.
+   */
+  public static void shutdownDefaultInstance ()
+  {
+    final AS4IncomingAsyncExecutor aInstance = RW_LOCK.writeLockedGet ( () -> {
+      final AS4IncomingAsyncExecutor ret = s_aDefaultInstance;
+      s_aDefaultInstance = null;
+      return ret;
+    });
+    if (aInstance != null)
+      aInstance.shutdown ();
+  }
+}
@@ -75,6 +75,7 @@ import com.helger.phase4.incoming.soap.ISoapHeaderElementProcessor;
 import com.helger.phase4.incoming.soap.SoapHeaderElementProcessorRegistry;
 import com.helger.phase4.incoming.spi.IAS4IncomingMessageProcessingStatusSPI;
 import com.helger.phase4.logging.Phase4LoggerFactory;
+import com.helger.phase4.messaging.mime.AS4MimeMessageHelper;
 import com.helger.phase4.mgr.MetaAS4Manager;
 import com.helger.phase4.model.AS4Helper;
 import com.helger.phase4.model.ESoapVersion;
@@ -83,6 +84,7 @@ import com.helger.phase4.model.message.MessageHelperMethods;
 import com.helger.phase4.model.pmode.IPMode;
 import com.helger.phase4.model.pmode.leg.PModeLeg;
 import com.helger.phase4.model.pmode.resolve.IAS4PModeResolver;
+import com.helger.phase4.profile.AS4ProfilePModeValidationCache;
 import com.helger.phase4.profile.IAS4Profile;
 import com.helger.phase4.profile.IAS4ProfileValidator;
 import com.helger.phase4.profile.IAS4ProfileValidator.EAS4ProfileValidationMode;
@@ -99,7 +101,7 @@ import com.helger.xml.serialize.read.DOMReader;
 import com.helger.xml.serialize.read.DOMReaderSettings;
 
 import jakarta.mail.MessagingException;
-import jakarta.mail.internet.MimeBodyPart;
+import jakarta.mail.internet.InternetHeaders;
 
 /**
  * Utility methods for incoming AS4 messages.
@@ -252,8 +254,9 @@ public final class AS4IncomingHandler
 
             try (final MultipartItemInputStream aBodyPartIS = aMulti.createInputStream ())
             {
-              // Read headers AND content
-              final MimeBodyPart aBodyPart = new MimeBodyPart (aBodyPartIS);
+              // Read only the headers - the content is streamed afterwards to
+              // avoid buffering complete MIME parts on the heap
+              final InternetHeaders aBodyPartHeaders = new InternetHeaders (aBodyPartIS);
 
               if (nIndex == 0)
               {
@@ -262,10 +265,12 @@ public final class AS4IncomingHandler
                   LOGGER.debug ("Parsing first MIME part as SOAP document");
 
                 // Read SOAP document
-                aSoapDocument = DOMReader.readXMLDOM (aBodyPart.getInputStream (),
+                aSoapDocument = DOMReader.readXMLDOM (AS4MimeMessageHelper.getDecodedInputStream (aBodyPartHeaders,
+                                                                                                  aBodyPartIS),
                                                       new DOMReaderSettings ().setErrorHandler (new WrappedCollectingSAXErrorHandler (aXSDErrorList)));
 
-                IMimeType aPlainPartMT = MimeTypeParser.safeParseMimeType (aBodyPart.getContentType ());
+                IMimeType aPlainPartMT = MimeTypeParser.safeParseMimeType (aBodyPartHeaders.getHeader (CHttpHeader.CONTENT_TYPE,
+                                                                                                     null));
                 if (aPlainPartMT != null)
                   aPlainPartMT = aPlainPartMT.getCopyWithoutParameters ();
 
@@ -288,7 +293,7 @@ public final class AS4IncomingHandler
                 if (LOGGER.isDebugEnabled ())
                   LOGGER.debug ("Parsing MIME part #" + nIndex + " as attachment");
 
-                final WSS4JAttachment aAttachment = aIAF.createAttachment (aBodyPart, aResHelper);
+                final WSS4JAttachment aAttachment = aIAF.createAttachment (aBodyPartHeaders, aBodyPartIS, aResHelper);
                 aIncomingAttachments.add (aAttachment);
               }
             }
@@ -752,7 +757,13 @@ public final class AS4IncomingHandler
           if (aAS4ProfileSelector.validateAgainstProfile ())
           {
             final ErrorList aErrorList = new ErrorList ();
-            aValidator.validatePMode (aPMode, aErrorList, EAS4ProfileValidationMode.USER_MESSAGE);
+            // The PMode validation result is cached
+            AS4ProfilePModeValidationCache.getDefaultInstance ()
+                                          .validatePMode (aProfile,
+                                                          aValidator,
+                                                          aPMode,
+                                                          aErrorList,
+                                                          EAS4ProfileValidationMode.USER_MESSAGE);
             aValidator.validateUserMessage (aEbmsUserMessage, aErrorList);
             aValidator.validateInitiatorIdentity (aEbmsUserMessage,
                                                   aIncomingState.getSigningCertificate (),
@@ -816,7 +827,12 @@ public final class AS4IncomingHandler
           {
             final ErrorList aErrorList = new ErrorList ();
             if (aPMode != null)
-              aValidator.validatePMode (aPMode, aErrorList, EAS4ProfileValidationMode.SIGNAL_MESSAGE);
+              AS4ProfilePModeValidationCache.getDefaultInstance ()
+                                            .validatePMode (aProfile,
+                                                            aValidator,
+                                                            aPMode,
+                                                            aErrorList,
+                                                            EAS4ProfileValidationMode.SIGNAL_MESSAGE);
             aValidator.validateSignalMessage (aEbmsSignalMessage, aErrorList);
 
             if (aErrorList.containsAtLeastOneError ())
@@ -21,6 +21,7 @@ import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 
 import com.helger.commons.string.ToStringGenerator;
+import com.helger.phase4.attachment.AS4AttachmentBufferPolicy;
 import com.helger.phase4.config.AS4Configuration;
 
 /**
@@ -33,6 +34,7 @@ import com.helger.phase4.config.AS4Configuration;
 public class AS4IncomingReceiverConfiguration implements IAS4IncomingReceiverConfiguration
 {
   private String m_sReceiverEndpointAddress;
+  private AS4AttachmentBufferPolicy m_aAttachmentBufferPolicy;
 
   public AS4IncomingReceiverConfiguration ()
   {
@@ -53,9 +55,34 @@ public class AS4IncomingReceiverConfiguration implements IAS4IncomingReceiverCon
     return this;
   }
 
+  @Override
+  @Nullable
+  public final AS4AttachmentBufferPolicy getAttachmentBufferPolicy ()
+  {
+    return m_aAttachmentBufferPolicy;
+  }
+
+  /**
+   * Set the receiver specific attachment buffer policy.
+   *
+   * @param a
+   *        The policy to use. May be <code>null</code> to use the global
+   *        default.
+   * @return this for chaining
+   * @since 3.2.3
+   */
+  @Nonnull
+  public final AS4IncomingReceiverConfiguration setAttachmentBufferPolicy (@Nullable final AS4AttachmentBufferPolicy a)
+  {
+    m_aAttachmentBufferPolicy = a;
+    return this;
+  }
+
   @Override
   public String toString ()
   {
-    return new ToStringGenerator (null).append ("ReceiverEndpointAddress", m_sReceiverEndpointAddress).getToString ();
+    return new ToStringGenerator (null).append ("ReceiverEndpointAddress", m_sReceiverEndpointAddress)
+                                       .append ("AttachmentBufferPolicy", m_aAttachmentBufferPolicy)
+                                       .getToString ();
   }
 }
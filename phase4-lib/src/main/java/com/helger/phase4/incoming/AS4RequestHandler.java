@@ -22,6 +22,7 @@ import java.io.OutputStream;
 import java.nio.charset.Charset;
 import java.util.Locale;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.Supplier;
 
 import javax.annotation.Nonnull;
@@ -57,6 +58,7 @@ import com.helger.commons.string.StringHelper;
 import com.helger.httpclient.response.ResponseHandlerXml;
 import com.helger.phase4.CAS4;
 import com.helger.phase4.attachment.AS4DecompressException;
+import com.helger.phase4.attachment.AS4AttachmentBufferPolicy;
 import com.helger.phase4.attachment.IAS4IncomingAttachmentFactory;
 import com.helger.phase4.attachment.WSS4JAttachment;
 import com.helger.phase4.client.IAS4RetryCallback;
@@ -87,9 +89,7 @@ import com.helger.phase4.messaging.EAS4MessageMode;
 import com.helger.phase4.messaging.crypto.AS4Encryptor;
 import com.helger.phase4.messaging.crypto.AS4Signer;
 import com.helger.phase4.messaging.http.AS4HttpDebug;
-import com.helger.phase4.messaging.http.BasicHttpPoster;
 import com.helger.phase4.messaging.http.HttpMimeMessageEntity;
-import com.helger.phase4.messaging.http.HttpRetrySettings;
 import com.helger.phase4.messaging.http.HttpXMLEntity;
 import com.helger.phase4.messaging.mime.AS4MimeMessage;
 import com.helger.phase4.messaging.mime.AS4MimeMessageHelper;
@@ -112,7 +112,6 @@ import com.helger.phase4.profile.IAS4Profile;
 import com.helger.phase4.util.AS4ResourceHelper;
 import com.helger.phase4.util.AS4XMLHelper;
 import com.helger.phase4.util.Phase4Exception;
-import com.helger.photon.io.PhotonWorkerPool;
 import com.helger.xml.serialize.write.XMLWriter;
 
 import jakarta.mail.MessagingException;
@@ -171,9 +170,15 @@ public class AS4RequestHandler implements AutoCloseable
     public void applyToResponse (@Nonnull final IAS4ResponseAbstraction aHttpResponse,
                                  @Nullable final IAS4OutgoingDumper aOutgoingDumper)
     {
-      final String sXML = AS4XMLHelper.serializeXML (m_aDoc);
+      // Serialize directly to bytes without an intermediate String
+      final byte [] aXMLBytes;
+      try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream (4 *
+                                                                                                CGlobal.BYTES_PER_KILOBYTE))
+      {
+        AS4XMLHelper.serializeXML (m_aDoc, aBAOS);
+        aXMLBytes = aBAOS.getBufferOrCopy ();
+      }
       final Charset aCharset = AS4XMLHelper.XWS.getCharset ();
-      final byte [] aXMLBytes = sXML.getBytes (aCharset);
       aHttpResponse.setContent (aXMLBytes, aCharset);
       aHttpResponse.setMimeType (m_aMimeType);
 
@@ -368,6 +373,7 @@ public class AS4RequestHandler implements AutoCloseable
   private IAS4OutgoingDumper m_aOutgoingDumper;
   private IAS4RetryCallback m_aRetryCallback;
   private IAS4SoapProcessingFinalizedCallback m_aSoapProcessingFinalizedCB;
+  private AS4IncomingAsyncExecutor m_aAsyncExecutor;
 
   /** By default get all message processors from the global SPI registry */
   private Supplier <? extends ICommonsList <IAS4IncomingMessageProcessorSPI>> m_aProcessorSupplier = AS4IncomingMessageProcessorManager::getAllProcessors;
@@ -569,6 +575,11 @@ public class AS4RequestHandler implements AutoCloseable
   {
     ValueEnforcer.notNull (aIRC, "ICS");
     m_aIncomingReceiverConfig = aIRC;
+
+    // Apply a receiver specific attachment buffering
+    final AS4AttachmentBufferPolicy aAttachmentBufferPolicy = aIRC.getAttachmentBufferPolicy ();
+    if (aAttachmentBufferPolicy != null)
+      m_aResHelper.setAttachmentBufferPolicy (aAttachmentBufferPolicy);
     return this;
   }
 
@@ -727,6 +738,34 @@ public class AS4RequestHandler implements AutoCloseable
     return this;
   }
 
+  /**
+   * @return The specific executor for the asynchronous processing. May be <code>null</code> in
+   *         which case the global default instance is used.
+   * @since 3.2.3
+   */
+  @Nullable
+  public final AS4IncomingAsyncExecutor getAsyncExecutor ()
+  {
+    return m_aAsyncExecutor;
+  }
+
+  /**
+   * Set the specific executor for the asynchronous processing of incoming messages, including the
+   * HTTP settings for sending the asynchronous response. If none is set,
+   * {@link AS4IncomingAsyncExecutor#getDefaultInstance()} is used.
+   *
+   * @param aAsyncExecutor
+   *        The specific executor. May be <code>null</code>.
+   * @return this for chaining
+   * @since 3.2.3
+   */
+  @Nonnull
+  public final AS4RequestHandler setAsyncExecutor (@Nullable final AS4IncomingAsyncExecutor aAsyncExecutor)
+  {
+    m_aAsyncExecutor = aAsyncExecutor;
+    return this;
+  }
+
   /**
    * @return The supplier used to get all SPIs. By default this is
    *         {@link AS4IncomingMessageProcessorManager#getAllProcessors()}.
@@ -1773,6 +1812,8 @@ public class AS4RequestHandler implements AutoCloseable
         // this should only apply to MEP binding PUSH_PUSH Leg 1
 
         // Only leg1 can be async!
+        final AS4IncomingAsyncExecutor aAsyncExecutor = m_aAsyncExecutor != null ? m_aAsyncExecutor
+                                                                                 : AS4IncomingAsyncExecutor.getDefaultInstance ();
         final IThrowingRunnable <Exception> r = () -> {
           // Start async processing
           final ICommonsList <Ebms3Error> aLocalErrorMessages = new CommonsArrayList <> ();
@@ -1867,28 +1908,49 @@ public class AS4RequestHandler implements AutoCloseable
           // invoke client with new document
           final Document aAsyncResponse;
           {
-            final BasicHttpPoster aSender = new BasicHttpPoster ();
             final HttpHeaderMap aResponseHttpHeaders = null;
-            // TODO make async send parameters customizable
-            final HttpRetrySettings aRetrySettings = new HttpRetrySettings ();
-            aAsyncResponse = aSender.sendGenericMessageWithRetries (sAsyncResponseURL,
-                                                                    aResponseHttpHeaders,
-                                                                    aHttpEntity,
-                                                                    sMessageID,
-                                                                    aRetrySettings,
-                                                                    new ResponseHandlerXml (),
-                                                                    m_aOutgoingDumper,
-                                                                    m_aRetryCallback);
+            aAsyncResponse = aAsyncExecutor.getHttpPoster ()
+                                           .sendGenericMessageWithRetries (sAsyncResponseURL,
+                                                                           aResponseHttpHeaders,
+                                                                           aHttpEntity,
+                                                                           sMessageID,
+                                                                           aAsyncExecutor.getRetrySettings (),
+                                                                           new ResponseHandlerXml (),
+                                                                           m_aOutgoingDumper,
+                                                                           m_aRetryCallback);
           }
           AS4HttpDebug.debug ( () -> "SEND-RESPONSE [async sent] received: " +
                                      (aAsyncResponse == null ? "null" : XMLWriter.getNodeAsString (aAsyncResponse,
                                                                                                    AS4HttpDebug.getDebugXMLWriterSettings ())));
         };
 
-        final CompletableFuture <Void> aFuture = PhotonWorkerPool.getInstance ()
-                                                                 .runThrowing (CAS4.LIB_NAME + " async processing", r);
+        CompletableFuture <Void> aFuture = null;
+        try
+        {
+          // The message ID was already registered in the duplicate manager
+          aFuture = aAsyncExecutor.executeIncomingMessage (CAS4.LIB_NAME + " async processing",
+                                                           r,
+                                                           MetaAS4Manager.getIncomingDuplicateMgr (),
+                                                           sMessageID);
+        }
+        catch (final RejectedExecutionException ex)
+        {
+          // Back-pressure: too many messages are waiting for asynchronous
+          // processing - reject this one synchronously
+          LOGGER.warn ("Rejecting incoming AS4 message '" +
+                       sMessageID +
+                       "' because the asynchronous processing is not possible: " +
+                       aAsyncExecutor);
+          aEbmsErrorMessagesTarget.add (aAsyncExecutor.getRejectionError ()
+                                                      .errorBuilder (m_aLocale)
+                                                      .refToMessageInError (sMessageID)
+                                                      .errorDetail ("The message cannot be processed at the moment, because the server is overloaded. Please try again later.")
+                                                      .build ());
+          if (m_aSoapProcessingFinalizedCB != null)
+            m_aSoapProcessingFinalizedCB.onProcessingFinalized (true);
+        }
 
-        if (m_aSoapProcessingFinalizedCB != null)
+        if (aFuture != null && m_aSoapProcessingFinalizedCB != null)
         {
           // Give the outside world the possibility to get notified when the
           // processing is done
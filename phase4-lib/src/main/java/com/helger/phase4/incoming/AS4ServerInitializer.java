@@ -22,9 +22,12 @@ import javax.annotation.concurrent.ThreadSafe;
 import org.slf4j.Logger;
 
 import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.phase4.attachment.AS4AttachmentCryptoExecutor;
 import com.helger.phase4.config.AS4Configuration;
 import com.helger.phase4.incoming.mgr.AS4DuplicateCleanupJob;
 import com.helger.phase4.logging.Phase4LoggerFactory;
+import com.helger.phase4.messaging.http.AS4HttpClientManagerPool;
+import com.helger.phase4.messaging.http.AS4HttpRetryScheduler;
 import com.helger.phase4.mgr.MetaAS4Manager;
 import com.helger.quartz.TriggerKey;
 
@@ -33,6 +36,9 @@ import com.helger.quartz.TriggerKey;
  * <ul>
  * <li>The {@link MetaAS4Manager} instance is ensured to be present</li>
  * <li>The duplicate cleanup job will also be started.</li>
+ * <li>On shutdown, the asynchronous processing of incoming messages is
+ * finished, pending asynchronous retries are discarded and the pooled HTTP
+ * clients are closed.</li>
  * </ul>
  *
  * @author bayerlma
@@ -59,6 +65,9 @@ public final class AS4ServerInitializer
     // Ensure all managers are initialized
     MetaAS4Manager.getInstance ();
 
+    // Accept asynchronous retries again after a previous shutdown
+    AS4HttpRetryScheduler.restart ();
+
     final long nDisposalMinutes = AS4Configuration.getIncomingDuplicateDisposalMinutes ();
     if (LOGGER.isDebugEnabled ())
       LOGGER.debug ("Scheduling AS4DuplicateCleanupJob to dispose incoming metadata that is older than " +
@@ -79,7 +88,9 @@ public final class AS4ServerInitializer
   }
 
   /**
-   * Call this method to shutdown the AS4 server. This unschedules the jobs.
+   * Call this method to shutdown the AS4 server. This unschedules the jobs,
+   * finishes the asynchronous processing of incoming messages, discards
+   * pending asynchronous retries and closes all pooled HTTP clients.
    *
    * @since 0.10.3
    */
@@ -89,5 +100,15 @@ public final class AS4ServerInitializer
       AS4DuplicateCleanupJob.unschedule (s_aTriggerKey);
       s_aTriggerKey = null;
     });
+
+    // Finish the accepted asynchronous processing
+    AS4IncomingAsyncExecutor.shutdownDefaultInstance ();
+    AS4AttachmentCryptoExecutor.shutdown ();
+
+    // Discard pending asynchronous retries
+    AS4HttpRetryScheduler.shutdown ();
+
+    // Close all open HTTP connections
+    AS4HttpClientManagerPool.closeAll ();
   }
 }
@@ -18,6 +18,8 @@ package com.helger.phase4.incoming;
 
 import javax.annotation.Nullable;
 
+import com.helger.phase4.attachment.AS4AttachmentBufferPolicy;
+
 /**
  * Contains some configuration properties for incoming messages.
  *
@@ -34,4 +36,18 @@ public interface IAS4IncomingReceiverConfiguration
    */
   @Nullable
   String getReceiverEndpointAddress ();
+
+  /**
+   * Get the policy that defines how incoming and decrypted attachments are
+   * buffered by this receiver.
+   *
+   * @return The specific policy or <code>null</code> to use the global default
+   *         from the configuration.
+   * @since 3.2.3
+   */
+  @Nullable
+  default AS4AttachmentBufferPolicy getAttachmentBufferPolicy ()
+  {
+    return null;
+  }
 }
@@ -26,6 +26,7 @@ import org.slf4j.Logger;
 
 import com.helger.commons.collection.impl.ICommonsList;
 import com.helger.commons.lang.ClassHelper;
+import com.helger.commons.timing.StopWatch;
 import com.helger.phase4.logging.Phase4LoggerFactory;
 import com.helger.phase4.mgr.MetaAS4Manager;
 import com.helger.quartz.DisallowConcurrentExecution;
@@ -60,10 +61,20 @@ public final class AS4DuplicateCleanupJob extends AbstractScopeAwareJob
     final long nMins = aJobDataMap.getAsLong (KEY_MINUTES);
     final OffsetDateTime aOldDT = MetaAS4Manager.getTimestampMgr ().getCurrentDateTime ().minusMinutes (nMins);
 
+    // The default duplicate managers evict bucket by bucket, so that the
+    // reception of messages is not blocked during a large cleanup
+    final StopWatch aSW = StopWatch.createdStarted ();
     final ICommonsList <String> aEvicted = MetaAS4Manager.getIncomingDuplicateMgr ().evictAllItemsBefore (aOldDT);
+    aSW.stop ();
     if (aEvicted.isNotEmpty ())
       if (LOGGER.isDebugEnabled ())
-        LOGGER.debug ("Evicted " + aEvicted.size () + " incoming duplicate message IDs before " + aOldDT.toString ());
+        LOGGER.debug ("Evicted " +
+                      aEvicted.size () +
+                      " incoming duplicate message IDs before " +
+                      aOldDT.toString () +
+                      " in " +
+                      aSW.getMillis () +
+                      " ms");
   }
 
   /**
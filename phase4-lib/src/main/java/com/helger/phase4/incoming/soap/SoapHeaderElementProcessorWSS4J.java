@@ -16,7 +16,6 @@
  */
 package com.helger.phase4.incoming.soap;
 
-import java.io.File;
 import java.io.IOException;
 import java.security.Provider;
 import java.security.cert.X509Certificate;
@@ -47,12 +46,10 @@ import org.w3c.dom.Element;
 import com.helger.commons.ValueEnforcer;
 import com.helger.commons.collection.impl.CommonsArrayList;
 import com.helger.commons.collection.impl.ICommonsList;
-import com.helger.commons.io.file.FileHelper;
-import com.helger.commons.io.stream.HasInputStream;
-import com.helger.commons.io.stream.StreamHelper;
 import com.helger.commons.state.ESuccess;
 import com.helger.commons.string.StringHelper;
 import com.helger.phase4.CAS4;
+import com.helger.phase4.attachment.AS4AttachmentCryptoExecutor;
 import com.helger.phase4.attachment.WSS4JAttachment;
 import com.helger.phase4.attachment.WSS4JAttachmentCallbackHandler;
 import com.helger.phase4.config.AS4Configuration;
@@ -126,8 +123,12 @@ public class SoapHeaderElementProcessorWSS4J implements ISoapHeaderElementProces
     // Signing verification and Decryption
     try
     {
+      // Decryption crypto and key passwords must belong to the same key
+      // material
+      final IAS4CryptoFactory aCryptoFactoryCrypt = m_aCryptoFactoryCrypt.getSnapshot ();
+
       // Convert to WSS4J attachments
-      final AS4KeyStoreCallbackHandler aKeyStoreCallback = new AS4KeyStoreCallbackHandler (m_aCryptoFactoryCrypt);
+      final AS4KeyStoreCallbackHandler aKeyStoreCallback = new AS4KeyStoreCallbackHandler (aCryptoFactoryCrypt);
       final WSS4JAttachmentCallbackHandler aAttachmentCallbackHandler = new WSS4JAttachmentCallbackHandler (aAttachments,
                                                                                                             aIncomingState.getResourceHelper ());
 
@@ -153,7 +154,7 @@ public class SoapHeaderElementProcessorWSS4J implements ISoapHeaderElementProces
       if (aAttachments.isNotEmpty ())
         aRequestData.setAttachmentCallbackHandler (aAttachmentCallbackHandler);
       aRequestData.setSigVerCrypto (m_aCryptoFactorySign.getCrypto (ECryptoMode.DECRYPT_VERIFY));
-      aRequestData.setDecCrypto (m_aCryptoFactoryCrypt.getCrypto (ECryptoMode.DECRYPT_VERIFY));
+      aRequestData.setDecCrypto (aCryptoFactoryCrypt.getCrypto (ECryptoMode.DECRYPT_VERIFY));
       aRequestData.setWssConfig (aWSSConfig);
       aRequestData.setSignatureProvider (m_aSecurityProviderSignVerify);
 
@@ -288,24 +289,11 @@ public class SoapHeaderElementProcessorWSS4J implements ISoapHeaderElementProces
 
       // Decrypting the Attachments
       final ICommonsList <WSS4JAttachment> aResponseAttachments = aAttachmentCallbackHandler.getAllResponseAttachments ();
-      for (final WSS4JAttachment aResponseAttachment : aResponseAttachments)
-      {
-        // Always copy to a temporary file, so that decrypted content can be
-        // read more than once. By default the stream can only be read once
-        // Not nice, but working :)
-        final File aTempFile = aIncomingState.getResourceHelper ().createTempFile ();
-        if (StreamHelper.copyByteStream ()
-                        .from (aResponseAttachment.getSourceStream ())
-                        .closeFrom (true)
-                        .to (FileHelper.getBufferedOutputStream (aTempFile))
-                        .closeTo (true)
-                        .build ()
-                        .isFailure ())
-        {
-          LOGGER.error ("Failed to write response attachment to temporary file '" + aTempFile.getAbsolutePath () + "'");
-        }
-        aResponseAttachment.setSourceStreamProvider (HasInputStream.multiple ( () -> FileHelper.getBufferedInputStream (aTempFile)));
-      }
+      // Always buffer the decrypted content, so that it can be read more than
+      // once. By default the stream can only be read once. Depending on the
+      // size, the buffer is on the heap, off-heap or a temporary file. Many
+      // attachments are decrypted in parallel.
+      AS4AttachmentCryptoExecutor.bufferAll (aResponseAttachments, aIncomingState.getResourceHelper ());
 
       // Remember in State
       aIncomingState.setDecryptedAttachments (aResponseAttachments);
@@ -557,12 +545,16 @@ public class SoapHeaderElementProcessorWSS4J implements ISoapHeaderElementProces
       final ESuccess eSuccess;
       if (AS4Configuration.isWSS4JSynchronizedSecurity ())
       {
-        // Use static WSSConfig creation
+        // Reuse the WSSConfig of the current thread in pooled mode, unless it
+        // is modified by the custom parameter modifier
+        final Supplier <? extends WSSConfig> aWSSConfigSupplier = WSSSynchronizer.isPooled () &&
+                                                                  m_aDecryptParameterModifier == null ? WSSConfigManager::getThreadConfinedWSSConfig
+                                                                                                      : WSSConfigManager::createStaticWSSConfig;
         eSuccess = WSSSynchronizer.call ( () -> _verifyAndDecrypt (aSoapDoc,
                                                                    aAttachments,
                                                                    aIncomingState,
                                                                    aProcessingErrorMessagesTarget,
-                                                                   WSSConfigManager::createStaticWSSConfig));
+                                                                   aWSSConfigSupplier));
       }
       else
       {
@@ -16,6 +16,8 @@
  */
 package com.helger.phase4.messaging.crypto;
 
+import java.io.IOException;
+
 import javax.annotation.Nonnull;
 import javax.annotation.WillNotClose;
 import javax.annotation.concurrent.Immutable;
@@ -244,6 +246,9 @@ public final class AS4Encryptor
 
     final WSS4JAttachmentCallbackHandler aAttachmentCallbackHandler = new WSS4JAttachmentCallbackHandler (aAttachments,
                                                                                                           aResHelper);
+    // Buffer the encrypted content, so that the resulting MIME message is
+    // repeatable (e.g. for retries)
+    aAttachmentCallbackHandler.setBufferResultAttachments (true);
     aBuilder.setAttachmentCallbackHandler (aAttachmentCallbackHandler);
 
     // Ensure mustUnderstand value
@@ -262,8 +267,18 @@ public final class AS4Encryptor
     final Document aEncryptedDoc = aBuilder.build (aCryptoFactoryCrypt.getCrypto (ECryptoMode.ENCRYPT_SIGN),
                                                    aSymmetricKey);
 
+    // The attachments may be encrypted in parallel
+    try
+    {
+      aAttachmentCallbackHandler.waitForBufferedResultAttachments ();
+    }
+    catch (final IOException ex)
+    {
+      throw new WSSecurityException (ErrorCode.FAILURE, ex, "Failed to encrypt attachments");
+    }
+
     // The attachment callback handler contains the encrypted attachments
-    // Important: read the attachment stream only once!
+    // The encrypted content is buffered and can be read multiple times
     final ICommonsList <WSS4JAttachment> aEncryptedAttachments = aAttachmentCallbackHandler.getAllResponseAttachments ();
     // MIME Type and CTE must be set for encrypted attachments!
     for (final WSS4JAttachment aAttachment : aEncryptedAttachments)
@@ -78,12 +78,15 @@ public final class AS4Signer
     ValueEnforcer.notNull (aResHelper, "ResHelper");
     ValueEnforcer.notNull (aSigningParams, "SigningParams");
 
+    // Crypto, alias and password must belong to the same key material
+    final IAS4CryptoFactory aCryptoFactory = aCryptoFactorySign.getSnapshot ();
+
     LOGGER.info ("Now signing AS4 message [" +
                  eSoapVersion +
                  "]. KeyIdentifierType=" +
                  aSigningParams.getKeyIdentifierType ().name () +
                  "; KeyAlias=" +
-                 aCryptoFactorySign.getKeyAlias () +
+                 aCryptoFactory.getKeyAlias () +
                  "; SignAlgo=" +
                  aSigningParams.getAlgorithmSign ().getAlgorithmURI () +
                  "; DigestAlgo=" +
@@ -103,8 +106,8 @@ public final class AS4Signer
 
     aBuilder.setKeyIdentifierType (aSigningParams.getKeyIdentifierType ().getTypeID ());
     // Set keystore alias and key password
-    aBuilder.setUserInfo (aCryptoFactorySign.getKeyAlias (),
-                          aCryptoFactorySign.getKeyPasswordPerAlias (aCryptoFactorySign.getKeyAlias ()));
+    aBuilder.setUserInfo (aCryptoFactory.getKeyAlias (),
+                          aCryptoFactory.getKeyPasswordPerAlias (aCryptoFactory.getKeyAlias ()));
     aBuilder.setSignatureAlgorithm (aSigningParams.getAlgorithmSign ().getAlgorithmURI ());
     // PMode indicates the DigestAlgorithm as Hash Function
     aBuilder.setDigestAlgo (aSigningParams.getAlgorithmSignDigest ().getAlgorithmURI ());
@@ -150,7 +153,7 @@ public final class AS4Signer
         LOGGER.debug ("After running WSSecSignatureCustomizer.customize");
     }
 
-    return aBuilder.build (aCryptoFactorySign.getCrypto (ECryptoMode.ENCRYPT_SIGN));
+    return aBuilder.build (aCryptoFactory.getCrypto (ECryptoMode.ENCRYPT_SIGN));
   }
 
   /**
@@ -0,0 +1,383 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.messaging.http;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.io.HttpClientResponseHandler;
+import org.slf4j.Logger;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.functional.IThrowingSupplier;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.httpclient.HttpClientFactory;
+import com.helger.httpclient.HttpClientManager;
+import com.helger.httpclient.HttpClientSettings;
+import com.helger.phase4.logging.Phase4LoggerFactory;
+
+/**
+ * A process wide pool of long-lived {@link HttpClientManager} instances - one
+ * per {@link HttpClientFactory} instance. Each {@link HttpClientManager} uses
+ * the pooling connection manager created by the {@link HttpClientFactory}, so
+ * that keep-alive connections (and the negotiated TLS sessions) can be reused
+ * across multiple AS4 transmissions to the same endpoint, instead of paying a
+ * full TCP and TLS handshake for every single message.<br>
+ * Per-route and total connection limits are defined by the
+ * {@link HttpClientFactory} respectively its {@link HttpClientSettings}.
+ * Clients that were not used for {@link #getMaxIdleDuration()} are closed
+ * automatically, and at most {@link #getMaxPooledClients()} clients are
+ * retained.<br>
+ * Note: the key of the pool is the identity of the {@link HttpClientFactory}.
+ * Changes to a {@link HttpClientFactory} after its first usage are not
+ * reflected in the pooled client. Use
+ * {@link #getSharedHttpClientFactory(String, IThrowingSupplier)} to share a
+ * single factory between multiple senders.
+ *
+ * @author Philip Helger
+ * @since 3.2.3
+ */
+@ThreadSafe
+public final class AS4HttpClientManagerPool
+{
+  public static final Duration DEFAULT_MAX_IDLE_DURATION = Duration.ofMinutes (5);
+  public static final int DEFAULT_MAX_POOLED_CLIENTS = 64;
+  // The minimum time between two idle client scans when leasing a client
+  private static final long EVICTION_INTERVAL_MILLIS = 10_000;
+
+  private static final class PooledClient
+  {
+    private final HttpClientManager m_aMgr;
+    // All guarded by RW_LOCK
+    private long m_nLastUsedMillis;
+    private int m_nActiveRequests;
+
+    PooledClient (@Nonnull final HttpClientManager aMgr)
+    {
+      m_aMgr = aMgr;
+      m_nLastUsedMillis = System.currentTimeMillis ();
+    }
+  }
+
+  private static final Logger LOGGER = Phase4LoggerFactory.getLogger (AS4HttpClientManagerPool.class);
+
+  private static final SimpleReadWriteLock RW_LOCK = new SimpleReadWriteLock ();
+  @GuardedBy ("RW_LOCK")
+  private static final Map <HttpClientFactory, PooledClient> POOL = new IdentityHashMap <> ();
+  @GuardedBy ("RW_LOCK")
+  private static final ICommonsMap <String, HttpClientFactory> SHARED_FACTORIES = new CommonsHashMap <> ();
+  @GuardedBy ("RW_LOCK")
+  private static Duration s_aMaxIdleDuration = DEFAULT_MAX_IDLE_DURATION;
+  @GuardedBy ("RW_LOCK")
+  private static int s_nMaxPooledClients = DEFAULT_MAX_POOLED_CLIENTS;
+  @GuardedBy ("RW_LOCK")
+  private static long s_nLastEvictionMillis;
+  @GuardedBy ("RW_LOCK")
+  private static int s_nActiveRequests;
+  @GuardedBy ("RW_LOCK")
+  private static long s_nCreatedClients;
+  @GuardedBy ("RW_LOCK")
+  private static long s_nClosedClients;
+  @GuardedBy ("RW_LOCK")
+  private static long s_nTotalRequests;
+  @GuardedBy ("RW_LOCK")
+  private static long s_nReusedRequests;
+  @GuardedBy ("RW_LOCK")
+  private static long s_nFailedRequests;
+
+  private AS4HttpClientManagerPool ()
+  {}
+
+  /**
+   * @return The duration after which an unused pooled client is closed. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public static Duration getMaxIdleDuration ()
+  {
+    return RW_LOCK.readLockedGet ( () -> s_aMaxIdleDuration);
+  }
+
+  /**
+   * Set the duration after which an unused pooled client is closed.
+   *
+   * @param aMaxIdleDuration
+   *        The duration to use. May not be <code>null</code> and must not be
+   *        negative.
+   */
+  public static void setMaxIdleDuration (@Nonnull final Duration aMaxIdleDuration)
+  {
+    ValueEnforcer.notNull (aMaxIdleDuration, "MaxIdleDuration");
+    ValueEnforcer.isFalse (aMaxIdleDuration.isNegative (), "MaxIdleDuration must not be negative");
+    RW_LOCK.writeLocked ( () -> s_aMaxIdleDuration = aMaxIdleDuration);
+  }
+
+  /**
+   * @return The maximum number of pooled clients. Always &gt; 0.
+   */
+  @Nonnegative
+  public static int getMaxPooledClients ()
+  {
+    return RW_LOCK.readLockedGet ( () -> Integer.valueOf (s_nMaxPooledClients)).intValue ();
+  }
+
+  /**
+   * Set the maximum number of pooled clients. If more different
+   * {@link HttpClientFactory} instances are used, the least recently used idle
+   * clients are closed.
+   *
+   * @param nMaxPooledClients
+   *        The maximum number of clients. Must be &gt; 0.
+   */
+  public static void setMaxPooledClients (@Nonnegative final int nMaxPooledClients)
+  {
+    ValueEnforcer.isGT0 (nMaxPooledClients, "MaxPooledClients");
+    RW_LOCK.writeLocked ( () -> s_nMaxPooledClients = nMaxPooledClients);
+  }
+
+  /**
+   * Get or create a {@link HttpClientFactory} that is shared under the provided
+   * key. This is meant to be used by the profile specific senders, so that all
+   * builders of the same profile use the same {@link HttpClientFactory} and
+   * therefore the same pooled {@link HttpClientManager}.
+   *
+   * @param <EX>
+   *        The exception type that may be thrown by the supplier
+   * @param sKey
+   *        The sharing key. May neither be <code>null</code> nor empty.
+   * @param aSettingsSupplier
+   *        The supplier for the {@link HttpClientSettings} that is only invoked
+   *        if no factory is present for the key. May not be <code>null</code>.
+   * @return The shared {@link HttpClientFactory}. Never <code>null</code>.
+   * @throws EX
+   *         If the settings supplier throws an exception
+   */
+  @Nonnull
+  public static <EX extends Exception> HttpClientFactory getSharedHttpClientFactory (@Nonnull @Nonempty final String sKey,
+                                                                                    @Nonnull final IThrowingSupplier <? extends HttpClientSettings, EX> aSettingsSupplier) throws EX
+  {
+    ValueEnforcer.notEmpty (sKey, "Key");
+    ValueEnforcer.notNull (aSettingsSupplier, "SettingsSupplier");
+
+    HttpClientFactory ret = RW_LOCK.readLockedGet ( () -> SHARED_FACTORIES.get (sKey));
+    if (ret == null)
+    {
+      // Create outside the lock
+      final HttpClientFactory aNewFactory = new HttpClientFactory (aSettingsSupplier.get ());
+      ret = RW_LOCK.writeLockedGet ( () -> SHARED_FACTORIES.computeIfAbsent (sKey, k -> aNewFactory));
+    }
+    return ret;
+  }
+
+  @GuardedBy ("RW_LOCK")
+  private static void _collectEvictable (final long nNowMillis, @Nonnull final ICommonsList <HttpClientManager> aToClose)
+  {
+    final long nMaxIdleMillis = s_aMaxIdleDuration.toMillis ();
+
+    // Remove all idle entries
+    final Iterator <PooledClient> it = POOL.values ().iterator ();
+    while (it.hasNext ())
+    {
+      final PooledClient aPC = it.next ();
+      if (aPC.m_nActiveRequests == 0 && nNowMillis - aPC.m_nLastUsedMillis > nMaxIdleMillis)
+      {
+        aToClose.add (aPC.m_aMgr);
+        it.remove ();
+      }
+    }
+
+    // Remove the least recently used entries, if there are too many
+    while (POOL.size () > s_nMaxPooledClients)
+    {
+      Map.Entry <HttpClientFactory, PooledClient> aOldest = null;
+      for (final Map.Entry <HttpClientFactory, PooledClient> aEntry : POOL.entrySet ())
+      {
+        final PooledClient aPC = aEntry.getValue ();
+        if (aPC.m_nActiveRequests == 0 &&
+            (aOldest == null || aPC.m_nLastUsedMillis < aOldest.getValue ().m_nLastUsedMillis))
+          aOldest = aEntry;
+      }
+      if (aOldest == null)
+      {
+        // All clients are in use
+        break;
+      }
+      aToClose.add (aOldest.getValue ().m_aMgr);
+      POOL.remove (aOldest.getKey ());
+    }
+    s_nClosedClients += aToClose.size ();
+    s_nLastEvictionMillis = nNowMillis;
+  }
+
+  private static void _closeAll (@Nonnull final ICommonsList <HttpClientManager> aToClose)
+  {
+    if (aToClose.isNotEmpty ())
+    {
+      if (LOGGER.isDebugEnabled ())
+        LOGGER.debug ("Closing " + aToClose.size () + " pooled HTTP client(s)");
+      for (final HttpClientManager aMgr : aToClose)
+        StreamHelper.close (aMgr);
+    }
+  }
+
+  @Nonnull
+  private static PooledClient _lease (@Nonnull final HttpClientFactory aHttpClientFactory)
+  {
+    final ICommonsList <HttpClientManager> aToClose = new CommonsArrayList <> ();
+    final PooledClient ret;
+    RW_LOCK.writeLock ().lock ();
+    try
+    {
+      final long nNowMillis = System.currentTimeMillis ();
+      PooledClient aPC = POOL.get (aHttpClientFactory);
+      if (aPC == null)
+      {
+        // Creating the client does not open any connection
+        aPC = new PooledClient (new HttpClientManager (aHttpClientFactory));
+        POOL.put (aHttpClientFactory, aPC);
+        s_nCreatedClients++;
+      }
+      else
+        s_nReusedRequests++;
+      aPC.m_nActiveRequests++;
+      aPC.m_nLastUsedMillis = nNowMillis;
+      s_nActiveRequests++;
+      s_nTotalRequests++;
+      ret = aPC;
+
+      // Scan for idle clients only from time to time
+      if (POOL.size () > s_nMaxPooledClients || nNowMillis - s_nLastEvictionMillis >= EVICTION_INTERVAL_MILLIS)
+        _collectEvictable (nNowMillis, aToClose);
+    }
+    finally
+    {
+      RW_LOCK.writeLock ().unlock ();
+    }
+    _closeAll (aToClose);
+    return ret;
+  }
+
+  private static void _release (@Nonnull final PooledClient aPC, final boolean bFailed)
+  {
+    RW_LOCK.writeLocked ( () -> {
+      aPC.m_nActiveRequests--;
+      aPC.m_nLastUsedMillis = System.currentTimeMillis ();
+      s_nActiveRequests--;
+      if (bFailed)
+        s_nFailedRequests++;
+    });
+  }
+
+  /**
+   * Execute the provided HTTP request with the pooled {@link HttpClientManager}
+   * of the provided {@link HttpClientFactory}. If no such client is present, it
+   * is created.
+   *
+   * @param <T>
+   *        Response data type
+   * @param aHttpClientFactory
+   *        The HTTP client factory to use. May not be <code>null</code>.
+   * @param aRequest
+   *        The request to be executed. May not be <code>null</code>.
+   * @param aResponseHandler
+   *        The response handler to use. May not be <code>null</code>.
+   * @return The result of the response handler. May be <code>null</code>.
+   * @throws IOException
+   *         In case of IO error
+   */
+  public static <T> T execute (@Nonnull final HttpClientFactory aHttpClientFactory,
+                               @Nonnull final ClassicHttpRequest aRequest,
+                               @Nonnull final HttpClientResponseHandler <? extends T> aResponseHandler) throws IOException
+  {
+    ValueEnforcer.notNull (aHttpClientFactory, "HttpClientFactory");
+    ValueEnforcer.notNull (aRequest, "Request");
+    ValueEnforcer.notNull (aResponseHandler, "ResponseHandler");
+
+    final PooledClient aPC = _lease (aHttpClientFactory);
+    boolean bFailed = true;
+    try
+    {
+      final T ret = aPC.m_aMgr.execute (aRequest, aResponseHandler);
+      bFailed = false;
+      return ret;
+    }
+    finally
+    {
+      _release (aPC, bFailed);
+    }
+  }
+
+  /**
+   * Close all pooled clients that are idle for longer than
+   * {@link #getMaxIdleDuration()}. This is also done implicitly with every
+   * request, so this method only needs to be called to free resources in
+   * phases without any sending activity.
+   */
+  public static void closeIdleClients ()
+  {
+    final ICommonsList <HttpClientManager> aToClose = new CommonsArrayList <> ();
+    RW_LOCK.writeLocked ( () -> _collectEvictable (System.currentTimeMillis (), aToClose));
+    _closeAll (aToClose);
+  }
+
+  /**
+   * Close all pooled clients, independent of whether they are in use or not.
+   * This should be called upon application shutdown.
+   */
+  public static void closeAll ()
+  {
+    final ICommonsList <HttpClientManager> aToClose = new CommonsArrayList <> ();
+    RW_LOCK.writeLocked ( () -> {
+      for (final PooledClient aPC : POOL.values ())
+        aToClose.add (aPC.m_aMgr);
+      POOL.clear ();
+      s_nClosedClients += aToClose.size ();
+    });
+    _closeAll (aToClose);
+  }
+
+  /**
+   * @return A snapshot of the current pool statistics. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public static AS4HttpClientManagerPoolStatistics getStatistics ()
+  {
+    return RW_LOCK.readLockedGet ( () -> new AS4HttpClientManagerPoolStatistics (POOL.size (),
+                                                                                 s_nActiveRequests,
+                                                                                 s_nCreatedClients,
+                                                                                 s_nClosedClients,
+                                                                                 s_nTotalRequests,
+                                                                                 s_nReusedRequests,
+                                                                                 s_nFailedRequests));
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.messaging.http;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.string.ToStringGenerator;
+
+/**
+ * Immutable snapshot of the statistics of {@link AS4HttpClientManagerPool}.
+ *
+ * @author Philip Helger
+ * @since 3.2.3
+ */
+@Immutable
+public final class AS4HttpClientManagerPoolStatistics
+{
+  private final int m_nPooledClients;
+  private final int m_nActiveRequests;
+  private final long m_nCreatedClients;
+  private final long m_nClosedClients;
+  private final long m_nTotalRequests;
+  private final long m_nReusedRequests;
+  private final long m_nFailedRequests;
+
+  public AS4HttpClientManagerPoolStatistics (@Nonnegative final int nPooledClients,
+                                             @Nonnegative final int nActiveRequests,
+                                             @Nonnegative final long nCreatedClients,
+                                             @Nonnegative final long nClosedClients,
+                                             @Nonnegative final long nTotalRequests,
+                                             @Nonnegative final long nReusedRequests,
+                                             @Nonnegative final long nFailedRequests)
+  {
+    ValueEnforcer.isGE0 (nPooledClients, "PooledClients");
+    ValueEnforcer.isGE0 (nActiveRequests, "ActiveRequests");
+    ValueEnforcer.isGE0 (nCreatedClients, "CreatedClients");
+    ValueEnforcer.isGE0 (nClosedClients, "ClosedClients");
+    ValueEnforcer.isGE0 (nTotalRequests, "TotalRequests");
+    ValueEnforcer.isGE0 (nReusedRequests, "ReusedRequests");
+    ValueEnforcer.isGE0 (nFailedRequests, "FailedRequests");
+    m_nPooledClients = nPooledClients;
+    m_nActiveRequests = nActiveRequests;
+    m_nCreatedClients = nCreatedClients;
+    m_nClosedClients = nClosedClients;
+    m_nTotalRequests = nTotalRequests;
+    m_nReusedRequests = nReusedRequests;
+    m_nFailedRequests = nFailedRequests;
+  }
+
+  /**
+   * @return The number of HTTP clients currently held in the pool. Always
+   *         &ge; 0.
+   */
+  @Nonnegative
+  public int getPooledClients ()
+  {
+    return m_nPooledClients;
+  }
+
+  /**
+   * @return The number of HTTP requests currently in flight over pooled
+   *         clients. Always &ge; 0.
+   */
+  @Nonnegative
+  public int getActiveRequests ()
+  {
+    return m_nActiveRequests;
+  }
+
+  /**
+   * @return The total number of HTTP clients created since startup. Always
+   *         &ge; 0.
+   */
+  @Nonnegative
+  public long getCreatedClients ()
+  {
+    return m_nCreatedClients;
+  }
+
+  /**
+   * @return The total number of HTTP clients closed since startup (because
+   *         they were idle, the pool was full or the pool was shutdown). Always
+   *         &ge; 0.
+   */
+  @Nonnegative
+  public long getClosedClients ()
+  {
+    return m_nClosedClients;
+  }
+
+  /**
+   * @return The total number of HTTP requests executed over pooled clients.
+   *         Always &ge; 0.
+   */
+  @Nonnegative
+  public long getTotalRequests ()
+  {
+    return m_nTotalRequests;
+  }
+
+  /**
+   * @return The number of HTTP requests that were executed on an already
+   *         existing client (and therefore had the chance to reuse an open
+   *         connection). Always &ge; 0.
+   */
+  @Nonnegative
+  public long getReusedRequests ()
+  {
+    return m_nReusedRequests;
+  }
+
+  /**
+   * @return The number of HTTP requests that failed with an exception. Always
+   *         &ge; 0.
+   */
+  @Nonnegative
+  public long getFailedRequests ()
+  {
+    return m_nFailedRequests;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("PooledClients", m_nPooledClients)
+                                       .append ("ActiveRequests", m_nActiveRequests)
+                                       .append ("CreatedClients", m_nCreatedClients)
+                                       .append ("ClosedClients", m_nClosedClients)
+                                       .append ("TotalRequests", m_nTotalRequests)
+                                       .append ("ReusedRequests", m_nReusedRequests)
+                                       .append ("FailedRequests", m_nFailedRequests)
+                                       .getToString ();
+  }
+}
@@ -0,0 +1,398 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.messaging.http;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.concurrent.ExecutorServiceHelper;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.phase4.logging.Phase4LoggerFactory;
+
+/**
+ * The shared executors for asynchronous HTTP transmissions with retries. The
+ * blocking HTTP transmissions are executed on a bounded pool of worker
+ * threads. The waiting time between two tries does not block any thread - a
+ * separate single threaded {@link ScheduledExecutorService} only triggers the
+ * retries, by handing them over to the worker threads. This ensures that slow
+ * endpoints cannot delay the retries of other transmissions.<br>
+ * The number of transmissions that are waiting for a worker thread is limited
+ * by {@link #getMaxQueuedTasks()} and the number of retries that are waiting
+ * for their time to come is limited by {@link #getMaxPendingRetries()}.<br>
+ * After {@link #shutdown()} all new transmissions and retries are rejected,
+ * until {@link #restart()} is called.
+ *
+ * @author Philip Helger
+ * @since 3.2.3
+ * @see BasicHttpPoster#sendGenericMessageWithRetriesAsync(String,
+ *      com.helger.commons.http.HttpHeaderMap,
+ *      org.apache.hc.core5.http.HttpEntity, String, HttpRetrySettings,
+ *      org.apache.hc.core5.http.io.HttpClientResponseHandler,
+ *      com.helger.phase4.dump.IAS4OutgoingDumper,
+ *      com.helger.phase4.client.IAS4RetryCallback)
+ */
+@ThreadSafe
+public final class AS4HttpRetryScheduler
+{
+  public static final int DEFAULT_THREAD_COUNT = Math.max (2, Runtime.getRuntime ().availableProcessors ());
+  public static final int DEFAULT_MAX_QUEUED_TASKS = 10_000;
+  public static final int DEFAULT_MAX_PENDING_RETRIES = 10_000;
+
+  private static final class PendingRetry implements Runnable
+  {
+    private final Runnable m_aAction;
+    private final Runnable m_aDiscardAction;
+    private final ExecutorService m_aWorker;
+    private final AtomicBoolean m_aDone = new AtomicBoolean (false);
+
+    PendingRetry (@Nonnull final Runnable aAction,
+                  @Nonnull final Runnable aDiscardAction,
+                  @Nonnull final ExecutorService aWorker)
+    {
+      m_aAction = aAction;
+      m_aDiscardAction = aDiscardAction;
+      m_aWorker = aWorker;
+    }
+
+    public void run ()
+    {
+      // Invoked on the scheduler thread - hand over to the workers
+      if (m_aDone.compareAndSet (false, true))
+      {
+        PENDING_RETRIES.remove (this);
+        try
+        {
+          m_aWorker.execute (m_aAction);
+        }
+        catch (final RejectedExecutionException ex)
+        {
+          LOGGER.warn ("Failed to start a due AS4 HTTP retry - too many queued transmissions or the executor was shut down");
+          m_aDiscardAction.run ();
+        }
+      }
+    }
+
+    void discard ()
+    {
+      if (m_aDone.compareAndSet (false, true))
+      {
+        PENDING_RETRIES.remove (this);
+        m_aDiscardAction.run ();
+      }
+    }
+  }
+
+  private static final class ExecutorPair
+  {
+    private final ScheduledExecutorService m_aScheduler;
+    private final ExecutorService m_aWorker;
+
+    ExecutorPair (@Nonnull final ScheduledExecutorService aScheduler, @Nonnull final ExecutorService aWorker)
+    {
+      m_aScheduler = aScheduler;
+      m_aWorker = aWorker;
+    }
+  }
+
+  private static final Logger LOGGER = Phase4LoggerFactory.getLogger (AS4HttpRetryScheduler.class);
+
+  private static final SimpleReadWriteLock RW_LOCK = new SimpleReadWriteLock ();
+  private static final AtomicInteger THREAD_INDEX = new AtomicInteger (0);
+  private static final Set <PendingRetry> PENDING_RETRIES = ConcurrentHashMap.newKeySet ();
+  @GuardedBy ("RW_LOCK")
+  private static int s_nThreadCount = DEFAULT_THREAD_COUNT;
+  @GuardedBy ("RW_LOCK")
+  private static int s_nMaxQueuedTasks = DEFAULT_MAX_QUEUED_TASKS;
+  @GuardedBy ("RW_LOCK")
+  private static int s_nMaxPendingRetries = DEFAULT_MAX_PENDING_RETRIES;
+  @GuardedBy ("RW_LOCK")
+  private static ExecutorPair s_aExecutorPair;
+  @GuardedBy ("RW_LOCK")
+  private static boolean s_bShutdown = false;
+
+  private AS4HttpRetryScheduler ()
+  {}
+
+  /**
+   * @return The number of worker threads used for the HTTP transmissions.
+   *         Always &gt; 0.
+   */
+  @Nonnegative
+  public static int getThreadCount ()
+  {
+    return RW_LOCK.readLockedGet ( () -> Integer.valueOf (s_nThreadCount)).intValue ();
+  }
+
+  /**
+   * Set the number of worker threads to be used for the HTTP transmissions.
+   * This takes effect on the next creation of the executors, so it should be
+   * called before the first asynchronous transmission or between
+   * {@link #shutdown()} and {@link #restart()}.
+   *
+   * @param nThreadCount
+   *        The number of threads. Must be &gt; 0.
+   */
+  public static void setThreadCount (@Nonnegative final int nThreadCount)
+  {
+    ValueEnforcer.isGT0 (nThreadCount, "ThreadCount");
+    RW_LOCK.writeLocked ( () -> s_nThreadCount = nThreadCount);
+  }
+
+  /**
+   * @return The maximum number of transmissions (initial tries and due
+   *         retries) that may wait for a free worker thread. Always &gt; 0.
+   */
+  @Nonnegative
+  public static int getMaxQueuedTasks ()
+  {
+    return RW_LOCK.readLockedGet ( () -> Integer.valueOf (s_nMaxQueuedTasks)).intValue ();
+  }
+
+  /**
+   * Set the maximum number of transmissions that may wait for a free worker
+   * thread. If this limit is reached, further transmissions are rejected. This
+   * takes effect on the next creation of the executors, so it should be called
+   * before the first asynchronous transmission or between {@link #shutdown()}
+   * and {@link #restart()}.
+   *
+   * @param nMaxQueuedTasks
+   *        The maximum number of queued transmissions. Must be &gt; 0.
+   */
+  public static void setMaxQueuedTasks (@Nonnegative final int nMaxQueuedTasks)
+  {
+    ValueEnforcer.isGT0 (nMaxQueuedTasks, "MaxQueuedTasks");
+    RW_LOCK.writeLocked ( () -> s_nMaxQueuedTasks = nMaxQueuedTasks);
+  }
+
+  /**
+   * @return The maximum number of retries that may be waiting for execution at
+   *         the same time. Always &gt; 0.
+   */
+  @Nonnegative
+  public static int getMaxPendingRetries ()
+  {
+    return RW_LOCK.readLockedGet ( () -> Integer.valueOf (s_nMaxPendingRetries)).intValue ();
+  }
+
+  /**
+   * Set the maximum number of retries that may be waiting for execution at the
+   * same time. If this limit is reached, further retries are not scheduled and
+   * the respective transmission fails immediately.
+   *
+   * @param nMaxPendingRetries
+   *        The maximum number of pending retries. Must be &gt; 0.
+   */
+  public static void setMaxPendingRetries (@Nonnegative final int nMaxPendingRetries)
+  {
+    ValueEnforcer.isGT0 (nMaxPendingRetries, "MaxPendingRetries");
+    RW_LOCK.writeLocked ( () -> s_nMaxPendingRetries = nMaxPendingRetries);
+  }
+
+  /**
+   * @return The number of retries currently waiting for execution. Always
+   *         &ge; 0.
+   */
+  @Nonnegative
+  public static int getPendingRetryCount ()
+  {
+    return PENDING_RETRIES.size ();
+  }
+
+  @Nonnull
+  private static Thread _createThread (@Nonnull final Runnable aRunnable, @Nonnull final String sPrefix)
+  {
+    final Thread t = new Thread (aRunnable, sPrefix + THREAD_INDEX.incrementAndGet ());
+    t.setDaemon (true);
+    return t;
+  }
+
+  @Nonnull
+  private static ExecutorPair _getExecutorPair ()
+  {
+    ExecutorPair ret = RW_LOCK.readLockedGet ( () -> s_aExecutorPair);
+    if (ret == null)
+    {
+      ret = RW_LOCK.writeLockedGet ( () -> {
+        if (s_bShutdown)
+          throw new RejectedExecutionException ("The AS4 HTTP retry scheduler was shut down");
+        if (s_aExecutorPair == null)
+        {
+          // Only triggers the retries - never blocks
+          final ScheduledThreadPoolExecutor aSTPE = new ScheduledThreadPoolExecutor (1,
+                                                                                     r -> _createThread (r,
+                                                                                                         "phase4-http-retry-timer-"));
+          // Don't keep cancelled tasks in the queue
+          aSTPE.setRemoveOnCancelPolicy (true);
+          // Pending retries are discarded explicitly upon shutdown
+          aSTPE.setExecuteExistingDelayedTasksAfterShutdownPolicy (false);
+
+          // Executes the blocking HTTP transmissions
+          final ThreadPoolExecutor aWorker = new ThreadPoolExecutor (s_nThreadCount,
+                                                                     s_nThreadCount,
+                                                                     60,
+                                                                     TimeUnit.SECONDS,
+                                                                     new ArrayBlockingQueue <> (s_nMaxQueuedTasks),
+                                                                     r -> _createThread (r, "phase4-http-send-"),
+                                                                     new ThreadPoolExecutor.AbortPolicy ());
+          aWorker.allowCoreThreadTimeOut (true);
+
+          s_aExecutorPair = new ExecutorPair (aSTPE, aWorker);
+          if (LOGGER.isDebugEnabled ())
+            LOGGER.debug ("Created AS4 HTTP retry scheduler with " +
+                          s_nThreadCount +
+                          " worker threads and a queue size of " +
+                          s_nMaxQueuedTasks);
+        }
+        return s_aExecutorPair;
+      });
+    }
+    return ret;
+  }
+
+  /**
+   * Execute the provided action as soon as possible on a worker thread.
+   *
+   * @param aRunnable
+   *        The action to execute. May not be <code>null</code>.
+   * @throws RejectedExecutionException
+   *         If too many transmissions are already queued or if the scheduler
+   *         was shut down
+   */
+  public static void execute (@Nonnull final Runnable aRunnable)
+  {
+    ValueEnforcer.notNull (aRunnable, "Runnable");
+    _getExecutorPair ().m_aWorker.execute (aRunnable);
+  }
+
+  /**
+   * Schedule the provided retry action after the provided delay, if the
+   * maximum number of pending retries is not yet reached. When the delay is
+   * over, the action is executed on a worker thread. If no worker thread is
+   * available at that time and the queue is full, the discard action is
+   * executed instead.
+   *
+   * @param aRunnable
+   *        The retry action to execute. May not be <code>null</code>.
+   * @param aDiscardAction
+   *        The action to be executed instead of the retry action, if the retry
+   *        cannot be started. May not be <code>null</code>.
+   * @param aDelay
+   *        The delay after which the action should be executed. May not be
+   *        <code>null</code>.
+   * @return <code>true</code> if the retry was scheduled, <code>false</code> if
+   *         too many retries are already pending.
+   * @throws RejectedExecutionException
+   *         If the scheduler was shut down
+   */
+  public static boolean scheduleRetry (@Nonnull final Runnable aRunnable,
+                                       @Nonnull final Runnable aDiscardAction,
+                                       @Nonnull final Duration aDelay)
+  {
+    ValueEnforcer.notNull (aRunnable, "Runnable");
+    ValueEnforcer.notNull (aDiscardAction, "DiscardAction");
+    ValueEnforcer.notNull (aDelay, "Delay");
+
+    // The limit is a soft limit, as the check is not atomic
+    if (PENDING_RETRIES.size () >= getMaxPendingRetries ())
+      return false;
+
+    final ExecutorPair aExecutors = _getExecutorPair ();
+    final PendingRetry aPendingRetry = new PendingRetry (aRunnable, aDiscardAction, aExecutors.m_aWorker);
+    PENDING_RETRIES.add (aPendingRetry);
+    try
+    {
+      aExecutors.m_aScheduler.schedule (aPendingRetry, aDelay.toNanos (), TimeUnit.NANOSECONDS);
+    }
+    catch (final RuntimeException ex)
+    {
+      PENDING_RETRIES.remove (aPendingRetry);
+      throw ex;
+    }
+    return true;
+  }
+
+  /**
+   * Shutdown the executors and wait until all running transmissions are
+   * finished. Scheduled retries that are not yet started are discarded, and
+   * their discard action is invoked. Afterwards all new transmissions and
+   * retries are rejected with a {@link RejectedExecutionException} until
+   * {@link #restart()} is called.
+   */
+  public static void shutdown ()
+  {
+    final ExecutorPair aExecutorPair = RW_LOCK.writeLockedGet ( () -> {
+      final ExecutorPair ret = s_aExecutorPair;
+      s_aExecutorPair = null;
+      s_bShutdown = true;
+      return ret;
+    });
+    if (aExecutorPair != null)
+    {
+      // Cancels all delayed tasks
+      aExecutorPair.m_aScheduler.shutdown ();
+
+      int nDiscarded = 0;
+      for (final PendingRetry aPendingRetry : PENDING_RETRIES)
+      {
+        aPendingRetry.discard ();
+        nDiscarded++;
+      }
+      if (nDiscarded > 0)
+        LOGGER.warn ("Discarded " + nDiscarded + " pending AS4 HTTP retries on shutdown");
+
+      ExecutorServiceHelper.waitUntilAllTasksAreFinished (aExecutorPair.m_aScheduler);
+      ExecutorServiceHelper.shutdownAndWaitUntilAllTasksAreFinished (aExecutorPair.m_aWorker);
+    }
+  }
+
+  /**
+   * @return <code>true</code> if {@link #shutdown()} was called and
+   *         {@link #restart()} was not called afterwards.
+   */
+  public static boolean isShutdown ()
+  {
+    return RW_LOCK.readLockedBoolean ( () -> s_bShutdown);
+  }
+
+  /**
+   * Accept new transmissions and retries again after {@link #shutdown()}. New
+   * executors are created on the next usage. If the scheduler was not shut
+   * down, nothing happens.
+   */
+  public static void restart ()
+  {
+    RW_LOCK.writeLocked ( () -> s_bShutdown = false);
+  }
+}
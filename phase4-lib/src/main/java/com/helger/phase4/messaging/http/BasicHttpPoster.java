@@ -18,7 +18,11 @@ package com.helger.phase4.messaging.http;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.math.BigDecimal;
 import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.Consumer;
 
 import javax.annotation.Nonnegative;
@@ -46,6 +50,7 @@ import com.helger.commons.timing.StopWatch;
 import com.helger.commons.wrapper.Wrapper;
 import com.helger.httpclient.HttpClientFactory;
 import com.helger.httpclient.HttpClientManager;
+import com.helger.httpclient.HttpClientSettings;
 import com.helger.httpclient.IHttpClientProvider;
 import com.helger.phase4.client.IAS4RetryCallback;
 import com.helger.phase4.dump.AS4DumpManager;
@@ -72,13 +77,27 @@ public class BasicHttpPoster implements IHttpPoster
     return new HttpClientFactory ();
   }
 
+  /**
+   * @return The default {@link HttpClientFactory} that is shared between all
+   *         instances, so that the pooled HTTP connections can be reused. Never
+   *         <code>null</code>.
+   * @since 3.2.3
+   */
+  @Nonnull
+  public static HttpClientFactory getSharedDefaultHttpClientFactory ()
+  {
+    return AS4HttpClientManagerPool.getSharedHttpClientFactory ("default", HttpClientSettings::new);
+  }
+
   public static final boolean DEFAULT_QUOTE_HTTP_HEADERS = false;
+  public static final boolean DEFAULT_USE_SHARED_HTTP_CLIENT = true;
   private static final Logger LOGGER = Phase4LoggerFactory.getLogger (BasicHttpPoster.class);
 
   // By default no special SSL context present
-  private HttpClientFactory m_aHttpClientFactory = createDefaultHttpClientFactory ();
+  private HttpClientFactory m_aHttpClientFactory = getSharedDefaultHttpClientFactory ();
   private Consumer <? super HttpPost> m_aHttpCustomizer;
   private boolean m_bQuoteHttpHeaders = DEFAULT_QUOTE_HTTP_HEADERS;
+  private boolean m_bUseSharedHttpClient = DEFAULT_USE_SHARED_HTTP_CLIENT;
 
   public BasicHttpPoster ()
   {}
@@ -122,6 +141,37 @@ public class BasicHttpPoster implements IHttpPoster
     return this;
   }
 
+  /**
+   * @return <code>true</code> if the long-lived HTTP client from
+   *         {@link AS4HttpClientManagerPool} is used for sending,
+   *         <code>false</code> if a new HTTP client is created and closed for
+   *         every single transmission. Default is
+   *         {@value #DEFAULT_USE_SHARED_HTTP_CLIENT}.
+   * @since 3.2.3
+   */
+  public final boolean isUseSharedHttpClient ()
+  {
+    return m_bUseSharedHttpClient;
+  }
+
+  /**
+   * Enable or disable the usage of the long-lived HTTP client from
+   * {@link AS4HttpClientManagerPool}. If enabled, open connections to the same
+   * endpoint are reused between transmissions.
+   *
+   * @param bUseSharedHttpClient
+   *        <code>true</code> to use the shared HTTP client, <code>false</code>
+   *        to create a new HTTP client for each transmission.
+   * @return this for chaining
+   * @since 3.2.3
+   */
+  @Nonnull
+  public final BasicHttpPoster setUseSharedHttpClient (final boolean bUseSharedHttpClient)
+  {
+    m_bUseSharedHttpClient = bUseSharedHttpClient;
+    return this;
+  }
+
   /**
    * Send an arbitrary HTTP POST message to the provided URL, using the contained HttpClientFactory
    * as well as the customizer. Additionally the AS4 HTTP debugging is invoked in here.<br>
@@ -155,7 +205,7 @@ public class BasicHttpPoster implements IHttpPoster
     LOGGER.info ("Starting to transmit AS4 Message to '" + sURL + "'");
 
     IOException aCaughtException = null;
-    try (final HttpClientManager aClientMgr = new HttpClientManager (m_aHttpClientFactory))
+    try
     {
       final HttpPost aPost = new HttpPost (sURL);
 
@@ -195,7 +245,13 @@ public class BasicHttpPoster implements IHttpPoster
       });
 
       // Execute main HTTP request
-      return aClientMgr.execute (aPost, aResponseHandler);
+      if (m_bUseSharedHttpClient)
+        return AS4HttpClientManagerPool.execute (m_aHttpClientFactory, aPost, aResponseHandler);
+
+      try (final HttpClientManager aClientMgr = new HttpClientManager (m_aHttpClientFactory))
+      {
+        return aClientMgr.execute (aPost, aResponseHandler);
+      }
     }
     catch (final IOException ex)
     {
@@ -333,8 +389,17 @@ public class BasicHttpPoster implements IHttpPoster
               aDurationBeforeRetry = HttpRetrySettings.getIncreased (aDurationBeforeRetry,
                                                                      aRetrySettings.getRetryIncreaseFactor ());
 
+            // Avoid that all failed transmissions are retried at the same time
+            final Duration aEffectiveDurationBeforeRetry = HttpRetrySettings.getWithJitter (aDurationBeforeRetry,
+                                                                                             aRetrySettings.getRetryJitterFactor ());
+
             if (aRetryCallback != null)
-              if (aRetryCallback.onBeforeRetry (sMessageID, sURL, nTry, nMaxTries, aDurationBeforeRetry.toMillis (), ex)
+              if (aRetryCallback.onBeforeRetry (sMessageID,
+                                                sURL,
+                                                nTry,
+                                                nMaxTries,
+                                                aEffectiveDurationBeforeRetry.toMillis (),
+                                                ex)
                                 .isBreak ())
               {
                 // Explicitly interrupt retry
@@ -361,11 +426,11 @@ public class BasicHttpPoster implements IHttpPoster
                          " - " +
                          ex.getMessage () +
                          " - waiting " +
-                         aDurationBeforeRetry.toMillis () +
+                         aEffectiveDurationBeforeRetry.toMillis () +
                          " ms, than retrying");
 
             // Sleep and try again afterwards
-            ThreadHelper.sleep (aDurationBeforeRetry.toMillis ());
+            ThreadHelper.sleep (aEffectiveDurationBeforeRetry.toMillis ());
           }
           finally
           {
@@ -420,12 +485,304 @@ public class BasicHttpPoster implements IHttpPoster
     }
   }
 
+  /**
+   * Internal state of a single asynchronous transmission with retries.
+   *
+   * @param <T>
+   *        Response data type
+   */
+  private final class AsyncTransmission <T>
+  {
+    private final String m_sURL;
+    private final HttpHeaderMap m_aCustomHttpHeaders;
+    private final HttpEntity m_aHttpEntity;
+    private final String m_sMessageID;
+    private final int m_nMaxTries;
+    private final BigDecimal m_aRetryIncreaseFactor;
+    private final double m_dRetryJitterFactor;
+    private final HttpClientResponseHandler <? extends T> m_aResponseHandler;
+    private final IAS4OutgoingDumper m_aOutgoingDumper;
+    private final IAS4RetryCallback m_aRetryCallback;
+    private final CompletableFuture <T> m_aFuture = new CompletableFuture <> ();
+    // This class holds the effective OutputStream to which the dump is written
+    private final Wrapper <OutputStream> m_aDumpOSHolder = new Wrapper <> ();
+
+    AsyncTransmission (@Nonnull final String sURL,
+                       @Nullable final HttpHeaderMap aCustomHttpHeaders,
+                       @Nonnull final HttpEntity aHttpEntity,
+                       @Nonnull final String sMessageID,
+                       @Nonnull final HttpRetrySettings aRetrySettings,
+                       @Nonnull final HttpClientResponseHandler <? extends T> aResponseHandler,
+                       @Nullable final IAS4OutgoingDumper aOutgoingDumper,
+                       @Nullable final IAS4RetryCallback aRetryCallback)
+    {
+      m_sURL = sURL;
+      m_aCustomHttpHeaders = aCustomHttpHeaders;
+      m_aHttpEntity = aHttpEntity;
+      m_sMessageID = sMessageID;
+      // Copy the values, as the settings object is mutable
+      m_nMaxTries = aRetrySettings.isRetryEnabled () ? 1 + aRetrySettings.getMaxRetries () : 1;
+      m_aRetryIncreaseFactor = aRetrySettings.getRetryIncreaseFactor ();
+      m_dRetryJitterFactor = aRetrySettings.getRetryJitterFactor ();
+      m_aResponseHandler = aResponseHandler;
+      m_aOutgoingDumper = aOutgoingDumper;
+      m_aRetryCallback = aRetryCallback;
+    }
+
+    private void _finish (@Nullable final T aResult, @Nullable final Throwable aException)
+    {
+      // Add the possibility to close open resources
+      if (m_aOutgoingDumper != null && m_aDumpOSHolder.isSet ())
+        try
+        {
+          // The dumper only handles Exceptions
+          final Exception aDumpException;
+          if (aException == null || aException instanceof Exception)
+            aDumpException = (Exception) aException;
+          else
+            aDumpException = new ExecutionException (aException);
+          m_aOutgoingDumper.onEndRequest (EAS4MessageMode.REQUEST, null, null, m_sMessageID, aDumpException);
+        }
+        catch (final Exception ex)
+        {
+          LOGGER.error ("OutgoingDumper.onEndRequest failed. Dumper=" +
+                        m_aOutgoingDumper +
+                        "; MessageID=" +
+                        m_sMessageID,
+                        ex);
+        }
+
+      if (aException != null)
+        m_aFuture.completeExceptionally (aException);
+      else
+        m_aFuture.complete (aResult);
+    }
+
+    private void _sendTry (@Nonnegative final int nTry, @Nonnull final Duration aDurationBeforeRetry)
+    {
+      if (nTry > 0)
+        LOGGER.info ("Retry #" + nTry + "/" + (m_nMaxTries - 1) + " for sending message with ID '" + m_sMessageID + "'");
+
+      IOException aCaughtException = null;
+      try
+      {
+        // Create a new one every time (for new filename, new timestamp, etc.)
+        final HttpEntity aDumpingEntity = createDumpingHttpEntity (m_aOutgoingDumper,
+                                                                   m_aHttpEntity,
+                                                                   m_sMessageID,
+                                                                   m_aCustomHttpHeaders,
+                                                                   nTry,
+                                                                   m_aDumpOSHolder);
+        final T aResult = sendGenericMessage (m_sURL, m_aCustomHttpHeaders, aDumpingEntity, m_aResponseHandler);
+        StreamHelper.close (m_aDumpOSHolder.get ());
+        _finish (aResult, null);
+        return;
+      }
+      catch (final IOException ex)
+      {
+        aCaughtException = ex;
+      }
+      catch (final Throwable t)
+      {
+        // Includes Errors - the future must be completed in any case
+        StreamHelper.close (m_aDumpOSHolder.get ());
+        _finish (null, t);
+        return;
+      }
+
+      // Flush and close the dump output stream (if any)
+      StreamHelper.close (m_aDumpOSHolder.get ());
+
+      // Last try? -> propagate exception
+      if (nTry == m_nMaxTries - 1)
+      {
+        _finish (null, aCaughtException);
+        return;
+      }
+
+      // After the first retry, increase the waiting time
+      final Duration aNextDurationBeforeRetry = nTry > 1 ? HttpRetrySettings.getIncreased (aDurationBeforeRetry,
+                                                                                             m_aRetryIncreaseFactor)
+                                                           : aDurationBeforeRetry;
+      // Avoid that all failed transmissions are retried at the same time
+      final Duration aEffectiveDurationBeforeRetry = HttpRetrySettings.getWithJitter (aNextDurationBeforeRetry,
+                                                                                       m_dRetryJitterFactor);
+
+      if (m_aRetryCallback != null)
+        if (m_aRetryCallback.onBeforeRetry (m_sMessageID,
+                                            m_sURL,
+                                            nTry,
+                                            m_nMaxTries,
+                                            aEffectiveDurationBeforeRetry.toMillis (),
+                                            aCaughtException)
+                            .isBreak ())
+        {
+          // Explicitly interrupt retry
+          LOGGER.warn ("Error sending message '" +
+                       m_sMessageID +
+                       "' to '" +
+                       m_sURL +
+                       ": " +
+                       aCaughtException.getClass ().getSimpleName () +
+                       " - " +
+                       aCaughtException.getMessage () +
+                       " - retrying was explicitly stopped by the RetryCallback");
+
+          // Propagate Exception as if it would be the last retry
+          _finish (null, aCaughtException);
+          return;
+        }
+
+      LOGGER.warn ("Error sending message '" +
+                   m_sMessageID +
+                   "' to '" +
+                   m_sURL +
+                   "': " +
+                   aCaughtException.getClass ().getSimpleName () +
+                   " - " +
+                   aCaughtException.getMessage () +
+                   " - scheduling retry in " +
+                   aEffectiveDurationBeforeRetry.toMillis () +
+                   " ms");
+
+      final IOException aFinalCaughtException = aCaughtException;
+      boolean bScheduled;
+      try
+      {
+        bScheduled = AS4HttpRetryScheduler.scheduleRetry ( () -> _sendTrySafe (nTry + 1, aNextDurationBeforeRetry),
+                                                           () -> _finish (null, aFinalCaughtException),
+                                                           aEffectiveDurationBeforeRetry);
+      }
+      catch (final RejectedExecutionException ex)
+      {
+        bScheduled = false;
+      }
+      if (!bScheduled)
+      {
+        LOGGER.warn ("Failed to schedule retry for message '" +
+                     m_sMessageID +
+                     "' - too many pending retries or the scheduler was shut down");
+        _finish (null, aCaughtException);
+      }
+    }
+
+    private void _sendTrySafe (@Nonnegative final int nTry, @Nonnull final Duration aDurationBeforeRetry)
+    {
+      try
+      {
+        _sendTry (nTry, aDurationBeforeRetry);
+      }
+      catch (final Throwable t)
+      {
+        // E.g. from the retry callback - make sure the future is completed
+        if (!m_aFuture.isDone ())
+          try
+          {
+            _finish (null, t);
+          }
+          finally
+          {
+            // In case finishing failed itself
+            m_aFuture.completeExceptionally (t);
+          }
+      }
+    }
+
+    void start (@Nonnull final Duration aDurationBeforeRetry)
+    {
+      try
+      {
+        AS4HttpRetryScheduler.execute ( () -> _sendTrySafe (0, aDurationBeforeRetry));
+      }
+      catch (final RejectedExecutionException ex)
+      {
+        m_aFuture.completeExceptionally (ex);
+      }
+    }
+  }
+
+  /**
+   * Asynchronously send an arbitrary HTTP POST message to the provided URL,
+   * using the contained HttpClientFactory as well as the customizer. This is
+   * the asynchronous counterpart of
+   * {@link #sendGenericMessageWithRetries(String, HttpHeaderMap, HttpEntity, String, HttpRetrySettings, HttpClientResponseHandler, IAS4OutgoingDumper, IAS4RetryCallback)}.
+   * All tries are executed on the bounded worker threads of the shared
+   * {@link AS4HttpRetryScheduler}, and no thread is blocked while waiting for
+   * the next retry. If too many transmissions are queued or if the scheduler
+   * was shut down, the returned future is completed exceptionally with a
+   * {@link RejectedExecutionException}. The retry callback and
+   * the outgoing dumper are invoked for every try.<br>
+   * Note: the provided HTTP entity must stay valid until the returned future
+   * is completed.
+   *
+   * @param sURL
+   *        The URL to send to. May neither be <code>null</code> nor empty.
+   * @param aCustomHttpHeaders
+   *        An optional http header map that should be applied. May be
+   *        <code>null</code>.
+   * @param aHttpEntity
+   *        The HTTP entity to be send. May not be <code>null</code>.
+   * @param sMessageID
+   *        the AS4 message ID. May not be <code>null</code>.
+   * @param aRetrySettings
+   *        The retry settings to use. May not be <code>null</code>.
+   * @param aResponseHandler
+   *        The HTTP response handler that should be used to convert the HTTP
+   *        response to a domain object.
+   * @param aOutgoingDumper
+   *        An optional outgoing dumper for this message. May be
+   *        <code>null</code> to use the global one.
+   * @param aRetryCallback
+   *        An optional retry callback that is invoked, before a retry happens.
+   * @param <T>
+   *        Response data type
+   * @return The future that is completed with the HTTP response data as
+   *         indicated by the ResponseHandler, or completed exceptionally with
+   *         the exception of the last try. Never <code>null</code>.
+   * @since 3.2.3
+   */
+  @Nonnull
+  public <T> CompletableFuture <T> sendGenericMessageWithRetriesAsync (@Nonnull @Nonempty final String sURL,
+                                                                       @Nullable final HttpHeaderMap aCustomHttpHeaders,
+                                                                       @Nonnull final HttpEntity aHttpEntity,
+                                                                       @Nonnull final String sMessageID,
+                                                                       @Nonnull final HttpRetrySettings aRetrySettings,
+                                                                       @Nonnull final HttpClientResponseHandler <? extends T> aResponseHandler,
+                                                                       @Nullable final IAS4OutgoingDumper aOutgoingDumper,
+                                                                       @Nullable final IAS4RetryCallback aRetryCallback)
+  {
+    ValueEnforcer.notEmpty (sURL, "URL");
+    ValueEnforcer.notNull (aHttpEntity, "HttpEntity");
+    ValueEnforcer.notNull (sMessageID, "MessageID");
+    ValueEnforcer.notNull (aRetrySettings, "RetrySettings");
+    ValueEnforcer.notNull (aResponseHandler, "ResponseHandler");
+
+    if (aRetrySettings.isRetryEnabled () && !aHttpEntity.isRepeatable ())
+      throw new IllegalStateException ("If retry is enabled, a repeatable entity must be provided");
+
+    // Parameter or global one - may still be null
+    final IAS4OutgoingDumper aRealOutgoingDumper = aOutgoingDumper != null ? aOutgoingDumper : AS4DumpManager
+                                                                                                             .getOutgoingDumper ();
+
+    final AsyncTransmission <T> aTransmission = new AsyncTransmission <> (sURL,
+                                                                          aCustomHttpHeaders,
+                                                                          aHttpEntity,
+                                                                          sMessageID,
+                                                                          aRetrySettings,
+                                                                          aResponseHandler,
+                                                                          aRealOutgoingDumper,
+                                                                          aRetryCallback);
+    aTransmission.start (aRetrySettings.getDurationBeforeRetry ());
+    return aTransmission.m_aFuture;
+  }
+
   @Override
   public String toString ()
   {
     return new ToStringGenerator (this).append ("HttpClientFactory", m_aHttpClientFactory)
                                        .append ("HttpCustomizer", m_aHttpCustomizer)
                                        .append ("QuoteHttpHeaders", m_bQuoteHttpHeaders)
+                                       .append ("UseSharedHttpClient", m_bUseSharedHttpClient)
                                        .getToString ();
   }
 }
@@ -33,7 +33,9 @@ import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
 
 /**
- * Special HTTP entity that reads and writes to a {@link MimeMessage}.
+ * Special HTTP entity that reads and writes to a {@link MimeMessage}.<br>
+ * The Content-Length is unknown and chunked encoding is used, because the size
+ * of the encrypted and compressed attachments is only known after writing.
  *
  * @author Philip Helger
  * @author bayerlma
@@ -78,8 +80,9 @@ public class HttpMimeMessageEntity extends AbstractHttpEntity
 
   public boolean isStreaming ()
   {
-    // Self contained? Depends on the underlying DataHandler
-    return false;
+    // A non-repeatable message is backed by a stream that is consumed upon
+    // writing
+    return !m_aMsg.isRepeatable ();
   }
 
   public InputStream getContent () throws IOException
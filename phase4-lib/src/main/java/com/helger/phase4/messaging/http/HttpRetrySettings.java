@@ -18,6 +18,7 @@ package com.helger.phase4.messaging.http;
 
 import java.math.BigDecimal;
 import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
@@ -42,10 +43,12 @@ public class HttpRetrySettings
   public static final int DEFAULT_MAX_RETRIES = 0;
   public static final Duration DEFAULT_RETRY_DURATION = Duration.ofSeconds (10);
   public static final BigDecimal DEFAULT_RETRY_INCREASE_FACTOR = BigDecimal.ONE;
+  public static final double DEFAULT_RETRY_JITTER_FACTOR = 0;
 
   private int m_nMaxRetries = DEFAULT_MAX_RETRIES;
   private Duration m_aDurationBeforeRetry = DEFAULT_RETRY_DURATION;
   private BigDecimal m_aRetryIncreaseFactor = DEFAULT_RETRY_INCREASE_FACTOR;
+  private double m_dRetryJitterFactor = DEFAULT_RETRY_JITTER_FACTOR;
 
   public HttpRetrySettings ()
   {}
@@ -145,6 +148,37 @@ public class HttpRetrySettings
     return this;
   }
 
+  /**
+   * @return The jitter factor to be applied on every waiting time before a
+   *         retry. A value of 0 means no jitter, a value of e.g. 0.2 means that
+   *         the waiting time is randomly varied by up to &plusmn;20%. This
+   *         avoids that many failed transmissions are retried at exactly the
+   *         same time. The default is 0. Return values are always between 0
+   *         and 1.
+   * @since 3.2.3
+   */
+  @Nonnegative
+  public final double getRetryJitterFactor ()
+  {
+    return m_dRetryJitterFactor;
+  }
+
+  /**
+   * Set the retry jitter factor to use. 0 means no jitter.
+   *
+   * @param dRetryJitterFactor
+   *        The retry jitter factor. Must be between 0 and 1 (both inclusive).
+   * @return this for chaining
+   * @since 3.2.3
+   */
+  @Nonnull
+  public final HttpRetrySettings setRetryJitterFactor (@Nonnegative final double dRetryJitterFactor)
+  {
+    ValueEnforcer.isBetweenInclusive (dRetryJitterFactor, "RetryJitterFactor", 0d, 1d);
+    m_dRetryJitterFactor = dRetryJitterFactor;
+    return this;
+  }
+
   @Nonnull
   public static Duration getIncreased (@Nonnull final Duration aDuration,
                                        @Nonnull final BigDecimal aRetryIncreaseFactor)
@@ -156,12 +190,34 @@ public class HttpRetrySettings
     return Duration.ofNanos (aRetryIncreaseFactor.multiply (BigDecimal.valueOf (aDuration.toNanos ())).longValue ());
   }
 
+  /**
+   * Get the provided duration randomly varied by the provided jitter factor.
+   *
+   * @param aDuration
+   *        The source duration. May not be <code>null</code>.
+   * @param dRetryJitterFactor
+   *        The jitter factor between 0 and 1. 0 means no jitter.
+   * @return The varied duration. Never <code>null</code> and never negative.
+   * @since 3.2.3
+   */
+  @Nonnull
+  public static Duration getWithJitter (@Nonnull final Duration aDuration, final double dRetryJitterFactor)
+  {
+    if (dRetryJitterFactor <= 0)
+      return aDuration;
+    // Random value between -factor and +factor
+    final double dRandom = (ThreadLocalRandom.current ().nextDouble () * 2 - 1) * dRetryJitterFactor;
+    final long nNanos = aDuration.toNanos ();
+    return Duration.ofNanos (Math.max (0, nNanos + (long) (nNanos * dRandom)));
+  }
+
   public final void assignFrom (@Nonnull final HttpRetrySettings aOther)
   {
     ValueEnforcer.notNull (aOther, "Other");
     setMaxRetries (aOther.getMaxRetries ());
     setDurationBeforeRetry (aOther.getDurationBeforeRetry ());
     setRetryIncreaseFactor (aOther.getRetryIncreaseFactor ());
+    setRetryJitterFactor (aOther.getRetryJitterFactor ());
   }
 
   @Override
@@ -174,7 +230,8 @@ public class HttpRetrySettings
     final HttpRetrySettings rhs = (HttpRetrySettings) o;
     return m_nMaxRetries == rhs.m_nMaxRetries &&
            m_aDurationBeforeRetry.equals (rhs.m_aDurationBeforeRetry) &&
-           EqualsHelper.equals (m_aRetryIncreaseFactor, rhs.m_aRetryIncreaseFactor);
+           EqualsHelper.equals (m_aRetryIncreaseFactor, rhs.m_aRetryIncreaseFactor) &&
+           EqualsHelper.equals (m_dRetryJitterFactor, rhs.m_dRetryJitterFactor);
   }
 
   @Override
@@ -183,6 +240,7 @@ public class HttpRetrySettings
     return new HashCodeGenerator (this).append (m_nMaxRetries)
                                        .append (m_aDurationBeforeRetry)
                                        .append (m_aRetryIncreaseFactor)
+                                       .append (m_dRetryJitterFactor)
                                        .getHashCode ();
   }
 
@@ -192,6 +250,7 @@ public class HttpRetrySettings
     return new ToStringGenerator (this).append ("MaxRetries", m_nMaxRetries)
                                        .append ("DurationBeforeRetry", m_aDurationBeforeRetry)
                                        .append ("RetryIncreaseFactor", m_aRetryIncreaseFactor)
+                                       .append ("RetryJitterFactor", m_dRetryJitterFactor)
                                        .getToString ();
   }
 }
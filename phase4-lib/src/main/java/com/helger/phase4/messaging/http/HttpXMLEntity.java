@@ -16,27 +16,220 @@
  */
 package com.helger.phase4.messaging.http;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import javax.annotation.Nonnull;
 
 import org.apache.hc.core5.http.ContentType;
-import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.apache.hc.core5.http.io.entity.AbstractHttpEntity;
 import org.w3c.dom.Node;
 
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
+import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
 import com.helger.commons.mime.IMimeType;
+import com.helger.commons.string.ToStringGenerator;
 import com.helger.phase4.util.AS4XMLHelper;
 
 /**
- * Special HttpClient HTTP POST entity that contains a DOM Node as a serialized
- * String. This entity is repeatable.
+ * Special HttpClient HTTP POST entity that contains a DOM Node. By default the
+ * DOM Node is serialized once into a byte array (without an intermediate
+ * String), so that a <code>Content-Length</code> header can be sent.<br>
+ * Since v3.2.3 the entity can optionally serialize the DOM Node directly into
+ * the HTTP output stream, without creating an intermediate byte array. As the
+ * length is unknown in that case, chunked transfer encoding is used, which is
+ * not supported by all AS4 implementations. Therefore this is opt-in - either
+ * per entity or globally via {@link #setStreamingByDefault(boolean)}.<br>
+ * This entity is repeatable in both modes.
  *
  * @author Philip Helger
  */
-public class HttpXMLEntity extends StringEntity
+public class HttpXMLEntity extends AbstractHttpEntity
 {
+  private static final AtomicBoolean STREAMING_BY_DEFAULT = new AtomicBoolean (false);
+
+  private final Node m_aNode;
+  private final boolean m_bStreamDirectly;
+  // Lazily created, if not streamed directly
+  private volatile byte [] m_aBytes;
+
   public HttpXMLEntity (@Nonnull final Node aNode, @Nonnull final IMimeType aMimeType)
+  {
+    this (aNode, aMimeType, isStreamingByDefault ());
+  }
+
+  /**
+   * Constructor
+   *
+   * @param aNode
+   *        The DOM node to be serialized. May not be <code>null</code>.
+   * @param aMimeType
+   *        The MIME type to use. May not be <code>null</code>.
+   * @param bStreamDirectly
+   *        <code>true</code> to serialize the node directly into the HTTP
+   *        output stream using chunked transfer encoding, <code>false</code>
+   *        to serialize it once into a byte array and send a
+   *        <code>Content-Length</code>.
+   * @since 3.2.3
+   */
+  public HttpXMLEntity (@Nonnull final Node aNode,
+                        @Nonnull final IMimeType aMimeType,
+                        final boolean bStreamDirectly)
   {
     // ContentType Required for AS4.NET
-    super (AS4XMLHelper.serializeXML (aNode),
-           ContentType.parse (aMimeType.getAsString ()).withCharset (AS4XMLHelper.XWS.getCharset ()));
+    super (ContentType.parse (aMimeType.getAsString ()).withCharset (AS4XMLHelper.XWS.getCharset ()), null);
+    ValueEnforcer.notNull (aNode, "Node");
+    m_aNode = aNode;
+    m_bStreamDirectly = bStreamDirectly;
+  }
+
+  /**
+   * @return <code>true</code> if new entities serialize the DOM node directly
+   *         into the HTTP output stream by default, <code>false</code> if not.
+   *         The default is <code>false</code>.
+   * @since 3.2.3
+   */
+  public static boolean isStreamingByDefault ()
+  {
+    return STREAMING_BY_DEFAULT.get ();
+  }
+
+  /**
+   * Define whether new entities serialize the DOM node directly into the HTTP
+   * output stream by default. Only enable this, if all peers accept chunked
+   * transfer encoding.
+   *
+   * @param bStreamingByDefault
+   *        <code>true</code> to enable direct streaming, <code>false</code> to
+   *        send a <code>Content-Length</code>.
+   * @since 3.2.3
+   */
+  public static void setStreamingByDefault (final boolean bStreamingByDefault)
+  {
+    STREAMING_BY_DEFAULT.set (bStreamingByDefault);
+  }
+
+  /**
+   * @return The DOM node to be serialized. Never <code>null</code>.
+   * @since 3.2.3
+   */
+  @Nonnull
+  public final Node getNode ()
+  {
+    return m_aNode;
+  }
+
+  /**
+   * @return <code>true</code> if the DOM node is serialized directly into the
+   *         HTTP output stream, <code>false</code> if a
+   *         <code>Content-Length</code> is sent.
+   * @since 3.2.3
+   */
+  public final boolean isStreamDirectly ()
+  {
+    return m_bStreamDirectly;
+  }
+
+  @Nonnull
+  private byte [] _getBytes () throws IOException
+  {
+    byte [] ret = m_aBytes;
+    if (ret == null)
+    {
+      try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ())
+      {
+        AS4XMLHelper.serializeXML (m_aNode, aBAOS);
+        ret = aBAOS.toByteArray ();
+      }
+      catch (final IllegalStateException ex)
+      {
+        throw new IOException ("Error writing XML", ex);
+      }
+      // Concurrent creation is harmless
+      m_aBytes = ret;
+    }
+    return ret;
+  }
+
+  public boolean isRepeatable ()
+  {
+    // The node can be serialized multiple times
+    return true;
+  }
+
+  public long getContentLength ()
+  {
+    if (m_bStreamDirectly)
+    {
+      // length unknown - negative number
+      return -1;
+    }
+    try
+    {
+      return _getBytes ().length;
+    }
+    catch (final IOException ex)
+    {
+      // Fails again upon writing
+      return -1;
+    }
+  }
+
+  public boolean isStreaming ()
+  {
+    // Self contained
+    return false;
+  }
+
+  @Nonnull
+  public InputStream getContent () throws IOException
+  {
+    if (!m_bStreamDirectly)
+      return new NonBlockingByteArrayInputStream (_getBytes ());
+
+    // Only used by callers explicitly asking for the content
+    try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ())
+    {
+      AS4XMLHelper.serializeXML (m_aNode, aBAOS);
+      return new NonBlockingByteArrayInputStream (aBAOS.toByteArray ());
+    }
+  }
+
+  @Override
+  public void writeTo (@Nonnull final OutputStream aOS) throws IOException
+  {
+    ValueEnforcer.notNull (aOS, "OutputStream");
+    if (m_bStreamDirectly)
+    {
+      try
+      {
+        AS4XMLHelper.serializeXML (m_aNode, aOS);
+      }
+      catch (final IllegalStateException ex)
+      {
+        throw new IOException ("Error writing XML", ex);
+      }
+    }
+    else
+      aOS.write (_getBytes ());
+    aOS.flush ();
+  }
+
+  @Override
+  public final void close () throws IOException
+  {
+    // nothing to do
+  }
+
+  @Override
+  public String toString ()
+  {
+    return ToStringGenerator.getDerived (super.toString ())
+                            .append ("Node", m_aNode)
+                            .append ("StreamDirectly", m_bStreamDirectly)
+                            .getToString ();
   }
 }
@@ -16,11 +16,14 @@
  */
 package com.helger.phase4.messaging.mime;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.util.function.BiConsumer;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import javax.annotation.WillNotClose;
 import javax.xml.transform.dom.DOMSource;
 
 import org.w3c.dom.Document;
@@ -31,6 +34,7 @@ import com.helger.commons.collection.CollectionHelper;
 import com.helger.commons.collection.impl.ICommonsList;
 import com.helger.commons.http.CHttpHeader;
 import com.helger.commons.http.HttpHeaderMap;
+import com.helger.commons.string.StringHelper;
 import com.helger.mail.cte.EContentTransferEncoding;
 import com.helger.phase4.attachment.WSS4JAttachment;
 import com.helger.phase4.logging.Phase4LoggerFactory;
@@ -44,8 +48,10 @@ import jakarta.activation.MailcapCommandMap;
 import jakarta.mail.Header;
 import jakarta.mail.MessagingException;
 import jakarta.mail.Session;
+import jakarta.mail.internet.InternetHeaders;
 import jakarta.mail.internet.MimeBodyPart;
 import jakarta.mail.internet.MimeMessage;
+import jakarta.mail.internet.MimeUtility;
 
 /**
  * Helper class for MIME message activities.<br>
@@ -192,4 +198,44 @@ public final class AS4MimeMessageHelper
     forEachHeaderAndRemoveAfterwards (aMimeMsg, ret::addHeader, false);
     return ret;
   }
+
+  /**
+   * Get the content of a MIME part as a stream, decoded according to the
+   * <code>Content-Transfer-Encoding</code> header of the part. This is the
+   * streaming equivalent of {@link MimeBodyPart#getInputStream()} and does not
+   * buffer the part content.
+   *
+   * @param aHeaders
+   *        The headers of the MIME part. May not be <code>null</code>.
+   * @param aRawIS
+   *        The raw content of the MIME part, directly following the headers.
+   *        May not be <code>null</code>.
+   * @return The decoded input stream. Never <code>null</code>. If no or an
+   *         identity transfer encoding is used, the source stream is returned
+   *         as is.
+   * @throws IOException
+   *         In case the transfer encoding is unknown
+   * @since 3.2.3
+   */
+  @Nonnull
+  public static InputStream getDecodedInputStream (@Nonnull final InternetHeaders aHeaders,
+                                                   @Nonnull @WillNotClose final InputStream aRawIS) throws IOException
+  {
+    ValueEnforcer.notNull (aHeaders, "Headers");
+    ValueEnforcer.notNull (aRawIS, "RawIS");
+
+    final String sCTE = StringHelper.trim (aHeaders.getHeader (CHttpHeader.CONTENT_TRANSFER_ENCODING, null));
+    if (StringHelper.hasNoText (sCTE))
+      return aRawIS;
+
+    try
+    {
+      // Returns the source stream for 7bit, 8bit and binary
+      return MimeUtility.decode (aRawIS, sCTE);
+    }
+    catch (final MessagingException ex)
+    {
+      throw new IOException ("Unsupported Content-Transfer-Encoding '" + sCTE + "'", ex);
+    }
+  }
 }
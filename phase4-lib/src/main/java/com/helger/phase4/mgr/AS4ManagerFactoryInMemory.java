@@ -16,8 +16,13 @@
  */
 package com.helger.phase4.mgr;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
 import javax.annotation.Nonnull;
 
+import com.helger.phase4.config.AS4Configuration;
+import com.helger.phase4.duplicate.AS4DuplicateManagerAppendLog;
 import com.helger.phase4.duplicate.AS4DuplicateManagerInMemory;
 import com.helger.phase4.duplicate.IAS4DuplicateManager;
 import com.helger.phase4.model.mpc.IMPCManager;
@@ -51,6 +56,19 @@ public class AS4ManagerFactoryInMemory implements IAS4ManagerFactory
   @Nonnull
   public IAS4DuplicateManager createDuplicateManager ()
   {
+    if (AS4Configuration.isUseAppendLogDuplicateManager ())
+    {
+      try
+      {
+        // Without a log file
+        return new AS4DuplicateManagerAppendLog (null);
+      }
+      catch (final IOException ex)
+      {
+        // Cannot happen without a log file
+        throw new UncheckedIOException (ex);
+      }
+    }
     return new AS4DuplicateManagerInMemory ();
   }
 
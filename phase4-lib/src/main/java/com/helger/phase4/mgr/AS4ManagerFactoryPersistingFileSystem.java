@@ -16,9 +16,13 @@
  */
 package com.helger.phase4.mgr;
 
+import java.io.IOException;
+
 import javax.annotation.Nonnull;
 
 import com.helger.dao.DAOException;
+import com.helger.phase4.config.AS4Configuration;
+import com.helger.phase4.duplicate.AS4DuplicateManagerAppendLog;
 import com.helger.phase4.duplicate.AS4DuplicateManagerXML;
 import com.helger.phase4.duplicate.IAS4DuplicateManager;
 import com.helger.phase4.model.mpc.IMPCManager;
@@ -28,6 +32,7 @@ import com.helger.phase4.model.pmode.PModeManagerXML;
 import com.helger.phase4.profile.AS4ProfileManager;
 import com.helger.phase4.profile.IAS4ProfileManager;
 import com.helger.phase4.util.Phase4Exception;
+import com.helger.photon.io.WebFileIO;
 
 /**
  * Implementation of {@link IAS4ManagerFactory} creating managers that are
@@ -41,6 +46,7 @@ public class AS4ManagerFactoryPersistingFileSystem implements IAS4ManagerFactory
   private static final String MPC_XML = "as4-mpc.xml";
   private static final String PMODE_XML = "as4-pmode.xml";
   private static final String INCOMING_DUPLICATE_XML = "as4-duplicate-incoming.xml";
+  private static final String INCOMING_DUPLICATE_LOG = "as4-duplicate-incoming.log";
 
   @Nonnull
   public IMPCManager createMPCManager () throws Phase4Exception
@@ -71,6 +77,18 @@ public class AS4ManagerFactoryPersistingFileSystem implements IAS4ManagerFactory
   @Nonnull
   public IAS4DuplicateManager createDuplicateManager () throws Phase4Exception
   {
+    if (AS4Configuration.isUseAppendLogDuplicateManager ())
+    {
+      try
+      {
+        return new AS4DuplicateManagerAppendLog (WebFileIO.getDataIO ().getFile (INCOMING_DUPLICATE_LOG));
+      }
+      catch (final IOException ex)
+      {
+        throw new Phase4Exception ("Error creating AS4DuplicateManager", ex).setRetryFeasible (false);
+      }
+    }
+
     try
     {
       return new AS4DuplicateManagerXML (INCOMING_DUPLICATE_XML);
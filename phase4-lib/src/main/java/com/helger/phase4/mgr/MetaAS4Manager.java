@@ -23,6 +23,7 @@ import org.slf4j.Logger;
 import com.helger.commons.ValueEnforcer;
 import com.helger.commons.annotation.UsedViaReflection;
 import com.helger.commons.exception.InitializationException;
+import com.helger.commons.io.stream.StreamHelper;
 import com.helger.commons.lang.ClassHelper;
 import com.helger.phase4.config.AS4Configuration;
 import com.helger.phase4.duplicate.IAS4DuplicateManager;
@@ -118,6 +119,14 @@ public final class MetaAS4Manager extends AbstractGlobalSingleton
     }
   }
 
+  @Override
+  protected void onBeforeDestroy (@Nonnull final IScope aScopeToBeDestroyed) throws Exception
+  {
+    // E.g. the append log duplicate manager
+    if (m_aIncomingDuplicateMgr instanceof AutoCloseable)
+      StreamHelper.close ((AutoCloseable) m_aIncomingDuplicateMgr);
+  }
+
   @Nonnull
   public static MetaAS4Manager getInstance ()
   {
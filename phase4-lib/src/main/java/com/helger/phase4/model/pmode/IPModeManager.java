@@ -119,6 +119,50 @@ public interface IPModeManager
     });
   }
 
+  /**
+   * Find the first PMode that has the provided service and action as well as
+   * the provided initiator and responder ID. If no such PMode exists, the
+   * first PMode that only has the provided service and action is used (see
+   * {@link #getPModeOfServiceAndAction(String, String)}). Implementations are
+   * encouraged to use an index for this lookup.
+   *
+   * @param sService
+   *        The service to be searched. May be <code>null</code>.
+   * @param sAction
+   *        The action to be searched. May be <code>null</code>.
+   * @param sInitiatorID
+   *        The initiator ID value to be searched. May be <code>null</code>.
+   * @param sResponderID
+   *        The responder ID value to be searched. May be <code>null</code>.
+   * @return <code>null</code> if no such PMode exists.
+   * @since 3.2.3
+   */
+  @Nullable
+  default IPMode getPModeOfServiceAndAction (@Nullable final String sService,
+                                             @Nullable final String sAction,
+                                             @Nullable final String sInitiatorID,
+                                             @Nullable final String sResponderID)
+  {
+    final IPMode ret = findFirst (x -> {
+      final PModeLeg aLeg = x.getLeg1 ();
+      if (aLeg != null)
+      {
+        final PModeLegBusinessInformation aBI = aLeg.getBusinessInfo ();
+        if (aBI != null)
+          return EqualsHelper.equals (aBI.getService (), sService) &&
+                 EqualsHelper.equals (aBI.getAction (), sAction) &&
+                 x.getInitiator () != null &&
+                 EqualsHelper.equals (x.getInitiator ().getIDValue (), sInitiatorID) &&
+                 x.getResponder () != null &&
+                 EqualsHelper.equals (x.getResponder ().getIDValue (), sResponderID);
+      }
+      return false;
+    });
+    if (ret != null)
+      return ret;
+    return getPModeOfServiceAndAction (sService, sAction);
+  }
+
   /**
    * Get a predicate that matches a PMode by ID or initiator and responder
    * together.
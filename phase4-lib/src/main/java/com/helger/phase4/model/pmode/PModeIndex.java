@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.model.pmode;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.CommonsLinkedHashMap;
+import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.collection.impl.ICommonsOrderedMap;
+import com.helger.commons.equals.EqualsHelper;
+import com.helger.commons.hashcode.HashCodeGenerator;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.phase4.model.pmode.leg.PModeLeg;
+import com.helger.phase4.model.pmode.leg.PModeLegBusinessInformation;
+
+/**
+ * A secondary index on PModes used by the {@link IPModeManager}
+ * implementations. It indexes PModes by leg 1 service and action, and by the
+ * initiator and responder ID values. The index reflects the state of the PModes
+ * at the time they were added, so the owner must call {@link #update(IPMode)}
+ * after every modification.<br>
+ * This class is not thread-safe and must be guarded by the lock of the owning
+ * manager.
+ *
+ * @author Philip Helger
+ * @since 3.2.3
+ */
+@NotThreadSafe
+final class PModeIndex
+{
+  /**
+   * Null-safe key consisting of two strings.
+   */
+  private static final class Key
+  {
+    private final String m_s1;
+    private final String m_s2;
+
+    Key (@Nullable final String s1, @Nullable final String s2)
+    {
+      m_s1 = s1;
+      m_s2 = s2;
+    }
+
+    @Override
+    public boolean equals (final Object o)
+    {
+      if (o == this)
+        return true;
+      if (o == null || !getClass ().equals (o.getClass ()))
+        return false;
+      final Key rhs = (Key) o;
+      return EqualsHelper.equals (m_s1, rhs.m_s1) && EqualsHelper.equals (m_s2, rhs.m_s2);
+    }
+
+    @Override
+    public int hashCode ()
+    {
+      return new HashCodeGenerator (this).append (m_s1).append (m_s2).getHashCode ();
+    }
+
+    @Override
+    public String toString ()
+    {
+      return new ToStringGenerator (null).append ("1", m_s1).append ("2", m_s2).getToString ();
+    }
+  }
+
+  // Service and action to PModes (by ID)
+  private final ICommonsMap <Key, ICommonsOrderedMap <String, IPMode>> m_aServiceAction = new CommonsHashMap <> ();
+  // Initiator and responder ID value to PModes (by ID)
+  private final ICommonsMap <Key, ICommonsOrderedMap <String, IPMode>> m_aParties = new CommonsHashMap <> ();
+  // PMode ID to the keys used, to be able to remove outdated entries
+  private final ICommonsMap <String, Key []> m_aKeysOfID = new CommonsHashMap <> ();
+
+  PModeIndex ()
+  {}
+
+  @Nullable
+  private static Key _getServiceActionKey (@Nonnull final IPMode aPMode)
+  {
+    final PModeLeg aLeg = aPMode.getLeg1 ();
+    if (aLeg != null)
+    {
+      final PModeLegBusinessInformation aBI = aLeg.getBusinessInfo ();
+      if (aBI != null)
+        return new Key (aBI.getService (), aBI.getAction ());
+    }
+    return null;
+  }
+
+  @Nullable
+  private static String _getIDValue (@Nullable final PModeParty aParty)
+  {
+    return aParty == null ? null : aParty.getIDValue ();
+  }
+
+  @Nonnull
+  private static Key _getPartiesKey (@Nullable final String sInitiatorID, @Nullable final String sResponderID)
+  {
+    return new Key (sInitiatorID, sResponderID);
+  }
+
+  private static void _add (@Nonnull final ICommonsMap <Key, ICommonsOrderedMap <String, IPMode>> aMap,
+                            @Nonnull final Key aKey,
+                            @Nonnull final IPMode aPMode)
+  {
+    aMap.computeIfAbsent (aKey, k -> new CommonsLinkedHashMap <> ()).put (aPMode.getID (), aPMode);
+  }
+
+  private static void _remove (@Nonnull final ICommonsMap <Key, ICommonsOrderedMap <String, IPMode>> aMap,
+                               @Nullable final Key aKey,
+                               @Nonnull final String sID)
+  {
+    if (aKey != null)
+    {
+      final ICommonsOrderedMap <String, IPMode> aPModes = aMap.get (aKey);
+      if (aPModes != null)
+      {
+        aPModes.remove (sID);
+        if (aPModes.isEmpty ())
+          aMap.remove (aKey);
+      }
+    }
+  }
+
+  /**
+   * Add a new PMode to the index.
+   *
+   * @param aPMode
+   *        The PMode to add. May not be <code>null</code>.
+   */
+  void add (@Nonnull final IPMode aPMode)
+  {
+    final Key aServiceActionKey = _getServiceActionKey (aPMode);
+    final Key aPartiesKey = _getPartiesKey (_getIDValue (aPMode.getInitiator ()),
+                                            _getIDValue (aPMode.getResponder ()));
+    if (aServiceActionKey != null)
+      _add (m_aServiceAction, aServiceActionKey, aPMode);
+    _add (m_aParties, aPartiesKey, aPMode);
+    m_aKeysOfID.put (aPMode.getID (), new Key [] { aServiceActionKey, aPartiesKey });
+  }
+
+  /**
+   * Remove a PMode from the index.
+   *
+   * @param sID
+   *        The ID of the PMode to remove. May be <code>null</code>.
+   */
+  void remove (@Nullable final String sID)
+  {
+    final Key [] aKeys = m_aKeysOfID.remove (sID);
+    if (aKeys != null)
+    {
+      _remove (m_aServiceAction, aKeys[0], sID);
+      _remove (m_aParties, aKeys[1], sID);
+    }
+  }
+
+  /**
+   * Re-index a PMode after it was modified.
+   *
+   * @param aPMode
+   *        The modified PMode. May not be <code>null</code>.
+   */
+  void update (@Nonnull final IPMode aPMode)
+  {
+    remove (aPMode.getID ());
+    add (aPMode);
+  }
+
+  /**
+   * Remove all entries.
+   */
+  void clear ()
+  {
+    m_aServiceAction.clear ();
+    m_aParties.clear ();
+    m_aKeysOfID.clear ();
+  }
+
+  /**
+   * @param sService
+   *        Service to search. May be <code>null</code>.
+   * @param sAction
+   *        Action to search. May be <code>null</code>.
+   * @return The first PMode with the provided leg 1 service and action or
+   *         <code>null</code> if none is present.
+   */
+  @Nullable
+  IPMode getOfServiceAndAction (@Nullable final String sService, @Nullable final String sAction)
+  {
+    final ICommonsOrderedMap <String, IPMode> aPModes = m_aServiceAction.get (new Key (sService, sAction));
+    return aPModes == null ? null : aPModes.getFirstValue ();
+  }
+
+  /**
+   * @param sService
+   *        Service to search. May be <code>null</code>.
+   * @param sAction
+   *        Action to search. May be <code>null</code>.
+   * @param sInitiatorID
+   *        Initiator ID value to search. May be <code>null</code>.
+   * @param sResponderID
+   *        Responder ID value to search. May be <code>null</code>.
+   * @return The first PMode with the provided leg 1 service and action as well
+   *         as the provided initiator and responder ID values or
+   *         <code>null</code> if none is present.
+   */
+  @Nullable
+  IPMode getOfServiceAndActionAndParties (@Nullable final String sService,
+                                          @Nullable final String sAction,
+                                          @Nullable final String sInitiatorID,
+                                          @Nullable final String sResponderID)
+  {
+    // The number of PModes per party combination is usually small
+    final ICommonsOrderedMap <String, IPMode> aPModes = m_aParties.get (_getPartiesKey (sInitiatorID, sResponderID));
+    if (aPModes != null)
+    {
+      final Key aServiceActionKey = new Key (sService, sAction);
+      for (final IPMode aPMode : aPModes.values ())
+        if (aServiceActionKey.equals (_getServiceActionKey (aPMode)))
+          return aPMode;
+    }
+    return null;
+  }
+
+  /**
+   * @param aInitiator
+   *        Initiator to search. May be <code>null</code>.
+   * @param aResponder
+   *        Responder to search. May be <code>null</code>.
+   * @return The first PMode with the exact same initiator and responder or
+   *         <code>null</code> if none is present.
+   */
+  @Nullable
+  IPMode getOfParties (@Nullable final PModeParty aInitiator, @Nullable final PModeParty aResponder)
+  {
+    final ICommonsOrderedMap <String, IPMode> aPModes = m_aParties.get (_getPartiesKey (_getIDValue (aInitiator),
+                                                                                      _getIDValue (aResponder)));
+    if (aPModes != null)
+      for (final IPMode aPMode : aPModes.values ())
+        if (EqualsHelper.equals (aPMode.getInitiator (), aInitiator) &&
+            EqualsHelper.equals (aPMode.getResponder (), aResponder))
+          return aPMode;
+    return null;
+  }
+}
@@ -54,6 +54,8 @@ public class PModeManagerInMemory implements IPModeManager
   private final SimpleReadWriteLock m_aRWLock = new SimpleReadWriteLock ();
   @GuardedBy ("m_aRWLock")
   private final ICommonsMap <String, PMode> m_aMap = new CommonsHashMap <> ();
+  @GuardedBy ("m_aRWLock")
+  private final PModeIndex m_aIndex = new PModeIndex ();
 
   public PModeManagerInMemory ()
   {}
@@ -77,6 +79,7 @@ public class PModeManagerInMemory implements IPModeManager
     if (m_aMap.containsKey (sID))
       throw new IllegalArgumentException ("An object with ID '" + sID + "' is already contained!");
     m_aMap.put (sID, aPMode);
+    m_aIndex.add (aPMode);
 
     if (LOGGER.isDebugEnabled ())
       LOGGER.debug ("Created PMode with ID '" + aPMode.getID () + "'");
@@ -117,6 +120,7 @@ public class PModeManagerInMemory implements IPModeManager
         return EChange.UNCHANGED;
 
       BusinessObjectHelper.setLastModificationNow (aExistingPMode);
+      m_aIndex.update (aExistingPMode);
     }
     finally
     {
@@ -129,23 +133,35 @@ public class PModeManagerInMemory implements IPModeManager
     return EChange.CHANGED;
   }
 
+  /**
+   * Find an existing PMode with the same ID or the same initiator and
+   * responder. This is the indexed version of
+   * {@link IPModeManager#getPModeFilter(String, PModeParty, PModeParty)}.
+   */
+  @Nullable
+  @MustBeLocked (ELockType.READ)
+  private IPMode _findExistingLocked (@Nonnull final PMode aPMode)
+  {
+    final IPMode ret = m_aMap.get (aPMode.getID ());
+    if (ret != null)
+      return ret;
+    return m_aIndex.getOfParties (aPMode.getInitiator (), aPMode.getResponder ());
+  }
+
   public void createOrUpdatePMode (@Nonnull final PMode aPMode)
   {
     ValueEnforcer.notNull (aPMode, "PMode");
     _validatePMode (aPMode);
 
     // Try in read-lock
-    final Predicate <IPMode> aFilter = IPModeManager.getPModeFilter (aPMode.getID (),
-                                                                     aPMode.getInitiator (),
-                                                                     aPMode.getResponder ());
-    IPMode aExisting = findFirst (aFilter);
+    IPMode aExisting = m_aRWLock.readLockedGet ( () -> _findExistingLocked (aPMode));
     if (aExisting == null)
     {
       m_aRWLock.writeLock ().lock ();
       try
       {
         // Try again in write lock
-        aExisting = findFirst (aFilter);
+        aExisting = _findExistingLocked (aPMode);
         if (aExisting == null)
         {
           // Create a new one
@@ -203,6 +219,7 @@ public class PModeManagerInMemory implements IPModeManager
     try
     {
       m_aMap.remove (sPModeID);
+      m_aIndex.remove (sPModeID);
     }
     finally
     {
@@ -232,6 +249,26 @@ public class PModeManagerInMemory implements IPModeManager
     return m_aRWLock.readLockedGet ( () -> CollectionHelper.findFirst (m_aMap.values (), aFilter));
   }
 
+  @Override
+  @Nullable
+  public IPMode getPModeOfServiceAndAction (@Nullable final String sService, @Nullable final String sAction)
+  {
+    return m_aRWLock.readLockedGet ( () -> m_aIndex.getOfServiceAndAction (sService, sAction));
+  }
+
+  @Override
+  @Nullable
+  public IPMode getPModeOfServiceAndAction (@Nullable final String sService,
+                                            @Nullable final String sAction,
+                                            @Nullable final String sInitiatorID,
+                                            @Nullable final String sResponderID)
+  {
+    return m_aRWLock.readLockedGet ( () -> {
+      final IPMode ret = m_aIndex.getOfServiceAndActionAndParties (sService, sAction, sInitiatorID, sResponderID);
+      return ret != null ? ret : m_aIndex.getOfServiceAndAction (sService, sAction);
+    });
+  }
+
   @Nonnull
   @ReturnsMutableCopy
   public ICommonsList <IPMode> getAll ()
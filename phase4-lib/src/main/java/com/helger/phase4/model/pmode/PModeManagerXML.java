@@ -16,10 +16,9 @@
  */
 package com.helger.phase4.model.pmode;
 
-import java.util.function.Predicate;
-
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 
 import org.slf4j.Logger;
@@ -44,11 +43,33 @@ public class PModeManagerXML extends AbstractPhotonMapBasedWALDAO <IPMode, PMode
 {
   private static final Logger LOGGER = Phase4LoggerFactory.getLogger (PModeManagerXML.class);
 
+  @GuardedBy ("m_aRWLock")
+  private final PModeIndex m_aIndex = new PModeIndex ();
+  private volatile boolean m_bIndexInitialized = false;
+
   public PModeManagerXML (@Nullable final String sFilename) throws DAOException
   {
     super (PMode.class, sFilename);
   }
 
+  /**
+   * The index is filled lazily upon the first lookup, so that it also contains
+   * all the PModes read by the base class. Must not be called while holding
+   * the lock.
+   */
+  private void _ensureIndexInitialized ()
+  {
+    if (!m_bIndexInitialized)
+      m_aRWLock.writeLocked ( () -> {
+        if (!m_bIndexInitialized)
+        {
+          for (final IPMode aPMode : getAll ())
+            m_aIndex.add (aPMode);
+          m_bIndexInitialized = true;
+        }
+      });
+  }
+
   private void _validatePMode (@Nonnull final IPMode aPMode)
   {
     try
@@ -65,6 +86,8 @@ public class PModeManagerXML extends AbstractPhotonMapBasedWALDAO <IPMode, PMode
   private void _createPModeLocked (@Nonnull final PMode aPMode)
   {
     internalCreateItem (aPMode);
+    if (m_bIndexInitialized)
+      m_aIndex.add (aPMode);
     AuditHelper.onAuditCreateSuccess (PMode.OT, aPMode.getID ());
 
     if (LOGGER.isDebugEnabled ())
@@ -115,6 +138,8 @@ public class PModeManagerXML extends AbstractPhotonMapBasedWALDAO <IPMode, PMode
 
       BusinessObjectHelper.setLastModificationNow (aExistingPMode);
       internalUpdateItem (aExistingPMode);
+      if (m_bIndexInitialized)
+        m_aIndex.update (aExistingPMode);
     }
     finally
     {
@@ -128,23 +153,37 @@ public class PModeManagerXML extends AbstractPhotonMapBasedWALDAO <IPMode, PMode
     return EChange.CHANGED;
   }
 
+  /**
+   * Find an existing PMode with the same ID or the same initiator and
+   * responder. This is the indexed version of
+   * {@link IPModeManager#getPModeFilter(String, PModeParty, PModeParty)}.
+   */
+  @Nullable
+  @MustBeLocked (ELockType.READ)
+  private IPMode _findExistingLocked (@Nonnull final PMode aPMode)
+  {
+    final IPMode ret = getOfID (aPMode.getID ());
+    if (ret != null)
+      return ret;
+    return m_aIndex.getOfParties (aPMode.getInitiator (), aPMode.getResponder ());
+  }
+
   public void createOrUpdatePMode (@Nonnull final PMode aPMode)
   {
     ValueEnforcer.notNull (aPMode, "PMode");
     _validatePMode (aPMode);
 
+    _ensureIndexInitialized ();
+
     // Try in read-lock
-    final Predicate <IPMode> aFilter = IPModeManager.getPModeFilter (aPMode.getID (),
-                                                                     aPMode.getInitiator (),
-                                                                     aPMode.getResponder ());
-    IPMode aExisting = findFirst (aFilter);
+    IPMode aExisting = m_aRWLock.readLockedGet ( () -> _findExistingLocked (aPMode));
     if (aExisting == null)
     {
       m_aRWLock.writeLock ().lock ();
       try
       {
         // Try again in write lock
-        aExisting = findFirst (aFilter);
+        aExisting = _findExistingLocked (aPMode);
         if (aExisting == null)
         {
           // Create a new one
@@ -208,6 +247,8 @@ public class PModeManagerXML extends AbstractPhotonMapBasedWALDAO <IPMode, PMode
     try
     {
       internalDeleteItem (sPModeID);
+      if (m_bIndexInitialized)
+        m_aIndex.remove (sPModeID);
     }
     finally
     {
@@ -223,4 +264,26 @@ public class PModeManagerXML extends AbstractPhotonMapBasedWALDAO <IPMode, PMode
   {
     return getOfID (sID);
   }
+
+  @Override
+  @Nullable
+  public IPMode getPModeOfServiceAndAction (@Nullable final String sService, @Nullable final String sAction)
+  {
+    _ensureIndexInitialized ();
+    return m_aRWLock.readLockedGet ( () -> m_aIndex.getOfServiceAndAction (sService, sAction));
+  }
+
+  @Override
+  @Nullable
+  public IPMode getPModeOfServiceAndAction (@Nullable final String sService,
+                                            @Nullable final String sAction,
+                                            @Nullable final String sInitiatorID,
+                                            @Nullable final String sResponderID)
+  {
+    _ensureIndexInitialized ();
+    return m_aRWLock.readLockedGet ( () -> {
+      final IPMode ret = m_aIndex.getOfServiceAndActionAndParties (sService, sAction, sInitiatorID, sResponderID);
+      return ret != null ? ret : m_aIndex.getOfServiceAndAction (sService, sAction);
+    });
+  }
 }
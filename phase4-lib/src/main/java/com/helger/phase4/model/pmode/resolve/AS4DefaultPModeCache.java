@@ -0,0 +1,325 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.model.pmode.resolve;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.equals.EqualsHelper;
+import com.helger.commons.hashcode.HashCodeGenerator;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.phase4.logging.Phase4LoggerFactory;
+import com.helger.phase4.model.pmode.IPMode;
+import com.helger.phase4.profile.IAS4Profile;
+
+/**
+ * A size and time limited cache for the default PModes created from AS4
+ * profile templates by {@link AS4DefaultPModeResolver}. The entries are keyed
+ * by the resolver class, the AS4 profile, the initiator ID, the responder ID
+ * and the address. If the maximum size is reached, the oldest entry is evicted.
+ * The cache is cleared when the AS4 profile registry changes.<br>
+ * Note: the cached PModes are shared between all messages, so they must not be
+ * modified after creation. As the key does not contain the resolver instance,
+ * the cache may only be used by resolvers whose default PModes solely depend on
+ * the key values.
+ *
+ * @author Philip Helger
+ * @since 3.2.3
+ */
+@ThreadSafe
+public class AS4DefaultPModeCache
+{
+  public static final int DEFAULT_MAX_SIZE = 1_000;
+  public static final Duration DEFAULT_TTL = Duration.ofMinutes (10);
+
+  private static final Logger LOGGER = Phase4LoggerFactory.getLogger (AS4DefaultPModeCache.class);
+  private static final AS4DefaultPModeCache DEFAULT_INSTANCE = new AS4DefaultPModeCache ();
+
+  @Immutable
+  private static final class Key
+  {
+    private final Class <?> m_aResolverClass;
+    private final IAS4Profile m_aProfile;
+    private final String m_sInitiatorID;
+    private final String m_sResponderID;
+    private final String m_sAddress;
+    // Status vars
+    private final int m_nHashCode;
+
+    Key (@Nonnull final Class <?> aResolverClass,
+         @Nonnull final IAS4Profile aProfile,
+         @Nonnull final String sInitiatorID,
+         @Nonnull final String sResponderID,
+         @Nullable final String sAddress)
+    {
+      m_aResolverClass = aResolverClass;
+      m_aProfile = aProfile;
+      m_sInitiatorID = sInitiatorID;
+      m_sResponderID = sResponderID;
+      m_sAddress = sAddress;
+      // Profile instances are compared by identity, so that re-registered
+      // profiles never match old entries
+      m_nHashCode = new HashCodeGenerator (this).append (aResolverClass)
+                                                .append (System.identityHashCode (aProfile))
+                                                .append (sInitiatorID)
+                                                .append (sResponderID)
+                                                .append (sAddress)
+                                                .getHashCode ();
+    }
+
+    @Override
+    public boolean equals (final Object o)
+    {
+      if (o == this)
+        return true;
+      if (o == null || !getClass ().equals (o.getClass ()))
+        return false;
+      final Key rhs = (Key) o;
+      return m_aResolverClass.equals (rhs.m_aResolverClass) &&
+             m_aProfile == rhs.m_aProfile &&
+             m_sInitiatorID.equals (rhs.m_sInitiatorID) &&
+             m_sResponderID.equals (rhs.m_sResponderID) &&
+             EqualsHelper.equals (m_sAddress, rhs.m_sAddress);
+    }
+
+    @Override
+    public int hashCode ()
+    {
+      return m_nHashCode;
+    }
+  }
+
+  @Immutable
+  private static final class Entry
+  {
+    private final IPMode m_aPMode;
+    private final long m_nExpirationNanos;
+
+    Entry (@Nonnull final IPMode aPMode, final long nExpirationNanos)
+    {
+      m_aPMode = aPMode;
+      m_nExpirationNanos = nExpirationNanos;
+    }
+
+    boolean isExpired (final long nNowNanos)
+    {
+      return nNowNanos - m_nExpirationNanos >= 0;
+    }
+  }
+
+  private final SimpleReadWriteLock m_aRWLock = new SimpleReadWriteLock ();
+  // Insertion order is used for eviction
+  @GuardedBy ("m_aRWLock")
+  private final Map <Key, Entry> m_aMap = new LinkedHashMap <> ();
+  @GuardedBy ("m_aRWLock")
+  private int m_nMaxSize = DEFAULT_MAX_SIZE;
+  @GuardedBy ("m_aRWLock")
+  private Duration m_aTTL = DEFAULT_TTL;
+
+  public AS4DefaultPModeCache ()
+  {}
+
+  /**
+   * @return The global default instance that is used by
+   *         {@link AS4DefaultPModeResolver} by default. Never <code>null</code>.
+   */
+  @Nonnull
+  public static AS4DefaultPModeCache getDefaultInstance ()
+  {
+    return DEFAULT_INSTANCE;
+  }
+
+  /**
+   * @return The maximum number of entries in the cache. Always &gt; 0.
+   */
+  @Nonnegative
+  public final int getMaxSize ()
+  {
+    return m_aRWLock.readLockedInt ( () -> m_nMaxSize);
+  }
+
+  /**
+   * Set the maximum number of entries in the cache. If the cache currently
+   * contains more entries, the oldest ones are evicted.
+   *
+   * @param nMaxSize
+   *        The maximum number of entries. Must be &gt; 0.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final AS4DefaultPModeCache setMaxSize (@Nonnegative final int nMaxSize)
+  {
+    ValueEnforcer.isGT0 (nMaxSize, "MaxSize");
+    m_aRWLock.writeLocked ( () -> {
+      m_nMaxSize = nMaxSize;
+      _evictLocked ();
+    });
+    return this;
+  }
+
+  /**
+   * @return The time to live of a cache entry. Never <code>null</code>.
+   */
+  @Nonnull
+  public final Duration getTTL ()
+  {
+    return m_aRWLock.readLockedGet ( () -> m_aTTL);
+  }
+
+  /**
+   * Set the time to live of new cache entries. Existing entries keep their
+   * time to live.
+   *
+   * @param aTTL
+   *        The time to live. May not be <code>null</code> and must be
+   *        positive.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final AS4DefaultPModeCache setTTL (@Nonnull final Duration aTTL)
+  {
+    ValueEnforcer.notNull (aTTL, "TTL");
+    ValueEnforcer.isTrue ( () -> !aTTL.isNegative () && !aTTL.isZero (), "TTL must be positive");
+    m_aRWLock.writeLocked ( () -> m_aTTL = aTTL);
+    return this;
+  }
+
+  /**
+   * @return The number of entries currently in the cache, including expired
+   *         entries that were not yet evicted. Always &ge; 0.
+   */
+  @Nonnegative
+  public final int getSize ()
+  {
+    return m_aRWLock.readLockedInt (m_aMap::size);
+  }
+
+  @GuardedBy ("m_aRWLock")
+  private void _evictLocked ()
+  {
+    // The TTL may have changed in between, so the insertion order says nothing
+    // about the expiration - check all entries
+    final long nNow = System.nanoTime ();
+    m_aMap.values ().removeIf (x -> x.isExpired (nNow));
+
+    // Evict the oldest entries
+    final Iterator <Entry> it = m_aMap.values ().iterator ();
+    int nSize = m_aMap.size ();
+    while (nSize > m_nMaxSize && it.hasNext ())
+    {
+      it.next ();
+      it.remove ();
+      nSize--;
+    }
+  }
+
+  /**
+   * Get the cached default PMode or create and cache a new one.
+   *
+   * @param aResolverClass
+   *        The class of the resolver creating the PMode. May not be
+   *        <code>null</code>.
+   * @param aProfile
+   *        The AS4 profile used to create the PMode. May not be
+   *        <code>null</code>.
+   * @param sInitiatorID
+   *        Initiator ID. May neither be <code>null</code> nor empty.
+   * @param sResponderID
+   *        Responder ID. May neither be <code>null</code> nor empty.
+   * @param sAddress
+   *        Endpoint address. May be <code>null</code>.
+   * @param aCreator
+   *        The supplier to create a new PMode, if none is cached. May not be
+   *        <code>null</code>. It may return <code>null</code> in which case
+   *        nothing is cached.
+   * @return The cached or newly created PMode. May be <code>null</code> if the
+   *         creator returned <code>null</code>.
+   */
+  @Nullable
+  public IPMode getOrCreate (@Nonnull final Class <?> aResolverClass,
+                             @Nonnull final IAS4Profile aProfile,
+                             @Nonnull @Nonempty final String sInitiatorID,
+                             @Nonnull @Nonempty final String sResponderID,
+                             @Nullable final String sAddress,
+                             @Nonnull final Supplier <? extends IPMode> aCreator)
+  {
+    ValueEnforcer.notNull (aResolverClass, "ResolverClass");
+    ValueEnforcer.notNull (aProfile, "Profile");
+    ValueEnforcer.notNull (sInitiatorID, "InitiatorID");
+    ValueEnforcer.notNull (sResponderID, "ResponderID");
+    ValueEnforcer.notNull (aCreator, "Creator");
+
+    final Key aKey = new Key (aResolverClass, aProfile, sInitiatorID, sResponderID, sAddress);
+    final Entry aEntry = m_aRWLock.readLockedGet ( () -> m_aMap.get (aKey));
+    if (aEntry != null && !aEntry.isExpired (System.nanoTime ()))
+      return aEntry.m_aPMode;
+
+    // Create outside of the lock - concurrent creation of the same PMode does
+    // no harm
+    final IPMode ret = aCreator.get ();
+    if (ret != null)
+    {
+      m_aRWLock.writeLocked ( () -> {
+        // Re-insert to the end
+        m_aMap.remove (aKey);
+        m_aMap.put (aKey, new Entry (ret, System.nanoTime () + m_aTTL.toNanos ()));
+        _evictLocked ();
+      });
+    }
+    return ret;
+  }
+
+  /**
+   * Remove all entries from the cache. This is automatically called if the AS4
+   * profile registry changes.
+   */
+  public void clearCache ()
+  {
+    m_aRWLock.writeLocked ( () -> {
+      if (!m_aMap.isEmpty ())
+      {
+        if (LOGGER.isDebugEnabled ())
+          LOGGER.debug ("Clearing " + m_aMap.size () + " cached default PModes");
+        m_aMap.clear ();
+      }
+    });
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("MaxSize", m_nMaxSize)
+                                       .append ("TTL", m_aTTL)
+                                       .append ("Size", m_aMap.size ())
+                                       .getToString ();
+  }
+}
@@ -34,7 +34,8 @@ import com.helger.phase4.profile.IAS4Profile;
 /**
  * Default implementation of {@link IAS4PModeResolver} based on an AS4 Profile
  * ID. If no PMode is present, the respective PMode template from the selected
- * AS4 profile is used instead.
+ * AS4 profile is used instead. Since v3.2.3 the created PMode templates may
+ * optionally be cached in an {@link AS4DefaultPModeCache}.
  *
  * @author bayerlma
  * @author Philip Helger
@@ -45,10 +46,31 @@ public class AS4DefaultPModeResolver implements IAS4PModeResolver
 
   private final String m_sAS4ProfileID;
   private final IAS4Profile m_aAS4Profile;
+  private final AS4DefaultPModeCache m_aDefaultPModeCache;
 
   public AS4DefaultPModeResolver (@Nullable final String sAS4ProfileID)
+  {
+    this (sAS4ProfileID, null);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param sAS4ProfileID
+   *        The AS4 profile ID to use. May be <code>null</code>.
+   * @param aDefaultPModeCache
+   *        The cache for the created default PModes. May be <code>null</code>
+   *        to disable caching. Only provide a cache, if the PModes created by
+   *        {@link #createDefaultPMode(String, String, String)} solely depend on
+   *        the AS4 profile and the method parameters. Usually
+   *        {@link AS4DefaultPModeCache#getDefaultInstance()} is used.
+   * @since 3.2.3
+   */
+  public AS4DefaultPModeResolver (@Nullable final String sAS4ProfileID,
+                                  @Nullable final AS4DefaultPModeCache aDefaultPModeCache)
   {
     m_sAS4ProfileID = sAS4ProfileID;
+    m_aDefaultPModeCache = aDefaultPModeCache;
     m_aAS4Profile = MetaAS4Manager.getProfileMgr ().getProfileOfID (sAS4ProfileID);
     if (m_aAS4Profile == null && StringHelper.hasText (sAS4ProfileID))
       LOGGER.error ("Failed to resolved the AS4 profile ID '" + sAS4ProfileID + "'");
@@ -76,6 +98,17 @@ public class AS4DefaultPModeResolver implements IAS4PModeResolver
     return m_aAS4Profile;
   }
 
+  /**
+   * @return The cache for the created default PModes. May be <code>null</code>
+   *         if caching is disabled.
+   * @since 3.2.3
+   */
+  @Nullable
+  public final AS4DefaultPModeCache getDefaultPModeCache ()
+  {
+    return m_aDefaultPModeCache;
+  }
+
   @Nullable
   @OverrideOnDemand
   protected IPMode createDefaultPMode (@Nonnull @Nonempty final String sInitiatorID,
@@ -113,19 +146,29 @@ public class AS4DefaultPModeResolver implements IAS4PModeResolver
     }
 
     // the PMode ID field is empty or null or invalid
-    // try a combination of Service and Action
-    ret = aPModeMgr.getPModeOfServiceAndAction (sService, sAction);
+    // try a combination of Service and Action - preferably the one of the
+    // provided initiator and responder (uses the index of the PMode manager)
+    ret = aPModeMgr.getPModeOfServiceAndAction (sService, sAction, sInitiatorID, sResponderID);
     if (ret != null)
       return ret;
 
     // No existing PMode was found
     // Try to resolve a default PMode from the other parameters
+    if (m_aDefaultPModeCache != null && m_aAS4Profile != null)
+      return m_aDefaultPModeCache.getOrCreate (getClass (),
+                                               m_aAS4Profile,
+                                               sInitiatorID,
+                                               sResponderID,
+                                               sAddress,
+                                               () -> createDefaultPMode (sInitiatorID, sResponderID, sAddress));
     return createDefaultPMode (sInitiatorID, sResponderID, sAddress);
   }
 
   @Override
   public String toString ()
   {
-    return new ToStringGenerator (null).append ("AS4ProfileID", m_sAS4ProfileID).getToString ();
+    return new ToStringGenerator (null).append ("AS4ProfileID", m_sAS4ProfileID)
+                                       .append ("DefaultPModeCache", m_aDefaultPModeCache)
+                                       .getToString ();
   }
 }
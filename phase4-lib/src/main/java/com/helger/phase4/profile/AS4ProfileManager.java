@@ -34,6 +34,7 @@ import com.helger.commons.lang.ServiceLoaderHelper;
 import com.helger.commons.string.StringHelper;
 import com.helger.commons.string.ToStringGenerator;
 import com.helger.phase4.logging.Phase4LoggerFactory;
+import com.helger.phase4.model.pmode.resolve.AS4DefaultPModeCache;
 
 /**
  * AS4 profile manager. All profiles are registered by SPI -
@@ -53,6 +54,9 @@ public class AS4ProfileManager implements IAS4ProfileManager
   private void _registerAll ()
   {
     m_aRWLock.writeLocked ( () -> { m_aProfiles.clear (); });
+    // Default PModes created from old profiles are no longer valid
+    AS4DefaultPModeCache.getDefaultInstance ().clearCache ();
+    AS4ProfilePModeValidationCache.getDefaultInstance ().clearCache ();
     for (final IAS4ProfileRegistrarSPI aSPI : ServiceLoaderHelper.getAllSPIImplementations (IAS4ProfileRegistrarSPI.class))
       aSPI.registerAS4Profile (this);
 
@@ -102,6 +106,8 @@ public class AS4ProfileManager implements IAS4ProfileManager
         throw new IllegalStateException ("An AS4 profile with ID '" + sID + "' is already registered!");
       m_aProfiles.put (sID, aAS4Profile);
     });
+    AS4DefaultPModeCache.getDefaultInstance ().clearCache ();
+    AS4ProfilePModeValidationCache.getDefaultInstance ().clearCache ();
 
     if (LOGGER.isDebugEnabled ())
       LOGGER.debug ("Registered" + (aAS4Profile.isDeprecated () ? " deprecated" : "") + " AS4 profile '" + sID + "'");
@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.profile;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.concurrent.SimpleReadWriteLock;
+import com.helger.commons.equals.EqualsHelper;
+import com.helger.commons.error.IError;
+import com.helger.commons.error.list.ErrorList;
+import com.helger.commons.hashcode.HashCodeGenerator;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.phase4.model.pmode.IPMode;
+import com.helger.phase4.profile.IAS4ProfileValidator.EAS4ProfileValidationMode;
+
+/**
+ * A cache for the results of
+ * {@link IAS4ProfileValidator#validatePMode(IPMode, ErrorList, EAS4ProfileValidationMode)}.
+ * The PMode validation only depends on the PMode and the profile, so it does
+ * not need to be repeated for every incoming message. The entries are keyed
+ * by the AS4 profile instance, the PMode instance, the last modification
+ * date time of the PMode and the validation mode. Therefore changes of a PMode
+ * via the PMode manager automatically lead to a new validation. If the maximum
+ * size is reached, the oldest entry is evicted.
+ *
+ * @author Philip Helger
+ * @since 3.2.3
+ */
+@ThreadSafe
+public class AS4ProfilePModeValidationCache
+{
+  public static final int DEFAULT_MAX_SIZE = 1_000;
+
+  private static final AS4ProfilePModeValidationCache DEFAULT_INSTANCE = new AS4ProfilePModeValidationCache ();
+
+  @Immutable
+  private static final class Key
+  {
+    private final IAS4Profile m_aProfile;
+    private final IPMode m_aPMode;
+    private final LocalDateTime m_aLastModDT;
+    private final EAS4ProfileValidationMode m_eValidationMode;
+    // Status vars
+    private final int m_nHashCode;
+
+    Key (@Nonnull final IAS4Profile aProfile,
+         @Nonnull final IPMode aPMode,
+         @Nonnull final EAS4ProfileValidationMode eValidationMode)
+    {
+      m_aProfile = aProfile;
+      m_aPMode = aPMode;
+      m_aLastModDT = aPMode.getLastModificationDateTime ();
+      m_eValidationMode = eValidationMode;
+      // Profiles and PModes are compared by identity
+      m_nHashCode = new HashCodeGenerator (this).append (System.identityHashCode (aProfile))
+                                                .append (System.identityHashCode (aPMode))
+                                                .append (m_aLastModDT)
+                                                .append (eValidationMode)
+                                                .getHashCode ();
+    }
+
+    @Override
+    public boolean equals (final Object o)
+    {
+      if (o == this)
+        return true;
+      if (o == null || !getClass ().equals (o.getClass ()))
+        return false;
+      final Key rhs = (Key) o;
+      return m_aProfile == rhs.m_aProfile &&
+             m_aPMode == rhs.m_aPMode &&
+             EqualsHelper.equals (m_aLastModDT, rhs.m_aLastModDT) &&
+             m_eValidationMode == rhs.m_eValidationMode;
+    }
+
+    @Override
+    public int hashCode ()
+    {
+      return m_nHashCode;
+    }
+  }
+
+  private final SimpleReadWriteLock m_aRWLock = new SimpleReadWriteLock ();
+  @GuardedBy ("m_aRWLock")
+  private int m_nMaxSize = DEFAULT_MAX_SIZE;
+  // Insertion order is used for eviction
+  @GuardedBy ("m_aRWLock")
+  private final Map <Key, ICommonsList <IError>> m_aMap = new LinkedHashMap <Key, ICommonsList <IError>> ()
+  {
+    @Override
+    protected boolean removeEldestEntry (final Map.Entry <Key, ICommonsList <IError>> aEldest)
+    {
+      return size () > m_nMaxSize;
+    }
+  };
+
+  public AS4ProfilePModeValidationCache ()
+  {}
+
+  /**
+   * @return The global default instance that is used when processing incoming
+   *         messages. Never <code>null</code>.
+   */
+  @Nonnull
+  public static AS4ProfilePModeValidationCache getDefaultInstance ()
+  {
+    return DEFAULT_INSTANCE;
+  }
+
+  /**
+   * @return The maximum number of entries in the cache. Always &gt; 0.
+   */
+  @Nonnegative
+  public final int getMaxSize ()
+  {
+    return m_aRWLock.readLockedInt ( () -> m_nMaxSize);
+  }
+
+  /**
+   * Set the maximum number of entries in the cache. The new value takes effect
+   * with the next added entry.
+   *
+   * @param nMaxSize
+   *        The maximum number of entries. Must be &gt; 0.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final AS4ProfilePModeValidationCache setMaxSize (@Nonnegative final int nMaxSize)
+  {
+    ValueEnforcer.isGT0 (nMaxSize, "MaxSize");
+    m_aRWLock.writeLocked ( () -> m_nMaxSize = nMaxSize);
+    return this;
+  }
+
+  /**
+   * @return The number of entries currently in the cache. Always &ge; 0.
+   */
+  @Nonnegative
+  public final int getSize ()
+  {
+    return m_aRWLock.readLockedInt (m_aMap::size);
+  }
+
+  /**
+   * Validate the provided PMode with the provided validator, using the cached
+   * result if present.
+   *
+   * @param aProfile
+   *        The AS4 profile the validator belongs to. May not be
+   *        <code>null</code>.
+   * @param aValidator
+   *        The validator of the AS4 profile. May not be <code>null</code>.
+   * @param aPMode
+   *        The PMode to be validated. May not be <code>null</code>.
+   * @param aErrorList
+   *        The error list to be filled. May not be <code>null</code>.
+   * @param eValidationMode
+   *        The validation mode to use. May not be <code>null</code>.
+   */
+  public void validatePMode (@Nonnull final IAS4Profile aProfile,
+                             @Nonnull final IAS4ProfileValidator aValidator,
+                             @Nonnull final IPMode aPMode,
+                             @Nonnull final ErrorList aErrorList,
+                             @Nonnull final EAS4ProfileValidationMode eValidationMode)
+  {
+    ValueEnforcer.notNull (aProfile, "Profile");
+    ValueEnforcer.notNull (aValidator, "Validator");
+    ValueEnforcer.notNull (aPMode, "PMode");
+    ValueEnforcer.notNull (aErrorList, "ErrorList");
+    ValueEnforcer.notNull (eValidationMode, "ValidationMode");
+
+    final Key aKey = new Key (aProfile, aPMode, eValidationMode);
+    ICommonsList <IError> aErrors = m_aRWLock.readLockedGet ( () -> m_aMap.get (aKey));
+    if (aErrors == null)
+    {
+      // Validate outside of the lock
+      final ErrorList aLocalErrors = new ErrorList ();
+      aValidator.validatePMode (aPMode, aLocalErrors, eValidationMode);
+      final ICommonsList <IError> aNewErrors = new CommonsArrayList <> (aLocalErrors);
+      m_aRWLock.writeLocked ( () -> m_aMap.put (aKey, aNewErrors));
+      aErrors = aNewErrors;
+    }
+    for (final IError aError : aErrors)
+      aErrorList.add (aError);
+  }
+
+  /**
+   * Remove all entries from the cache. This is automatically called if the AS4
+   * profile registry changes.
+   */
+  public void clearCache ()
+  {
+    m_aRWLock.writeLocked (m_aMap::clear);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("MaxSize", m_nMaxSize).append ("Size", m_aMap.size ()).getToString ();
+  }
+}
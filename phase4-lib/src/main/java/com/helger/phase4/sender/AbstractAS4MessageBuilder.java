@@ -28,8 +28,10 @@ import javax.annotation.concurrent.NotThreadSafe;
 import org.slf4j.Logger;
 
 import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.Nonempty;
 import com.helger.commons.annotation.OverrideOnDemand;
 import com.helger.commons.annotation.ReturnsMutableObject;
+import com.helger.commons.functional.IThrowingSupplier;
 import com.helger.commons.state.ESuccess;
 import com.helger.commons.string.StringHelper;
 import com.helger.commons.traits.IGenericImplTrait;
@@ -48,9 +50,12 @@ import com.helger.phase4.dump.IAS4OutgoingDumper;
 import com.helger.phase4.incoming.AS4IncomingProfileSelectorConstant;
 import com.helger.phase4.incoming.IAS4IncomingProfileSelector;
 import com.helger.phase4.logging.Phase4LoggerFactory;
+import com.helger.phase4.messaging.http.AS4HttpClientManagerPool;
+import com.helger.phase4.messaging.http.BasicHttpPoster;
 import com.helger.phase4.messaging.http.HttpRetrySettings;
 import com.helger.phase4.messaging.http.IHttpPoster;
 import com.helger.phase4.model.ESoapVersion;
+import com.helger.phase4.model.pmode.resolve.AS4DefaultPModeCache;
 import com.helger.phase4.model.pmode.resolve.AS4DefaultPModeResolver;
 import com.helger.phase4.model.pmode.resolve.IAS4PModeResolver;
 import com.helger.phase4.util.AS4ResourceHelper;
@@ -111,7 +116,7 @@ public abstract class AbstractAS4MessageBuilder <IMPLTYPE extends AbstractAS4Mes
     // Set default values
     try
     {
-      httpClientFactory (new HttpClientFactory ());
+      httpClientFactory (BasicHttpPoster.getSharedDefaultHttpClientFactory ());
       // By default set the same for sign and crypt
       cryptoFactory (AS4CryptoFactoryConfiguration.getDefaultInstanceOrNull ());
       soapVersion (ESoapVersion.SOAP_12);
@@ -166,7 +171,12 @@ public abstract class AbstractAS4MessageBuilder <IMPLTYPE extends AbstractAS4Mes
   /**
    * Set the HTTP client factory to be used. If the passed settings are
    * non-<code>null</code>, a new {@link HttpClientFactory} is created with
-   * them, else a <code>null</code>-{@link HttpClientFactory} is set.
+   * them, else a <code>null</code>-{@link HttpClientFactory} is set.<br>
+   * Note: the pooled HTTP connections are bound to the
+   * {@link HttpClientFactory} instance. To reuse connections between multiple
+   * messages, pass the same {@link HttpClientFactory} to
+   * {@link #httpClientFactory(HttpClientFactory)} or use
+   * {@link #sharedHttpClientFactory(String, IThrowingSupplier)} instead.
    *
    * @param aHttpClientSettings
    *        The new HTTP client settings to be used. May be <code>null</code>.
@@ -178,6 +188,33 @@ public abstract class AbstractAS4MessageBuilder <IMPLTYPE extends AbstractAS4Mes
     return httpClientFactory (aHttpClientSettings == null ? null : new HttpClientFactory (aHttpClientSettings));
   }
 
+  /**
+   * Use the {@link HttpClientFactory} that is shared process wide under the
+   * provided key, so that the pooled HTTP connections are reused by all
+   * builders using the same key. The settings supplier is only invoked for the
+   * first usage of the key - later settings for the same key are ignored.
+   *
+   * @param <EX>
+   *        The exception type that may be thrown by the supplier
+   * @param sKey
+   *        The sharing key. May neither be <code>null</code> nor empty.
+   * @param aSettingsSupplier
+   *        The supplier for the HTTP client settings. May not be
+   *        <code>null</code>.
+   * @return this for chaining
+   * @throws EX
+   *         If the settings supplier throws an exception
+   * @see AS4HttpClientManagerPool#getSharedHttpClientFactory(String,
+   *      IThrowingSupplier)
+   * @since 3.2.3
+   */
+  @Nonnull
+  public final <EX extends Exception> IMPLTYPE sharedHttpClientFactory (@Nonnull @Nonempty final String sKey,
+                                                                        @Nonnull final IThrowingSupplier <? extends HttpClientSettings, EX> aSettingsSupplier) throws EX
+  {
+    return httpClientFactory (AS4HttpClientManagerPool.getSharedHttpClientFactory (sKey, aSettingsSupplier));
+  }
+
   /**
    * Set the HTTP client factory to be used. By default a default instance of
    * {@link HttpClientFactory} is used (set in the constructor) and there is no
@@ -845,7 +882,7 @@ public abstract class AbstractAS4MessageBuilder <IMPLTYPE extends AbstractAS4Mes
     if (StringHelper.hasText (m_sAS4ProfileID))
     {
       if (m_aPModeResolver == null)
-        pmodeResolver (new AS4DefaultPModeResolver (m_sAS4ProfileID));
+        pmodeResolver (new AS4DefaultPModeResolver (m_sAS4ProfileID, AS4DefaultPModeCache.getDefaultInstance ()));
       if (m_aIncomingProfileSelector == null)
         incomingProfileSelector (new AS4IncomingProfileSelectorConstant (m_sAS4ProfileID));
     }
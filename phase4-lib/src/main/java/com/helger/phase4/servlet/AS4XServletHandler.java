@@ -44,6 +44,7 @@ import com.helger.phase4.incoming.crypto.AS4IncomingSecurityConfiguration;
 import com.helger.phase4.incoming.mgr.AS4ProfileSelector;
 import com.helger.phase4.logging.Phase4LoggerFactory;
 import com.helger.phase4.messaging.http.AS4HttpDebug;
+import com.helger.phase4.model.pmode.resolve.AS4DefaultPModeCache;
 import com.helger.phase4.model.pmode.resolve.AS4DefaultPModeResolver;
 import com.helger.phase4.util.Phase4Exception;
 import com.helger.servlet.response.UnifiedResponse;
@@ -214,7 +215,7 @@ public class AS4XServletHandler implements IXServletSimpleHandler
       final IAS4CryptoFactory aCF = AS4CryptoFactoryConfiguration.getDefaultInstanceOrNull ();
       if (aCF != null)
         aHandler.setCryptoFactory (aCF);
-      aHandler.setPModeResolver (new AS4DefaultPModeResolver (sAS4ProfileID));
+      aHandler.setPModeResolver (new AS4DefaultPModeResolver (sAS4ProfileID, AS4DefaultPModeCache.getDefaultInstance ()));
       aHandler.setIncomingProfileSelector (new AS4IncomingProfileSelectorConstant (sAS4ProfileID, true));
       aHandler.setIncomingAttachmentFactory (IAS4IncomingAttachmentFactory.DEFAULT_INSTANCE);
       aHandler.setIncomingSecurityConfiguration (AS4IncomingSecurityConfiguration.createDefaultInstance ());
@@ -41,6 +41,7 @@ import com.helger.commons.io.file.FileHelper;
 import com.helger.commons.io.file.FileIOError;
 import com.helger.commons.io.stream.StreamHelper;
 import com.helger.phase4.CAS4;
+import com.helger.phase4.attachment.AS4AttachmentBufferPolicy;
 import com.helger.phase4.logging.Phase4LoggerFactory;
 
 /**
@@ -93,10 +94,37 @@ public class AS4ResourceHelper implements Closeable
   private final ICommonsList <File> m_aTempFiles = new CommonsArrayList <> ();
   @GuardedBy ("m_aRWLock")
   private final ICommonsList <Closeable> m_aCloseables = new CommonsArrayList <> ();
+  private AS4AttachmentBufferPolicy m_aAttachmentBufferPolicy = AS4AttachmentBufferPolicy.getFromConfiguration ();
 
   public AS4ResourceHelper ()
   {}
 
+  /**
+   * @return The policy that defines how attachment contents managed by this
+   *         resource helper are buffered. Never <code>null</code>. Defaults to
+   *         the values from the configuration.
+   * @since 3.2.3
+   */
+  @Nonnull
+  public final AS4AttachmentBufferPolicy getAttachmentBufferPolicy ()
+  {
+    return m_aAttachmentBufferPolicy;
+  }
+
+  /**
+   * Set the policy that defines how attachment contents managed by this
+   * resource helper are buffered.
+   *
+   * @param aAttachmentBufferPolicy
+   *        The policy to use. May not be <code>null</code>.
+   * @since 3.2.3
+   */
+  public final void setAttachmentBufferPolicy (@Nonnull final AS4AttachmentBufferPolicy aAttachmentBufferPolicy)
+  {
+    ValueEnforcer.notNull (aAttachmentBufferPolicy, "AttachmentBufferPolicy");
+    m_aAttachmentBufferPolicy = aAttachmentBufferPolicy;
+  }
+
   /**
    * @return A new temporary {@link File} that will be deleted when {@link #close()} is called on
    *         this instance.
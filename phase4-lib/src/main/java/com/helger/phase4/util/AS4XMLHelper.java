@@ -16,9 +16,12 @@
  */
 package com.helger.phase4.util;
 
+import java.io.OutputStream;
 import java.util.Locale;
 
 import javax.annotation.Nonnull;
+import javax.annotation.WillNotClose;
+import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
@@ -62,16 +65,21 @@ public final class AS4XMLHelper
     return XMLWriter.getNodeAsString (aNode, XWS);
   }
 
+  @Nonnull
+  private static Transformer _createTransformer () throws TransformerException
+  {
+    final TransformerFactory aFactory = XMLTransformerFactory.createTransformerFactory (new LoggingTransformErrorListener (Locale.ROOT),
+                                                                                        null);
+    XMLTransformerFactory.makeTransformerFactorySecure (aFactory, ArrayHelper.EMPTY_STRING_ARRAY);
+    return aFactory.newTransformer ();
+  }
+
   @Nonnull
   private static String _serializeRT (@Nonnull final Node aNode)
   {
     try
     {
-      final TransformerFactory aFactory = XMLTransformerFactory.createTransformerFactory (new LoggingTransformErrorListener (Locale.ROOT),
-                                                                                          null);
-      XMLTransformerFactory.makeTransformerFactorySecure (aFactory, ArrayHelper.EMPTY_STRING_ARRAY);
-      final Transformer aTransformer = aFactory.newTransformer ();
-
+      final Transformer aTransformer = _createTransformer ();
       try (final NonBlockingStringWriter aSW = new NonBlockingStringWriter ())
       {
         aTransformer.transform (new DOMSource (aNode), new StreamResult (aSW));
@@ -93,4 +101,33 @@ public final class AS4XMLHelper
       return _serializeRT (aNode);
     return _serializePh (aNode);
   }
+
+  /**
+   * Serialize the provided node directly to the provided output stream, using
+   * the charset of {@link #XWS}. The created bytes are identical to the bytes
+   * of {@link #serializeXML(Node)} encoded with that charset, but no
+   * intermediate String is created.
+   *
+   * @param aNode
+   *        The node to be serialized. May not be <code>null</code>.
+   * @param aOS
+   *        The output stream to write to. May not be <code>null</code>. The
+   *        stream is not closed.
+   * @since 3.2.3
+   */
+  public static void serializeXML (@Nonnull final Node aNode, @Nonnull @WillNotClose final OutputStream aOS)
+  {
+    ValueEnforcer.notNull (aNode, "Node");
+    ValueEnforcer.notNull (aOS, "OutputStream");
+    try
+    {
+      final Transformer aTransformer = _createTransformer ();
+      aTransformer.setOutputProperty (OutputKeys.ENCODING, XWS.getCharset ().name ());
+      aTransformer.transform (new DOMSource (aNode), new StreamResult (aOS));
+    }
+    catch (final TransformerException ex)
+    {
+      throw new IllegalStateException ("Failed to serialize XML", ex);
+    }
+  }
 }
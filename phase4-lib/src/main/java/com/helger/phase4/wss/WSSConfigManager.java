@@ -22,6 +22,7 @@ import org.apache.wss4j.dom.engine.WSSConfig;
 import org.slf4j.Logger;
 
 import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.annotation.ReturnsMutableObject;
 import com.helger.commons.annotation.UsedViaReflection;
 import com.helger.commons.lang.priviledged.IPrivilegedAction;
 import com.helger.phase4.logging.Phase4LoggerFactory;
@@ -38,6 +39,9 @@ public class WSSConfigManager extends AbstractGlobalSingleton
 {
   private static final Logger LOGGER = Phase4LoggerFactory.getLogger (WSSConfigManager.class);
 
+  // One WSSConfig per thread, so that it can be reused without locking
+  private static final ThreadLocal <WSSConfig> THREAD_CONFINED_WSSCONFIG = ThreadLocal.withInitial (WSSConfigManager::createStaticWSSConfig);
+
   @Deprecated (forRemoval = false)
   @UsedViaReflection
   public WSSConfigManager ()
@@ -125,4 +129,20 @@ public class WSSConfigManager extends AbstractGlobalSingleton
   {
     return createStaticWSSConfig ();
   }
+
+  /**
+   * Get the {@link WSSConfig} that is bound to the current thread. It is
+   * created upon the first call on a thread and reused afterwards, so it must
+   * not be modified by the caller and must not be passed to other threads.
+   *
+   * @return The {@link WSSConfig} of the current thread. Never
+   *         <code>null</code>.
+   * @since 3.2.3
+   */
+  @Nonnull
+  @ReturnsMutableObject
+  public static WSSConfig getThreadConfinedWSSConfig ()
+  {
+    return THREAD_CONFINED_WSSCONFIG.get ();
+  }
 }
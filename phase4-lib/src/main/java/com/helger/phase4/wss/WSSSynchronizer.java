@@ -21,6 +21,7 @@ import java.util.concurrent.locks.ReentrantLock;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 
 import org.apache.wss4j.dom.engine.WSSConfig;
@@ -32,6 +33,13 @@ import com.helger.phase4.config.AS4Configuration;
 /**
  * A helper class to run all WSS stuff in a lock. {@link WSSConfig#init()} and
  * {@link WSSConfig#cleanUp()} is called for every invocation.<br>
+ * Since 3.2.3 there is an alternative mode, that is enabled via
+ * {@link AS4Configuration#isWSS4JPooledSecurity()}: instead of serializing all
+ * invocations, {@link WSSConfig#init()} is only called by the first concurrent
+ * invocation and {@link WSSConfig#cleanUp()} is only called by the last
+ * concurrent invocation. So the security providers are still only installed
+ * while phase4 performs WSS actions, but the actions themselves run in
+ * parallel.<br>
  * Note: this class may only be invoked if
  * {@link AS4Configuration#isWSS4JSynchronizedSecurity()} returns
  * <code>true</code>.
@@ -43,6 +51,10 @@ import com.helger.phase4.config.AS4Configuration;
 public final class WSSSynchronizer
 {
   private static final Lock LOCK = new ReentrantLock ();
+  // Only guards the reference counter and not the WSS action
+  private static final Lock RC_LOCK = new ReentrantLock ();
+  @GuardedBy ("RC_LOCK")
+  private static int s_nActiveCalls = 0;
 
   private WSSSynchronizer ()
   {}
@@ -65,8 +77,41 @@ public final class WSSSynchronizer
     });
   }
 
+  /**
+   * @return <code>true</code> if {@link #call(IThrowingSupplier)} uses the
+   *         reference counting, <code>false</code> if it uses the global lock.
+   * @since 3.2.3
+   */
+  public static boolean isPooled ()
+  {
+    return AS4Configuration.isWSS4JPooledSecurity ();
+  }
+
   @Nullable
   public static <T, EX extends Exception> T call (@Nonnull final IThrowingSupplier <T, EX> aSupplier) throws EX
+  {
+    if (isPooled ())
+      return callWithReferenceCounting (aSupplier);
+    return callWithGlobalLock (aSupplier);
+  }
+
+  /**
+   * Run the provided supplier in the global lock, and call
+   * {@link WSSConfig#init()} and {@link WSSConfig#cleanUp()} around it.
+   *
+   * @param <T>
+   *        return type
+   * @param <EX>
+   *        exception type
+   * @param aSupplier
+   *        The supplier to be invoked. May not be <code>null</code>.
+   * @return The return value of the supplier. May be <code>null</code>.
+   * @throws EX
+   *         If the supplier throws an exception
+   * @since 3.2.3
+   */
+  @Nullable
+  public static <T, EX extends Exception> T callWithGlobalLock (@Nonnull final IThrowingSupplier <T, EX> aSupplier) throws EX
   {
     ValueEnforcer.notNull (aSupplier, "Supplier");
 
@@ -93,4 +138,60 @@ public final class WSSSynchronizer
       LOCK.unlock ();
     }
   }
+
+  /**
+   * Run the provided supplier without a lock. {@link WSSConfig#init()} is only
+   * called if no other invocation is active, and {@link WSSConfig#cleanUp()} is
+   * only called if this is the last active invocation.
+   *
+   * @param <T>
+   *        return type
+   * @param <EX>
+   *        exception type
+   * @param aSupplier
+   *        The supplier to be invoked. May not be <code>null</code>.
+   * @return The return value of the supplier. May be <code>null</code>.
+   * @throws EX
+   *         If the supplier throws an exception
+   * @since 3.2.3
+   */
+  @Nullable
+  public static <T, EX extends Exception> T callWithReferenceCounting (@Nonnull final IThrowingSupplier <T, EX> aSupplier) throws EX
+  {
+    ValueEnforcer.notNull (aSupplier, "Supplier");
+
+    RC_LOCK.lock ();
+    try
+    {
+      // Register for the first invocation only
+      if (s_nActiveCalls == 0)
+        WSSConfig.init ();
+      s_nActiveCalls++;
+    }
+    finally
+    {
+      RC_LOCK.unlock ();
+    }
+
+    try
+    {
+      // Perform
+      return aSupplier.get ();
+    }
+    finally
+    {
+      RC_LOCK.lock ();
+      try
+      {
+        // Unregister with the last invocation only
+        s_nActiveCalls--;
+        if (s_nActiveCalls == 0)
+          WSSConfig.cleanUp ();
+      }
+      finally
+      {
+        RC_LOCK.unlock ();
+      }
+    }
+  }
 }
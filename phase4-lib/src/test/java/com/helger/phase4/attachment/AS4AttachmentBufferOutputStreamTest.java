@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.attachment;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Test;
+
+import com.helger.commons.CGlobal;
+import com.helger.commons.io.IHasInputStream;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.phase4.util.AS4ResourceHelper;
+
+/**
+ * Test class for class {@link AS4AttachmentBufferOutputStream}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4AttachmentBufferOutputStreamTest
+{
+  @Nonnull
+  private static byte [] _createPayload (final int nSize)
+  {
+    final byte [] ret = new byte [nSize];
+    for (int i = 0; i < nSize; ++i)
+      ret[i] = (byte) (i % 251);
+    return ret;
+  }
+
+  @Nonnull
+  private static AS4AttachmentBufferOutputStream _buffer (@Nonnull final AS4ResourceHelper aResHelper,
+                                                          @Nonnull final AS4AttachmentBufferPolicy aPolicy,
+                                                          @Nonnull final byte [] aPayload) throws IOException
+  {
+    final AS4AttachmentBufferOutputStream ret = new AS4AttachmentBufferOutputStream (aResHelper, aPolicy);
+    // Write in pieces to cross the tier boundaries
+    final int nPieceSize = 10_000;
+    for (int nOfs = 0; nOfs < aPayload.length; nOfs += nPieceSize)
+      ret.write (aPayload, nOfs, Math.min (nPieceSize, aPayload.length - nOfs));
+    ret.close ();
+    return ret;
+  }
+
+  private static void _assertContent (@Nonnull final byte [] aExpected, @Nonnull final IHasInputStream aISP)
+  {
+    // Must be readable multiple times
+    assertTrue (aISP.isReadMultiple ());
+    assertArrayEquals (aExpected, StreamHelper.getAllBytes (aISP.getInputStream ()));
+    assertArrayEquals (aExpected, StreamHelper.getAllBytes (aISP.getInputStream ()));
+  }
+
+  @Test
+  public void testTiers () throws IOException
+  {
+    final AS4AttachmentBufferPolicy aPolicy = new AS4AttachmentBufferPolicy (64 * CGlobal.BYTES_PER_KILOBYTE,
+                                                                             CGlobal.BYTES_PER_MEGABYTE);
+    try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
+    {
+      // Heap
+      byte [] aPayload = _createPayload (50_000);
+      AS4AttachmentBufferOutputStream aOS = _buffer (aResHelper, aPolicy, aPayload);
+      assertEquals (EAS4AttachmentBufferTier.HEAP, aOS.getTier ());
+      assertEquals (aPayload.length, aOS.getSize ());
+      _assertContent (aPayload, aOS.getAsInputStreamProvider ());
+
+      // Off-heap
+      aPayload = _createPayload (500_000);
+      aOS = _buffer (aResHelper, aPolicy, aPayload);
+      assertEquals (EAS4AttachmentBufferTier.OFF_HEAP, aOS.getTier ());
+      _assertContent (aPayload, aOS.getAsInputStreamProvider ());
+      assertTrue (AS4DirectByteBufferPool.getInUseBytes () >= aPayload.length);
+
+      // File
+      aPayload = _createPayload (2_000_000);
+      aOS = _buffer (aResHelper, aPolicy, aPayload);
+      assertEquals (EAS4AttachmentBufferTier.FILE, aOS.getTier ());
+      _assertContent (aPayload, aOS.getAsInputStreamProvider ());
+      assertEquals (1, aResHelper.getAllTempFiles ().size ());
+    }
+    // All chunks were given back
+    assertEquals (0, AS4DirectByteBufferPool.getInUseBytes ());
+  }
+
+  @Test
+  public void testOffHeapDisabled () throws IOException
+  {
+    final AS4AttachmentBufferPolicy aPolicy = new AS4AttachmentBufferPolicy (64 * CGlobal.BYTES_PER_KILOBYTE, 0);
+    try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
+    {
+      final byte [] aPayload = _createPayload (500_000);
+      final AS4AttachmentBufferOutputStream aOS = _buffer (aResHelper, aPolicy, aPayload);
+      assertEquals (EAS4AttachmentBufferTier.FILE, aOS.getTier ());
+      _assertContent (aPayload, aOS.getAsInputStreamProvider ());
+    }
+  }
+
+  @Test
+  public void testReleaseWhileReading () throws IOException
+  {
+    final AS4AttachmentBufferPolicy aPolicy = new AS4AttachmentBufferPolicy (64 * CGlobal.BYTES_PER_KILOBYTE,
+                                                                             CGlobal.BYTES_PER_MEGABYTE);
+    try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
+    {
+      final byte [] aPayload = _createPayload (500_000);
+
+      // All streams are finished - the chunks are pooled again
+      AS4AttachmentBufferOutputStream aOS = _buffer (aResHelper, aPolicy, aPayload);
+      assertEquals (EAS4AttachmentBufferTier.OFF_HEAP, aOS.getTier ());
+      IHasInputStream aISP = aOS.getAsInputStreamProvider ();
+      _assertContent (aPayload, aISP);
+      long nAllocated = AS4DirectByteBufferPool.getAllocatedBytes ();
+      ((Closeable) aISP).close ();
+      assertEquals (nAllocated, AS4DirectByteBufferPool.getAllocatedBytes ());
+
+      // A stream is still open - the chunks must never be reused
+      aOS = _buffer (aResHelper, aPolicy, aPayload);
+      aISP = aOS.getAsInputStreamProvider ();
+      try (final InputStream aIS = aISP.getInputStream ())
+      {
+        assertEquals (aPayload[0], (byte) aIS.read ());
+        nAllocated = AS4DirectByteBufferPool.getAllocatedBytes ();
+        ((Closeable) aISP).close ();
+        assertTrue (AS4DirectByteBufferPool.getAllocatedBytes () < nAllocated);
+        aIS.read ();
+        fail ();
+      }
+      catch (final IOException ex)
+      {
+        // expected
+      }
+    }
+    assertEquals (0, AS4DirectByteBufferPool.getInUseBytes ());
+  }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.attachment;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.security.auth.callback.Callback;
+
+import org.apache.wss4j.common.ext.Attachment;
+import org.apache.wss4j.common.ext.AttachmentResultCallback;
+import org.junit.Test;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.concurrent.ThreadHelper;
+import com.helger.commons.io.stream.HasInputStream;
+import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.commons.mime.CMimeType;
+import com.helger.phase4.util.AS4ResourceHelper;
+
+/**
+ * Test class for class {@link AS4AttachmentCryptoExecutor}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4AttachmentCryptoExecutorTest
+{
+  private static byte [] _getPayload (final int nIndex)
+  {
+    final byte [] ret = new byte [(nIndex + 1) * 10_000];
+    for (int i = 0; i < ret.length; ++i)
+      ret[i] = (byte) (i + nIndex);
+    return ret;
+  }
+
+  @Test
+  public void testBufferAll () throws Exception
+  {
+    final int nOldParallelism = AS4AttachmentCryptoExecutor.getParallelism ();
+    final int nOldMinCount = AS4AttachmentCryptoExecutor.getMinAttachmentCount ();
+    AS4AttachmentCryptoExecutor.setParallelism (4);
+    AS4AttachmentCryptoExecutor.setMinAttachmentCount (2);
+    try
+    {
+      assertFalse (AS4AttachmentCryptoExecutor.isParallelProcessing (1));
+      assertTrue (AS4AttachmentCryptoExecutor.isParallelProcessing (2));
+
+      for (final int nCount : new int [] { 1, 20 })
+        try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
+        {
+          final ICommonsList <WSS4JAttachment> aAttachments = new CommonsArrayList <> ();
+          for (int i = 0; i < nCount; ++i)
+          {
+            final byte [] aPayload = _getPayload (i);
+            final WSS4JAttachment aAttachment = new WSS4JAttachment (aResHelper,
+                                                                     CMimeType.APPLICATION_OCTET_STREAM.getAsString ());
+            aAttachment.setId ("id" + i);
+            aAttachment.setSourceStreamProvider (HasInputStream.once ( () -> new NonBlockingByteArrayInputStream (aPayload)));
+            aAttachments.add (aAttachment);
+          }
+
+          AS4AttachmentCryptoExecutor.bufferAll (aAttachments, aResHelper);
+
+          assertEquals (nCount, aAttachments.size ());
+          for (int i = 0; i < nCount; ++i)
+          {
+            final WSS4JAttachment aAttachment = aAttachments.get (i);
+            assertEquals ("id" + i, aAttachment.getId ());
+            assertTrue (aAttachment.isRepeatable ());
+            // Can be read multiple times
+            assertArrayEquals (_getPayload (i), StreamHelper.getAllBytes (aAttachment.getSourceStream ()));
+            assertArrayEquals (_getPayload (i), StreamHelper.getAllBytes (aAttachment.getSourceStream ()));
+          }
+        }
+    }
+    finally
+    {
+      AS4AttachmentCryptoExecutor.setParallelism (nOldParallelism);
+      AS4AttachmentCryptoExecutor.setMinAttachmentCount (nOldMinCount);
+      AS4AttachmentCryptoExecutor.shutdown ();
+    }
+  }
+
+  @Test
+  public void testBufferAllFailureWaitsForRunningTasks () throws Exception
+  {
+    final int nOldParallelism = AS4AttachmentCryptoExecutor.getParallelism ();
+    final int nOldMinCount = AS4AttachmentCryptoExecutor.getMinAttachmentCount ();
+    AS4AttachmentCryptoExecutor.setParallelism (4);
+    AS4AttachmentCryptoExecutor.setMinAttachmentCount (2);
+    try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
+    {
+      final int nCount = 10;
+      final AtomicInteger aClosed = new AtomicInteger (0);
+      final ICommonsList <WSS4JAttachment> aAttachments = new CommonsArrayList <> ();
+      for (int i = 0; i < nCount; ++i)
+      {
+        final boolean bFail = i == 0;
+        final byte [] aPayload = _getPayload (i);
+        final WSS4JAttachment aAttachment = new WSS4JAttachment (aResHelper,
+                                                                 CMimeType.APPLICATION_OCTET_STREAM.getAsString ());
+        aAttachment.setId ("id" + i);
+        aAttachment.setSourceStreamProvider (HasInputStream.once ( () -> new InputStream ()
+        {
+          private final InputStream m_aIS = new NonBlockingByteArrayInputStream (aPayload);
+
+          @Override
+          public int read () throws IOException
+          {
+            return m_aIS.read ();
+          }
+
+          @Override
+          public int read (final byte [] aBuf, final int nOfs, final int nLen) throws IOException
+          {
+            if (bFail)
+              throw new IOException ("Failed on purpose");
+            // Slow reader
+            ThreadHelper.sleep (20);
+            return m_aIS.read (aBuf, nOfs, nLen);
+          }
+
+          @Override
+          public void close ()
+          {
+            aClosed.incrementAndGet ();
+          }
+        }));
+        aAttachments.add (aAttachment);
+      }
+
+      try
+      {
+        AS4AttachmentCryptoExecutor.bufferAll (aAttachments, aResHelper);
+        fail ();
+      }
+      catch (final IOException ex)
+      {
+        assertEquals ("Failed on purpose", ex.getMessage ());
+      }
+
+      // All tasks are done - either completed, or skipped
+      assertEquals (nCount, aClosed.get ());
+    }
+    finally
+    {
+      AS4AttachmentCryptoExecutor.setParallelism (nOldParallelism);
+      AS4AttachmentCryptoExecutor.setMinAttachmentCount (nOldMinCount);
+      AS4AttachmentCryptoExecutor.shutdown ();
+    }
+  }
+
+  @Test
+  public void testParallelResultAttachments () throws Exception
+  {
+    final int nOldParallelism = AS4AttachmentCryptoExecutor.getParallelism ();
+    final int nOldMinCount = AS4AttachmentCryptoExecutor.getMinAttachmentCount ();
+    AS4AttachmentCryptoExecutor.setParallelism (4);
+    AS4AttachmentCryptoExecutor.setMinAttachmentCount (2);
+    try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
+    {
+      final ICommonsList <WSS4JAttachment> aSrcAttachments = new CommonsArrayList <> ();
+      for (int i = 0; i < 5; ++i)
+        aSrcAttachments.add (WSS4JAttachment.createOutgoingFileAttachment ("src".getBytes (StandardCharsets.ISO_8859_1),
+                                                                          "id" + i,
+                                                                          null,
+                                                                          CMimeType.TEXT_PLAIN,
+                                                                          null,
+                                                                          null,
+                                                                          aResHelper));
+      final WSS4JAttachmentCallbackHandler aHandler = new WSS4JAttachmentCallbackHandler (aSrcAttachments, aResHelper);
+      aHandler.setBufferResultAttachments (true);
+
+      // Simulate the result callbacks in reverse order
+      for (int i = 4; i >= 0; --i)
+      {
+        final Attachment aResult = new Attachment ();
+        aResult.setId ("id" + i);
+        aResult.setMimeType (CMimeType.APPLICATION_OCTET_STREAM.getAsString ());
+        aResult.setSourceStream (new NonBlockingByteArrayInputStream (_getPayload (i)));
+        final AttachmentResultCallback aCallback = new AttachmentResultCallback ();
+        aCallback.setAttachmentId ("id" + i);
+        aCallback.setAttachment (aResult);
+        aHandler.handle (new Callback [] { aCallback });
+      }
+      aHandler.waitForBufferedResultAttachments ();
+
+      // The order of the source attachments is retained
+      final ICommonsList <WSS4JAttachment> aResults = aHandler.getAllResponseAttachments ();
+      assertEquals (5, aResults.size ());
+      for (int i = 0; i < 5; ++i)
+      {
+        final WSS4JAttachment aAttachment = aResults.get (i);
+        assertEquals ("id" + i, aAttachment.getId ());
+        assertTrue (aAttachment.isRepeatable ());
+        assertArrayEquals (_getPayload (i), StreamHelper.getAllBytes (aAttachment.getSourceStream ()));
+        assertArrayEquals (_getPayload (i), StreamHelper.getAllBytes (aAttachment.getSourceStream ()));
+      }
+    }
+    finally
+    {
+      AS4AttachmentCryptoExecutor.setParallelism (nOldParallelism);
+      AS4AttachmentCryptoExecutor.setMinAttachmentCount (nOldMinCount);
+      AS4AttachmentCryptoExecutor.shutdown ();
+    }
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.attachment;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Test;
+
+import com.helger.commons.io.stream.HasInputStream;
+import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.phase4.util.AS4ResourceHelper;
+
+/**
+ * Test class for class {@link AS4CompressingStreamProvider}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4CompressingStreamProviderTest
+{
+  @Nonnull
+  private static byte [] _createPayload (final int nSize)
+  {
+    final byte [] ret = new byte [nSize];
+    for (int i = 0; i < nSize; ++i)
+      ret[i] = (byte) (i % 251);
+    return ret;
+  }
+
+  @Nonnull
+  private static byte [] _decompress (@Nonnull final InputStream aIS) throws IOException
+  {
+    return StreamHelper.getAllBytes (EAS4CompressionMode.GZIP.getDecompressStream (aIS));
+  }
+
+  @Test
+  public void testCompressOnce () throws IOException
+  {
+    final byte [] aPayload = _createPayload (300_000);
+    final AtomicInteger aSrcReads = new AtomicInteger (0);
+    try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
+    {
+      final AS4CompressingStreamProvider aISP = new AS4CompressingStreamProvider (HasInputStream.multiple ( () -> {
+        aSrcReads.incrementAndGet ();
+        return new NonBlockingByteArrayInputStream (aPayload);
+      }), EAS4CompressionMode.GZIP, aResHelper);
+      assertTrue (aISP.isReadMultiple ());
+      assertFalse (aISP.isBuffered ());
+
+      // First read compresses
+      final byte [] aCompressed = StreamHelper.getAllBytes (aISP.getInputStream ());
+      assertTrue (aCompressed.length < aPayload.length);
+      assertArrayEquals (aPayload, _decompress (new NonBlockingByteArrayInputStream (aCompressed)));
+      assertTrue (aISP.isBuffered ());
+
+      // Subsequent reads are served from the buffer
+      assertArrayEquals (aCompressed, StreamHelper.getAllBytes (aISP.getInputStream ()));
+      assertArrayEquals (aCompressed, StreamHelper.getAllBytes (aISP.getInputStream ()));
+      assertEquals (1, aSrcReads.get ());
+    }
+  }
+
+  @Test
+  public void testIncompleteFirstRead () throws IOException
+  {
+    final byte [] aPayload = _createPayload (300_000);
+    try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
+    {
+      final AS4CompressingStreamProvider aISP = new AS4CompressingStreamProvider (HasInputStream.multiple ( () -> new NonBlockingByteArrayInputStream (aPayload)),
+                                                                                  EAS4CompressionMode.GZIP,
+                                                                                  aResHelper);
+      // Read only a few bytes
+      try (final InputStream aIS = aISP.getInputStream ())
+      {
+        assertEquals (10, aIS.read (new byte [10]));
+      }
+      assertFalse (aISP.isBuffered ());
+
+      // Next read starts from scratch and buffers
+      assertArrayEquals (aPayload, _decompress (aISP.getInputStream ()));
+      assertTrue (aISP.isBuffered ());
+      assertArrayEquals (aPayload, _decompress (aISP.getInputStream ()));
+    }
+  }
+
+  @Test
+  public void testEmpty () throws IOException
+  {
+    try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
+    {
+      final AS4CompressingStreamProvider aISP = new AS4CompressingStreamProvider (HasInputStream.multiple ( () -> new NonBlockingByteArrayInputStream (new byte [0])),
+                                                                                  EAS4CompressionMode.GZIP,
+                                                                                  aResHelper);
+      assertEquals (0, _decompress (aISP.getInputStream ()).length);
+      assertTrue (aISP.isBuffered ());
+      assertEquals (0, _decompress (aISP.getInputStream ()).length);
+    }
+  }
+}
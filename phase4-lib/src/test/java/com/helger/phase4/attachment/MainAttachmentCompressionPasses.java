@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.attachment;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+
+import com.helger.commons.CGlobal;
+import com.helger.commons.io.IHasInputStream;
+import com.helger.commons.io.file.FileHelper;
+import com.helger.commons.io.stream.HasInputStream;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.commons.timing.StopWatch;
+import com.helger.phase4.logging.Phase4LoggerFactory;
+import com.helger.phase4.util.AS4ResourceHelper;
+
+/**
+ * Compares the number of bytes read from disk for a compressed outgoing
+ * attachment that is read twice (once for the signature digest and once for
+ * encryption): the previous approach compressed into a temporary file first,
+ * whereas {@link AS4CompressingStreamProvider} compresses while the content is
+ * read for the first time.
+ *
+ * @author Philip Helger
+ */
+public final class MainAttachmentCompressionPasses
+{
+  private static final Logger LOGGER = Phase4LoggerFactory.getLogger (MainAttachmentCompressionPasses.class);
+  private static final int PAYLOAD_MB = 100;
+
+  private static final class CountingInputStream extends FilterInputStream
+  {
+    private final AtomicLong m_aCounter;
+
+    CountingInputStream (@Nonnull final InputStream aIS, @Nonnull final AtomicLong aCounter)
+    {
+      super (aIS);
+      m_aCounter = aCounter;
+    }
+
+    @Override
+    public int read () throws IOException
+    {
+      final int ret = super.read ();
+      if (ret >= 0)
+        m_aCounter.incrementAndGet ();
+      return ret;
+    }
+
+    @Override
+    public int read (@Nonnull final byte [] aBuf, final int nOfs, final int nLen) throws IOException
+    {
+      final int ret = super.read (aBuf, nOfs, nLen);
+      if (ret > 0)
+        m_aCounter.addAndGet (ret);
+      return ret;
+    }
+  }
+
+  @Nonnull
+  private static IHasInputStream _countingFile (@Nonnull final File aFile, @Nonnull final AtomicLong aCounter)
+  {
+    return HasInputStream.multiple ( () -> new CountingInputStream (FileHelper.getBufferedInputStream (aFile),
+                                                                    aCounter));
+  }
+
+  private static void _digest (@Nonnull final InputStream aIS) throws IOException, NoSuchAlgorithmException
+  {
+    final MessageDigest aMD = MessageDigest.getInstance ("SHA-256");
+    try (final InputStream aRealIS = aIS)
+    {
+      final byte [] aBuffer = new byte [16 * CGlobal.BYTES_PER_KILOBYTE];
+      int nRead;
+      while ((nRead = aRealIS.read (aBuffer)) > 0)
+        aMD.update (aBuffer, 0, nRead);
+    }
+    aMD.digest ();
+  }
+
+  private static void _runLegacy (@Nonnull final File aSrcFile) throws Exception
+  {
+    final AtomicLong aReadBytes = new AtomicLong (0);
+    final StopWatch aSW = StopWatch.createdStarted ();
+    try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
+    {
+      // Compress to temporary file upfront
+      final File aTempFile = aResHelper.createTempFile ();
+      try (final OutputStream aOS = EAS4CompressionMode.GZIP.getCompressStream (FileHelper.getBufferedOutputStream (aTempFile)))
+      {
+        StreamHelper.copyInputStreamToOutputStream (_countingFile (aSrcFile, aReadBytes).getInputStream (), aOS);
+      }
+      final IHasInputStream aISP = _countingFile (aTempFile, aReadBytes);
+      // Sign
+      _digest (aISP.getInputStream ());
+      // Encrypt
+      _digest (aISP.getInputStream ());
+    }
+    aSW.stop ();
+    LOGGER.info ("Compress to temp file: " +
+                 aReadBytes.get () / CGlobal.BYTES_PER_MEGABYTE +
+                 " MB read from files in " +
+                 aSW.getMillis () +
+                 " ms");
+  }
+
+  private static void _runSinglePass (@Nonnull final File aSrcFile) throws Exception
+  {
+    final AtomicLong aReadBytes = new AtomicLong (0);
+    final StopWatch aSW = StopWatch.createdStarted ();
+    try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
+    {
+      final IHasInputStream aISP = new AS4CompressingStreamProvider (_countingFile (aSrcFile, aReadBytes),
+                                                                     EAS4CompressionMode.GZIP,
+                                                                     aResHelper);
+      // Sign - compresses and buffers
+      _digest (aISP.getInputStream ());
+      final int nTempFiles = aResHelper.getAllTempFiles ().size ();
+      // Encrypt - from the buffer
+      _digest (aISP.getInputStream ());
+      aSW.stop ();
+      LOGGER.info ("Compress on first read: " +
+                   aReadBytes.get () / CGlobal.BYTES_PER_MEGABYTE +
+                   " MB read from the source file (+ buffer in " +
+                   (nTempFiles > 0 ? "temporary file" : "memory") +
+                   ") in " +
+                   aSW.getMillis () +
+                   " ms");
+    }
+  }
+
+  public static void main (final String [] args) throws Exception
+  {
+    final File aSrcFile = File.createTempFile ("phase4-compression", ".bin");
+    try
+    {
+      // Half random, half repeating to have something to compress
+      final Random aRandom = new Random (4711);
+      final byte [] aChunk = new byte [CGlobal.BYTES_PER_MEGABYTE];
+      try (final OutputStream aOS = FileHelper.getBufferedOutputStream (aSrcFile))
+      {
+        for (int i = 0; i < PAYLOAD_MB; ++i)
+        {
+          aRandom.nextBytes (aChunk);
+          aOS.write (aChunk, 0, aChunk.length / 2);
+          aOS.write (new byte [aChunk.length / 2]);
+        }
+      }
+
+      // Warm up
+      _runLegacy (aSrcFile);
+      _runSinglePass (aSrcFile);
+
+      for (int i = 0; i < 3; ++i)
+      {
+        _runLegacy (aSrcFile);
+        _runSinglePass (aSrcFile);
+      }
+    }
+    finally
+    {
+      aSrcFile.delete ();
+    }
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.attachment;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import javax.security.auth.callback.Callback;
+
+import org.apache.wss4j.common.ext.Attachment;
+import org.apache.wss4j.common.ext.AttachmentResultCallback;
+import org.junit.Test;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.commons.mime.CMimeType;
+import com.helger.phase4.util.AS4ResourceHelper;
+
+/**
+ * Test class for class {@link WSS4JAttachmentCallbackHandler}.
+ *
+ * @author Philip Helger
+ */
+public final class WSS4JAttachmentCallbackHandlerTest
+{
+  @Test
+  public void testBufferResultAttachments () throws Exception
+  {
+    final byte [] aPayload = "Hello AS4".getBytes (StandardCharsets.UTF_8);
+    final byte [] aResult = "encrypted".getBytes (StandardCharsets.UTF_8);
+
+    for (final boolean bBuffer : new boolean [] { false, true })
+      try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
+      {
+        final WSS4JAttachment aSrc = WSS4JAttachment.createOutgoingFileAttachment (aPayload,
+                                                                                  "id1",
+                                                                                  null,
+                                                                                  CMimeType.TEXT_PLAIN,
+                                                                                  null,
+                                                                                  null,
+                                                                                  aResHelper);
+        final WSS4JAttachmentCallbackHandler aHandler = new WSS4JAttachmentCallbackHandler (new CommonsArrayList <> (aSrc),
+                                                                                            aResHelper);
+        aHandler.setBufferResultAttachments (bBuffer);
+
+        final Attachment aResultAttachment = new Attachment ();
+        aResultAttachment.setId ("id1");
+        aResultAttachment.setMimeType (CMimeType.APPLICATION_OCTET_STREAM.getAsString ());
+        aResultAttachment.setSourceStream (new NonBlockingByteArrayInputStream (aResult));
+        final AttachmentResultCallback aCallback = new AttachmentResultCallback ();
+        aCallback.setAttachmentId ("id1");
+        aCallback.setAttachment (aResultAttachment);
+        aHandler.handle (new Callback [] { aCallback });
+
+        final WSS4JAttachment aEffective = aHandler.responseAttachments ().get ("id1");
+        if (bBuffer)
+        {
+          assertTrue (aEffective.isRepeatable ());
+          // Can be read multiple times
+          assertArrayEquals (aResult, StreamHelper.getAllBytes (aEffective.getSourceStream ()));
+          assertArrayEquals (aResult, StreamHelper.getAllBytes (aEffective.getSourceStream ()));
+        }
+        else
+        {
+          assertFalse (aEffective.isRepeatable ());
+          assertArrayEquals (aResult, StreamHelper.getAllBytes (aEffective.getSourceStream ()));
+        }
+      }
+  }
+}
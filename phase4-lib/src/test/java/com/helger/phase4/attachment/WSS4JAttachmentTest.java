@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.attachment;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import org.junit.Test;
+
+import com.helger.commons.CGlobal;
+import com.helger.commons.http.CHttpHeader;
+import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.phase4.util.AS4ResourceHelper;
+
+import jakarta.mail.internet.InternetHeaders;
+
+/**
+ * Test class for class {@link WSS4JAttachment}.
+ *
+ * @author Philip Helger
+ */
+public final class WSS4JAttachmentTest
+{
+  @Test
+  public void testStreamingIncomingInMemory () throws Exception
+  {
+    final byte [] aPayload = "Hello AS4".getBytes (StandardCharsets.UTF_8);
+    final InternetHeaders aHeaders = new InternetHeaders ();
+    aHeaders.setHeader (CHttpHeader.CONTENT_TYPE, "text/plain");
+    aHeaders.setHeader (CHttpHeader.CONTENT_ID, "<id1>");
+    aHeaders.setHeader (CHttpHeader.CONTENT_TRANSFER_ENCODING, "base64");
+
+    try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
+    {
+      final WSS4JAttachment aAttachment = WSS4JAttachment.createIncomingFileAttachment (aHeaders,
+                                                                                        new NonBlockingByteArrayInputStream (Base64.getMimeEncoder ()
+                                                                                                                                   .encode (aPayload)),
+                                                                                        aResHelper);
+      assertEquals ("id1", aAttachment.getId ());
+      assertEquals ("text/plain", aAttachment.getMimeType ());
+      assertTrue (aResHelper.getAllTempFiles ().isEmpty ());
+      // Can be read multiple times
+      assertArrayEquals (aPayload, StreamHelper.getAllBytes (aAttachment.getSourceStream ()));
+      assertArrayEquals (aPayload, StreamHelper.getAllBytes (aAttachment.getSourceStream ()));
+    }
+  }
+
+  @Test
+  public void testStreamingIncomingTempFile () throws Exception
+  {
+    final byte [] aPayload = new byte [200 * CGlobal.BYTES_PER_KILOBYTE];
+    for (int i = 0; i < aPayload.length; ++i)
+      aPayload[i] = (byte) i;
+    final InternetHeaders aHeaders = new InternetHeaders ();
+    aHeaders.setHeader (CHttpHeader.CONTENT_TYPE, "application/octet-stream");
+    aHeaders.setHeader (CHttpHeader.CONTENT_ID, "<id2>");
+
+    try (final AS4ResourceHelper aResHelper = new AS4ResourceHelper ())
+    {
+      final WSS4JAttachment aAttachment = WSS4JAttachment.createIncomingFileAttachment (aHeaders,
+                                                                                        new NonBlockingByteArrayInputStream (aPayload),
+                                                                                        aResHelper);
+      assertEquals ("id2", aAttachment.getId ());
+      assertEquals (1, aResHelper.getAllTempFiles ().size ());
+      // Can be read multiple times
+      assertArrayEquals (aPayload, StreamHelper.getAllBytes (aAttachment.getSourceStream ()));
+      assertArrayEquals (aPayload, StreamHelper.getAllBytes (aAttachment.getSourceStream ()));
+    }
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.duplicate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.concurrent.ExecutorServiceHelper;
+import com.helger.commons.state.EContinue;
+
+/**
+ * Test class for class {@link AS4DuplicateManagerAppendLog}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4DuplicateManagerAppendLogTest
+{
+  @Test
+  public void testInMemory () throws Exception
+  {
+    try (final AS4DuplicateManagerAppendLog aMgr = new AS4DuplicateManagerAppendLog (null,
+                                                                                      Duration.ofMillis (10)))
+    {
+      assertTrue (aMgr.isEmpty ());
+      assertEquals (EContinue.CONTINUE, aMgr.registerAndCheck ("a", "profile", "pmode"));
+      assertEquals (EContinue.BREAK, aMgr.registerAndCheck ("a", "profile", "pmode"));
+      assertEquals (EContinue.CONTINUE, aMgr.registerAndCheck ("b", null, null));
+      // No message ID
+      assertEquals (EContinue.CONTINUE, aMgr.registerAndCheck (null, null, null));
+      assertEquals (2, aMgr.size ());
+      assertNotNull (aMgr.getItemOfMessageID ("a"));
+      assertNull (aMgr.getItemOfMessageID ("c"));
+
+      // Nothing to evict
+      assertTrue (aMgr.evictAllItemsBefore (aMgr.getItemOfMessageID ("a").getDateTime ()).isEmpty ());
+
+      // Evict all
+      final ICommonsList <String> aEvicted = aMgr.evictAllItemsBefore (OffsetDateTime.now ().plusMinutes (1));
+      assertEquals (2, aEvicted.size ());
+      assertTrue (aEvicted.contains ("a"));
+      assertTrue (aEvicted.contains ("b"));
+      assertTrue (aMgr.isEmpty ());
+      assertEquals (0, aMgr.getBucketCount ());
+
+      // Can be registered again
+      assertEquals (EContinue.CONTINUE, aMgr.registerAndCheck ("a", "profile", "pmode"));
+    }
+  }
+
+  @Test
+  public void testReplay () throws Exception
+  {
+    final File aFile = new File ("target/duplicate-test.log");
+    Files.deleteIfExists (aFile.toPath ());
+    try
+    {
+      try (final AS4DuplicateManagerAppendLog aMgr = new AS4DuplicateManagerAppendLog (aFile))
+      {
+        aMgr.registerAndCheck ("a", "profile", "pmode");
+        // Timestamps have millisecond precision
+        Thread.sleep (5);
+        aMgr.registerAndCheck ("b", null, null);
+        aMgr.registerAndCheck ("c", null, null);
+        assertEquals (1, aMgr.evictAllItemsBefore (aMgr.getItemOfMessageID ("b").getDateTime ()).size ());
+
+        // Registered, but not processed
+        aMgr.registerAndCheck ("d", null, null);
+        assertTrue (aMgr.removeMessageID ("d").isChanged ());
+        assertTrue (aMgr.removeMessageID ("d").isUnchanged ());
+      }
+
+      // Simulate an incomplete record
+      try (final FileOutputStream aFOS = new FileOutputStream (aFile, true))
+      {
+        aFOS.write ('R');
+        aFOS.write (1);
+      }
+
+      try (final AS4DuplicateManagerAppendLog aMgr = new AS4DuplicateManagerAppendLog (aFile))
+      {
+        assertEquals (2, aMgr.size ());
+        assertNull (aMgr.getItemOfMessageID ("a"));
+        assertNotNull (aMgr.getItemOfMessageID ("b"));
+        assertNull (aMgr.getItemOfMessageID ("d"));
+        assertEquals (EContinue.BREAK, aMgr.registerAndCheck ("c", null, null));
+
+        aMgr.clearCache ();
+        assertTrue (aMgr.isEmpty ());
+      }
+
+      try (final AS4DuplicateManagerAppendLog aMgr = new AS4DuplicateManagerAppendLog (aFile))
+      {
+        assertTrue (aMgr.isEmpty ());
+      }
+    }
+    finally
+    {
+      Files.deleteIfExists (aFile.toPath ());
+    }
+  }
+
+  @Test
+  public void testConcurrentRegistrationAndCompaction () throws Exception
+  {
+    final File aFile = new File ("target/duplicate-test-compaction.log");
+    Files.deleteIfExists (aFile.toPath ());
+    try
+    {
+      try (final AS4DuplicateManagerAppendLog aMgr = new AS4DuplicateManagerAppendLog (aFile))
+      {
+        final ExecutorService aES = Executors.newFixedThreadPool (4);
+        for (int t = 0; t < 4; ++t)
+        {
+          final int nThread = t;
+          aES.submit ( () -> {
+            for (int i = 0; i < 3_000; ++i)
+              aMgr.registerAndCheck ("old-" + nThread + "-" + i, null, null);
+          });
+        }
+        ExecutorServiceHelper.shutdownAndWaitUntilAllTasksAreFinished (aES);
+        assertEquals (12_000, aMgr.size ());
+        final long nLengthBefore = aFile.length ();
+
+        // Evicting everything triggers the compaction
+        assertEquals (12_000, aMgr.evictAllItemsBefore (OffsetDateTime.now ().plusMinutes (1)).size ());
+        assertTrue (aFile.length () < nLengthBefore);
+
+        // Persistence continues after the compaction
+        assertEquals (EContinue.CONTINUE, aMgr.registerAndCheck ("new", null, null));
+      }
+
+      try (final AS4DuplicateManagerAppendLog aMgr = new AS4DuplicateManagerAppendLog (aFile))
+      {
+        assertEquals (1, aMgr.size ());
+        assertNotNull (aMgr.getItemOfMessageID ("new"));
+      }
+    }
+    finally
+    {
+      Files.deleteIfExists (aFile.toPath ());
+    }
+  }
+}
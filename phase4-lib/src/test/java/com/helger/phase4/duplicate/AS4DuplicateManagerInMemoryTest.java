@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.duplicate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+
+import org.junit.Test;
+
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.state.EContinue;
+
+/**
+ * Test class for class {@link AS4DuplicateManagerInMemory}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4DuplicateManagerInMemoryTest
+{
+  @Test
+  public void testBucketEviction () throws Exception
+  {
+    final AS4DuplicateManagerInMemory aMgr = new AS4DuplicateManagerInMemory (Duration.ofMillis (10));
+    assertEquals (EContinue.CONTINUE, aMgr.registerAndCheck ("a", null, null));
+    assertEquals (EContinue.BREAK, aMgr.registerAndCheck ("a", null, null));
+    // Timestamps have millisecond precision
+    Thread.sleep (25);
+    assertEquals (EContinue.CONTINUE, aMgr.registerAndCheck ("b", null, null));
+    Thread.sleep (5);
+    assertEquals (EContinue.CONTINUE, aMgr.registerAndCheck ("c", null, null));
+    assertNotNull (aMgr.getItemOfMessageID ("b"));
+
+    // Evicts a complete bucket and one item of another bucket
+    ICommonsList <String> aEvicted = aMgr.evictAllItemsBefore (aMgr.getItemOfMessageID ("c").getDateTime ());
+    assertEquals (2, aEvicted.size ());
+    assertTrue (aEvicted.contains ("a"));
+    assertTrue (aEvicted.contains ("b"));
+    assertNull (aMgr.getItemOfMessageID ("a"));
+    assertEquals (1, aMgr.size ());
+
+    aEvicted = aMgr.evictAllItemsBefore (OffsetDateTime.now ().plusMinutes (1));
+    assertEquals (1, aEvicted.size ());
+    assertTrue (aMgr.isEmpty ());
+
+    // Can be registered again
+    assertEquals (EContinue.CONTINUE, aMgr.registerAndCheck ("a", null, null));
+
+    // Removed entries are no duplicates anymore
+    assertTrue (aMgr.removeMessageID ("a").isChanged ());
+    assertTrue (aMgr.removeMessageID ("a").isUnchanged ());
+    assertTrue (aMgr.isEmpty ());
+    assertEquals (EContinue.CONTINUE, aMgr.registerAndCheck ("a", null, null));
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.incoming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Test;
+
+import com.helger.commons.state.EContinue;
+import com.helger.phase4.duplicate.AS4DuplicateManagerInMemory;
+
+/**
+ * Test class for class {@link AS4IncomingAsyncExecutor}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4IncomingAsyncExecutorTest
+{
+  @Test
+  public void testBackPressure () throws Exception
+  {
+    final AS4IncomingAsyncExecutor aExecutor = new AS4IncomingAsyncExecutor (1, 1, false);
+    assertFalse (aExecutor.isVirtualThreads ());
+    try
+    {
+      final CountDownLatch aStarted = new CountDownLatch (1);
+      final CountDownLatch aRelease = new CountDownLatch (1);
+      final CompletableFuture <Void> aFuture1 = aExecutor.execute ("blocking", () -> {
+        aStarted.countDown ();
+        aRelease.await ();
+      });
+      aStarted.await ();
+
+      // Waits in the queue
+      final CompletableFuture <Void> aFuture2 = aExecutor.execute ("failing", () -> {
+        throw new IllegalStateException ("Expected");
+      });
+      assertEquals (1, aExecutor.getQueueDepth ());
+
+      // Queue is full
+      try
+      {
+        aExecutor.execute ("rejected", () -> {});
+        fail ();
+      }
+      catch (final RejectedExecutionException ex)
+      {
+        // expected
+      }
+      assertEquals (1, aExecutor.getRejectedCount ());
+
+      aRelease.countDown ();
+      aFuture1.get ();
+      // Completes normally even if the action failed
+      aFuture2.get ();
+      assertEquals (2, aExecutor.getSubmittedCount ());
+      assertEquals (1, aExecutor.getFailedCount ());
+      assertEquals (0, aExecutor.getQueueDepth ());
+    }
+    finally
+    {
+      aExecutor.shutdown ();
+    }
+  }
+
+  @Test
+  public void testRejectedMessageCanBeRetried () throws Exception
+  {
+    final AS4IncomingAsyncExecutor aExecutor = new AS4IncomingAsyncExecutor (1, 1, false);
+    final AS4DuplicateManagerInMemory aDuplicateMgr = new AS4DuplicateManagerInMemory ();
+    try
+    {
+      final CountDownLatch aStarted = new CountDownLatch (1);
+      final CountDownLatch aRelease = new CountDownLatch (1);
+      final CompletableFuture <Void> aFuture1 = aExecutor.execute ("blocking", () -> {
+        aStarted.countDown ();
+        aRelease.await ();
+      });
+      aStarted.await ();
+      final CompletableFuture <Void> aFuture2 = aExecutor.execute ("waiting", () -> {});
+
+      // Incoming message while the executor is full
+      assertEquals (EContinue.CONTINUE, aDuplicateMgr.registerAndCheck ("msg1", null, null));
+      try
+      {
+        aExecutor.executeIncomingMessage ("rejected", () -> {}, aDuplicateMgr, "msg1");
+        fail ();
+      }
+      catch (final RejectedExecutionException ex)
+      {
+        // expected
+      }
+      assertEquals (1, aExecutor.getRejectedCount ());
+      assertNull (aDuplicateMgr.getItemOfMessageID ("msg1"));
+
+      aRelease.countDown ();
+      aFuture1.get ();
+      aFuture2.get ();
+
+      // The retry of the sender is no duplicate and is accepted
+      assertEquals (EContinue.CONTINUE, aDuplicateMgr.registerAndCheck ("msg1", null, null));
+      final CountDownLatch aRetried = new CountDownLatch (1);
+      aExecutor.executeIncomingMessage ("retry", aRetried::countDown, aDuplicateMgr, "msg1").get ();
+      assertEquals (0, aRetried.getCount ());
+      assertNotNull (aDuplicateMgr.getItemOfMessageID ("msg1"));
+
+      // A real duplicate is still detected
+      assertEquals (EContinue.BREAK, aDuplicateMgr.registerAndCheck ("msg1", null, null));
+    }
+    finally
+    {
+      aExecutor.shutdown ();
+    }
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.messaging.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.junit.Test;
+
+import com.helger.httpclient.HttpClientFactory;
+import com.helger.httpclient.HttpClientSettings;
+
+/**
+ * Test class for class {@link AS4HttpClientManagerPool}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4HttpClientManagerPoolTest
+{
+  private static void _sendAndFail (final HttpClientFactory aHCF)
+  {
+    try
+    {
+      // Nobody is listening on that port
+      AS4HttpClientManagerPool.execute (aHCF, new HttpPost ("http://127.0.0.1:1/as4"), x -> null);
+      fail ();
+    }
+    catch (final IOException ex)
+    {
+      // expected
+    }
+  }
+
+  @Test
+  public void testSameKeySharesOneManager ()
+  {
+    final String sKey = AS4HttpClientManagerPoolTest.class.getName ();
+    final HttpClientFactory aHCF1 = AS4HttpClientManagerPool.getSharedHttpClientFactory (sKey, HttpClientSettings::new);
+    final HttpClientFactory aHCF2 = AS4HttpClientManagerPool.getSharedHttpClientFactory (sKey, () -> {
+      fail ("The settings of an existing key must not be requested");
+      return null;
+    });
+    assertSame (aHCF1, aHCF2);
+    assertNotSame (aHCF1, AS4HttpClientManagerPool.getSharedHttpClientFactory (sKey + "-other", HttpClientSettings::new));
+
+    final AS4HttpClientManagerPoolStatistics aBefore = AS4HttpClientManagerPool.getStatistics ();
+    _sendAndFail (aHCF1);
+    _sendAndFail (aHCF2);
+    final AS4HttpClientManagerPoolStatistics aAfter = AS4HttpClientManagerPool.getStatistics ();
+
+    // One manager was created and reused by the second send
+    assertEquals (aBefore.getCreatedClients () + 1, aAfter.getCreatedClients ());
+    assertEquals (aBefore.getTotalRequests () + 2, aAfter.getTotalRequests ());
+    assertEquals (aBefore.getReusedRequests () + 1, aAfter.getReusedRequests ());
+    assertEquals (aBefore.getFailedRequests () + 2, aAfter.getFailedRequests ());
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.messaging.http;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test class for class {@link AS4HttpRetryScheduler}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4HttpRetrySchedulerTest
+{
+  @Before
+  public void before ()
+  {
+    AS4HttpRetryScheduler.shutdown ();
+    AS4HttpRetryScheduler.restart ();
+    AS4HttpRetryScheduler.setThreadCount (1);
+    AS4HttpRetryScheduler.setMaxQueuedTasks (1);
+  }
+
+  @After
+  public void after ()
+  {
+    AS4HttpRetryScheduler.shutdown ();
+    AS4HttpRetryScheduler.restart ();
+    AS4HttpRetryScheduler.setThreadCount (AS4HttpRetryScheduler.DEFAULT_THREAD_COUNT);
+    AS4HttpRetryScheduler.setMaxQueuedTasks (AS4HttpRetryScheduler.DEFAULT_MAX_QUEUED_TASKS);
+  }
+
+  @Test
+  public void testRetryRunsOnWorker () throws Exception
+  {
+    final CompletableFuture <String> aThreadName = new CompletableFuture <> ();
+    assertTrue (AS4HttpRetryScheduler.scheduleRetry ( () -> aThreadName.complete (Thread.currentThread ().getName ()),
+                                                      () -> aThreadName.complete (null),
+                                                      Duration.ofMillis (10)));
+    assertTrue (aThreadName.get (5, TimeUnit.SECONDS).startsWith ("phase4-http-send-"));
+  }
+
+  @Test
+  public void testInitialSubmissionsAreBounded () throws Exception
+  {
+    final CountDownLatch aStarted = new CountDownLatch (1);
+    final CountDownLatch aBlock = new CountDownLatch (1);
+    // Occupies the only worker
+    AS4HttpRetryScheduler.execute ( () -> {
+      aStarted.countDown ();
+      try
+      {
+        aBlock.await ();
+      }
+      catch (final InterruptedException ex)
+      {
+        Thread.currentThread ().interrupt ();
+      }
+    });
+    assertTrue (aStarted.await (5, TimeUnit.SECONDS));
+    // Fills the queue
+    AS4HttpRetryScheduler.execute ( () -> {});
+    try
+    {
+      AS4HttpRetryScheduler.execute ( () -> {});
+      fail ();
+    }
+    catch (final RejectedExecutionException ex)
+    {
+      // expected
+    }
+    finally
+    {
+      aBlock.countDown ();
+    }
+  }
+
+  @Test
+  public void testRejectedAfterShutdown ()
+  {
+    AS4HttpRetryScheduler.execute ( () -> {});
+    AS4HttpRetryScheduler.shutdown ();
+    assertTrue (AS4HttpRetryScheduler.isShutdown ());
+    try
+    {
+      AS4HttpRetryScheduler.execute ( () -> {});
+      fail ();
+    }
+    catch (final RejectedExecutionException ex)
+    {
+      // expected
+    }
+    try
+    {
+      AS4HttpRetryScheduler.scheduleRetry ( () -> {}, () -> {}, Duration.ofMillis (10));
+      fail ();
+    }
+    catch (final RejectedExecutionException ex)
+    {
+      // expected
+    }
+
+    AS4HttpRetryScheduler.restart ();
+    assertFalse (AS4HttpRetryScheduler.isShutdown ());
+    AS4HttpRetryScheduler.execute ( () -> {});
+  }
+}
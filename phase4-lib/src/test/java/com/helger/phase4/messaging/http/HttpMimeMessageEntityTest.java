@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.messaging.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
+import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
+import com.helger.commons.mime.CMimeType;
+import com.helger.phase4.messaging.mime.AS4MimeMessage;
+import com.helger.phase4.messaging.mime.AS4MimeMessageHelper;
+import com.helger.phase4.model.ESoapVersion;
+import com.helger.xml.XMLFactory;
+
+import jakarta.mail.internet.MimeBodyPart;
+import jakarta.mail.internet.MimeMultipart;
+
+/**
+ * Test class for class {@link HttpMimeMessageEntity}.
+ *
+ * @author Philip Helger
+ */
+public final class HttpMimeMessageEntityTest
+{
+  @Test
+  public void testRepeatable () throws Exception
+  {
+    final Document aDoc = XMLFactory.newDocument ();
+    aDoc.appendChild (aDoc.createElementNS ("urn:test", "root"));
+    final AS4MimeMessage aMsg = AS4MimeMessageHelper.generateMimeMessage (ESoapVersion.SOAP_12, aDoc, null);
+    AS4MimeMessageHelper.getAndRemoveAllHeaders (aMsg);
+
+    final HttpMimeMessageEntity aEntity = HttpMimeMessageEntity.create (aMsg);
+    assertTrue (aEntity.isRepeatable ());
+    assertFalse (aEntity.isStreaming ());
+    // Unknown length - chunked encoding
+    assertEquals (-1, aEntity.getContentLength ());
+
+    // Can be written multiple times
+    final byte [] aFirst;
+    try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ())
+    {
+      aEntity.writeTo (aBAOS);
+      aFirst = aBAOS.toByteArray ();
+    }
+    try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ())
+    {
+      aEntity.writeTo (aBAOS);
+      assertArrayEquals (aFirst, aBAOS.toByteArray ());
+    }
+  }
+
+  @Test
+  public void testNonRepeatable () throws Exception
+  {
+    final MimeMultipart aMultipart = new MimeMultipart ();
+    final MimeBodyPart aPart = new MimeBodyPart ();
+    aPart.setContent ("abc", CMimeType.TEXT_PLAIN.getAsString ());
+    aMultipart.addBodyPart (aPart);
+    final AS4MimeMessage aSrcMsg = new AS4MimeMessage (null, true);
+    aSrcMsg.setContent (aMultipart);
+    aSrcMsg.saveChanges ();
+
+    final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ();
+    aSrcMsg.writeTo (aBAOS);
+    final AS4MimeMessage aMsg = new AS4MimeMessage (null, new NonBlockingByteArrayInputStream (aBAOS.toByteArray ()));
+
+    final HttpMimeMessageEntity aEntity = HttpMimeMessageEntity.create (aMsg);
+    assertFalse (aEntity.isRepeatable ());
+    assertTrue (aEntity.isStreaming ());
+    assertEquals (-1, aEntity.getContentLength ());
+  }
+}
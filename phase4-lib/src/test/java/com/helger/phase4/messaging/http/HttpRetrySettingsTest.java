@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.messaging.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+
+import org.junit.Test;
+
+import com.helger.commons.mock.CommonsTestHelper;
+
+/**
+ * Test class for class {@link HttpRetrySettings}.
+ *
+ * @author Philip Helger
+ */
+public final class HttpRetrySettingsTest
+{
+  @Test
+  public void testBasic ()
+  {
+    final HttpRetrySettings x = new HttpRetrySettings ();
+    assertFalse (x.isRetryEnabled ());
+    assertEquals (HttpRetrySettings.DEFAULT_RETRY_JITTER_FACTOR, x.getRetryJitterFactor (), 0);
+
+    final HttpRetrySettings y = new HttpRetrySettings ().setMaxRetries (3).setRetryJitterFactor (0.2);
+    assertTrue (y.isRetryEnabled ());
+    CommonsTestHelper.testDefaultImplementationWithDifferentContentObject (x, y);
+
+    final HttpRetrySettings z = new HttpRetrySettings ();
+    z.assignFrom (y);
+    CommonsTestHelper.testDefaultImplementationWithEqualContentObject (y, z);
+  }
+
+  @Test
+  public void testIncreased ()
+  {
+    final Duration d = Duration.ofSeconds (10);
+    assertEquals (d, HttpRetrySettings.getIncreased (d, BigDecimal.ONE));
+    assertEquals (Duration.ofSeconds (20), HttpRetrySettings.getIncreased (d, BigDecimal.valueOf (2)));
+  }
+
+  @Test
+  public void testWithJitter ()
+  {
+    final Duration d = Duration.ofSeconds (10);
+    assertEquals (d, HttpRetrySettings.getWithJitter (d, 0));
+    for (int i = 0; i < 100; ++i)
+    {
+      final long nMillis = HttpRetrySettings.getWithJitter (d, 0.2).toMillis ();
+      assertTrue (nMillis >= 8_000 && nMillis <= 12_000);
+    }
+  }
+}
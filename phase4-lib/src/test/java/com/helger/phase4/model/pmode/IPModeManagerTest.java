@@ -16,14 +16,24 @@
  */
 package com.helger.phase4.model.pmode;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import javax.annotation.Nonnull;
 
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TestRule;
 
+import com.helger.commons.state.EChange;
 import com.helger.phase4.AS4TestRule;
 import com.helger.phase4.mgr.MetaAS4Manager;
+import com.helger.phase4.model.EMEP;
+import com.helger.phase4.model.EMEPBinding;
+import com.helger.phase4.model.pmode.leg.PModeLeg;
+import com.helger.phase4.model.pmode.leg.PModeLegBusinessInformation;
 
 /**
  * Test class for class {@link IPModeManager}.
@@ -42,4 +52,64 @@ public final class IPModeManagerTest
     final IPModeManager aPModeMgr = MetaAS4Manager.getPModeMgr ();
     assertNotNull (aPModeMgr);
   }
+
+  @Nonnull
+  private static PMode _createPMode (@Nonnull final String sID,
+                                     @Nonnull final String sInitiatorID,
+                                     @Nonnull final String sResponderID,
+                                     @Nonnull final String sService,
+                                     @Nonnull final String sAction)
+  {
+    return new PMode (sID,
+                      PModeParty.createSimple (sInitiatorID, "Role"),
+                      PModeParty.createSimple (sResponderID, "Role"),
+                      "agreement",
+                      EMEP.ONE_WAY,
+                      EMEPBinding.PUSH,
+                      new PModeLeg (null,
+                                    PModeLegBusinessInformation.create (sService, sAction, null, null),
+                                    null,
+                                    null,
+                                    null),
+                      null,
+                      null,
+                      null);
+  }
+
+  @Test
+  public void testIndexedLookup ()
+  {
+    final PModeManagerInMemory aPModeMgr = new PModeManagerInMemory ();
+    final PMode p1 = _createPMode ("p1", "i1", "r1", "svc", "act");
+    final PMode p2 = _createPMode ("p2", "i2", "r2", "svc", "act");
+    final PMode p3 = _createPMode ("p3", "i3", "r3", "svc2", "act");
+    aPModeMgr.createPMode (p1);
+    aPModeMgr.createPMode (p2);
+    aPModeMgr.createPMode (p3);
+
+    // By service and action
+    assertSame (p1, aPModeMgr.getPModeOfServiceAndAction ("svc", "act"));
+    assertSame (p3, aPModeMgr.getPModeOfServiceAndAction ("svc2", "act"));
+    assertNull (aPModeMgr.getPModeOfServiceAndAction ("svc3", "act"));
+
+    // With parties
+    assertSame (p2, aPModeMgr.getPModeOfServiceAndAction ("svc", "act", "i2", "r2"));
+    // Fallback to service and action only
+    assertSame (p1, aPModeMgr.getPModeOfServiceAndAction ("svc", "act", "i3", "r3"));
+
+    // Update the business information
+    final PMode p1New = _createPMode ("p1", "i1", "r1", "svc3", "act");
+    assertEquals (EChange.CHANGED, aPModeMgr.updatePMode (p1New));
+    assertSame (p2, aPModeMgr.getPModeOfServiceAndAction ("svc", "act"));
+    assertSame (p1, aPModeMgr.getPModeOfServiceAndAction ("svc3", "act"));
+
+    // Create or update by initiator and responder
+    aPModeMgr.createOrUpdatePMode (_createPMode ("p4", "i3", "r3", "svc2", "act"));
+    assertEquals (3, aPModeMgr.getAll ().size ());
+
+    // Delete
+    aPModeMgr.deletePMode ("p2");
+    assertNull (aPModeMgr.getPModeOfServiceAndAction ("svc", "act"));
+    assertNull (aPModeMgr.getPModeOfServiceAndAction ("svc", "act", "i2", "r2"));
+  }
 }
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.model.pmode.resolve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+
+import com.helger.commons.concurrent.ThreadHelper;
+import com.helger.phase4.AS4TestRule;
+import com.helger.phase4.model.EMEP;
+import com.helger.phase4.model.EMEPBinding;
+import com.helger.phase4.model.pmode.IPMode;
+import com.helger.phase4.model.pmode.IPModeIDProvider;
+import com.helger.phase4.model.pmode.PMode;
+import com.helger.phase4.model.pmode.PModeParty;
+import com.helger.phase4.profile.AS4Profile;
+import com.helger.phase4.profile.IAS4Profile;
+
+/**
+ * Test class for class {@link AS4DefaultPModeCache}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4DefaultPModeCacheTest
+{
+  @Rule
+  public final TestRule m_aTestRule = new AS4TestRule ();
+
+  @Nonnull
+  private static IAS4Profile _createProfile (@Nonnull final AtomicInteger aCounter)
+  {
+    return new AS4Profile ("test",
+                           "Test",
+                           () -> null,
+                           (i, r, a) -> {
+                             aCounter.incrementAndGet ();
+                             return new PMode (i + "-" + r,
+                                               PModeParty.createSimple (i, "Role"),
+                                               PModeParty.createSimple (r, "Role"),
+                                               "agreement",
+                                               EMEP.ONE_WAY,
+                                               EMEPBinding.PUSH,
+                                               null,
+                                               null,
+                                               null,
+                                               null);
+                           },
+                           IPModeIDProvider.DEFAULT_DYNAMIC,
+                           false,
+                           false);
+  }
+
+  @Test
+  public void testBasic ()
+  {
+    final AtomicInteger aCounter = new AtomicInteger (0);
+    final IAS4Profile aProfile = _createProfile (aCounter);
+    final AS4DefaultPModeCache aCache = new AS4DefaultPModeCache ().setMaxSize (2);
+
+    final IPMode p1 = aCache.getOrCreate (getClass (),
+                                          aProfile,
+                                          "i1",
+                                          "r1",
+                                          null,
+                                          () -> aProfile.createPModeTemplate ("i1", "r1", null));
+    assertEquals (1, aCounter.get ());
+    assertSame (p1,
+                aCache.getOrCreate (getClass (),
+                                    aProfile,
+                                    "i1",
+                                    "r1",
+                                    null,
+                                    () -> aProfile.createPModeTemplate ("i1", "r1", null)));
+    assertEquals (1, aCounter.get ());
+
+    // Different address
+    assertNotSame (p1,
+                   aCache.getOrCreate (getClass (),
+                                       aProfile,
+                                       "i1",
+                                       "r1",
+                                       "http://x",
+                                       () -> aProfile.createPModeTemplate ("i1", "r1", "http://x")));
+    assertEquals (2, aCounter.get ());
+    assertEquals (2, aCache.getSize ());
+
+    // Evicts the oldest entry
+    aCache.getOrCreate (getClass (), aProfile, "i2", "r2", null, () -> aProfile.createPModeTemplate ("i2", "r2", null));
+    assertEquals (2, aCache.getSize ());
+    aCache.getOrCreate (getClass (), aProfile, "i1", "r1", null, () -> aProfile.createPModeTemplate ("i1", "r1", null));
+    assertEquals (4, aCounter.get ());
+
+    // Nothing is cached for null
+    assertNull (aCache.getOrCreate (getClass (), aProfile, "i3", "r3", null, () -> null));
+    assertEquals (2, aCache.getSize ());
+
+    aCache.clearCache ();
+    assertEquals (0, aCache.getSize ());
+  }
+
+  @Test
+  public void testDifferentTTLs ()
+  {
+    final AtomicInteger aCounter = new AtomicInteger (0);
+    final IAS4Profile aProfile = _createProfile (aCounter);
+    final AS4DefaultPModeCache aCache = new AS4DefaultPModeCache ().setTTL (Duration.ofHours (1));
+
+    aCache.getOrCreate (getClass (), aProfile, "i1", "r1", null, () -> aProfile.createPModeTemplate ("i1", "r1", null));
+    aCache.setTTL (Duration.ofMillis (50));
+    aCache.getOrCreate (getClass (), aProfile, "i2", "r2", null, () -> aProfile.createPModeTemplate ("i2", "r2", null));
+    assertEquals (2, aCache.getSize ());
+
+    ThreadHelper.sleep (100);
+    aCache.setTTL (Duration.ofHours (1));
+    // The newer but expired entry is evicted, even if an older one is not
+    aCache.getOrCreate (getClass (), aProfile, "i3", "r3", null, () -> aProfile.createPModeTemplate ("i3", "r3", null));
+    assertEquals (2, aCache.getSize ());
+    assertEquals (3, aCounter.get ());
+    aCache.getOrCreate (getClass (), aProfile, "i1", "r1", null, () -> aProfile.createPModeTemplate ("i1", "r1", null));
+    assertEquals (3, aCounter.get ());
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.profile;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+
+import com.helger.commons.error.SingleError;
+import com.helger.commons.error.list.ErrorList;
+import com.helger.phase4.AS4TestRule;
+import com.helger.phase4.model.EMEP;
+import com.helger.phase4.model.EMEPBinding;
+import com.helger.phase4.model.pmode.IPMode;
+import com.helger.phase4.model.pmode.IPModeIDProvider;
+import com.helger.phase4.model.pmode.PMode;
+import com.helger.phase4.model.pmode.PModeParty;
+import com.helger.phase4.profile.IAS4ProfileValidator.EAS4ProfileValidationMode;
+import com.helger.photon.security.object.BusinessObjectHelper;
+
+/**
+ * Test class for class {@link AS4ProfilePModeValidationCache}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4ProfilePModeValidationCacheTest
+{
+  @Rule
+  public final TestRule m_aTestRule = new AS4TestRule ();
+
+  @Test
+  public void testBasic ()
+  {
+    final AtomicInteger aCounter = new AtomicInteger (0);
+    final IAS4ProfileValidator aValidator = new IAS4ProfileValidator ()
+    {
+      @Override
+      public void validatePMode (@Nonnull final IPMode aPMode,
+                                 @Nonnull final ErrorList aErrorList,
+                                 @Nonnull final EAS4ProfileValidationMode eValidationMode)
+      {
+        aCounter.incrementAndGet ();
+        aErrorList.add (SingleError.builderError ().errorText ("PMode error").build ());
+      }
+    };
+    final IAS4Profile aProfile = new AS4Profile ("test",
+                                                 "Test",
+                                                 () -> aValidator,
+                                                 (i, r, a) -> null,
+                                                 IPModeIDProvider.DEFAULT_DYNAMIC,
+                                                 false,
+                                                 false);
+    final PMode aPMode = new PMode ("id",
+                                    PModeParty.createSimple ("i", "Role"),
+                                    PModeParty.createSimple ("r", "Role"),
+                                    "agreement",
+                                    EMEP.ONE_WAY,
+                                    EMEPBinding.PUSH,
+                                    null,
+                                    null,
+                                    null,
+                                    null);
+
+    final AS4ProfilePModeValidationCache aCache = new AS4ProfilePModeValidationCache ();
+    for (int i = 0; i < 3; ++i)
+    {
+      final ErrorList aErrorList = new ErrorList ();
+      aCache.validatePMode (aProfile, aValidator, aPMode, aErrorList, EAS4ProfileValidationMode.USER_MESSAGE);
+      // The cached errors are provided as well
+      assertEquals (1, aErrorList.size ());
+    }
+    assertEquals (1, aCounter.get ());
+
+    // Different mode
+    aCache.validatePMode (aProfile, aValidator, aPMode, new ErrorList (), EAS4ProfileValidationMode.SIGNAL_MESSAGE);
+    assertEquals (2, aCounter.get ());
+
+    // Modified PMode
+    BusinessObjectHelper.setLastModificationNow (aPMode);
+    aCache.validatePMode (aProfile, aValidator, aPMode, new ErrorList (), EAS4ProfileValidationMode.USER_MESSAGE);
+    assertEquals (3, aCounter.get ());
+    assertEquals (3, aCache.getSize ());
+
+    aCache.clearCache ();
+    assertEquals (0, aCache.getSize ());
+  }
+}
@@ -0,0 +1,673 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.peppol;
+
+import java.security.cert.X509Certificate;
+import java.time.OffsetDateTime;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.slf4j.Logger;
+import org.w3c.dom.Document;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsLinkedHashMap;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.collection.impl.ICommonsOrderedMap;
+import com.helger.commons.concurrent.ExecutorServiceHelper;
+import com.helger.commons.equals.EqualsHelper;
+import com.helger.commons.hashcode.HashCodeGenerator;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.commons.timing.StopWatch;
+import com.helger.commons.wrapper.Wrapper;
+import com.helger.peppol.sml.ISMLInfo;
+import com.helger.peppol.smp.ISMPTransportProfile;
+import com.helger.peppolid.IDocumentTypeIdentifier;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.IProcessIdentifier;
+import com.helger.phase4.client.IAS4ClientBuildMessageCallback;
+import com.helger.phase4.dynamicdiscovery.AS4EndpointDetailProviderBDXR;
+import com.helger.phase4.dynamicdiscovery.AS4EndpointDetailProviderBDXR2;
+import com.helger.phase4.dynamicdiscovery.AS4EndpointDetailProviderConstant;
+import com.helger.phase4.dynamicdiscovery.AS4EndpointDetailProviderPeppol;
+import com.helger.phase4.dynamicdiscovery.IAS4EndpointDetailProvider;
+import com.helger.phase4.incoming.IAS4SignalMessageConsumer;
+import com.helger.phase4.logging.Phase4LoggerFactory;
+import com.helger.phase4.messaging.mime.AS4MimeMessage;
+import com.helger.phase4.model.message.AS4UserMessage;
+import com.helger.phase4.model.message.AbstractAS4Message;
+import com.helger.phase4.peppol.Phase4PeppolSender.AbstractPeppolUserMessageBuilder;
+import com.helger.phase4.sender.EAS4UserMessageSendResult;
+import com.helger.phase4.sender.IAS4SendingDateTimeConsumer;
+import com.helger.phase4.util.Phase4Exception;
+import com.helger.security.certificate.ECertificateCheckResult;
+
+/**
+ * Send a large number of Peppol documents in one run. Each document is represented by a fully
+ * configured builder, as created by {@link Phase4PeppolSender#builder()} or
+ * {@link Phase4PeppolSender#sbdhBuilder()}. The builders are read in chunks, and within each chunk
+ * they are grouped by endpoint detail provider, transport profile, receiver, document type and
+ * process, so that the endpoint detail lookup (e.g. the SMP query) is performed only once per group
+ * and run. Peppol and BDXR providers are considered equal if they use the same SMP client
+ * instance, all other providers only if they are the same instance. The other documents of a group
+ * reuse the resolved AP certificate and endpoint URL, and are sent right after each other, so that
+ * the pooled HTTP connections to the receiving AP can be reused. The receiver AP certificate check
+ * is still performed by each builder. If the lookup fails, all documents of the group that are
+ * currently waiting for it fail with the same exception, and the next document of the group
+ * performs the lookup again.<br>
+ * The documents are sent concurrently with a bounded parallelism. A
+ * {@link Phase4PeppolSendingReport} is created for every document and passed to the provided
+ * handler.
+ *
+ * @author Philip Helger
+ * @since 3.2.3
+ */
+@NotThreadSafe
+public class Phase4PeppolBulkSender
+{
+  public static final int DEFAULT_PARALLELISM = Math.max (2, Runtime.getRuntime ().availableProcessors ());
+  public static final int DEFAULT_CHUNK_SIZE = 1_000;
+
+  private static final Logger LOGGER = Phase4LoggerFactory.getLogger (Phase4PeppolBulkSender.class);
+  private static final AtomicInteger THREAD_INDEX = new AtomicInteger (0);
+
+  /**
+   * Callback interface for the sending results of single documents.
+   *
+   * @author Philip Helger
+   * @since 3.2.3
+   */
+  @FunctionalInterface
+  public interface IPhase4PeppolBulkSendingReportHandler
+  {
+    /**
+     * Invoked after a single document was sent or failed to be sent. This method may be invoked
+     * concurrently from multiple threads.
+     *
+     * @param aBuilder
+     *        The builder of the document, e.g. to create a Peppol Reporting item. Never
+     *        <code>null</code>.
+     * @param aSendingReport
+     *        The sending report of the document. Never <code>null</code>.
+     */
+    void onSendingReport (@Nonnull AbstractPeppolUserMessageBuilder <?> aBuilder,
+                          @Nonnull Phase4PeppolSendingReport aSendingReport);
+  }
+
+  /**
+   * The key of a group of documents with the same receiver endpoint.
+   */
+  private static final class EndpointKey
+  {
+    private final Class <?> m_aProviderClass;
+    // Compared by identity
+    private final Object m_aProviderScope1;
+    private final Object m_aProviderScope2;
+    private final String m_sTransportProfileID;
+    private final String m_sReceiverID;
+    private final String m_sDocTypeID;
+    private final String m_sProcessID;
+
+    EndpointKey (@Nonnull final IAS4EndpointDetailProvider aProvider,
+                 @Nonnull final IParticipantIdentifier aReceiverID,
+                 @Nonnull final IDocumentTypeIdentifier aDocTypeID,
+                 @Nonnull final IProcessIdentifier aProcessID)
+    {
+      m_aProviderClass = aProvider.getClass ();
+      ISMPTransportProfile aTransportProfile = null;
+      if (aProvider instanceof AS4EndpointDetailProviderPeppol)
+      {
+        // Different provider instances with the same SMP client
+        final AS4EndpointDetailProviderPeppol aPeppol = (AS4EndpointDetailProviderPeppol) aProvider;
+        m_aProviderScope1 = aPeppol.getServiceGroupProvider ();
+        m_aProviderScope2 = aPeppol.getServiceMetadataProvider ();
+        aTransportProfile = aPeppol.getTransportProfile ();
+      }
+      else
+        if (aProvider instanceof AS4EndpointDetailProviderBDXR)
+        {
+          final AS4EndpointDetailProviderBDXR aBDXR = (AS4EndpointDetailProviderBDXR) aProvider;
+          m_aProviderScope1 = aBDXR.getServiceMetadataProvider ();
+          m_aProviderScope2 = null;
+          aTransportProfile = aBDXR.getTransportProfile ();
+        }
+        else
+          if (aProvider instanceof AS4EndpointDetailProviderBDXR2)
+          {
+            final AS4EndpointDetailProviderBDXR2 aBDXR2 = (AS4EndpointDetailProviderBDXR2) aProvider;
+            m_aProviderScope1 = aBDXR2.getServiceMetadataProvider ();
+            m_aProviderScope2 = null;
+            aTransportProfile = aBDXR2.getTransportProfile ();
+          }
+          else
+          {
+            // Unknown provider - only the same instance is considered equal
+            m_aProviderScope1 = aProvider;
+            m_aProviderScope2 = null;
+          }
+      m_sTransportProfileID = aTransportProfile == null ? null : aTransportProfile.getID ();
+      m_sReceiverID = aReceiverID.getURIEncoded ();
+      m_sDocTypeID = aDocTypeID.getURIEncoded ();
+      m_sProcessID = aProcessID.getURIEncoded ();
+    }
+
+    @Override
+    public boolean equals (final Object o)
+    {
+      if (o == this)
+        return true;
+      if (o == null || !getClass ().equals (o.getClass ()))
+        return false;
+      final EndpointKey rhs = (EndpointKey) o;
+      return m_aProviderClass.equals (rhs.m_aProviderClass) &&
+             m_aProviderScope1 == rhs.m_aProviderScope1 &&
+             m_aProviderScope2 == rhs.m_aProviderScope2 &&
+             EqualsHelper.equals (m_sTransportProfileID, rhs.m_sTransportProfileID) &&
+             m_sReceiverID.equals (rhs.m_sReceiverID) &&
+             m_sDocTypeID.equals (rhs.m_sDocTypeID) &&
+             m_sProcessID.equals (rhs.m_sProcessID);
+    }
+
+    @Override
+    public int hashCode ()
+    {
+      return new HashCodeGenerator (this).append (m_aProviderClass)
+                                         .append (System.identityHashCode (m_aProviderScope1))
+                                         .append (System.identityHashCode (m_aProviderScope2))
+                                         .append (m_sTransportProfileID)
+                                         .append (m_sReceiverID)
+                                         .append (m_sDocTypeID)
+                                         .append (m_sProcessID)
+                                         .getHashCode ();
+    }
+  }
+
+  private static final class ResolvedEndpoint
+  {
+    private final X509Certificate m_aCert;
+    private final String m_sDestURL;
+    private final String m_sTechnicalContact;
+
+    ResolvedEndpoint (@Nullable final X509Certificate aCert,
+                      @Nonnull final String sDestURL,
+                      @Nullable final String sTechnicalContact)
+    {
+      m_aCert = aCert;
+      m_sDestURL = sDestURL;
+      m_sTechnicalContact = sTechnicalContact;
+    }
+  }
+
+  private final ISMLInfo m_aSMLInfo;
+  private int m_nParallelism = DEFAULT_PARALLELISM;
+  private int m_nChunkSize = DEFAULT_CHUNK_SIZE;
+
+  /**
+   * Constructor
+   *
+   * @param aSMLInfo
+   *        The SML used for the receiver lookups. This is only used for the sending reports. May
+   *        not be <code>null</code>.
+   */
+  public Phase4PeppolBulkSender (@Nonnull final ISMLInfo aSMLInfo)
+  {
+    ValueEnforcer.notNull (aSMLInfo, "SMLInfo");
+    m_aSMLInfo = aSMLInfo;
+  }
+
+  /**
+   * @return The SML passed in the constructor. Never <code>null</code>.
+   */
+  @Nonnull
+  public final ISMLInfo getSMLInfo ()
+  {
+    return m_aSMLInfo;
+  }
+
+  /**
+   * @return The maximum number of documents that are processed at the same time. Always &gt; 0.
+   */
+  @Nonnegative
+  public final int getParallelism ()
+  {
+    return m_nParallelism;
+  }
+
+  /**
+   * Set the maximum number of documents that are processed at the same time.
+   *
+   * @param nParallelism
+   *        The parallelism to use. Must be &gt; 0.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final Phase4PeppolBulkSender setParallelism (@Nonnegative final int nParallelism)
+  {
+    ValueEnforcer.isGT0 (nParallelism, "Parallelism");
+    m_nParallelism = nParallelism;
+    return this;
+  }
+
+  /**
+   * @return The maximum number of builders that are read and grouped at once. Always &gt; 0.
+   */
+  @Nonnegative
+  public final int getChunkSize ()
+  {
+    return m_nChunkSize;
+  }
+
+  /**
+   * Set the maximum number of builders that are read and grouped at once. This limits the number of
+   * builders (including their payloads) that are held in memory at the same time.
+   *
+   * @param nChunkSize
+   *        The chunk size to use. Must be &gt; 0.
+   * @return this for chaining
+   */
+  @Nonnull
+  public final Phase4PeppolBulkSender setChunkSize (@Nonnegative final int nChunkSize)
+  {
+    ValueEnforcer.isGT0 (nChunkSize, "ChunkSize");
+    m_nChunkSize = nChunkSize;
+    return this;
+  }
+
+  @Nullable
+  private static EndpointKey _getEndpointKey (@Nonnull final AbstractPeppolUserMessageBuilder <?> aBuilder)
+  {
+    // Let the builder report the missing fields
+    if (!aBuilder.isEndpointDetailProviderUsable ())
+      return null;
+    return new EndpointKey (aBuilder.m_aEndpointDetailProvider,
+                            aBuilder.m_aReceiverID,
+                            aBuilder.m_aDocTypeID,
+                            aBuilder.m_aProcessID);
+  }
+
+  @Nonnull
+  private static ResolvedEndpoint _resolveEndpoint (@Nonnull final AbstractPeppolUserMessageBuilder <?> aBuilder,
+                                                    @Nonnull final EndpointKey aEndpointKey,
+                                                    @Nonnull final Map <EndpointKey, CompletableFuture <ResolvedEndpoint>> aEndpoints) throws Phase4Exception
+  {
+    final CompletableFuture <ResolvedEndpoint> aNewFuture = new CompletableFuture <> ();
+    final CompletableFuture <ResolvedEndpoint> aExistingFuture = aEndpoints.putIfAbsent (aEndpointKey, aNewFuture);
+    if (aExistingFuture != null)
+    {
+      // Resolved by another document of the same group
+      try
+      {
+        return aExistingFuture.join ();
+      }
+      catch (final CompletionException ex)
+      {
+        final Throwable aCause = ex.getCause ();
+        if (aCause instanceof Phase4Exception)
+          throw (Phase4Exception) aCause;
+        if (aCause instanceof Error)
+          throw (Error) aCause;
+        throw new Phase4PeppolException ("Failed to resolve the receiver endpoint", aCause);
+      }
+    }
+
+    try
+    {
+      // e.g. SMP lookup
+      final IAS4EndpointDetailProvider aProvider = aBuilder.m_aEndpointDetailProvider;
+      aProvider.init (aBuilder.m_aDocTypeID, aBuilder.m_aProcessID, aBuilder.m_aReceiverID);
+      final ResolvedEndpoint ret = new ResolvedEndpoint (aProvider.getReceiverAPCertificate (),
+                                                         aProvider.getReceiverAPEndpointURL (),
+                                                         aProvider.getReceiverTechnicalContact ());
+      aNewFuture.complete (ret);
+      return ret;
+    }
+    catch (final Throwable t)
+    {
+      // Don't remember the failure, so that the next document of the group retries the lookup
+      aEndpoints.remove (aEndpointKey, aNewFuture);
+      // Always release the documents waiting for this lookup
+      aNewFuture.completeExceptionally (t);
+      throw t;
+    }
+  }
+
+  private static void _fillSendingReportFromBuilder (@Nonnull final AbstractPeppolUserMessageBuilder <?> aBuilder,
+                                                     @Nonnull final Phase4PeppolSendingReport aSendingReport)
+  {
+    aSendingReport.setSenderID (aBuilder.m_aSenderID);
+    aSendingReport.setReceiverID (aBuilder.m_aReceiverID);
+    aSendingReport.setDocTypeID (aBuilder.m_aDocTypeID);
+    aSendingReport.setProcessID (aBuilder.m_aProcessID);
+    aSendingReport.setCountryC1 (aBuilder.m_sCountryC1);
+    aSendingReport.setSenderPartyID (aBuilder.fromPartyID ());
+
+    // Chain the existing consumers, so that nothing gets lost
+    final IPhase4PeppolCertificateCheckResultHandler aOldCertificateConsumer = aBuilder.certificateConsumer ();
+    aBuilder.certificateConsumer (new IPhase4PeppolCertificateCheckResultHandler ()
+    {
+      public void onCertificateCheckResult (@Nullable final X509Certificate aAPCertificate,
+                                            @Nonnull final OffsetDateTime aCheckDT,
+                                            @Nonnull final ECertificateCheckResult eCertCheckResult) throws Phase4Exception
+      {
+        onCertificateCheckResult (aAPCertificate, aCheckDT, eCertCheckResult, false);
+      }
+
+      @Override
+      public void onCertificateCheckResult (@Nullable final X509Certificate aAPCertificate,
+                                            @Nonnull final OffsetDateTime aCheckDT,
+                                            @Nonnull final ECertificateCheckResult eCertCheckResult,
+                                            final boolean bFromCache) throws Phase4Exception
+      {
+        // Determined by SMP lookup
+        aSendingReport.setC3Cert (aAPCertificate);
+        aSendingReport.setC3CertCheckDT (aCheckDT);
+        aSendingReport.setC3CertCheckResult (eCertCheckResult);
+        if (aOldCertificateConsumer != null)
+          aOldCertificateConsumer.onCertificateCheckResult (aAPCertificate, aCheckDT, eCertCheckResult, bFromCache);
+      }
+    });
+    final Consumer <String> aOldEndpointURLConsumer = aBuilder.endpointURLConsumer ();
+    aBuilder.endpointURLConsumer (aOldEndpointURLConsumer == null ? aSendingReport::setC3EndpointURL
+                                                                  : x -> {
+                                                                    aSendingReport.setC3EndpointURL (x);
+                                                                    aOldEndpointURLConsumer.accept (x);
+                                                                  });
+    final Consumer <String> aOldTechnicalContactConsumer = aBuilder.technicalContactConsumer ();
+    aBuilder.technicalContactConsumer (aOldTechnicalContactConsumer == null ? aSendingReport::setC3TechnicalContact
+                                                                            : x -> {
+                                                                              aSendingReport.setC3TechnicalContact (x);
+                                                                              aOldTechnicalContactConsumer.accept (x);
+                                                                            });
+    final IAS4SendingDateTimeConsumer aOldSendingDTConsumer = aBuilder.sendingDateTimeConsumer ();
+    aBuilder.sendingDateTimeConsumer (aSendingDT -> {
+      aSendingReport.setAS4SendingDT (aSendingDT);
+      if (aOldSendingDTConsumer != null)
+        aOldSendingDTConsumer.onEffectiveSendingDateTime (aSendingDT);
+    });
+    final IAS4ClientBuildMessageCallback aOldBuildMessageCallback = aBuilder.buildMessageCallback ();
+    aBuilder.buildMessageCallback (new IAS4ClientBuildMessageCallback ()
+    {
+      public void onAS4Message (@Nonnull final AbstractAS4Message <?> aMsg)
+      {
+        // Created AS4 fields
+        final AS4UserMessage aUserMsg = (AS4UserMessage) aMsg;
+        aSendingReport.setAS4MessageID (aUserMsg.getEbms3UserMessage ().getMessageInfo ().getMessageId ());
+        aSendingReport.setAS4ConversationID (aUserMsg.getEbms3UserMessage ()
+                                                     .getCollaborationInfo ()
+                                                     .getConversationId ());
+        if (aOldBuildMessageCallback != null)
+          aOldBuildMessageCallback.onAS4Message (aMsg);
+      }
+
+      public void onSoapDocument (@Nonnull final Document aDoc)
+      {
+        if (aOldBuildMessageCallback != null)
+          aOldBuildMessageCallback.onSoapDocument (aDoc);
+      }
+
+      public void onSignedSoapDocument (@Nonnull final Document aDoc)
+      {
+        if (aOldBuildMessageCallback != null)
+          aOldBuildMessageCallback.onSignedSoapDocument (aDoc);
+      }
+
+      public void onEncryptedSoapDocument (@Nonnull final Document aDoc)
+      {
+        if (aOldBuildMessageCallback != null)
+          aOldBuildMessageCallback.onEncryptedSoapDocument (aDoc);
+      }
+
+      public void onEncryptedMimeMessage (@Nonnull final AS4MimeMessage aMimeMsg)
+      {
+        if (aOldBuildMessageCallback != null)
+          aOldBuildMessageCallback.onEncryptedMimeMessage (aMimeMsg);
+      }
+    });
+    final IAS4SignalMessageConsumer aOldSignalMsgConsumer = aBuilder.signalMsgConsumer ();
+    aBuilder.signalMsgConsumer ( (aSignalMsg, aMessageMetadata, aState) -> {
+      aSendingReport.setAS4ReceivedSignalMsg (aSignalMsg);
+      if (aOldSignalMsgConsumer != null)
+        aOldSignalMsgConsumer.handleSignalMessage (aSignalMsg, aMessageMetadata, aState);
+    });
+  }
+
+  @Nonnull
+  private Phase4PeppolSendingReport _sendSingle (@Nonnull final AbstractPeppolUserMessageBuilder <?> aBuilder,
+                                                 @Nullable final EndpointKey aEndpointKey,
+                                                 @Nonnull final Map <EndpointKey, CompletableFuture <ResolvedEndpoint>> aEndpoints)
+  {
+    final Phase4PeppolSendingReport aSendingReport = new Phase4PeppolSendingReport (m_aSMLInfo);
+
+    EAS4UserMessageSendResult eResult = null;
+    boolean bExceptionCaught = false;
+    final StopWatch aSW = StopWatch.createdStarted ();
+    try
+    {
+      _fillSendingReportFromBuilder (aBuilder, aSendingReport);
+
+      if (aEndpointKey != null)
+      {
+        // Reuse the endpoint details of the group
+        final ResolvedEndpoint aEndpoint = _resolveEndpoint (aBuilder, aEndpointKey, aEndpoints);
+        aBuilder.endpointDetailProvider (new AS4EndpointDetailProviderConstant (aEndpoint.m_aCert,
+                                                                                aEndpoint.m_sDestURL,
+                                                                                aEndpoint.m_sTechnicalContact));
+      }
+
+      final Wrapper <Phase4Exception> aCaughtEx = new Wrapper <> ();
+      eResult = aBuilder.sendMessageAndCheckForReceipt (aCaughtEx::set);
+      aSendingReport.setAS4SendingResult (eResult);
+
+      if (aCaughtEx.isSet ())
+      {
+        final Phase4Exception ex = aCaughtEx.get ();
+        LOGGER.error ("Error sending Peppol message via AS4", ex);
+        aSendingReport.setAS4SendingException (ex);
+        bExceptionCaught = true;
+      }
+    }
+    catch (final Exception ex)
+    {
+      // Mostly errors on SMP level
+      LOGGER.error ("Error sending Peppol message via AS4", ex);
+      aSendingReport.setAS4SendingException (ex);
+      bExceptionCaught = true;
+    }
+    catch (final Throwable t)
+    {
+      // Don't abort the whole run - only this document failed
+      LOGGER.error ("Error sending Peppol message via AS4", t);
+      aSendingReport.setAS4SendingException (new Phase4PeppolException ("Error sending Peppol message via AS4", t));
+      bExceptionCaught = true;
+    }
+    finally
+    {
+      aSW.stop ();
+      aSendingReport.setOverallDurationMillis (aSW.getMillis ());
+    }
+
+    // Result may be null
+    final boolean bSendingSuccess = eResult != null && eResult.isSuccess ();
+    aSendingReport.setSendingSuccess (bSendingSuccess);
+    aSendingReport.setOverallSuccess (bSendingSuccess && !bExceptionCaught);
+    return aSendingReport;
+  }
+
+  private void _sendChunk (@Nonnull final ExecutorService aES,
+                           @Nonnull final ICommonsList <AbstractPeppolUserMessageBuilder <?>> aChunk,
+                           @Nonnull final Map <EndpointKey, CompletableFuture <ResolvedEndpoint>> aEndpoints,
+                           @Nonnull final IPhase4PeppolBulkSendingReportHandler aReportHandler,
+                           @Nonnull final AtomicInteger aSuccessCount)
+  {
+    // Group by receiver endpoint
+    final ICommonsList <AbstractPeppolUserMessageBuilder <?>> aUngrouped = new CommonsArrayList <> ();
+    final ICommonsOrderedMap <EndpointKey, ICommonsList <AbstractPeppolUserMessageBuilder <?>>> aGroups = new CommonsLinkedHashMap <> ();
+    for (final AbstractPeppolUserMessageBuilder <?> aBuilder : aChunk)
+    {
+      final EndpointKey aEndpointKey = _getEndpointKey (aBuilder);
+      if (aEndpointKey == null)
+        aUngrouped.add (aBuilder);
+      else
+        aGroups.computeIfAbsent (aEndpointKey, k -> new CommonsArrayList <> ()).add (aBuilder);
+    }
+
+    final ICommonsList <CompletableFuture <Void>> aFutures = new CommonsArrayList <> (aChunk.size ());
+    final Consumer <AbstractPeppolUserMessageBuilder <?>> aSubmitter = aBuilder -> {
+      final EndpointKey aEndpointKey = _getEndpointKey (aBuilder);
+      aFutures.add (CompletableFuture.runAsync ( () -> {
+        final Phase4PeppolSendingReport aSendingReport = _sendSingle (aBuilder, aEndpointKey, aEndpoints);
+        if (aSendingReport.isOverallSuccess ())
+          aSuccessCount.incrementAndGet ();
+        try
+        {
+          aReportHandler.onSendingReport (aBuilder, aSendingReport);
+        }
+        catch (final Throwable t)
+        {
+          LOGGER.error ("Error in the bulk sending report handler", t);
+        }
+      }, aES));
+    };
+
+    // First the first document of each group, so that all lookups run concurrently
+    aGroups.forEach ( (k, v) -> aSubmitter.accept (v.getFirstOrNull ()));
+    // Then the remaining documents, group by group
+    aGroups.forEach ( (k, v) -> v.subList (1, v.size ()).forEach (aSubmitter));
+    aUngrouped.forEach (aSubmitter);
+
+    CompletableFuture.allOf (aFutures.toArray (new CompletableFuture <?> [0])).join ();
+  }
+
+  /**
+   * Send all the documents provided by the iterator and wait until all of them are processed. A
+   * document that fails with an exception or error is reported as failed, and does not abort the
+   * run.<br>
+   * Note: the provided builders are modified. The certificate consumer, endpoint URL consumer,
+   * technical contact consumer, sending date time consumer, build message callback and signal
+   * message consumer are wrapped to fill the sending report, while the previously set ones are
+   * still invoked. If the endpoint details are resolved for a group, the endpoint detail provider
+   * is replaced by a constant one. Therefore a builder should not be reused afterwards.
+   *
+   * @param aBuilders
+   *        The fully configured builders of the documents to send. They are consumed chunk by
+   *        chunk and modified. May not be <code>null</code>.
+   * @param aReportHandler
+   *        The handler that is invoked with the sending report of every document. May not be
+   *        <code>null</code>.
+   * @return The number of documents that were sent successfully. Always &ge; 0.
+   */
+  @Nonnegative
+  public int sendAll (@Nonnull final Iterator <? extends AbstractPeppolUserMessageBuilder <?>> aBuilders,
+                      @Nonnull final IPhase4PeppolBulkSendingReportHandler aReportHandler)
+  {
+    ValueEnforcer.notNull (aBuilders, "Builders");
+    ValueEnforcer.notNull (aReportHandler, "ReportHandler");
+
+    // The endpoints resolved in this run
+    final Map <EndpointKey, CompletableFuture <ResolvedEndpoint>> aEndpoints = new ConcurrentHashMap <> ();
+    final AtomicInteger aSuccessCount = new AtomicInteger (0);
+    int nDocuments = 0;
+    final StopWatch aSW = StopWatch.createdStarted ();
+
+    final ExecutorService aES = Executors.newFixedThreadPool (m_nParallelism, r -> {
+      final Thread t = new Thread (r, "phase4-peppol-bulk-" + THREAD_INDEX.incrementAndGet ());
+      t.setDaemon (true);
+      return t;
+    });
+    try
+    {
+      final ICommonsList <AbstractPeppolUserMessageBuilder <?>> aChunk = new CommonsArrayList <> (m_nChunkSize);
+      while (aBuilders.hasNext ())
+      {
+        aChunk.add (aBuilders.next ());
+        nDocuments++;
+        if (aChunk.size () >= m_nChunkSize)
+        {
+          _sendChunk (aES, aChunk, aEndpoints, aReportHandler, aSuccessCount);
+          aChunk.clear ();
+        }
+      }
+      if (aChunk.isNotEmpty ())
+        _sendChunk (aES, aChunk, aEndpoints, aReportHandler, aSuccessCount);
+    }
+    finally
+    {
+      ExecutorServiceHelper.shutdownAndWaitUntilAllTasksAreFinished (aES);
+      aSW.stop ();
+    }
+
+    LOGGER.info ("Bulk sending of " +
+                 nDocuments +
+                 " Peppol documents to " +
+                 aEndpoints.size () +
+                 " resolved receiver endpoints finished after " +
+                 aSW.getMillis () +
+                 " ms: " +
+                 aSuccessCount.get () +
+                 " succeeded");
+    return aSuccessCount.get ();
+  }
+
+  /**
+   * Send all the documents provided by the stream and wait until all of them are processed. A
+   * document that fails with an exception or error is reported as failed, and does not abort the
+   * run.<br>
+   * Note: the provided builders are modified. The certificate consumer, endpoint URL consumer,
+   * technical contact consumer, sending date time consumer, build message callback and signal
+   * message consumer are wrapped to fill the sending report, while the previously set ones are
+   * still invoked. If the endpoint details are resolved for a group, the endpoint detail provider
+   * is replaced by a constant one. Therefore a builder should not be reused afterwards.
+   *
+   * @param aBuilders
+   *        The fully configured builders of the documents to send. They are consumed chunk by
+   *        chunk and modified. May not be <code>null</code>.
+   * @param aReportHandler
+   *        The handler that is invoked with the sending report of every document. May not be
+   *        <code>null</code>.
+   * @return The number of documents that were sent successfully. Always &ge; 0.
+   */
+  @Nonnegative
+  public int sendAll (@Nonnull final Stream <? extends AbstractPeppolUserMessageBuilder <?>> aBuilders,
+                      @Nonnull final IPhase4PeppolBulkSendingReportHandler aReportHandler)
+  {
+    ValueEnforcer.notNull (aBuilders, "Builders");
+    return sendAll (aBuilders.iterator (), aReportHandler);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("SMLInfo", m_aSMLInfo)
+                                       .append ("Parallelism", m_nParallelism)
+                                       .append ("ChunkSize", m_nChunkSize)
+                                       .getToString ();
+  }
+}
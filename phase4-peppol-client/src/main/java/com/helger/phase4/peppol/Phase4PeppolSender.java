@@ -69,10 +69,12 @@ import com.helger.phase4.CAS4;
 import com.helger.phase4.attachment.AS4OutgoingAttachment;
 import com.helger.phase4.attachment.EAS4CompressionMode;
 import com.helger.phase4.config.AS4Configuration;
+import com.helger.phase4.crypto.AS4CertificateCheckResultCache;
 import com.helger.phase4.dynamicdiscovery.AS4EndpointDetailProviderConstant;
 import com.helger.phase4.dynamicdiscovery.AS4EndpointDetailProviderPeppol;
 import com.helger.phase4.dynamicdiscovery.IAS4EndpointDetailProvider;
 import com.helger.phase4.logging.Phase4LoggerFactory;
+import com.helger.phase4.messaging.http.AS4HttpClientManagerPool;
 import com.helger.phase4.mgr.MetaAS4Manager;
 import com.helger.phase4.model.MessageProperty;
 import com.helger.phase4.profile.peppol.AS4PeppolProfileRegistarSPI;
@@ -420,14 +422,20 @@ public final class Phase4PeppolSender
       LOGGER.debug ("Using the following receiver AP certificate from the SMP: " + aReceiverCert);
 
     final OffsetDateTime aNow = MetaAS4Manager.getTimestampMgr ().getCurrentDateTime ();
-    final ECertificateCheckResult eCertCheckResult = aCAChecker.checkCertificate (aReceiverCert,
-                                                                                  aNow,
-                                                                                  eCacheOSCResult,
-                                                                                  eCheckMode);
+    // Uses the optional cache
+    final AS4CertificateCheckResultCache.CheckResult aCheckResult = AS4CertificateCheckResultCache.checkCertificate (aCAChecker,
+                                                                                                                     aReceiverCert,
+                                                                                                                     aNow,
+                                                                                                                     eCacheOSCResult,
+                                                                                                                     eCheckMode);
+    final ECertificateCheckResult eCertCheckResult = aCheckResult.getResult ();
 
     // Interested in the certificate?
     if (aCertificateConsumer != null)
-      aCertificateConsumer.onCertificateCheckResult (aReceiverCert, aNow, eCertCheckResult);
+      aCertificateConsumer.onCertificateCheckResult (aReceiverCert,
+                                                     aNow,
+                                                     eCertCheckResult,
+                                                     aCheckResult.isFromCache ());
 
     if (eCertCheckResult.isInvalid ())
     {
@@ -516,8 +524,10 @@ public final class Phase4PeppolSender
       {
         as4ProfileID (AS4PeppolProfileRegistarSPI.AS4_PROFILE_ID);
 
-        // Use the Peppol specific timeout settings
-        httpClientFactory (new Phase4PeppolHttpClientSettings ());
+        // Use the Peppol specific timeout settings in a shared factory, so
+        // that open connections can be reused
+        httpClientFactory (AS4HttpClientManagerPool.getSharedHttpClientFactory (Phase4PeppolHttpClientSettings.class.getName (),
+                                                                                Phase4PeppolHttpClientSettings::new));
         agreementRef (PeppolPMode.DEFAULT_AGREEMENT_ID);
         fromPartyIDType (PeppolPMode.DEFAULT_PARTY_TYPE_ID);
         fromRole (CAS4.DEFAULT_INITIATOR_URL);
@@ -786,6 +796,17 @@ public final class Phase4PeppolSender
       return endpointDetailProvider (new AS4EndpointDetailProviderConstant (aCert, sDestURL));
     }
 
+    /**
+     * @return The optional consumer for the retrieved certificate from the endpoint details
+     *         provider. May be <code>null</code>.
+     * @since 3.2.3
+     */
+    @Nullable
+    public final IPhase4PeppolCertificateCheckResultHandler certificateConsumer ()
+    {
+      return m_aCertificateConsumer;
+    }
+
     /**
      * Set an optional Consumer for the retrieved certificate from the endpoint details provider,
      * independent of its usability.
@@ -802,6 +823,17 @@ public final class Phase4PeppolSender
       return thisAsT ();
     }
 
+    /**
+     * @return The optional consumer for the destination AP address retrieved from the endpoint
+     *         details provider. May be <code>null</code>.
+     * @since 3.2.3
+     */
+    @Nullable
+    public final Consumer <String> endpointURLConsumer ()
+    {
+      return m_aAPEndpointURLConsumer;
+    }
+
     /**
      * Set an optional Consumer for the destination AP address retrieved from the endpoint details
      * provider, independent of its usability.
@@ -818,6 +850,17 @@ public final class Phase4PeppolSender
       return thisAsT ();
     }
 
+    /**
+     * @return The optional consumer for the technical contact retrieved from the endpoint details
+     *         provider. May be <code>null</code>.
+     * @since 3.2.3
+     */
+    @Nullable
+    public final Consumer <String> technicalContactConsumer ()
+    {
+      return m_aAPTechnicalContactConsumer;
+    }
+
     /**
      * Set an optional Consumer for the technical contact retrieved from the endpoint details
      * provider, independent of its usability.
@@ -489,6 +489,15 @@ public class Phase4PeppolSendingReport
     m_nOverallDurationMillis = n;
   }
 
+  /**
+   * @return <code>true</code> if sending succeeded, <code>false</code> if not.
+   * @since 3.2.3
+   */
+  public boolean isSendingSuccess ()
+  {
+    return m_bSendingSuccess;
+  }
+
   /**
    * Remember the overall sending success.
    *
@@ -500,6 +509,15 @@ public class Phase4PeppolSendingReport
     m_bSendingSuccess = b;
   }
 
+  /**
+   * @return <code>true</code> if the overall processing succeeded, <code>false</code> if not.
+   * @since 3.2.3
+   */
+  public boolean isOverallSuccess ()
+  {
+    return m_bOverallSuccess;
+  }
+
   /**
    * Remember the overall success. This may differ from the sending success, if e.g. sending
    * succeeded but storing the record for Peppol reporting failed.
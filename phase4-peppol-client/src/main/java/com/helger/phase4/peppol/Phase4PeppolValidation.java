@@ -50,6 +50,7 @@ public final class Phase4PeppolValidation
   // Note to myself: don't create a getter for this registry to avoid outside
   // modification
   private static final IValidationExecutorSetRegistry <IValidationSourceXML> VES_REGISTRY = createDefaultRegistry ();
+  private static final Phase4PeppolValidationService DEFAULT_SERVICE = new Phase4PeppolValidationService (VES_REGISTRY);
 
   private Phase4PeppolValidation ()
   {}
@@ -65,6 +66,18 @@ public final class Phase4PeppolValidation
     return VES_REGISTRY;
   }
 
+  /**
+   * @return The validation service for the default VES registry. It collects the validation
+   *         statistics of all validations performed with the default registry. Never
+   *         <code>null</code>.
+   * @since 3.2.3
+   */
+  @Nonnull
+  public static Phase4PeppolValidationService getDefaultService ()
+  {
+    return DEFAULT_SERVICE;
+  }
+
   /**
    * @return A new {@link ValidationExecutorSetRegistry} initialized with the
    *         Peppol rules only.
@@ -97,14 +110,58 @@ public final class Phase4PeppolValidation
    *         In case e.g. the validation failed. This usually implies, that the
    *         document will NOT be send out.
    * @see #validateOutgoingBusinessDocument(Element,
-   *      IValidationExecutorSetRegistry, DVRCoordinate,
+   *      Phase4PeppolValidationService, DVRCoordinate,
    *      IPhase4PeppolValidationResultHandler)
    */
   public static void validateOutgoingBusinessDocument (@Nonnull final Element aXML,
                                                        @Nonnull final DVRCoordinate aVESID,
                                                        @Nonnull final IPhase4PeppolValidationResultHandler aValidationResultHandler) throws Phase4Exception
   {
-    validateOutgoingBusinessDocument (aXML, VES_REGISTRY, aVESID, aValidationResultHandler);
+    validateOutgoingBusinessDocument (aXML, DEFAULT_SERVICE, aVESID, aValidationResultHandler);
+  }
+
+  /**
+   * Validate the passed DOM element using the provided VESID using the
+   * provided validation service.
+   *
+   * @param aXML
+   *        The XML element to be validated. May not be <code>null</code>.
+   * @param aService
+   *        The validation service to be used. May not be <code>null</code>.
+   * @param aVESID
+   *        The {@link DVRCoordinate} to be used. Must be contained in the
+   *        registry of the service. May not be <code>null</code>.
+   * @param aValidationResultHandler
+   *        The validation result handler to be used. May not be
+   *        <code>null</code>.
+   * @throws Phase4Exception
+   *         In case e.g. the validation failed. This usually implies, that the
+   *         document will NOT be send out.
+   * @since 3.2.3
+   */
+  public static void validateOutgoingBusinessDocument (@Nonnull final Element aXML,
+                                                       @Nonnull final Phase4PeppolValidationService aService,
+                                                       @Nonnull final DVRCoordinate aVESID,
+                                                       @Nonnull final IPhase4PeppolValidationResultHandler aValidationResultHandler) throws Phase4Exception
+  {
+    ValueEnforcer.notNull (aXML, "XMLElement");
+    ValueEnforcer.notNull (aService, "Service");
+    ValueEnforcer.notNull (aVESID, "VESID");
+    ValueEnforcer.notNull (aValidationResultHandler, "ValidationResultHandler");
+
+    _handleValidationResult (aService.validate (aXML, aVESID), aValidationResultHandler);
+  }
+
+  private static void _handleValidationResult (@Nonnull final ValidationResultList aValidationResult,
+                                               @Nonnull final IPhase4PeppolValidationResultHandler aValidationResultHandler) throws Phase4Exception
+  {
+    if (aValidationResult.containsAtLeastOneError ())
+    {
+      aValidationResultHandler.onValidationErrors (aValidationResult);
+      LOGGER.warn ("Continue to send AS4 message, although validation errors are contained!");
+    }
+    else
+      aValidationResultHandler.onValidationSuccess (aValidationResult);
   }
 
   /**
@@ -145,12 +202,6 @@ public final class Phase4PeppolValidation
                                                                                                  aVES,
                                                                                                  ValidationSourceXML.create (null,
                                                                                                                              aXML));
-    if (aValidationResult.containsAtLeastOneError ())
-    {
-      aValidationResultHandler.onValidationErrors (aValidationResult);
-      LOGGER.warn ("Continue to send AS4 message, although validation errors are contained!");
-    }
-    else
-      aValidationResultHandler.onValidationSuccess (aValidationResult);
+    _handleValidationResult (aValidationResult, aValidationResultHandler);
   }
 }
@@ -0,0 +1,405 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.peppol;
+
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.WillClose;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.annotation.ReturnsMutableCopy;
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.commons.timing.StopWatch;
+import com.helger.diver.api.coord.DVRCoordinate;
+import com.helger.phase4.logging.Phase4LoggerFactory;
+import com.helger.phase4.util.Phase4Exception;
+import com.helger.phive.api.execute.ValidationExecutionManager;
+import com.helger.phive.api.executor.IValidationExecutor;
+import com.helger.phive.api.executorset.IValidationExecutorSet;
+import com.helger.phive.api.executorset.IValidationExecutorSetRegistry;
+import com.helger.phive.api.result.ValidationResultList;
+import com.helger.phive.api.validity.IValidityDeterminator;
+import com.helger.phive.xml.source.IValidationSourceXML;
+import com.helger.phive.xml.source.ValidationSourceXML;
+import com.helger.xml.serialize.read.DOMReader;
+
+/**
+ * A validation service for outgoing Peppol business documents that is bound to a single VES
+ * registry. Compared to the plain {@link Phase4PeppolValidation} methods it offers:
+ * <ul>
+ * <li>Warming up of VESIDs (see {@link #warmUp(DVRCoordinate)}), so that the XML Schemas and the
+ * compiled Schematron XSLTs are in the phive caches before the first document is sent.</li>
+ * <li>Asynchronous validation on a configurable {@link Executor}, so that multiple documents can
+ * be validated concurrently.</li>
+ * <li>Validation of documents provided as an {@link InputStream}.</li>
+ * <li>Timing statistics per VESID (see {@link #getAllStatistics()}), to identify the rule sets
+ * that dominate the sending latency.</li>
+ * </ul>
+ * The instance for the default registry is available via
+ * {@link Phase4PeppolValidation#getDefaultService()}.
+ *
+ * @author Philip Helger
+ * @since 3.2.3
+ */
+@ThreadSafe
+public class Phase4PeppolValidationService
+{
+  public static final int DEFAULT_THREAD_COUNT = Math.max (2, Runtime.getRuntime ().availableProcessors ());
+  public static final int DEFAULT_QUEUE_CAPACITY = 1_000;
+
+  private static final Logger LOGGER = Phase4LoggerFactory.getLogger (Phase4PeppolValidationService.class);
+  private static final AtomicInteger THREAD_INDEX = new AtomicInteger (0);
+
+  private static final class VESMetrics
+  {
+    private final LongAdder m_aValidations = new LongAdder ();
+    private final LongAdder m_aErrors = new LongAdder ();
+    private final LongAdder m_aTotalNanos = new LongAdder ();
+    private final AtomicLong m_aMaxNanos = new AtomicLong (0);
+
+    void add (final long nNanos, final boolean bHasErrors)
+    {
+      m_aValidations.increment ();
+      if (bHasErrors)
+        m_aErrors.increment ();
+      m_aTotalNanos.add (nNanos);
+      m_aMaxNanos.accumulateAndGet (nNanos, Math::max);
+    }
+  }
+
+  private final IValidationExecutorSetRegistry <IValidationSourceXML> m_aVESRegistry;
+  private final Executor m_aExecutor;
+  private final Map <DVRCoordinate, VESMetrics> m_aMetrics = new ConcurrentHashMap <> ();
+
+  /**
+   * Constructor using a dedicated executor for asynchronous validations, as created by
+   * {@link #createDefaultExecutor()}.
+   *
+   * @param aVESRegistry
+   *        The VES registry the VESIDs are looked up in. May not be <code>null</code>.
+   */
+  public Phase4PeppolValidationService (@Nonnull final IValidationExecutorSetRegistry <IValidationSourceXML> aVESRegistry)
+  {
+    this (aVESRegistry, createDefaultExecutor ());
+  }
+
+  /**
+   * Constructor
+   *
+   * @param aVESRegistry
+   *        The VES registry the VESIDs are looked up in. May not be <code>null</code>.
+   * @param aExecutor
+   *        The executor to be used for asynchronous validations. The lifecycle of the executor is
+   *        not managed by this class. May not be <code>null</code>.
+   */
+  public Phase4PeppolValidationService (@Nonnull final IValidationExecutorSetRegistry <IValidationSourceXML> aVESRegistry,
+                                        @Nonnull final Executor aExecutor)
+  {
+    ValueEnforcer.notNull (aVESRegistry, "VESRegistry");
+    ValueEnforcer.notNull (aExecutor, "Executor");
+    m_aVESRegistry = aVESRegistry;
+    m_aExecutor = aExecutor;
+  }
+
+  /**
+   * Create the executor that is used for asynchronous validations by default. It uses at most
+   * {@link #DEFAULT_THREAD_COUNT} daemon threads, which are stopped when idle, and queues at most
+   * {@link #DEFAULT_QUEUE_CAPACITY} validations. Further validations are rejected, so that the
+   * returned future is completed exceptionally.
+   *
+   * @return A new executor. Never <code>null</code>.
+   */
+  @Nonnull
+  public static ExecutorService createDefaultExecutor ()
+  {
+    // The default policy throws a RejectedExecutionException
+    final ThreadPoolExecutor ret = new ThreadPoolExecutor (DEFAULT_THREAD_COUNT,
+                                                           DEFAULT_THREAD_COUNT,
+                                                           60,
+                                                           TimeUnit.SECONDS,
+                                                           new ArrayBlockingQueue <> (DEFAULT_QUEUE_CAPACITY),
+                                                           r -> {
+                                                             final Thread t = new Thread (r,
+                                                                                          "phase4-peppol-validation-" +
+                                                                                             THREAD_INDEX.incrementAndGet ());
+                                                             t.setDaemon (true);
+                                                             return t;
+                                                           });
+    ret.allowCoreThreadTimeOut (true);
+    return ret;
+  }
+
+  /**
+   * @return The VES registry passed in the constructor. Never <code>null</code>.
+   */
+  @Nonnull
+  public final IValidationExecutorSetRegistry <IValidationSourceXML> getVESRegistry ()
+  {
+    return m_aVESRegistry;
+  }
+
+  /**
+   * @return The executor used for asynchronous validations. Never <code>null</code>.
+   */
+  @Nonnull
+  public final Executor getExecutor ()
+  {
+    return m_aExecutor;
+  }
+
+  @Nonnull
+  private IValidationExecutorSet <IValidationSourceXML> _getVES (@Nonnull final DVRCoordinate aVESID) throws Phase4Exception
+  {
+    final IValidationExecutorSet <IValidationSourceXML> aVES = m_aVESRegistry.getOfID (aVESID);
+    if (aVES == null)
+      throw new Phase4Exception ("The validation executor set ID " + aVESID.getAsSingleID () + " is unknown!")
+                                                                                                              .setRetryFeasible (false);
+    return aVES;
+  }
+
+  /**
+   * Make sure all cacheable validation artefacts (XML Schemas and Schematrons) of the provided
+   * VESID are loaded and compiled. This is usually called at startup for all VESIDs that are
+   * expected to be used, to avoid that the first document of each VESID pays the compilation
+   * costs.
+   *
+   * @param aVESID
+   *        The VESID to warm up. May not be <code>null</code>.
+   * @throws Phase4Exception
+   *         If the VESID is unknown
+   */
+  public void warmUp (@Nonnull final DVRCoordinate aVESID) throws Phase4Exception
+  {
+    ValueEnforcer.notNull (aVESID, "VESID");
+
+    final IValidationExecutorSet <IValidationSourceXML> aVES = _getVES (aVESID);
+    final StopWatch aSW = StopWatch.createdStarted ();
+    for (final IValidationExecutor <IValidationSourceXML> aExecutor : aVES.getAllExecutors ())
+      if (aExecutor instanceof IValidationExecutor.ICacheSupport)
+        ((IValidationExecutor.ICacheSupport) aExecutor).ensureItemIsInCache ();
+    aSW.stop ();
+
+    if (LOGGER.isDebugEnabled ())
+      LOGGER.debug ("Warmed up VESID " + aVESID.getAsSingleID () + " in " + aSW.getMillis () + " milliseconds");
+  }
+
+  /**
+   * Warm up all provided VESIDs. Unknown VESIDs and errors are logged and ignored.
+   *
+   * @param aVESIDs
+   *        The VESIDs to warm up. May not be <code>null</code>.
+   * @return The number of VESIDs that were successfully warmed up. Always &ge; 0.
+   * @see #warmUp(DVRCoordinate)
+   */
+  @Nonnegative
+  public int warmUpAll (@Nonnull final Iterable <? extends DVRCoordinate> aVESIDs)
+  {
+    ValueEnforcer.notNull (aVESIDs, "VESIDs");
+
+    int ret = 0;
+    for (final DVRCoordinate aVESID : aVESIDs)
+      try
+      {
+        warmUp (aVESID);
+        ret++;
+      }
+      catch (final Phase4Exception | RuntimeException ex)
+      {
+        LOGGER.warn ("Failed to warm up VESID " + aVESID.getAsSingleID () + ": " + ex.getMessage ());
+      }
+    return ret;
+  }
+
+  /**
+   * Validate the passed DOM element using the provided VESID. The duration of the validation is
+   * recorded in the statistics of the VESID.
+   *
+   * @param aXML
+   *        The XML element to be validated. May not be <code>null</code>.
+   * @param aVESID
+   *        The VESID to be used. Must be contained in the registry of this service. May not be
+   *        <code>null</code>.
+   * @return The validation results. Never <code>null</code>.
+   * @throws Phase4Exception
+   *         If the VESID is unknown
+   */
+  @Nonnull
+  public ValidationResultList validate (@Nonnull final Element aXML, @Nonnull final DVRCoordinate aVESID) throws Phase4Exception
+  {
+    ValueEnforcer.notNull (aXML, "XMLElement");
+    ValueEnforcer.notNull (aVESID, "VESID");
+
+    final IValidationExecutorSet <IValidationSourceXML> aVES = _getVES (aVESID);
+
+    final long nStart = System.nanoTime ();
+    final ValidationResultList ret = ValidationExecutionManager.executeValidation (IValidityDeterminator.createDefault (),
+                                                                                  aVES,
+                                                                                  ValidationSourceXML.create (null,
+                                                                                                              aXML));
+    final long nNanos = System.nanoTime () - nStart;
+    m_aMetrics.computeIfAbsent (aVESID, k -> new VESMetrics ()).add (nNanos, ret.containsAtLeastOneError ());
+    return ret;
+  }
+
+  /**
+   * Parse the passed input stream as XML and validate it using the provided VESID. Only the
+   * validation time is recorded in the statistics of the VESID.
+   *
+   * @param aIS
+   *        The input stream to read the XML from. Is closed by this method. May not be
+   *        <code>null</code>.
+   * @param aVESID
+   *        The VESID to be used. Must be contained in the registry of this service. May not be
+   *        <code>null</code>.
+   * @return The validation results. Never <code>null</code>.
+   * @throws Phase4Exception
+   *         If the VESID is unknown or if the input stream cannot be parsed as XML
+   */
+  @Nonnull
+  public ValidationResultList validate (@Nonnull @WillClose final InputStream aIS,
+                                        @Nonnull final DVRCoordinate aVESID) throws Phase4Exception
+  {
+    ValueEnforcer.notNull (aIS, "InputStream");
+    ValueEnforcer.notNull (aVESID, "VESID");
+
+    final Document aDoc = DOMReader.readXMLDOM (aIS);
+    if (aDoc == null || aDoc.getDocumentElement () == null)
+      throw new Phase4Exception ("Failed to parse the document to be validated with VESID " +
+                                 aVESID.getAsSingleID () +
+                                 " as XML").setRetryFeasible (false);
+    return validate (aDoc.getDocumentElement (), aVESID);
+  }
+
+  /**
+   * Validate the passed DOM element asynchronously on the executor of this service. The element
+   * may not be modified until the returned future is completed.
+   *
+   * @param aXML
+   *        The XML element to be validated. May not be <code>null</code>.
+   * @param aVESID
+   *        The VESID to be used. May not be <code>null</code>.
+   * @return The future that is completed with the validation results or exceptionally (e.g. with a
+   *         {@link Phase4Exception}). Never <code>null</code>.
+   * @see #validate(Element, DVRCoordinate)
+   */
+  @Nonnull
+  public CompletableFuture <ValidationResultList> validateAsync (@Nonnull final Element aXML,
+                                                                 @Nonnull final DVRCoordinate aVESID)
+  {
+    ValueEnforcer.notNull (aXML, "XMLElement");
+    ValueEnforcer.notNull (aVESID, "VESID");
+
+    final CompletableFuture <ValidationResultList> ret = new CompletableFuture <> ();
+    try
+    {
+      m_aExecutor.execute ( () -> {
+        try
+        {
+          ret.complete (validate (aXML, aVESID));
+        }
+        catch (final Throwable t)
+        {
+          // Never leave the future incomplete
+          ret.completeExceptionally (t);
+        }
+      });
+    }
+    catch (final RuntimeException ex)
+    {
+      // E.g. rejected execution
+      ret.completeExceptionally (ex);
+    }
+    return ret;
+  }
+
+  /**
+   * @param aVESID
+   *        The VESID to get the statistics for. May be <code>null</code>.
+   * @return The statistics of the provided VESID or <code>null</code> if no validation was
+   *         performed with it.
+   */
+  @Nullable
+  public Phase4PeppolValidationStatistics getStatistics (@Nullable final DVRCoordinate aVESID)
+  {
+    if (aVESID == null)
+      return null;
+    final VESMetrics aMetrics = m_aMetrics.get (aVESID);
+    return aMetrics == null ? null : _createStatistics (aVESID, aMetrics);
+  }
+
+  @Nonnull
+  private static Phase4PeppolValidationStatistics _createStatistics (@Nonnull final DVRCoordinate aVESID,
+                                                                     @Nonnull final VESMetrics aMetrics)
+  {
+    return new Phase4PeppolValidationStatistics (aVESID,
+                                                 aMetrics.m_aValidations.sum (),
+                                                 aMetrics.m_aErrors.sum (),
+                                                 aMetrics.m_aTotalNanos.sum (),
+                                                 aMetrics.m_aMaxNanos.get ());
+  }
+
+  /**
+   * @return The statistics of all VESIDs used so far, sorted descending by the total validation
+   *         duration. Never <code>null</code>.
+   */
+  @Nonnull
+  @ReturnsMutableCopy
+  public ICommonsList <Phase4PeppolValidationStatistics> getAllStatistics ()
+  {
+    final ICommonsList <Phase4PeppolValidationStatistics> ret = new CommonsArrayList <> ();
+    m_aMetrics.forEach ( (k, v) -> ret.add (_createStatistics (k, v)));
+    ret.sort ( (x, y) -> y.getTotalDuration ().compareTo (x.getTotalDuration ()));
+    return ret;
+  }
+
+  /**
+   * Remove all collected statistics.
+   */
+  public void resetStatistics ()
+  {
+    m_aMetrics.clear ();
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("VESRegistry", m_aVESRegistry)
+                                       .append ("Executor", m_aExecutor)
+                                       .getToString ();
+  }
+}
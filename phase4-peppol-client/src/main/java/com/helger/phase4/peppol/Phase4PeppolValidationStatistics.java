@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.peppol;
+
+import java.time.Duration;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.string.ToStringGenerator;
+import com.helger.diver.api.coord.DVRCoordinate;
+
+/**
+ * Immutable snapshot of the validation statistics of a single VESID, as collected by
+ * {@link Phase4PeppolValidationService}.
+ *
+ * @author Philip Helger
+ * @since 3.2.3
+ */
+@Immutable
+public final class Phase4PeppolValidationStatistics
+{
+  private final DVRCoordinate m_aVESID;
+  private final long m_nValidationCount;
+  private final long m_nErrorCount;
+  private final long m_nTotalNanos;
+  private final long m_nMaxNanos;
+
+  public Phase4PeppolValidationStatistics (@Nonnull final DVRCoordinate aVESID,
+                                           @Nonnegative final long nValidationCount,
+                                           @Nonnegative final long nErrorCount,
+                                           @Nonnegative final long nTotalNanos,
+                                           @Nonnegative final long nMaxNanos)
+  {
+    ValueEnforcer.notNull (aVESID, "VESID");
+    ValueEnforcer.isGE0 (nValidationCount, "ValidationCount");
+    ValueEnforcer.isGE0 (nErrorCount, "ErrorCount");
+    ValueEnforcer.isGE0 (nTotalNanos, "TotalNanos");
+    ValueEnforcer.isGE0 (nMaxNanos, "MaxNanos");
+    m_aVESID = aVESID;
+    m_nValidationCount = nValidationCount;
+    m_nErrorCount = nErrorCount;
+    m_nTotalNanos = nTotalNanos;
+    m_nMaxNanos = nMaxNanos;
+  }
+
+  /**
+   * @return The VESID the statistics belong to. Never <code>null</code>.
+   */
+  @Nonnull
+  public DVRCoordinate getVESID ()
+  {
+    return m_aVESID;
+  }
+
+  /**
+   * @return The number of validations performed with this VESID. Always &ge; 0.
+   */
+  @Nonnegative
+  public long getValidationCount ()
+  {
+    return m_nValidationCount;
+  }
+
+  /**
+   * @return The number of validations that contained at least one error. Always &ge; 0.
+   */
+  @Nonnegative
+  public long getErrorCount ()
+  {
+    return m_nErrorCount;
+  }
+
+  /**
+   * @return The total duration of all validations with this VESID. Never <code>null</code>.
+   */
+  @Nonnull
+  public Duration getTotalDuration ()
+  {
+    return Duration.ofNanos (m_nTotalNanos);
+  }
+
+  /**
+   * @return The average duration of a single validation with this VESID. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public Duration getAverageDuration ()
+  {
+    return m_nValidationCount == 0 ? Duration.ZERO : Duration.ofNanos (m_nTotalNanos / m_nValidationCount);
+  }
+
+  /**
+   * @return The duration of the slowest validation with this VESID. Never <code>null</code>.
+   */
+  @Nonnull
+  public Duration getMaxDuration ()
+  {
+    return Duration.ofNanos (m_nMaxNanos);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return new ToStringGenerator (null).append ("VESID", m_aVESID.getAsSingleID ())
+                                       .append ("ValidationCount", m_nValidationCount)
+                                       .append ("ErrorCount", m_nErrorCount)
+                                       .append ("TotalDuration", getTotalDuration ())
+                                       .append ("AverageDuration", getAverageDuration ())
+                                       .append ("MaxDuration", getMaxDuration ())
+                                       .getToString ();
+  }
+}
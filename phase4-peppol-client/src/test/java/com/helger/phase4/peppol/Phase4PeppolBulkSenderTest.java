@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.peppol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.CommonsVector;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.io.resource.ClassPathResource;
+import com.helger.commons.state.EContinue;
+import com.helger.peppol.sml.ESML;
+import com.helger.peppolid.IDocumentTypeIdentifier;
+import com.helger.peppolid.IParticipantIdentifier;
+import com.helger.peppolid.IProcessIdentifier;
+import com.helger.phase4.dynamicdiscovery.IAS4EndpointDetailProvider;
+import com.helger.phase4.peppol.Phase4PeppolSender.PeppolUserMessageBuilder;
+import com.helger.phase4.util.Phase4Exception;
+import com.helger.scope.mock.ScopeTestRule;
+import com.helger.security.keystore.EKeyStoreType;
+import com.helger.security.keystore.KeyStoreHelper;
+
+/**
+ * Test class for class {@link Phase4PeppolBulkSender}. No document is really sent, because the
+ * sender interrupt stops every document right before the transmission.
+ *
+ * @author Philip Helger
+ */
+public final class Phase4PeppolBulkSenderTest
+{
+  private static final String RECEIVER_FAIL = "9915:bulk-fail";
+  private static final String RECEIVER_ERROR = "9915:bulk-error";
+  private static final String DEST_URL = "http://127.0.0.1:1/as4";
+
+  @Rule
+  public final ScopeTestRule m_aRule = new ScopeTestRule ();
+
+  /**
+   * Endpoint detail provider that counts the lookups, and that fails for special receivers.
+   */
+  private static final class CountingEndpointDetailProvider implements IAS4EndpointDetailProvider
+  {
+    private final X509Certificate m_aCert;
+    private final AtomicInteger m_aLookups = new AtomicInteger (0);
+
+    CountingEndpointDetailProvider (@Nonnull final X509Certificate aCert)
+    {
+      m_aCert = aCert;
+    }
+
+    public void init (@Nonnull final IDocumentTypeIdentifier aDocTypeID,
+                      @Nonnull final IProcessIdentifier aProcID,
+                      @Nonnull final IParticipantIdentifier aReceiverID) throws Phase4Exception
+    {
+      m_aLookups.incrementAndGet ();
+      if (aReceiverID.getURIEncoded ().endsWith (RECEIVER_FAIL))
+        throw new Phase4Exception ("Lookup failed for " + aReceiverID.getURIEncoded ());
+      if (aReceiverID.getURIEncoded ().endsWith (RECEIVER_ERROR))
+        throw new LinkageError ("Lookup error for " + aReceiverID.getURIEncoded ());
+    }
+
+    @Nullable
+    public X509Certificate getReceiverAPCertificate ()
+    {
+      return m_aCert;
+    }
+
+    @Nonnull
+    public String getReceiverAPEndpointURL ()
+    {
+      return DEST_URL;
+    }
+
+    @Nullable
+    public String getReceiverTechnicalContact ()
+    {
+      return null;
+    }
+  }
+
+  @Nonnull
+  private static X509Certificate _getCert () throws Exception
+  {
+    final KeyStore aKS = KeyStoreHelper.loadKeyStoreDirect (EKeyStoreType.PKCS12,
+                                                            "peppol-expired-ap-cert-pw-peppol.p12",
+                                                            "peppol".toCharArray ());
+    return (X509Certificate) aKS.getCertificate ("cert");
+  }
+
+  @Nonnull
+  private static PeppolUserMessageBuilder _createBuilder (@Nonnull final IAS4EndpointDetailProvider aProvider,
+                                                          @Nonnull final String sReceiverID)
+  {
+    return Phase4PeppolSender.builder ()
+                             .documentTypeID (Phase4PeppolSender.IF.createDocumentTypeIdentifierWithDefaultScheme ("urn:oasis:names:specification:ubl:schema:xsd:Invoice-2::Invoice##urn:cen.eu:en16931:2017#compliant#urn:fdc:peppol.eu:2017:poacc:billing:3.0::2.1"))
+                             .processID (Phase4PeppolSender.IF.createProcessIdentifierWithDefaultScheme ("urn:fdc:peppol.eu:2017:poacc:billing:01:1.0"))
+                             .senderParticipantID (Phase4PeppolSender.IF.createParticipantIdentifierWithDefaultScheme ("9915:phase4-test-sender"))
+                             .receiverParticipantID (Phase4PeppolSender.IF.createParticipantIdentifierWithDefaultScheme (sReceiverID))
+                             .senderPartyID ("POP000306")
+                             .countryC1 ("AT")
+                             .payload (new ClassPathResource ("external/examples/base-example.xml"))
+                             .endpointDetailProvider (aProvider)
+                             .checkReceiverAPCertificate (false)
+                             .senderInterrupt ( () -> EContinue.BREAK);
+  }
+
+  @Test
+  public void testGroupedLookup () throws Exception
+  {
+    final CountingEndpointDetailProvider aProvider = new CountingEndpointDetailProvider (_getCert ());
+    final ICommonsList <PeppolUserMessageBuilder> aBuilders = new CommonsArrayList <> ();
+    for (int i = 0; i < 3; ++i)
+    {
+      aBuilders.add (_createBuilder (aProvider, "9915:bulk-a"));
+      aBuilders.add (_createBuilder (aProvider, "9915:bulk-b"));
+    }
+
+    final ICommonsList <Phase4PeppolSendingReport> aReports = new CommonsVector <> ();
+    final int nSuccess = new Phase4PeppolBulkSender (ESML.DIGIT_TEST).setParallelism (4)
+                                                                     .sendAll (aBuilders.iterator (),
+                                                                               (b, r) -> aReports.add (r));
+    // Interrupted before sending
+    assertEquals (0, nSuccess);
+    assertEquals (6, aReports.size ());
+    // One lookup per receiver
+    assertEquals (2, aProvider.m_aLookups.get ());
+    for (final Phase4PeppolSendingReport aReport : aReports)
+    {
+      assertTrue (aReport.hasC3EndpointURL ());
+      assertTrue (aReport.hasC3Cert ());
+      assertFalse (aReport.isSendingSuccess ());
+      assertFalse (aReport.isOverallSuccess ());
+    }
+  }
+
+  @Test
+  public void testDifferentProvidersAreNotGrouped () throws Exception
+  {
+    final X509Certificate aCert = _getCert ();
+    final CountingEndpointDetailProvider aProvider1 = new CountingEndpointDetailProvider (aCert);
+    final CountingEndpointDetailProvider aProvider2 = new CountingEndpointDetailProvider (aCert);
+    final ICommonsList <PeppolUserMessageBuilder> aBuilders = new CommonsArrayList <> ();
+    aBuilders.add (_createBuilder (aProvider1, "9915:bulk-a"));
+    aBuilders.add (_createBuilder (aProvider2, "9915:bulk-a"));
+    aBuilders.add (_createBuilder (aProvider1, "9915:bulk-a"));
+
+    final AtomicInteger aReportCount = new AtomicInteger (0);
+    new Phase4PeppolBulkSender (ESML.DIGIT_TEST).sendAll (aBuilders.iterator (),
+                                                          (b, r) -> aReportCount.incrementAndGet ());
+    assertEquals (3, aReportCount.get ());
+    assertEquals (1, aProvider1.m_aLookups.get ());
+    assertEquals (1, aProvider2.m_aLookups.get ());
+  }
+
+  @Test
+  public void testLookupFailureIsNotCached () throws Exception
+  {
+    final CountingEndpointDetailProvider aProvider = new CountingEndpointDetailProvider (_getCert ());
+    final ICommonsList <PeppolUserMessageBuilder> aBuilders = new CommonsArrayList <> ();
+    for (int i = 0; i < 3; ++i)
+      aBuilders.add (_createBuilder (aProvider, RECEIVER_FAIL));
+
+    final ICommonsList <Phase4PeppolSendingReport> aReports = new CommonsVector <> ();
+    // Sequentially, so that every document fails on its own lookup
+    final int nSuccess = new Phase4PeppolBulkSender (ESML.DIGIT_TEST).setParallelism (1)
+                                                                     .sendAll (aBuilders.iterator (),
+                                                                               (b, r) -> aReports.add (r));
+    assertEquals (0, nSuccess);
+    assertEquals (3, aReports.size ());
+    // The failed lookup is retried by every document
+    assertEquals (3, aProvider.m_aLookups.get ());
+    for (final Phase4PeppolSendingReport aReport : aReports)
+    {
+      assertTrue (aReport.hasAS4SendingException ());
+      assertFalse (aReport.hasC3EndpointURL ());
+      assertFalse (aReport.isOverallSuccess ());
+    }
+  }
+
+  @Test
+  public void testReportsOfAllChunks () throws Exception
+  {
+    final CountingEndpointDetailProvider aProvider = new CountingEndpointDetailProvider (_getCert ());
+    final ICommonsList <PeppolUserMessageBuilder> aBuilders = new CommonsArrayList <> ();
+    for (int i = 0; i < 5; ++i)
+      aBuilders.add (_createBuilder (aProvider, "9915:bulk-a"));
+    aBuilders.add (_createBuilder (aProvider, RECEIVER_FAIL));
+
+    final AtomicInteger aReportCount = new AtomicInteger (0);
+    final int nSuccess = new Phase4PeppolBulkSender (ESML.DIGIT_TEST).setParallelism (2)
+                                                                     .setChunkSize (2)
+                                                                     .sendAll (aBuilders.stream (), (b, r) -> {
+                                                                       assertNotNull (b);
+                                                                       aReportCount.incrementAndGet ();
+                                                                       // Must not stop the run
+                                                                       throw new IllegalStateException ("Report handler error");
+                                                                     });
+    assertEquals (0, nSuccess);
+    assertEquals (6, aReportCount.get ());
+    // The successful lookup is reused across chunks, the failed one is not cached
+    assertEquals (2, aProvider.m_aLookups.get ());
+  }
+
+  @Test
+  public void testErrorIsReported () throws Exception
+  {
+    final CountingEndpointDetailProvider aProvider = new CountingEndpointDetailProvider (_getCert ());
+    final ICommonsList <PeppolUserMessageBuilder> aBuilders = new CommonsArrayList <> ();
+    aBuilders.add (_createBuilder (aProvider, RECEIVER_ERROR));
+    aBuilders.add (_createBuilder (aProvider, "9915:bulk-a"));
+
+    final ICommonsList <Phase4PeppolSendingReport> aReports = new CommonsVector <> ();
+    // The Error must not abort the run
+    final int nSuccess = new Phase4PeppolBulkSender (ESML.DIGIT_TEST).sendAll (aBuilders.iterator (),
+                                                                               (b, r) -> aReports.add (r));
+    assertEquals (0, nSuccess);
+    assertEquals (2, aReports.size ());
+    int nErrors = 0;
+    for (final Phase4PeppolSendingReport aReport : aReports)
+    {
+      if (aReport.hasAS4SendingException ())
+        nErrors++;
+      assertFalse (aReport.isOverallSuccess ());
+    }
+    // Only the lookup of the first document failed
+    assertEquals (1, nErrors);
+    assertEquals (2, aProvider.m_aLookups.get ());
+  }
+}
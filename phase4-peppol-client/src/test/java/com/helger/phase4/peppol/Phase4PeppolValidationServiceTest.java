@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.peppol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.io.resource.ClassPathResource;
+import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
+import com.helger.diver.api.coord.DVRCoordinate;
+import com.helger.phase4.util.Phase4Exception;
+import com.helger.phive.api.executorset.ValidationExecutorSetRegistry;
+import com.helger.phive.api.result.ValidationResultList;
+import com.helger.phive.peppol.PeppolValidation2024_11;
+import com.helger.phive.xml.source.IValidationSourceXML;
+import com.helger.xml.serialize.read.DOMReader;
+
+/**
+ * Test class for class {@link Phase4PeppolValidationService}.
+ *
+ * @author Philip Helger
+ */
+public final class Phase4PeppolValidationServiceTest
+{
+  private static final DVRCoordinate VESID = PeppolValidation2024_11.VID_OPENPEPPOL_INVOICE_UBL_V3;
+  private static final ClassPathResource EXAMPLE = new ClassPathResource ("external/examples/base-example.xml");
+
+  @Test
+  public void testWarmUp () throws Exception
+  {
+    final Phase4PeppolValidationService aService = new Phase4PeppolValidationService (Phase4PeppolValidation.getDefaultRegistry ());
+    aService.warmUp (VESID);
+    assertEquals (1, aService.warmUpAll (new CommonsArrayList <> (VESID)));
+    // Warming up is not a validation
+    assertNull (aService.getStatistics (VESID));
+
+    final Phase4PeppolValidationService aEmptyService = new Phase4PeppolValidationService (new ValidationExecutorSetRegistry <> ());
+    // Unknown VESIDs are ignored
+    assertEquals (0, aEmptyService.warmUpAll (new CommonsArrayList <> (VESID)));
+    try
+    {
+      aEmptyService.warmUp (VESID);
+      fail ();
+    }
+    catch (final Phase4Exception ex)
+    {
+      // Unknown VESID
+    }
+  }
+
+  @Test
+  public void testValidateStream () throws Exception
+  {
+    final Phase4PeppolValidationService aService = new Phase4PeppolValidationService (Phase4PeppolValidation.getDefaultRegistry ());
+    final ValidationResultList aResults = aService.validate (EXAMPLE.getInputStream (), VESID);
+    assertNotNull (aResults);
+    assertFalse (aResults.isEmpty ());
+
+    try
+    {
+      aService.validate (new NonBlockingByteArrayInputStream ("<no-xml".getBytes (StandardCharsets.UTF_8)), VESID);
+      fail ();
+    }
+    catch (final Phase4Exception ex)
+    {
+      // Not parsable
+    }
+    // Only the successfully parsed document is counted
+    assertEquals (1, aService.getStatistics (VESID).getValidationCount ());
+  }
+
+  @Test
+  public void testValidateAsync () throws Exception
+  {
+    final Document aDoc = DOMReader.readXMLDOM (EXAMPLE);
+    assertNotNull (aDoc);
+
+    final Phase4PeppolValidationService aService = new Phase4PeppolValidationService (Phase4PeppolValidation.getDefaultRegistry ());
+    final CompletableFuture <ValidationResultList> f1 = aService.validateAsync (aDoc.getDocumentElement (), VESID);
+    final CompletableFuture <ValidationResultList> f2 = aService.validateAsync (aDoc.getDocumentElement (), VESID);
+    assertEquals (f1.get ().containsAtLeastOneError (), f2.get ().containsAtLeastOneError ());
+
+    // Unknown VESID
+    final Phase4PeppolValidationService aEmptyService = new Phase4PeppolValidationService (new ValidationExecutorSetRegistry <IValidationSourceXML> ());
+    try
+    {
+      aEmptyService.validateAsync (aDoc.getDocumentElement (), VESID).get ();
+      fail ();
+    }
+    catch (final ExecutionException ex)
+    {
+      assertTrue (ex.getCause () instanceof Phase4Exception);
+    }
+  }
+
+  @Test
+  public void testStatistics () throws Exception
+  {
+    final Document aDoc = DOMReader.readXMLDOM (EXAMPLE);
+    assertNotNull (aDoc);
+
+    final Phase4PeppolValidationService aService = new Phase4PeppolValidationService (Phase4PeppolValidation.getDefaultRegistry ());
+    assertNull (aService.getStatistics (VESID));
+    assertNull (aService.getStatistics (null));
+    assertTrue (aService.getAllStatistics ().isEmpty ());
+
+    final boolean bHasErrors = aService.validate (aDoc.getDocumentElement (), VESID).containsAtLeastOneError ();
+    aService.validate (aDoc.getDocumentElement (), VESID);
+
+    final Phase4PeppolValidationStatistics aStats = aService.getStatistics (VESID);
+    assertNotNull (aStats);
+    assertEquals (VESID, aStats.getVESID ());
+    assertEquals (2, aStats.getValidationCount ());
+    assertEquals (bHasErrors ? 2 : 0, aStats.getErrorCount ());
+    assertTrue (aStats.getMaxDuration ().compareTo (aStats.getTotalDuration ()) <= 0);
+    assertEquals (1, aService.getAllStatistics ().size ());
+
+    aService.resetStatistics ();
+    assertNull (aService.getStatistics (VESID));
+    assertTrue (aService.getAllStatistics ().isEmpty ());
+  }
+}
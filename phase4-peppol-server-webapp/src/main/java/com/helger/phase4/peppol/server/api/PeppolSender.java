@@ -26,6 +26,7 @@ import com.helger.commons.annotation.Nonempty;
 import com.helger.commons.system.EJavaVersion;
 import com.helger.commons.timing.StopWatch;
 import com.helger.commons.wrapper.Wrapper;
+import com.helger.httpclient.HttpClientFactory;
 import com.helger.peppol.sbdh.PeppolSBDHData;
 import com.helger.peppol.sml.ISMLInfo;
 import com.helger.peppolid.IDocumentTypeIdentifier;
@@ -59,6 +60,9 @@ import com.helger.xml.serialize.read.DOMReader;
 public final class PeppolSender
 {
   private static final Logger LOGGER = Phase4LoggerFactory.getLogger (PeppolSender.class);
+  // One shared factory, so that the pooled HTTP connections are reused
+  // TODO Add AP HTTP outbound proxy settings here
+  private static final HttpClientFactory AP_HTTP_CLIENT_FACTORY = new HttpClientFactory (new Phase4PeppolHttpClientSettings ());
 
   private PeppolSender ()
   {}
@@ -159,11 +163,8 @@ public final class PeppolSender
         aSMPClient.setSecureValidation (false);
       }
 
-      final Phase4PeppolHttpClientSettings aHCS = new Phase4PeppolHttpClientSettings ();
-      // TODO Add AP HTTP outbound proxy settings here
-
       final PeppolUserMessageBuilder aBuilder = Phase4PeppolSender.builder ()
-                                                                  .httpClientFactory (aHCS)
+                                                                  .httpClientFactory (AP_HTTP_CLIENT_FACTORY)
                                                                   .documentTypeID (aDocTypeID)
                                                                   .processID (aProcessID)
                                                                   .senderParticipantID (aSenderID)
@@ -300,11 +301,8 @@ public final class PeppolSender
         aSMPClient.setSecureValidation (false);
       }
 
-      final Phase4PeppolHttpClientSettings aHCS = new Phase4PeppolHttpClientSettings ();
-      // TODO Add AP HTTP outbound proxy settings here
-
       final PeppolUserMessageSBDHBuilder aBuilder = Phase4PeppolSender.sbdhBuilder ()
-                                                                      .httpClientFactory (aHCS)
+                                                                      .httpClientFactory (AP_HTTP_CLIENT_FACTORY)
                                                                       .payloadAndMetadata (aData)
                                                                       .senderPartyID (sMyPeppolSeatID)
                                                                       .peppolAP_CAChecker (aAPCAChecker)
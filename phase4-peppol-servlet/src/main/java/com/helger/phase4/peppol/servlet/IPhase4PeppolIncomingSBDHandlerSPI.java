@@ -25,11 +25,15 @@ import com.helger.commons.annotation.IsSPIInterface;
 import com.helger.commons.annotation.Nonempty;
 import com.helger.commons.collection.impl.ICommonsList;
 import com.helger.commons.http.HttpHeaderMap;
+import com.helger.commons.io.IHasInputStream;
+import com.helger.commons.io.stream.StreamHelper;
 import com.helger.peppol.sbdh.PeppolSBDHData;
+import com.helger.peppol.sbdh.PeppolSBDHDataReader;
 import com.helger.phase4.ebms3header.Ebms3Error;
 import com.helger.phase4.ebms3header.Ebms3UserMessage;
 import com.helger.phase4.incoming.IAS4IncomingMessageMetadata;
 import com.helger.phase4.incoming.IAS4IncomingMessageState;
+import com.helger.sbdh.SBDMarshaller;
 
 /**
  * This is the interface that must be implemented to handle incoming SBD documents.
@@ -76,6 +80,72 @@ public interface IPhase4PeppolIncomingSBDHandlerSPI
                           @Nonnull IAS4IncomingMessageState aState,
                           @Nonnull ICommonsList <Ebms3Error> aProcessingErrorMessages) throws Exception;
 
+  /**
+   * Handle the provided incoming StandardBusinessDocument in the streaming mode of
+   * {@link Phase4PeppolServletMessageProcessorSPI#setStreamingMode(boolean)}. In this mode the SBD
+   * is neither read into a byte array nor parsed completely - only the SBDH is parsed to create
+   * the Peppol SBDH data. Override this method to process large documents without reading them
+   * into memory. The default implementation reads and parses the complete SBD, extracts the
+   * complete Peppol SBDH data from it and calls
+   * {@link #handleIncomingSBD(IAS4IncomingMessageMetadata, HttpHeaderMap, Ebms3UserMessage, byte[], StandardBusinessDocument, PeppolSBDHData, IAS4IncomingMessageState, ICommonsList)}.
+   *
+   * @param aMessageMetadata
+   *        Message metadata. Includes data when and from whom it was received. Never
+   *        <code>null</code>.
+   * @param aHeaders
+   *        The (HTTP) headers of the incoming request. Never <code>null</code>.
+   * @param aUserMessage
+   *        The received EBMS user message. Never <code>null</code>.
+   * @param aSBDContent
+   *        The provider for the raw SBD bytes. These are the bytes as received via AS4, just
+   *        decrypted and decompressed. The content can be read multiple times. Never
+   *        <code>null</code>.
+   * @param aPeppolSBD
+   *        The pre-parsed Peppol Standard Business Document. In the streaming mode, the business
+   *        message only consists of the empty root element of the business payload. Never
+   *        <code>null</code>.
+   * @param aState
+   *        The message state. Can e.g. be used to retrieve information about the certificate found
+   *        in the message. Never <code>null</code>.
+   * @param aProcessingErrorMessages
+   *        List for error messages that occur during processing. Never <code>null</code>.
+   * @throws Exception
+   *         In case it cannot be processed.
+   * @since 3.2.3
+   */
+  default void handleIncomingSBDStreaming (@Nonnull final IAS4IncomingMessageMetadata aMessageMetadata,
+                                           @Nonnull final HttpHeaderMap aHeaders,
+                                           @Nonnull final Ebms3UserMessage aUserMessage,
+                                           @Nonnull final IHasInputStream aSBDContent,
+                                           @Nonnull final PeppolSBDHData aPeppolSBD,
+                                           @Nonnull final IAS4IncomingMessageState aState,
+                                           @Nonnull final ICommonsList <Ebms3Error> aProcessingErrorMessages) throws Exception
+  {
+    // Materialize the whole document
+    final byte [] aSBDBytes = StreamHelper.getAllBytes (aSBDContent.getInputStream ());
+    if (aSBDBytes == null)
+      throw new Phase4PeppolServletException ("Failed to read the SBD bytes");
+
+    final StandardBusinessDocument aSBD = new SBDMarshaller ().read (aSBDBytes);
+    if (aSBD == null)
+      throw new Phase4PeppolServletException ("Failed to read the complete SBD");
+
+    // The provided data only contains the empty root element of the business
+    // message. The header was already checked, so no need to check it again.
+    final PeppolSBDHData aFullPeppolSBD = new PeppolSBDHDataReader (aPeppolSBD.getIdentifierFactory ()).setPerformValueChecks (false)
+                                                                                                        .setCheckForCountryC1 (false)
+                                                                                                        .extractData (aSBD);
+
+    handleIncomingSBD (aMessageMetadata,
+                       aHeaders,
+                       aUserMessage,
+                       aSBDBytes,
+                       aSBD,
+                       aFullPeppolSBD,
+                       aState,
+                       aProcessingErrorMessages);
+  }
+
   /**
    * Optional callback to process a response message
    *
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.peppol.servlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.WillNotClose;
+import javax.annotation.concurrent.Immutable;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+import org.slf4j.Logger;
+import org.unece.cefact.namespaces.sbdh.StandardBusinessDocument;
+
+import com.helger.commons.ValueEnforcer;
+import com.helger.commons.error.list.ErrorList;
+import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
+import com.helger.phase4.logging.Phase4LoggerFactory;
+import com.helger.sbdh.SBDMarshaller;
+
+/**
+ * Read only the Standard Business Document Header (SBDH) of a Standard Business
+ * Document with StAX, without reading the business payload into memory. The
+ * result is a {@link StandardBusinessDocument} that contains the complete
+ * header, but only the empty root element of the business payload (including
+ * its namespace and attributes). This is enough to extract the Peppol SBDH
+ * data, while the business payload may be arbitrarily large.
+ *
+ * @author Philip Helger
+ * @since 3.2.3
+ */
+@Immutable
+public final class Phase4PeppolSBDHHeaderReader
+{
+  private static final Logger LOGGER = Phase4LoggerFactory.getLogger (Phase4PeppolSBDHHeaderReader.class);
+  private static final String ELEMENT_SBDH = "StandardBusinessDocumentHeader";
+
+  private static final XMLInputFactory INPUT_FACTORY;
+  private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance ();
+  private static final XMLEventFactory EVENT_FACTORY = XMLEventFactory.newInstance ();
+
+  static
+  {
+    INPUT_FACTORY = XMLInputFactory.newInstance ();
+    // No DTDs and no external entities
+    INPUT_FACTORY.setProperty (XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    INPUT_FACTORY.setProperty (XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+  }
+
+  private Phase4PeppolSBDHHeaderReader ()
+  {}
+
+  /**
+   * Create a small copy of the provided Standard Business Document, that
+   * contains everything up to and including the start of the business payload
+   * root element. The remaining payload is not read.
+   *
+   * @param aIS
+   *        The input stream to read from. May not be <code>null</code>.
+   * @return The truncated copy or <code>null</code> if the document is not
+   *         well-formed or contains no business payload.
+   * @throws IOException
+   *         In case of an IO error
+   */
+  @Nullable
+  static byte [] getTruncatedSBD (@Nonnull @WillNotClose final InputStream aIS) throws IOException
+  {
+    XMLEventReader aReader = null;
+    XMLEventWriter aWriter = null;
+    try (final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ())
+    {
+      aReader = INPUT_FACTORY.createXMLEventReader (aIS);
+      aWriter = OUTPUT_FACTORY.createXMLEventWriter (aBAOS, "UTF-8");
+
+      int nDepth = 0;
+      StartElement aRootElement = null;
+      while (aReader.hasNext ())
+      {
+        final XMLEvent aEvent = aReader.nextEvent ();
+        if (aEvent.isStartDocument ())
+        {
+          // The output is always UTF-8, independent of the source encoding
+          aWriter.add (EVENT_FACTORY.createStartDocument ("UTF-8"));
+          continue;
+        }
+        if (aEvent.isStartElement ())
+        {
+          final StartElement aStartElement = aEvent.asStartElement ();
+          if (nDepth == 0)
+            aRootElement = aStartElement;
+          else
+            if (nDepth == 1 && !ELEMENT_SBDH.equals (aStartElement.getName ().getLocalPart ()))
+            {
+              // Start of the business payload - write it as an empty element
+              // and close the document
+              aWriter.add (aStartElement);
+              aWriter.add (EVENT_FACTORY.createEndElement (aStartElement.getName (), null));
+              aWriter.add (EVENT_FACTORY.createEndElement (aRootElement.getName (), null));
+              aWriter.add (EVENT_FACTORY.createEndDocument ());
+              aWriter.flush ();
+              return aBAOS.toByteArray ();
+            }
+          nDepth++;
+        }
+        else
+          if (aEvent.isEndElement ())
+            nDepth--;
+
+        // Whitespaces and comments outside of the header don't matter, but
+        // they also don't hurt
+        aWriter.add (aEvent);
+      }
+      // No business payload found
+      return null;
+    }
+    catch (final XMLStreamException ex)
+    {
+      LOGGER.error ("Failed to read the SBDH: " + ex.getMessage ());
+      return null;
+    }
+    finally
+    {
+      try
+      {
+        if (aWriter != null)
+          aWriter.close ();
+        if (aReader != null)
+          aReader.close ();
+      }
+      catch (final XMLStreamException ex)
+      {
+        // Ignore
+      }
+    }
+  }
+
+  /**
+   * Read the Standard Business Document Header from the provided input stream.
+   * The business payload is not read.
+   *
+   * @param aIS
+   *        The input stream to read from. May not be <code>null</code>.
+   * @param aErrorList
+   *        The error list to be filled with schema errors. May not be
+   *        <code>null</code>.
+   * @return The Standard Business Document with the complete header and an
+   *         empty business payload root element or <code>null</code> if the
+   *         document could not be read.
+   * @throws IOException
+   *         In case of an IO error
+   */
+  @Nullable
+  public static StandardBusinessDocument readHeaderOnly (@Nonnull @WillNotClose final InputStream aIS,
+                                                         @Nonnull final ErrorList aErrorList) throws IOException
+  {
+    ValueEnforcer.notNull (aIS, "InputStream");
+    ValueEnforcer.notNull (aErrorList, "ErrorList");
+
+    final byte [] aTruncated = getTruncatedSBD (aIS);
+    if (aTruncated == null)
+      return null;
+    return new SBDMarshaller ().setCollectErrors (aErrorList).read (aTruncated);
+  }
+}
@@ -47,9 +47,12 @@ import com.helger.commons.debug.GlobalDebug;
 import com.helger.commons.error.IError;
 import com.helger.commons.error.list.ErrorList;
 import com.helger.commons.http.HttpHeaderMap;
+import com.helger.commons.io.IHasInputStream;
+import com.helger.commons.io.stream.HasInputStream;
 import com.helger.commons.io.stream.NonBlockingByteArrayOutputStream;
 import com.helger.commons.io.stream.StreamHelper;
 import com.helger.commons.lang.ServiceLoaderHelper;
+import com.helger.commons.state.ETriState;
 import com.helger.commons.string.StringHelper;
 import com.helger.peppol.reporting.api.CPeppolReporting;
 import com.helger.peppol.reporting.api.PeppolReportingItem;
@@ -62,10 +65,12 @@ import com.helger.peppolid.IDocumentTypeIdentifier;
 import com.helger.peppolid.IParticipantIdentifier;
 import com.helger.peppolid.IProcessIdentifier;
 import com.helger.peppolid.factory.IIdentifierFactory;
+import com.helger.phase4.attachment.AS4AttachmentBufferOutputStream;
 import com.helger.phase4.attachment.AS4DecompressException;
 import com.helger.phase4.attachment.EAS4CompressionMode;
 import com.helger.phase4.attachment.IAS4Attachment;
 import com.helger.phase4.attachment.WSS4JAttachment;
+import com.helger.phase4.crypto.AS4CertificateCheckResultCache;
 import com.helger.phase4.ebms3header.Ebms3Error;
 import com.helger.phase4.ebms3header.Ebms3Property;
 import com.helger.phase4.ebms3header.Ebms3SignalMessage;
@@ -79,10 +84,12 @@ import com.helger.phase4.logging.Phase4LoggerFactory;
 import com.helger.phase4.mgr.MetaAS4Manager;
 import com.helger.phase4.model.error.EEbmsError;
 import com.helger.phase4.model.pmode.IPMode;
+import com.helger.phase4.util.AS4ResourceHelper;
 import com.helger.phase4.util.Phase4Exception;
 import com.helger.sbdh.SBDMarshaller;
 import com.helger.security.certificate.CertificateHelper;
 import com.helger.security.certificate.ECertificateCheckResult;
+import com.helger.security.certificate.TrustedCAChecker;
 import com.helger.smpclient.peppol.ISMPExtendedServiceMetadataProvider;
 import com.helger.smpclient.peppol.SMPClientReadOnly;
 import com.helger.xml.serialize.write.XMLWriter;
@@ -115,6 +122,7 @@ public class Phase4PeppolServletMessageProcessorSPI implements IAS4IncomingMessa
     private Charset m_aCharset;
     private EAS4CompressionMode m_eCompressionMode;
     private byte [] m_aPayloadBytes;
+    private IHasInputStream m_aPayloadProvider;
     private StandardBusinessDocument m_aSBDH;
 
     private ReadAttachment ()
@@ -157,6 +165,12 @@ public class Phase4PeppolServletMessageProcessorSPI implements IAS4IncomingMessa
       return m_aPayloadBytes;
     }
 
+    @Nullable
+    public IHasInputStream payloadProvider ()
+    {
+      return m_aPayloadProvider;
+    }
+
     @Nonnull
     @ReturnsMutableObject
     public StandardBusinessDocument standardBusinessDocument ()
@@ -166,12 +180,14 @@ public class Phase4PeppolServletMessageProcessorSPI implements IAS4IncomingMessa
   }
 
   public static final ESMPTransportProfile DEFAULT_TRANSPORT_PROFILE = ESMPTransportProfile.TRANSPORT_PROFILE_PEPPOL_AS4_V2;
+  public static final boolean DEFAULT_STREAMING_MODE = false;
 
   private static final Logger LOGGER = Phase4LoggerFactory.getLogger (Phase4PeppolServletMessageProcessorSPI.class);
 
   private ICommonsList <IPhase4PeppolIncomingSBDHandlerSPI> m_aHandlers;
   private ISMPTransportProfile m_aTransportProfile = DEFAULT_TRANSPORT_PROFILE;
   private Phase4PeppolReceiverConfiguration m_aReceiverCheckData;
+  private boolean m_bStreamingMode = DEFAULT_STREAMING_MODE;
 
   /**
    * Constructor. Uses all SPI implementations of
@@ -267,6 +283,58 @@ public class Phase4PeppolServletMessageProcessorSPI implements IAS4IncomingMessa
     return this;
   }
 
+  /**
+   * @return <code>true</code> if the streaming mode is enabled, <code>false</code> if not. By
+   *         default it is {@value #DEFAULT_STREAMING_MODE}.
+   * @since 3.2.3
+   */
+  public final boolean isStreamingMode ()
+  {
+    return m_bStreamingMode;
+  }
+
+  /**
+   * Enable or disable the streaming mode. In streaming mode, the received SBD is not copied into
+   * a byte array and not parsed completely. Only the SBDH is read with StAX to create the Peppol
+   * SBDH data and the payload stays in the attachment buffer (on the heap, off-heap or in a
+   * temporary file, depending on the size). The handlers are invoked via
+   * {@link IPhase4PeppolIncomingSBDHandlerSPI#handleIncomingSBDStreaming(IAS4IncomingMessageMetadata, HttpHeaderMap, Ebms3UserMessage, IHasInputStream, PeppolSBDHData, IAS4IncomingMessageState, ICommonsList)}
+   * instead. Note: decompression errors in the business payload are only detected when the
+   * handler reads the payload.
+   *
+   * @param bStreamingMode
+   *        <code>true</code> to enable the streaming mode, <code>false</code> to disable it.
+   * @return this for chaining
+   * @since 3.2.3
+   */
+  @Nonnull
+  public final Phase4PeppolServletMessageProcessorSPI setStreamingMode (final boolean bStreamingMode)
+  {
+    m_bStreamingMode = bStreamingMode;
+    return this;
+  }
+
+  /**
+   * Get a provider for the decompressed content of the provided attachment that can be read
+   * multiple times. If the attachment itself is not repeatable, the content is buffered according
+   * to the attachment buffer policy of the provided resource helper.
+   */
+  @Nonnull
+  private static IHasInputStream _getRepeatablePayload (@Nonnull final IAS4Attachment aAttachment,
+                                                        @Nonnull final AS4ResourceHelper aResHelper) throws IOException
+  {
+    if (aAttachment.isRepeatable ())
+    {
+      // This stream is decompressing if needed
+      return HasInputStream.multiple (aAttachment::getSourceStream);
+    }
+
+    try (final InputStream aSIS = aAttachment.getSourceStream ())
+    {
+      return AS4AttachmentBufferOutputStream.bufferContent (aSIS, aResHelper);
+    }
+  }
+
   @Nullable
   private EndpointType _getReceiverEndpoint (@Nonnull final String sLogPrefix,
                                              @Nonnull final ISMPExtendedServiceMetadataProvider aSMPClient,
@@ -591,11 +659,18 @@ public class Phase4PeppolServletMessageProcessorSPI implements IAS4IncomingMessa
     {
       final OffsetDateTime aNow = MetaAS4Manager.getTimestampMgr ().getCurrentDateTime ();
       final X509Certificate aSenderSigningCert = aState.getSigningCertificate ();
-      // Check if signing AP certificate is revoked
+      final TrustedCAChecker aAPCAChecker = aReceiverCheckData.getAPCAChecker ();
+      // Check if signing AP certificate is revoked, using the optional cache
       // * Use global caching setting
       // * Use global certificate check mode
-      final ECertificateCheckResult eCertCheckResult = aReceiverCheckData.getAPCAChecker ()
-                                                                         .checkCertificate (aSenderSigningCert, aNow);
+      final AS4CertificateCheckResultCache.CheckResult aCheckResult = AS4CertificateCheckResultCache.checkCertificate (aAPCAChecker,
+                                                                                                                       aSenderSigningCert,
+                                                                                                                       aNow,
+                                                                                                                       ETriState.UNDEFINED,
+                                                                                                                       null);
+      if (aCheckResult.isFromCache () && LOGGER.isDebugEnabled ())
+        LOGGER.debug (sLogPrefix + "Using the cached check result of the signing AP certificate");
+      final ECertificateCheckResult eCertCheckResult = aCheckResult.getResult ();
       if (eCertCheckResult.isInvalid ())
       {
         final String sDetails = "The received Peppol message is signed with a Peppol AP certificate invalid at " +
@@ -630,22 +705,37 @@ public class Phase4PeppolServletMessageProcessorSPI implements IAS4IncomingMessa
         a.m_aCharset = aIncomingAttachment.getCharset ();
         a.m_eCompressionMode = aIncomingAttachment.getCompressionMode ();
 
-        // This stream is decompressing if needed
-        try (final InputStream aSIS = aIncomingAttachment.getSourceStream ())
+        if (m_bStreamingMode)
         {
-          // Get a decompressed copy
-          // And yes, for very large files, this is not a good idea
-          final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ();
-          if (StreamHelper.copyInputStreamToOutputStreamAndCloseOS (aSIS, aBAOS).isSuccess ())
+          try
+          {
+            a.m_aPayloadProvider = _getRepeatablePayload (aIncomingAttachment, aState.getResourceHelper ());
+          }
+          catch (final IOException | AS4DecompressException ex)
           {
-            a.m_aPayloadBytes = aBAOS.getBufferOrCopy ();
+            // Fall through
           }
         }
-        catch (final IOException | AS4DecompressException ex)
+        else
         {
-          // Fall through
+          // This stream is decompressing if needed
+          try (final InputStream aSIS = aIncomingAttachment.getSourceStream ())
+          {
+            // Get a decompressed copy
+            // And yes, for very large files, this is not a good idea - use the
+            // streaming mode instead
+            final NonBlockingByteArrayOutputStream aBAOS = new NonBlockingByteArrayOutputStream ();
+            if (StreamHelper.copyInputStreamToOutputStreamAndCloseOS (aSIS, aBAOS).isSuccess ())
+            {
+              a.m_aPayloadBytes = aBAOS.getBufferOrCopy ();
+            }
+          }
+          catch (final IOException | AS4DecompressException ex)
+          {
+            // Fall through
+          }
         }
-        if (a.m_aPayloadBytes == null)
+        if (a.m_aPayloadBytes == null && a.m_aPayloadProvider == null)
         {
           final String sDetails = "Failed to decompress the payload of attachment #" + nAttachmentIndex;
           LOGGER.error (sLogPrefix + sDetails);
@@ -657,10 +747,25 @@ public class Phase4PeppolServletMessageProcessorSPI implements IAS4IncomingMessa
         }
 
         // Read data as SBDH
-        // Hint for production systems: this may take a huge amount of memory,
-        // if the payload is large
         final ErrorList aSBDHErrors = new ErrorList ();
-        a.m_aSBDH = new SBDMarshaller ().setCollectErrors (aSBDHErrors).read (a.m_aPayloadBytes);
+        if (m_bStreamingMode)
+        {
+          // Only read the header - the payload stays where it is
+          try (final InputStream aSIS = a.m_aPayloadProvider.getInputStream ())
+          {
+            a.m_aSBDH = Phase4PeppolSBDHHeaderReader.readHeaderOnly (aSIS, aSBDHErrors);
+          }
+          catch (final IOException | AS4DecompressException ex)
+          {
+            LOGGER.error (sLogPrefix + "Failed to read the SBDH of attachment #" + nAttachmentIndex, ex);
+          }
+        }
+        else
+        {
+          // Hint for production systems: this may take a huge amount of
+          // memory, if the payload is large
+          a.m_aSBDH = new SBDMarshaller ().setCollectErrors (aSBDHErrors).read (a.m_aPayloadBytes);
+        }
 
         // Only fail if the first attachment is not an SBDH. The check for
         // exactly 1 attachment comes below
@@ -706,9 +811,10 @@ public class Phase4PeppolServletMessageProcessorSPI implements IAS4IncomingMessa
                         (a.m_sUncompressedMimeType == null ? null : " - uncompressed " + a.m_sUncompressedMimeType) +
                         "] and [" +
                         StringHelper.getToString (a.m_aCharset, "no charset") +
-                        "] and length is " +
-                        (a.m_aPayloadBytes == null ? "<error>" : Integer.toString (a.m_aPayloadBytes.length)) +
-                        " bytes" +
+                        (a.m_aPayloadBytes == null ? "] and is streamed"
+                                                   : "] and length is " +
+                                                     Integer.toString (a.m_aPayloadBytes.length) +
+                                                     " bytes") +
                         (a.m_eCompressionMode == null ? "" : " of compressed payload"));
         nAttachmentIndex++;
       }
@@ -850,14 +956,23 @@ public class Phase4PeppolServletMessageProcessorSPI implements IAS4IncomingMessa
         {
           if (LOGGER.isDebugEnabled ())
             LOGGER.debug (sLogPrefix + "Invoking Peppol handler " + aHandler);
-          aHandler.handleIncomingSBD (aMessageMetadata,
-                                      aHttpHeaders.getClone (),
-                                      aUserMessage.clone (),
-                                      aReadAttachment.payloadBytes (),
-                                      aReadAttachment.standardBusinessDocument (),
-                                      aPeppolSBDH,
-                                      aState,
-                                      aProcessingErrorMessages);
+          if (m_bStreamingMode)
+            aHandler.handleIncomingSBDStreaming (aMessageMetadata,
+                                                 aHttpHeaders.getClone (),
+                                                 aUserMessage.clone (),
+                                                 aReadAttachment.payloadProvider (),
+                                                 aPeppolSBDH,
+                                                 aState,
+                                                 aProcessingErrorMessages);
+          else
+            aHandler.handleIncomingSBD (aMessageMetadata,
+                                        aHttpHeaders.getClone (),
+                                        aUserMessage.clone (),
+                                        aReadAttachment.payloadBytes (),
+                                        aReadAttachment.standardBusinessDocument (),
+                                        aPeppolSBDH,
+                                        aState,
+                                        aProcessingErrorMessages);
         }
         catch (final Exception ex)
         {
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.peppol.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.unece.cefact.namespaces.sbdh.StandardBusinessDocument;
+import org.w3c.dom.Element;
+
+import com.helger.commons.error.list.ErrorList;
+import com.helger.commons.io.stream.NonBlockingByteArrayInputStream;
+
+/**
+ * Test class for class {@link Phase4PeppolSBDHHeaderReader}.
+ *
+ * @author Philip Helger
+ */
+public final class Phase4PeppolSBDHHeaderReaderTest
+{
+  private static final String SBDH = "<StandardBusinessDocumentHeader>" +
+                                     "<HeaderVersion>1.0</HeaderVersion>" +
+                                     "<Sender><Identifier Authority=\"iso6523-actorid-upis\">9915:sender</Identifier></Sender>" +
+                                     "<Receiver><Identifier Authority=\"iso6523-actorid-upis\">9915:receiver</Identifier></Receiver>" +
+                                     "<DocumentIdentification>" +
+                                     "<Standard>urn:oasis:names:specification:ubl:schema:xsd:Invoice-2</Standard>" +
+                                     "<TypeVersion>2.1</TypeVersion>" +
+                                     "<InstanceIdentifier>123456789</InstanceIdentifier>" +
+                                     "<Type>Invoice</Type>" +
+                                     "<CreationDateAndTime>2023-10-25T15:42:10Z</CreationDateAndTime>" +
+                                     "</DocumentIdentification>" +
+                                     "</StandardBusinessDocumentHeader>";
+
+  @Test
+  public void testReadHeaderOnly () throws Exception
+  {
+    final StringBuilder aSB = new StringBuilder ();
+    aSB.append ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                "<StandardBusinessDocument xmlns=\"http://www.unece.org/cefact/namespaces/StandardBusinessDocumentHeader\">")
+       .append (SBDH)
+       .append ("<Invoice xmlns=\"urn:oasis:names:specification:ubl:schema:xsd:Invoice-2\"" +
+                " xmlns:cbc=\"urn:oasis:names:specification:ubl:schema:xsd:CommonBasicComponents-2\">");
+    // A large payload
+    for (int i = 0; i < 10_000; ++i)
+      aSB.append ("<cbc:Note>Line ").append (i).append ("</cbc:Note>");
+    aSB.append ("</Invoice></StandardBusinessDocument>");
+    final byte [] aBytes = aSB.toString ().getBytes (StandardCharsets.UTF_8);
+
+    final byte [] aTruncated = Phase4PeppolSBDHHeaderReader.getTruncatedSBD (new NonBlockingByteArrayInputStream (aBytes));
+    assertNotNull (aTruncated);
+    assertTrue (aTruncated.length < 2_000);
+
+    final ErrorList aErrorList = new ErrorList ();
+    final StandardBusinessDocument aSBD = Phase4PeppolSBDHHeaderReader.readHeaderOnly (new NonBlockingByteArrayInputStream (aBytes),
+                                                                                       aErrorList);
+    assertNotNull (aSBD);
+    assertTrue (aErrorList.isEmpty ());
+    assertEquals ("9915:receiver", aSBD.getStandardBusinessDocumentHeader ().getReceiver ().get (0).getIdentifier ().getValue ());
+
+    // Only the empty root element of the business payload
+    final Element aPayload = (Element) aSBD.getAny ();
+    assertEquals ("Invoice", aPayload.getLocalName ());
+    assertEquals ("urn:oasis:names:specification:ubl:schema:xsd:Invoice-2", aPayload.getNamespaceURI ());
+    assertFalse (aPayload.hasChildNodes ());
+  }
+
+  @Test
+  public void testNoPayload () throws Exception
+  {
+    final String sXML = "<StandardBusinessDocument xmlns=\"http://www.unece.org/cefact/namespaces/StandardBusinessDocumentHeader\">" +
+                        SBDH +
+                        "</StandardBusinessDocument>";
+    assertNull (Phase4PeppolSBDHHeaderReader.getTruncatedSBD (new NonBlockingByteArrayInputStream (sXML.getBytes (StandardCharsets.UTF_8))));
+
+    // Not well-formed
+    assertNull (Phase4PeppolSBDHHeaderReader.getTruncatedSBD (new NonBlockingByteArrayInputStream ("<a><b></a>".getBytes (StandardCharsets.UTF_8))));
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.crypto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.helger.commons.datetime.PDTFactory;
+import com.helger.commons.state.ETriState;
+import com.helger.scope.mock.ScopeTestRule;
+import com.helger.security.certificate.ECertificateCheckResult;
+import com.helger.security.certificate.TrustedCAChecker;
+import com.helger.security.revocation.ERevocationCheckMode;
+
+/**
+ * Test class for class {@link AS4CertificateCheckResultCache}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4CertificateCheckResultCacheTest
+{
+  @Rule
+  public final ScopeTestRule m_aRule = new ScopeTestRule ();
+
+  @Test
+  public void testBasic ()
+  {
+    final X509Certificate aCert = AS4CryptoFactoryConfiguration.getDefaultInstance ().getCertificate ();
+    assertNotNull (aCert);
+    final TrustedCAChecker aCAChecker = new TrustedCAChecker (aCert);
+    final OffsetDateTime aNow = PDTFactory.getCurrentOffsetDateTime ();
+
+    final AS4CertificateCheckResultCache aCache = new AS4CertificateCheckResultCache ();
+    assertNull (aCache.getCachedResult (aCAChecker, aCert, aNow, ETriState.UNDEFINED, null));
+    assertEquals (1, aCache.getMissCount ());
+
+    // Invalid results are not cached
+    aCache.putResult (aCAChecker, aCert, ETriState.UNDEFINED, null, ECertificateCheckResult.REVOKED);
+    assertEquals (0, aCache.size ());
+
+    aCache.putResult (aCAChecker, aCert, ETriState.UNDEFINED, null, ECertificateCheckResult.VALID);
+    assertEquals (1, aCache.size ());
+    assertEquals (ECertificateCheckResult.VALID,
+                  aCache.getCachedResult (aCAChecker, aCert, aNow, ETriState.UNDEFINED, null));
+    assertEquals (1, aCache.getHitCount ());
+
+    // Different parameters are different entries
+    assertNull (aCache.getCachedResult (aCAChecker, aCert, aNow, ETriState.FALSE, null));
+    assertNull (aCache.getCachedResult (aCAChecker, aCert, aNow, ETriState.UNDEFINED, ERevocationCheckMode.NONE));
+    assertNull (aCache.getCachedResult (new TrustedCAChecker (aCert), aCert, aNow, ETriState.UNDEFINED, null));
+    // Outside of the certificate validity
+    assertNull (aCache.getCachedResult (aCAChecker, aCert, aNow.plusYears (100), ETriState.UNDEFINED, null));
+    assertNull (aCache.getCachedResult (aCAChecker, null, aNow, ETriState.UNDEFINED, null));
+
+    // Revoked
+    aCache.invalidate (aCert);
+    assertEquals (0, aCache.size ());
+    assertNull (aCache.getCachedResult (aCAChecker, aCert, aNow, ETriState.UNDEFINED, null));
+  }
+
+  @Test
+  public void testExpiration () throws Exception
+  {
+    final X509Certificate aCert = AS4CryptoFactoryConfiguration.getDefaultInstance ().getCertificate ();
+    final TrustedCAChecker aCAChecker = new TrustedCAChecker (aCert);
+
+    final AS4CertificateCheckResultCache aCache = new AS4CertificateCheckResultCache (Duration.ofMillis (20), 1);
+    aCache.putResult (aCAChecker, aCert, ETriState.UNDEFINED, null, ECertificateCheckResult.VALID);
+    aCache.putResult (aCAChecker, aCert, ETriState.TRUE, null, ECertificateCheckResult.VALID);
+    // Max entries is 1
+    assertEquals (1, aCache.size ());
+    assertEquals (ECertificateCheckResult.VALID,
+                  aCache.getCachedResult (aCAChecker,
+                                          aCert,
+                                          PDTFactory.getCurrentOffsetDateTime (),
+                                          ETriState.TRUE,
+                                          null));
+
+    Thread.sleep (50);
+    assertNull (aCache.getCachedResult (aCAChecker,
+                                        aCert,
+                                        PDTFactory.getCurrentOffsetDateTime (),
+                                        ETriState.TRUE,
+                                        null));
+    assertEquals (0, aCache.size ());
+  }
+
+  @Test
+  public void testCheckCertificate ()
+  {
+    final X509Certificate aCert = AS4CryptoFactoryConfiguration.getDefaultInstance ().getCertificate ();
+    final TrustedCAChecker aCAChecker = new TrustedCAChecker (aCert);
+    final OffsetDateTime aNow = PDTFactory.getCurrentOffsetDateTime ();
+
+    // No global cache
+    assertNull (AS4CertificateCheckResultCache.getGlobalInstance ());
+    AS4CertificateCheckResultCache.CheckResult aResult = AS4CertificateCheckResultCache.checkCertificate (aCAChecker,
+                                                                                                           aCert,
+                                                                                                           aNow,
+                                                                                                           ETriState.UNDEFINED,
+                                                                                                           ERevocationCheckMode.NONE);
+    assertNotNull (aResult.getResult ());
+    assertFalse (aResult.isFromCache ());
+
+    final AS4CertificateCheckResultCache aCache = new AS4CertificateCheckResultCache ();
+    AS4CertificateCheckResultCache.setGlobalInstance (aCache);
+    try
+    {
+      aResult = AS4CertificateCheckResultCache.checkCertificate (aCAChecker,
+                                                                 aCert,
+                                                                 aNow,
+                                                                 ETriState.UNDEFINED,
+                                                                 ERevocationCheckMode.NONE);
+      assertFalse (aResult.isFromCache ());
+      // Only valid results are remembered
+      assertEquals (aResult.getResult ().isValid () ? 1 : 0, aCache.size ());
+
+      aCache.putResult (aCAChecker, aCert, ETriState.UNDEFINED, ERevocationCheckMode.NONE, ECertificateCheckResult.VALID);
+      aResult = AS4CertificateCheckResultCache.checkCertificate (aCAChecker,
+                                                                 aCert,
+                                                                 aNow,
+                                                                 ETriState.UNDEFINED,
+                                                                 ERevocationCheckMode.NONE);
+      assertTrue (aResult.isFromCache ());
+      assertEquals (ECertificateCheckResult.VALID, aResult.getResult ());
+      assertEquals (1, aCache.getHitCount ());
+    }
+    finally
+    {
+      AS4CertificateCheckResultCache.setGlobalInstance (null);
+    }
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.crypto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.security.KeyStore;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.helger.scope.mock.ScopeTestRule;
+
+/**
+ * Test class for class {@link AS4CryptoFactoryConfiguration}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4CryptoFactoryConfigurationTest
+{
+  @Rule
+  public final ScopeTestRule m_aRule = new ScopeTestRule ();
+
+  @Test
+  public void testCachedKeyMaterial ()
+  {
+    final AS4CryptoFactoryConfiguration aCF = AS4CryptoFactoryConfiguration.getDefaultInstance ();
+
+    final KeyStore.PrivateKeyEntry aPKE = aCF.getPrivateKeyEntry ();
+    assertNotNull (aPKE);
+    assertNotNull (aCF.getCertificate ());
+    // Cached
+    assertSame (aPKE, aCF.getPrivateKeyEntry ());
+    assertSame (aPKE.getCertificate (), aCF.getCertificate ());
+
+    final Object aCrypto = aCF.getCrypto (ECryptoMode.ENCRYPT_SIGN);
+    assertSame (aCrypto, aCF.getCrypto (ECryptoMode.ENCRYPT_SIGN));
+
+    // Explicit refresh
+    aCF.clearCachedKeyMaterial ();
+    final KeyStore.PrivateKeyEntry aPKE2 = aCF.getPrivateKeyEntry ();
+    assertNotSame (aPKE, aPKE2);
+    assertEquals (aPKE.getCertificate (), aPKE2.getCertificate ());
+    assertNotSame (aCrypto, aCF.getCrypto (ECryptoMode.ENCRYPT_SIGN));
+  }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.crypto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+
+import javax.annotation.Nonnull;
+
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.Merlin;
+import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.engine.WSSecurityEngine;
+import org.apache.wss4j.dom.handler.WSHandlerResult;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import com.helger.commons.io.resource.ClassPathResource;
+import com.helger.commons.io.stream.StreamHelper;
+import com.helger.phase4.incoming.soap.AS4KeyStoreCallbackHandler;
+import com.helger.phase4.messaging.crypto.AS4Encryptor;
+import com.helger.phase4.model.ESoapVersion;
+import com.helger.phase4.wss.WSSConfigManager;
+import com.helger.scope.mock.ScopeTestRule;
+import com.helger.security.keystore.EKeyStoreType;
+import com.helger.security.keystore.KeyStoreAndKeyDescriptor;
+import com.helger.xml.serialize.read.DOMReader;
+
+/**
+ * Test class for class {@link AS4CryptoFactoryReloadable}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4CryptoFactoryReloadableTest
+{
+  @Rule
+  public final ScopeTestRule m_aRule = new ScopeTestRule ();
+
+  @Before
+  public void before ()
+  {
+    // Ensure WSSConfig is initialized
+    WSSConfigManager.getInstance ();
+  }
+
+  @Nonnull
+  private static KeyStoreAndKeyDescriptor _createKSD (@Nonnull final File aFile)
+  {
+    return new KeyStoreAndKeyDescriptor (EKeyStoreType.JKS,
+                                         aFile.getAbsolutePath (),
+                                         "test".toCharArray (),
+                                         null,
+                                         "ph-as4",
+                                         "test".toCharArray ());
+  }
+
+  @Test
+  public void testReload () throws Exception
+  {
+    final byte [] aKeyStoreBytes = StreamHelper.getAllBytes (new ClassPathResource ("keys/dummy-pw-test.jks"));
+    assertNotNull (aKeyStoreBytes);
+
+    final File aFile = File.createTempFile ("phase4-reload", ".jks");
+    try
+    {
+      Files.write (aFile.toPath (), aKeyStoreBytes);
+      final AS4CryptoFactoryReloadable aCF = new AS4CryptoFactoryReloadable (_createKSD (aFile), null);
+      aCF.setCheckInterval (Duration.ZERO);
+
+      final KeyStore.PrivateKeyEntry aPKE = aCF.getPrivateKeyEntry ();
+      assertNotNull (aPKE);
+      assertNotNull (aCF.getCertificate ());
+      final Crypto aCrypto = aCF.getCrypto (ECryptoMode.ENCRYPT_SIGN);
+      assertSame (aCrypto, aCF.getCrypto (ECryptoMode.DECRYPT_VERIFY));
+
+      // Not modified
+      assertFalse (aCF.reloadIfModified ());
+      assertSame (aPKE, aCF.getPrivateKeyEntry ());
+
+      // Invalid content - keep the old material
+      Files.write (aFile.toPath (), "garbage".getBytes (StandardCharsets.ISO_8859_1));
+      assertFalse (aCF.reloadIfModified ());
+      assertSame (aPKE, aCF.getPrivateKeyEntry ());
+      assertSame (aCrypto, aCF.getCrypto (ECryptoMode.ENCRYPT_SIGN));
+
+      // Valid content again - swapped
+      Files.write (aFile.toPath (), aKeyStoreBytes);
+      assertTrue (aFile.setLastModified (aFile.lastModified () + 2000));
+      assertTrue (aCF.reloadIfModified ());
+      assertNotSame (aPKE, aCF.getPrivateKeyEntry ());
+      assertEquals (aPKE.getCertificate (), aCF.getPrivateKeyEntry ().getCertificate ());
+      assertNotSame (aCrypto, aCF.getCrypto (ECryptoMode.ENCRYPT_SIGN));
+
+      // Same certificate - no rollover
+      assertFalse (aCF.isRolloverActive ());
+      assertNull (aCF.getPreviousCertificate ());
+      assertEquals ("test", aCF.getKeyPasswordPerAlias ("ph-as4"));
+      assertNull (aCF.getKeyPasswordPerAlias ("ph-as4" + AS4CryptoFactoryReloadable.PREVIOUS_KEY_ALIAS_SUFFIX));
+    }
+    finally
+    {
+      Files.deleteIfExists (aFile.toPath ());
+    }
+  }
+
+  @Nonnull
+  private static WSHandlerResult _decrypt (@Nonnull final IAS4CryptoFactory aCF,
+                                           @Nonnull final Document aEncryptedDoc) throws Exception
+  {
+    final IAS4CryptoFactory aSnapshot = aCF.getSnapshot ();
+    final WSSecurityEngine aSecEngine = new WSSecurityEngine ();
+    aSecEngine.setWssConfig (WSSConfigManager.getInstance ().createWSSConfig ());
+    return aSecEngine.processSecurityHeader (aEncryptedDoc,
+                                             null,
+                                             new AS4KeyStoreCallbackHandler (aSnapshot),
+                                             aSnapshot.getCrypto (ECryptoMode.DECRYPT_VERIFY));
+  }
+
+  @Test
+  public void testRolloverWithDifferentKeyStores () throws Exception
+  {
+    final byte [] aOldKeyStoreBytes = StreamHelper.getAllBytes (new ClassPathResource ("keys/dummy-pw-test.jks"));
+    assertNotNull (aOldKeyStoreBytes);
+    final byte [] aNewKeyStoreBytes = StreamHelper.getAllBytes (new ClassPathResource ("keys/dummy-pw-test-rollover.jks"));
+    assertNotNull (aNewKeyStoreBytes);
+
+    final File aFile = File.createTempFile ("phase4-rollover", ".jks");
+    try
+    {
+      Files.write (aFile.toPath (), aOldKeyStoreBytes);
+      final AS4CryptoFactoryReloadable aCF = new AS4CryptoFactoryReloadable (_createKSD (aFile), null);
+      aCF.setCheckInterval (Duration.ZERO);
+
+      final X509Certificate aOldCert = aCF.getCertificate ();
+      assertNotNull (aOldCert);
+      final IAS4CryptoFactory aOldSnapshot = aCF.getSnapshot ();
+      assertFalse (aCF.isRolloverActive ());
+
+      // Encrypted by a sender that still knows only the old certificate
+      final Document aEncryptedDoc = AS4Encryptor.encryptSoapBodyPayload (aCF,
+                                                                          ESoapVersion.SOAP_11,
+                                                                          DOMReader.readXMLDOM (new ClassPathResource ("UserMessageWithoutWSSE.xml")),
+                                                                          false,
+                                                                          AS4CryptParams.createDefault ()
+                                                                                        .setCertificate (aOldCert));
+      assertNotNull (aEncryptedDoc);
+
+      // Swap to a key store with a different key
+      Files.write (aFile.toPath (), aNewKeyStoreBytes);
+      assertTrue (aFile.setLastModified (aFile.lastModified () + 2000));
+      assertTrue (aCF.reloadIfModified ());
+
+      final X509Certificate aNewCert = aCF.getCertificate ();
+      assertNotNull (aNewCert);
+      assertNotEquals (aOldCert, aNewCert);
+
+      // Signing and encryption use the new key only
+      assertTrue (aCF.isRolloverActive ());
+      assertEquals (aOldCert, aCF.getPreviousCertificate ());
+      final KeyStore aSignKeyStore = ((Merlin) aCF.getCrypto (ECryptoMode.ENCRYPT_SIGN)).getKeyStore ();
+      assertEquals (aNewCert, aSignKeyStore.getCertificate ("ph-as4"));
+      assertFalse (aSignKeyStore.containsAlias ("ph-as4" + AS4CryptoFactoryReloadable.PREVIOUS_KEY_ALIAS_SUFFIX));
+
+      // The previous key is available for decryption only
+      final KeyStore aDecryptKeyStore = ((Merlin) aCF.getCrypto (ECryptoMode.DECRYPT_VERIFY)).getKeyStore ();
+      assertEquals (aNewCert, aDecryptKeyStore.getCertificate ("ph-as4"));
+      assertEquals (aOldCert,
+                    aDecryptKeyStore.getCertificate ("ph-as4" + AS4CryptoFactoryReloadable.PREVIOUS_KEY_ALIAS_SUFFIX));
+      assertEquals ("test",
+                    aCF.getKeyPasswordPerAlias ("ph-as4" + AS4CryptoFactoryReloadable.PREVIOUS_KEY_ALIAS_SUFFIX));
+
+      // The old snapshot is not affected by the swap
+      assertEquals (aOldCert, aOldSnapshot.getPrivateKeyEntry ().getCertificate ());
+      assertEquals (aNewCert, aCF.getSnapshot ().getPrivateKeyEntry ().getCertificate ());
+
+      // The message encrypted for the old key can still be decrypted
+      final WSHandlerResult aResult = _decrypt (aCF, aEncryptedDoc);
+      assertNotNull (aResult);
+      assertTrue (aResult.getActionResults ().containsKey (Integer.valueOf (WSConstants.ENCR)));
+
+      // A message encrypted for the new key can be decrypted as well
+      final Document aEncryptedDoc2 = AS4Encryptor.encryptSoapBodyPayload (aCF,
+                                                                           ESoapVersion.SOAP_11,
+                                                                           DOMReader.readXMLDOM (new ClassPathResource ("UserMessageWithoutWSSE.xml")),
+                                                                           false,
+                                                                           AS4CryptParams.createDefault ()
+                                                                                         .setCertificate (aNewCert));
+      assertTrue (_decrypt (aCF, aEncryptedDoc2).getActionResults ().containsKey (Integer.valueOf (WSConstants.ENCR)));
+    }
+    finally
+    {
+      Files.deleteIfExists (aFile.toPath ());
+    }
+  }
+
+  @Test
+  public void testNoRolloverIfDisabled () throws Exception
+  {
+    final byte [] aOldKeyStoreBytes = StreamHelper.getAllBytes (new ClassPathResource ("keys/dummy-pw-test.jks"));
+    final byte [] aNewKeyStoreBytes = StreamHelper.getAllBytes (new ClassPathResource ("keys/dummy-pw-test-rollover.jks"));
+
+    final File aFile = File.createTempFile ("phase4-rollover", ".jks");
+    try
+    {
+      Files.write (aFile.toPath (), aOldKeyStoreBytes);
+      final AS4CryptoFactoryReloadable aCF = new AS4CryptoFactoryReloadable (_createKSD (aFile), null);
+      aCF.setCheckInterval (Duration.ZERO);
+      aCF.setRolloverDuration (Duration.ZERO);
+      final X509Certificate aOldCert = aCF.getCertificate ();
+
+      Files.write (aFile.toPath (), aNewKeyStoreBytes);
+      assertTrue (aFile.setLastModified (aFile.lastModified () + 2000));
+      assertTrue (aCF.reloadIfModified ());
+
+      assertNotEquals (aOldCert, aCF.getCertificate ());
+      assertFalse (aCF.isRolloverActive ());
+      assertNull (aCF.getPreviousCertificate ());
+      assertSame (aCF.getCrypto (ECryptoMode.ENCRYPT_SIGN), aCF.getCrypto (ECryptoMode.DECRYPT_VERIFY));
+      assertNull (aCF.getKeyPasswordPerAlias ("ph-as4" + AS4CryptoFactoryReloadable.PREVIOUS_KEY_ALIAS_SUFFIX));
+    }
+    finally
+    {
+      Files.deleteIfExists (aFile.toPath ());
+    }
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.crypto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.regex.Pattern;
+
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.Merlin;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.scope.mock.ScopeTestRule;
+
+/**
+ * Test class for class {@link AS4TrustValidationCache}.
+ *
+ * @author Philip Helger
+ */
+public final class AS4TrustValidationCacheTest
+{
+  @Rule
+  public final ScopeTestRule m_aRule = new ScopeTestRule ();
+
+  @Test
+  public void testBasic ()
+  {
+    final AS4CryptoFactoryConfiguration aCF = AS4CryptoFactoryConfiguration.getDefaultInstance ();
+    final X509Certificate aCert = aCF.getCertificate ();
+    assertNotNull (aCert);
+    final X509Certificate [] aCerts = { aCert };
+    final Crypto aCrypto = aCF.getCrypto (ECryptoMode.DECRYPT_VERIFY);
+
+    final AS4TrustValidationCache aCache = new AS4TrustValidationCache ();
+    assertFalse (aCache.isTrustCached (aCerts, aCrypto, false, null, null));
+    assertEquals (1, aCache.getMissCount ());
+
+    aCache.putTrusted (aCerts, aCrypto, false, null, null);
+    assertEquals (1, aCache.size ());
+    assertTrue (aCache.isTrustCached (aCerts, aCrypto, false, null, null));
+    assertEquals (1, aCache.getHitCount ());
+
+    // Different parameters are different entries
+    assertFalse (aCache.isTrustCached (aCerts, aCrypto, true, null, null));
+    assertFalse (aCache.isTrustCached (aCerts,
+                                       aCrypto,
+                                       false,
+                                       new CommonsArrayList <> (Pattern.compile (".*")),
+                                       null));
+    assertFalse (aCache.isTrustCached (aCerts, new Merlin (), false, null, null));
+
+    // Revoked
+    aCache.invalidate (aCert);
+    assertEquals (0, aCache.size ());
+    assertFalse (aCache.isTrustCached (aCerts, aCrypto, false, null, null));
+  }
+
+  @Test
+  public void testExpiration () throws Exception
+  {
+    final AS4CryptoFactoryConfiguration aCF = AS4CryptoFactoryConfiguration.getDefaultInstance ();
+    final X509Certificate [] aCerts = { aCF.getCertificate () };
+    final Crypto aCrypto = aCF.getCrypto (ECryptoMode.DECRYPT_VERIFY);
+
+    final AS4TrustValidationCache aCache = new AS4TrustValidationCache (Duration.ofMinutes (1),
+                                                                        Duration.ofMillis (20),
+                                                                        1);
+    aCache.putTrusted (aCerts, aCrypto, false, null, null);
+    aCache.putTrusted (aCerts, aCrypto, true, null, null);
+    // Max entries is 1
+    assertEquals (1, aCache.size ());
+    assertTrue (aCache.isTrustCached (aCerts, aCrypto, true, null, null));
+
+    // The revocation TTL is shorter
+    Thread.sleep (50);
+    assertFalse (aCache.isTrustCached (aCerts, aCrypto, true, null, null));
+    assertEquals (0, aCache.size ());
+  }
+}
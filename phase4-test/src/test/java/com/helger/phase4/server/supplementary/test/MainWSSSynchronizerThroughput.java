@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2015-2025 Philip Helger (www.helger.com)
+ * philip[at]helger[dot]com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.helger.phase4.server.supplementary.test;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import javax.annotation.Nonnull;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.dom.engine.WSSConfig;
+import org.apache.wss4j.dom.engine.WSSecurityEngine;
+import org.apache.wss4j.dom.message.WSSecHeader;
+import org.apache.wss4j.dom.message.WSSecSignature;
+import org.slf4j.Logger;
+import org.w3c.dom.Document;
+
+import com.helger.commons.collection.impl.CommonsArrayList;
+import com.helger.commons.collection.impl.ICommonsList;
+import com.helger.commons.concurrent.ExecutorServiceHelper;
+import com.helger.commons.functional.IThrowingSupplier;
+import com.helger.commons.io.resource.ClassPathResource;
+import com.helger.commons.timing.StopWatch;
+import com.helger.phase4.crypto.AS4CryptoFactoryConfiguration;
+import com.helger.phase4.crypto.ECryptoAlgorithmSign;
+import com.helger.phase4.crypto.ECryptoAlgorithmSignDigest;
+import com.helger.phase4.crypto.ECryptoKeyIdentifierType;
+import com.helger.phase4.crypto.ECryptoMode;
+import com.helger.phase4.crypto.IAS4CryptoFactory;
+import com.helger.phase4.logging.Phase4LoggerFactory;
+import com.helger.phase4.wss.WSSConfigManager;
+import com.helger.phase4.wss.WSSSynchronizer;
+import com.helger.scope.mgr.ScopeManager;
+import com.helger.xml.serialize.read.DOMReader;
+
+/**
+ * Throughput comparison of the WSS4J invocation with the global lock (
+ * {@link WSSSynchronizer#callWithGlobalLock(IThrowingSupplier)}) versus the
+ * reference counted invocation with thread confined WSSConfig objects (
+ * {@link WSSSynchronizer#callWithReferenceCounting(IThrowingSupplier)}). Each
+ * operation signs and verifies a small SOAP message.
+ *
+ * @author Philip Helger
+ */
+public final class MainWSSSynchronizerThroughput
+{
+  private static final Logger LOGGER = Phase4LoggerFactory.getLogger (MainWSSSynchronizerThroughput.class);
+  private static final int OPERATIONS_PER_THREAD = 200;
+
+  @FunctionalInterface
+  private interface IWSSCaller
+  {
+    void call (@Nonnull IThrowingSupplier <Object, WSSecurityException> aSupplier) throws WSSecurityException;
+  }
+
+  private static void _signAndVerify (@Nonnull final IAS4CryptoFactory aCryptoFactory,
+                                      @Nonnull final Supplier <WSSConfig> aWSSConfigSupplier) throws WSSecurityException
+  {
+    final Document aDoc = DOMReader.readXMLDOM (new ClassPathResource ("UserMessageWithoutWSSE.xml"));
+    final WSSecHeader aSecHeader = new WSSecHeader (aDoc);
+    aSecHeader.insertSecurityHeader ();
+
+    final WSSecSignature aBuilder = new WSSecSignature (aSecHeader);
+    aBuilder.setUserInfo (aCryptoFactory.getKeyAlias (),
+                          aCryptoFactory.getKeyPasswordPerAlias (aCryptoFactory.getKeyAlias ()));
+    aBuilder.setKeyIdentifierType (ECryptoKeyIdentifierType.BST_DIRECT_REFERENCE.getTypeID ());
+    aBuilder.setSignatureAlgorithm (ECryptoAlgorithmSign.RSA_SHA_256.getAlgorithmURI ());
+    aBuilder.setDigestAlgo (ECryptoAlgorithmSignDigest.DIGEST_SHA_256.getAlgorithmURI ());
+    final Document aSignedDoc = aBuilder.build (aCryptoFactory.getCrypto (ECryptoMode.ENCRYPT_SIGN));
+
+    final WSSecurityEngine aSecEngine = new WSSecurityEngine ();
+    aSecEngine.setWssConfig (aWSSConfigSupplier.get ());
+    aSecEngine.processSecurityHeader (aSignedDoc, null, null, aCryptoFactory.getCrypto (ECryptoMode.ENCRYPT_SIGN));
+  }
+
+  private static double _measure (@Nonnull final String sName,
+                                  final int nThreads,
+                                  @Nonnull final IAS4CryptoFactory aCryptoFactory,
+                                  @Nonnull final IWSSCaller aCaller,
+                                  @Nonnull final Supplier <WSSConfig> aWSSConfigSupplier)
+  {
+    final ExecutorService aES = Executors.newFixedThreadPool (nThreads);
+    final ICommonsList <Future <?>> aFutures = new CommonsArrayList <> (nThreads);
+    final StopWatch aSW = StopWatch.createdStarted ();
+    for (int i = 0; i < nThreads; ++i)
+      aFutures.add (aES.submit ( () -> {
+        for (int j = 0; j < OPERATIONS_PER_THREAD; ++j)
+          aCaller.call ( () -> {
+            _signAndVerify (aCryptoFactory, aWSSConfigSupplier);
+            return null;
+          });
+        return null;
+      }));
+    ExecutorServiceHelper.shutdownAndWaitUntilAllTasksAreFinished (aES);
+    aSW.stop ();
+
+    // Make sure the figures are not based on failed operations
+    for (final Future <?> aFuture : aFutures)
+      try
+      {
+        aFuture.get ();
+      }
+      catch (final InterruptedException ex)
+      {
+        Thread.currentThread ().interrupt ();
+        throw new IllegalStateException ("Interrupted while measuring " + sName, ex);
+      }
+      catch (final ExecutionException ex)
+      {
+        throw new IllegalStateException (sName + " with " + nThreads + " thread(s) failed", ex.getCause ());
+      }
+
+    final double dOpsPerSec = nThreads * OPERATIONS_PER_THREAD * 1000d / Math.max (1, aSW.getMillis ());
+    LOGGER.info (sName + " with " + nThreads + " thread(s): " + String.format ("%.1f", dOpsPerSec) + " ops/s");
+    return dOpsPerSec;
+  }
+
+  public static void main (final String [] args)
+  {
+    ScopeManager.onGlobalBegin ("wss-throughput");
+    try
+    {
+      final IAS4CryptoFactory aCryptoFactory = AS4CryptoFactoryConfiguration.getDefaultInstance ();
+      final int nMaxThreads = Runtime.getRuntime ().availableProcessors ();
+
+      // Warm up
+      _measure ("Warmup",
+                nMaxThreads,
+                aCryptoFactory,
+                WSSSynchronizer::callWithGlobalLock,
+                WSSConfigManager::createStaticWSSConfig);
+      _measure ("Warmup",
+                nMaxThreads,
+                aCryptoFactory,
+                WSSSynchronizer::callWithReferenceCounting,
+                WSSConfigManager::getThreadConfinedWSSConfig);
+
+      for (int nThreads = 1; nThreads <= nMaxThreads; nThreads *= 2)
+      {
+        final double dLocked = _measure ("Global lock",
+                                         nThreads,
+                                         aCryptoFactory,
+                                         WSSSynchronizer::callWithGlobalLock,
+                                         WSSConfigManager::createStaticWSSConfig);
+        final double dPooled = _measure ("Pooled",
+                                         nThreads,
+                                         aCryptoFactory,
+                                         WSSSynchronizer::callWithReferenceCounting,
+                                         WSSConfigManager::getThreadConfinedWSSConfig);
+        LOGGER.info ("  => Speedup with " + nThreads + " thread(s): " + String.format ("%.2f", dPooled / dLocked));
+      }
+    }
+    finally
+    {
+      ScopeManager.onGlobalEnd ();
+    }
+  }
+}